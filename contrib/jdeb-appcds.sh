@@ -0,0 +1,53 @@
+#!/bin/bash
+###############################################################################
+#
+# Create an AppCDS archive for the jdeb command line launcher
+#
+# The archive contains the classes loaded while building a small training
+# package. Passing it to later runs with -XX:SharedArchiveFile skips most of
+# the class loading and verification on start up.
+#
+# Requirements:
+# * JDK 13 or later (dynamic archiving with -XX:ArchiveClassesAtExit)
+# * the same JDK and the same class path must be used when using the archive
+#
+# Usage:
+#   jdeb-appcds.sh <class path> [archive]
+#
+#   java -XX:SharedArchiveFile=jdeb.jsa -cp <class path> org.vafer.jdeb.cli.Main ...
+#
+###############################################################################
+
+set -e
+
+CLASSPATH="$1"
+ARCHIVE="${2:-jdeb.jsa}"
+
+if [ -z "$CLASSPATH" ]; then
+  echo "usage: $0 <class path> [archive]"
+  exit 1
+fi
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+mkdir -p "$WORK/control" "$WORK/data/etc/training"
+cat > "$WORK/control/control" <<CONTROL
+Package: training
+Version: [[version]]
+Section: misc
+Priority: optional
+Architecture: all
+Maintainer: jdeb <jdeb@localhost>
+Description: training package for the class data sharing archive
+CONTROL
+echo "key=value" > "$WORK/data/etc/training/training.conf"
+
+# exercise the usual code paths: directory data, a mapper and variable substitution
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$CLASSPATH" org.vafer.jdeb.cli.Main \
+  --control "$WORK/control" \
+  --data "directory:$WORK/data,user=root,group=root,filemode=644" \
+  --define version=1.0 \
+  "$WORK/training.deb" > /dev/null
+
+echo "Created $ARCHIVE"
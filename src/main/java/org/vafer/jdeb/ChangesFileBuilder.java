@@ -18,16 +18,14 @@ package org.vafer.jdeb;
 
 import java.io.File;
 import java.io.IOException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.Map;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.output.NullOutputStream;
 import org.vafer.jdeb.changes.ChangesProvider;
 import org.vafer.jdeb.debian.BinaryPackageControlFile;
 import org.vafer.jdeb.debian.ChangesFile;
-import org.vafer.jdeb.utils.InformationOutputStream;
+import org.vafer.jdeb.utils.MultiDigest;
 
 /**
  * Builds the Debian changes file.
@@ -44,21 +42,17 @@ class ChangesFileBuilder {
 
         try {
             // compute the checksums of the binary package
-            InformationOutputStream md5output = new InformationOutputStream(NullOutputStream.INSTANCE, MessageDigest.getInstance("MD5"));
-            InformationOutputStream sha1output = new InformationOutputStream(md5output, MessageDigest.getInstance("SHA1"));
-            InformationOutputStream sha256output = new InformationOutputStream(sha1output, MessageDigest.getInstance("SHA-256"));
-
-            FileUtils.copyFile(binaryPackage, sha256output);
+            Map<String, String> checksums = MultiDigest.digest(binaryPackage, "MD5", "SHA1", "SHA-256");
 
             // Checksums-Sha1:
             //  56ef4c6249dc3567fd2967f809c42d1f9b61adf7 45964 jdeb.deb
-            changesFile.set("Checksums-Sha1", sha1output.getHexDigest() + " " + binaryPackage.length() + " " + binaryPackage.getName());
+            changesFile.set("Checksums-Sha1", checksums.get("SHA1") + " " + binaryPackage.length() + " " + binaryPackage.getName());
 
             // Checksums-Sha256:
             //  38c6fa274eb9299a69b739bcbdbd05c7ffd1d8d6472f4245ed732a25c0e5d616 45964 jdeb.deb
-            changesFile.set("Checksums-Sha256", sha256output.getHexDigest() + " " + binaryPackage.length() + " " + binaryPackage.getName());
+            changesFile.set("Checksums-Sha256", checksums.get("SHA-256") + " " + binaryPackage.length() + " " + binaryPackage.getName());
 
-            StringBuilder files = new StringBuilder(md5output.getHexDigest());
+            StringBuilder files = new StringBuilder(checksums.get("MD5"));
             files.append(' ').append(binaryPackage.length());
             files.append(' ').append(packageControlFile.get("Section"));
             files.append(' ').append(packageControlFile.get("Priority"));
@@ -16,10 +16,16 @@
 
 package org.vafer.jdeb;
 
+import java.io.IOException;
 import java.io.OutputStream;
 
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+import org.vafer.jdeb.utils.AdaptiveGzipOutputStream;
+import org.vafer.jdeb.utils.FixedBlockOutputStream;
+import org.vafer.jdeb.utils.RsyncableOutputStream;
 
 /**
  * Compression method used for the data file.
@@ -31,6 +37,12 @@ public enum Compression {
     BZIP2(".bz2"),
     XZ(".xz");
 
+    /** The average size of the xz blocks in the rsyncable mode, a block starts with an empty dictionary */
+    private static final int RSYNC_XZ_BLOCK_SIZE = 1024 * 1024;
+
+    /** The uncompressed size of the xz blocks in the seekable mode */
+    private static final int SEEKABLE_XZ_BLOCK_SIZE = 1024 * 1024;
+
     private String extension;
 
     Compression(String extension) {
@@ -44,13 +56,70 @@ public enum Compression {
         return extension;
     }
 
+    /**
+     * Wraps the stream with the compression method. The gzip stream is an
+     * {@link AdaptiveGzipOutputStream}, the data builder lowers its level for
+     * the content that is compressed already.
+     */
     public OutputStream toCompressedOutputStream(OutputStream out) throws CompressorException {
+        return toCompressedOutputStream(out, false);
+    }
+
+    /**
+     * Wraps the stream with the compression method, optionally in a mode
+     * friendly to delta transfers like rsync or zsync: gzip resets the
+     * deflater and xz ends its blocks at boundaries found from the content,
+     * so the output only changes around the parts of the input that changed.
+     * bzip2 compresses in blocks of a fixed size and has no such mode.
+     */
+    public OutputStream toCompressedOutputStream(OutputStream out, boolean rsyncable) throws CompressorException {
+        return toCompressedOutputStream(out, rsyncable, false);
+    }
+
+    /**
+     * Returns true if the compression method can write a stream where a
+     * reader can start decompressing somewhere else than at the beginning.
+     */
+    public boolean isSeekable() {
+        return this == XZ || this == NONE;
+    }
+
+    /**
+     * Wraps the stream with the compression method, optionally rsyncable
+     * and optionally seekable. A seekable xz stream is made of independent
+     * blocks of a fixed uncompressed size, listed in the index at the end
+     * of the stream, so a file in the middle of the archive can be read
+     * without decompressing everything before it. The blocks of the
+     * rsyncable mode are independent as well and are kept when both modes
+     * are requested. The other methods ignore the seekable flag.
+     */
+    public OutputStream toCompressedOutputStream(OutputStream out, boolean rsyncable, boolean seekable) throws CompressorException {
         switch (this) {
             case GZIP:
-                return new CompressorStreamFactory().createCompressorOutputStream("gz", out);
+                try {
+                    return new AdaptiveGzipOutputStream(out, rsyncable);
+                } catch (IOException e) {
+                    throw new CompressorException("Could not create the gzip stream", e);
+                }
             case BZIP2:
                 return new CompressorStreamFactory().createCompressorOutputStream("bzip2", out);
             case XZ:
+                if (rsyncable) {
+                    try {
+                        final XZOutputStream xz = new XZOutputStream(out, new LZMA2Options());
+                        return new RsyncableOutputStream(xz, RSYNC_XZ_BLOCK_SIZE, xz::endBlock);
+                    } catch (IOException e) {
+                        throw new CompressorException("Could not create the xz stream", e);
+                    }
+                }
+                if (seekable) {
+                    try {
+                        final XZOutputStream xz = new XZOutputStream(out, new LZMA2Options());
+                        return new FixedBlockOutputStream(xz, SEEKABLE_XZ_BLOCK_SIZE, xz::endBlock);
+                    } catch (IOException e) {
+                        throw new CompressorException("Could not create the xz stream", e);
+                    }
+                }
                 return new CompressorStreamFactory().createCompressorOutputStream("xz", out);
             default:
                 return out;
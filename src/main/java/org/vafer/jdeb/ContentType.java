@@ -0,0 +1,129 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+/**
+ * Kind of content of a file, as told by its first bytes.
+ */
+public enum ContentType {
+
+    /** Text, or empty */
+    TEXT,
+
+    /** Text starting with a shebang */
+    SCRIPT,
+
+    /** ELF executable or library */
+    ELF,
+
+    /** Zip (and jar), gzip, bzip2, xz, zstd, png or jpeg, compressing it again is a waste of time */
+    COMPRESSED,
+
+    /** Anything else */
+    BINARY;
+
+    /** The number of bytes worth passing to {@link #detect(byte[], int, int)} */
+    public static final int HEADER_SIZE = 512;
+
+    private static final byte[][] COMPRESSED_MAGICS = {
+        { 'P', 'K', 3, 4 },
+        { 'P', 'K', 5, 6 },
+        { 0x1f, (byte) 0x8b },
+        { 'B', 'Z', 'h' },
+        { (byte) 0xfd, '7', 'z', 'X', 'Z', 0 },
+        { 0x28, (byte) 0xb5, 0x2f, (byte) 0xfd },
+        { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' },
+        { (byte) 0xff, (byte) 0xd8, (byte) 0xff }
+    };
+
+    private static final byte[] ELF_MAGIC = { 0x7f, 'E', 'L', 'F' };
+
+    private static final byte[][] BOMS = {
+        { (byte) 0xef, (byte) 0xbb, (byte) 0xbf },
+        { (byte) 0xfe, (byte) 0xff },
+        { (byte) 0xff, (byte) 0xfe }
+    };
+
+    private static final byte[][] SHEBANGS = {
+        { '#', '!' },
+        { 0, '#', 0, '!' },
+        { '#', 0, '!', 0 }
+    };
+
+    /**
+     * Whether the content is meant to be executed.
+     */
+    public boolean isExecutable() {
+        return this == SCRIPT || this == ELF;
+    }
+
+    public boolean isCompressed() {
+        return this == COMPRESSED;
+    }
+
+    /**
+     * Tells the kind of content from its first bytes, ideally {@link #HEADER_SIZE} of them.
+     */
+    public static ContentType detect( byte[] b, int off, int len ) {
+        if (startsWith(b, off, len, ELF_MAGIC)) {
+            return ELF;
+        }
+        for (byte[] magic : COMPRESSED_MAGICS) {
+            if (startsWith(b, off, len, magic)) {
+                return COMPRESSED;
+            }
+        }
+
+        int start = off;
+        boolean utf16 = false;
+        for (int i = 0; i < BOMS.length; i++) {
+            if (startsWith(b, off, len, BOMS[i])) {
+                start += BOMS[i].length;
+                utf16 = i > 0;
+                break;
+            }
+        }
+
+        for (int i = 0; i < SHEBANGS.length; i++) {
+            if (startsWith(b, start, off + len - start, SHEBANGS[i])) {
+                return SCRIPT;
+            }
+        }
+
+        if (!utf16) {
+            final int end = off + len;
+            for (int i = start; i < end; i++) {
+                if (b[i] == 0) {
+                    return BINARY;
+                }
+            }
+        }
+        return TEXT;
+    }
+
+    private static boolean startsWith( byte[] b, int off, int len, byte[] prefix ) {
+        if (len < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (b[off + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
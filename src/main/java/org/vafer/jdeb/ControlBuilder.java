@@ -24,6 +24,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -36,11 +37,10 @@ import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
-import org.apache.tools.ant.DirectoryScanner;
 import org.vafer.jdeb.debian.BinaryPackageControlFile;
 import org.vafer.jdeb.mapping.PermMapper;
-import org.vafer.jdeb.utils.FilteredFile;
 import org.vafer.jdeb.utils.InformationInputStream;
+import org.vafer.jdeb.utils.Template;
 import org.vafer.jdeb.utils.Utils;
 import org.vafer.jdeb.utils.VariableResolver;
 
@@ -52,10 +52,22 @@ import static java.nio.charset.StandardCharsets.*;
 class ControlBuilder {
 
     /** The name of the package maintainer scripts */
-    private static final Set<String> MAINTAINER_SCRIPTS = new HashSet<>(Arrays.asList("preinst", "postinst", "prerm", "postrm", "config"));
+    static final Set<String> MAINTAINER_SCRIPTS = new HashSet<>(Arrays.asList("preinst", "postinst", "prerm", "postrm", "config"));
 
     /** The name of the other control files subject to token substitution */
-    private static final Set<String> CONFIGURATION_FILENAMES = new HashSet<>(Arrays.asList("conffiles", "templates", "triggers", "copyright"));
+    static final Set<String> CONFIGURATION_FILENAMES = new HashSet<>(Arrays.asList("conffiles", "templates", "triggers", "copyright"));
+
+    /** The files ignored by default (the same list as Ant's DirectoryScanner) */
+    private static final String[] DEFAULT_EXCLUDES = {
+        "**/*~", "**/#*#", "**/.#*", "**/%*%", "**/._*",
+        "**/CVS", "**/CVS/**", "**/.cvsignore",
+        "**/SCCS", "**/SCCS/**", "**/vssver.scc",
+        "**/.svn", "**/.svn/**",
+        "**/.git", "**/.git/**", "**/.gitattributes", "**/.gitignore", "**/.gitmodules",
+        "**/.hg", "**/.hg/**", "**/.hgignore", "**/.hgsub", "**/.hgsubstate", "**/.hgtags",
+        "**/.bzr", "**/.bzr/**", "**/.bzrignore",
+        "**/.DS_Store"
+    };
 
     private Console console;
     private VariableResolver resolver;
@@ -66,8 +78,8 @@ class ControlBuilder {
     ControlBuilder(Console console, VariableResolver resolver, String openReplaceToken, String closeReplaceToken, Long outputTimestampMs) {
         this.console = console;
         this.resolver = resolver;
-        this.openReplaceToken = openReplaceToken;
-        this.closeReplaceToken = closeReplaceToken;
+        this.openReplaceToken = openReplaceToken != null ? openReplaceToken : "[[";
+        this.closeReplaceToken = closeReplaceToken != null ? closeReplaceToken : "]]";
         this.outputTimestampMs = outputTimestampMs;
     }
 
@@ -123,10 +135,7 @@ class ControlBuilder {
 
             if (CONFIGURATION_FILENAMES.contains(file.getName()) || MAINTAINER_SCRIPTS.contains(file.getName())) {
 
-                FilteredFile configurationFile = new FilteredFile(new FileInputStream(file), resolver);
-                configurationFile.setOpenToken(openReplaceToken);
-                configurationFile.setCloseToken(closeReplaceToken);
-                addControlEntry(file.getName(), configurationFile.toString(), outputStream);
+                addControlEntry(file.getName(), filter(file), outputStream);
 
             } else {
 
@@ -186,8 +195,24 @@ class ControlBuilder {
      * @param pDataSize  the size of the installed package
      */
     public BinaryPackageControlFile createPackageControlFile(File file, BigInteger pDataSize) throws IOException, ParseException {
-        FilteredFile controlFile = new FilteredFile(new FileInputStream(file), resolver);
-        BinaryPackageControlFile packageControlFile = new BinaryPackageControlFile(controlFile.toString());
+        return createPackageControlFile(filter(file), pDataSize);
+    }
+
+    /**
+     * Replaces the variables of a control file. The file is tokenized once
+     * and reused by the next builds as long as it doesn't change.
+     */
+    private String filter(File file) throws IOException {
+        return Template.load(file, Charset.defaultCharset(), openReplaceToken, closeReplaceToken).render(resolver);
+    }
+
+    /**
+     * Creates a package control file from the already filtered content of the control file.
+     *
+     * @see #createPackageControlFile(File, BigInteger)
+     */
+    BinaryPackageControlFile createPackageControlFile(String content, BigInteger pDataSize) throws IOException, ParseException {
+        BinaryPackageControlFile packageControlFile = new BinaryPackageControlFile(content);
 
         if (packageControlFile.get("Distribution") == null) {
             packageControlFile.set("Distribution", "unknown");
@@ -221,7 +246,7 @@ class ControlBuilder {
     }
 
 
-    private void addControlEntry(final String pName, final String pContent, final TarArchiveOutputStream pOutput) throws IOException {
+    void addControlEntry(final String pName, final String pContent, final TarArchiveOutputStream pOutput) throws IOException {
 
         console.info("Adding control: " + pName);
 
@@ -250,9 +275,9 @@ class ControlBuilder {
      *
      * @param directory
      */
-    private boolean isDefaultExcludes(File directory) {
-        for (String pattern : DirectoryScanner.getDefaultExcludes()) {
-            if (DirectoryScanner.match(pattern, directory.getAbsolutePath().replace("\\", "/"))) {
+    static boolean isDefaultExcludes(File directory) {
+        for (String pattern : DEFAULT_EXCLUDES) {
+            if (Utils.matchPath(pattern, directory.getAbsolutePath().replace("\\", "/"))) {
                 return true;
             }
         }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.Closeable;
+import java.io.File;
+import java.math.BigInteger;
+
+import org.vafer.jdeb.reader.DataIndex;
+
+/**
+ * The compressed data member of a package, built once and shared by the
+ * variants of a package that only differ in their control files. The
+ * archive is only read once built, it can be added to several packages
+ * concurrently.
+ */
+final class DataArchive implements Closeable {
+
+    private final Console console;
+    private final File file;
+    private final String name;
+    private final String md5s;
+    private final BigInteger size;
+    private final DataIndex index;
+
+    DataArchive(Console console, File file, String name, String md5s, BigInteger size, DataIndex index) {
+        this.console = console;
+        this.file = file;
+        this.name = name;
+        this.md5s = md5s;
+        this.size = size;
+        this.index = index;
+    }
+
+    /**
+     * The temporary file holding the compressed archive.
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * The name of the member in the package, like <code>data.tar.xz</code>.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * The content of the md5sums control file.
+     */
+    String getMd5s() {
+        return md5s;
+    }
+
+    /**
+     * The uncompressed size of the data, in bytes.
+     */
+    BigInteger getSize() {
+        return size;
+    }
+
+    /**
+     * The offsets of the files in the archive, or null if no index is written.
+     */
+    DataIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Deletes the archive.
+     */
+    public void close() {
+        if (!file.delete()) {
+            console.warn("Could not delete the temporary file " + file);
+        }
+    }
+}
@@ -23,20 +23,30 @@ import org.apache.commons.compress.archivers.zip.ZipEncoding;
 import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.vafer.jdeb.mapping.ContentMapper;
+import org.vafer.jdeb.reader.DataIndex;
+import org.vafer.jdeb.utils.AdaptiveGzipOutputStream;
+import org.vafer.jdeb.utils.DigestedInputStream;
+import org.vafer.jdeb.utils.MultiDigest;
 import org.vafer.jdeb.utils.Utils;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
-import java.security.DigestOutputStream;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Builds the data archive of the Debian package.
@@ -49,6 +59,8 @@ class DataBuilder {
 
     private final Long outputTimestampMs;
 
+    private DataIndex index;
+
     private static final class Total {
         private BigInteger count = BigInteger.valueOf(0);
 
@@ -68,6 +80,13 @@ class DataBuilder {
         this.outputTimestampMs = outputTimestampMs;
     }
 
+    /**
+     * Records the offsets of the files of the archive in the specified index.
+     */
+    void setIndex(DataIndex index) {
+        this.index = index;
+    }
+
     private void checkField(String name, int length) throws IOException {
         if (name != null) {
             ByteBuffer b = encoding.encode(name);
@@ -96,17 +115,45 @@ class DataBuilder {
             throw new IOException("Cannot write data file at '" + output.getAbsolutePath() + "'");
         }
 
-        final TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(
-            options.compression().toCompressedOutputStream(new FileOutputStream(output))
-        );
+        return buildData(producers, new FileOutputStream(output), checksums, options);
+    }
+
+    /**
+     * Build the data archive of the deb from the provided DataProducers into a stream.
+     * The stream is closed when the archive is complete.
+     */
+    BigInteger buildData(Collection<DataProducer> producers, OutputStream output, final StringBuilder checksums, TarOptions options) throws NoSuchAlgorithmException, IOException, CompressorException {
+
+        final OutputStream compressedOutputStream = options.compression().toCompressedOutputStream(output, options.rsyncable(), options.seekable());
+
+        // the sinks get a copy of the uncompressed tar stream, and compress it on their own threads
+        final List<DataSink.Output> sinks = new ArrayList<>();
+        OutputStream tarStream = compressedOutputStream;
+        try {
+            for (DataSink sink : options.sinks()) {
+                final DataSink.Output sinkOutput = sink.open();
+                sinks.add(sinkOutput);
+                tarStream = new TeeOutputStream(tarStream, sinkOutput.getStream());
+            }
+        } catch (IOException | CompressorException | NoSuchAlgorithmException e) {
+            IOUtils.closeQuietly(tarStream);
+            deleteSinks(sinks);
+            throw e;
+        }
+
+        final TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(tarStream);
         tarOutputStream.setLongFileMode(options.longFileMode());
         tarOutputStream.setBigNumberMode(options.bigNumberMode());
 
-        final MessageDigest digest = MessageDigest.getInstance("MD5");
+        final MultiDigest digest = new MultiDigest("MD5");
 
         final Total dataSize = new Total();
 
-        final List<String> addedDirectories = new ArrayList<>();
+        final ContentMapper contentMapper = options.contentMapper();
+        final byte[] header = new byte[ContentType.HEADER_SIZE];
+        final Map<ContentType, Total> contentSizes = new EnumMap<>(ContentType.class);
+
+        final Set<String> addedDirectories = new HashSet<>();
         final DataConsumer receiver = new DataConsumer() {
 
             public void onEachDir(TarArchiveEntry dirEntry) throws IOException {
@@ -147,14 +194,37 @@ class DataBuilder {
 
                 createParentDirectories(fileEntry.getName(), fileEntry.getUserName(), fileEntry.getLongUserId(), fileEntry.getGroupName(), fileEntry.getLongGroupId());
 
+                // the first bytes tell the kind of content, before the header of the entry is written
+                final int headerLength = IOUtils.read(input, header);
+                final ContentType type = ContentType.detect(header, 0, headerLength);
+                if (contentMapper != null) {
+                    fileEntry = contentMapper.map(fileEntry, type);
+                }
+                if (compressedOutputStream instanceof AdaptiveGzipOutputStream) {
+                    ((AdaptiveGzipOutputStream) compressedOutputStream).setFast(type.isCompressed());
+                }
+
+                if (index != null) {
+                    index.add(tarOutputStream.getBytesWritten(), fileEntry.getSize(), fileEntry.getName());
+                }
                 tarOutputStream.putArchiveEntry(fileEntry);
 
                 dataSize.add(fileEntry.getSize());
-                digest.reset();
-
-                Utils.copy(input, new DigestOutputStream(tarOutputStream, digest));
-
-                final String md5 = Utils.toHex(digest.digest());
+                contentSizes.computeIfAbsent(type, t -> new Total()).add(fileEntry.getSize());
+
+                final String md5;
+                if (input instanceof DigestedInputStream) {
+                    // the producer knows the digest already
+                    tarOutputStream.write(header, 0, headerLength);
+                    Utils.copy(input, tarOutputStream);
+                    md5 = ((DigestedInputStream) input).getMd5().toLowerCase(Locale.ROOT);
+                } else {
+                    digest.reset();
+                    final OutputStream output = digest.wrap(tarOutputStream);
+                    output.write(header, 0, headerLength);
+                    Utils.copy(input, output);
+                    md5 = digest.getHexDigest();
+                }
 
                 tarOutputStream.closeArchiveEntry();
 
@@ -168,6 +238,7 @@ class DataBuilder {
                         " groupname:" + fileEntry.getGroupName() +
                         " groupid:" + fileEntry.getLongGroupId() +
                         " modtime:" + fileEntry.getModTime() +
+                        " content:" + type +
                         " md5: " + md5
                 );
 
@@ -273,27 +344,54 @@ class DataBuilder {
             }
         };
 
+        final SortingDataConsumer sorter = options.entryOrder() != EntryOrder.NONE ? new SortingDataConsumer(receiver, options.entryOrder()) : null;
+
         boolean finishedWithoutErrors = true;
+        boolean sinksComplete = false;
         try {
-            for (DataProducer data : producers) {
-                data.produce(receiver);
+            try {
+                for (DataProducer data : producers) {
+                    data.produce(sorter != null ? sorter : receiver);
+                }
+                if (sorter != null) {
+                    sorter.finish();
+                }
+            } catch (Exception e) {
+                finishedWithoutErrors = false;
+                throw e;
+            } finally {
+                if (sorter != null) {
+                    sorter.close();
+                }
+                if (finishedWithoutErrors) {
+                    tarOutputStream.close();
+                } else {
+                    IOUtils.closeQuietly(tarOutputStream);
+                }
             }
-        } catch (Exception e) {
-            finishedWithoutErrors = false;
-            throw e;
+
+            for (DataSink.Output sink : sinks) {
+                sink.finish(console);
+            }
+            sinksComplete = true;
         } finally {
-            if (finishedWithoutErrors) {
-                tarOutputStream.close();
-            } else {
-                IOUtils.closeQuietly(tarOutputStream);
+            // a sink of a failed build would hold an incomplete archive
+            if (!sinksComplete) {
+                deleteSinks(sinks);
             }
         }
 
-        console.debug("Total size: " + dataSize);
+        console.debug("Total size: " + dataSize + " " + contentSizes);
 
         return dataSize.count;
     }
 
+    private static void deleteSinks( List<DataSink.Output> sinks ) {
+        for (DataSink.Output sink : sinks) {
+            sink.delete();
+        }
+    }
+
     private String fixPathBase( String path ) {
         if (path == null || path.equals(".")) {
             return path;
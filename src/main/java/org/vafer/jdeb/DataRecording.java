@@ -0,0 +1,120 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+
+/**
+ * The entries of data producers, recorded in one pass to be replayed any
+ * number of times, concurrently, by the builds of several packages.
+ *
+ * Like with the {@link SortingDataConsumer} the entries are kept in an
+ * {@link EntrySpool}. Every replay gets its own copies of the entries, the
+ * builds are free to change them.
+ */
+final class DataRecording implements Closeable {
+
+    private static final class Item {
+        final EntrySpool.Item spooled;
+        final boolean data;
+        final boolean conffile;
+
+        Item( EntrySpool.Item spooled, boolean data, boolean conffile ) {
+            this.spooled = spooled;
+            this.data = data;
+            this.conffile = conffile;
+        }
+    }
+
+    private final EntrySpool spool = new EntrySpool();
+    private final List<Item> items = new ArrayList<>();
+
+    /**
+     * Records the entries of the producer.
+     *
+     * @param data     whether the entries belong to the data of the packages
+     * @param conffile whether the entries are conffiles of the packages
+     */
+    void record( final DataProducer producer, final boolean data, final boolean conffile ) throws IOException {
+        producer.produce(new DataConsumer() {
+            public void onEachDir( TarArchiveEntry dirEntry ) {
+                items.add(new Item(spool.dir(dirEntry), data, conffile));
+            }
+
+            public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException {
+                items.add(new Item(spool.file(input, fileEntry), data, conffile));
+            }
+
+            public void onEachLink( TarArchiveEntry linkEntry ) {
+                items.add(new Item(spool.link(linkEntry), data, conffile));
+            }
+        });
+    }
+
+    /**
+     * Returns the number of entries recorded.
+     */
+    int size() {
+        return items.size();
+    }
+
+    /**
+     * Completes the recording, nothing can be recorded afterwards.
+     */
+    void finish() throws IOException {
+        spool.finish();
+    }
+
+    /**
+     * Returns a producer of the data entries whose path, without the leading
+     * "./" or "/", is accepted by the selector.
+     */
+    DataProducer data( Predicate<String> selector ) {
+        return consumer -> replay(consumer, selector, false);
+    }
+
+    /**
+     * Returns a producer of the conffile entries whose path is accepted by the selector.
+     */
+    DataProducer conffiles( Predicate<String> selector ) {
+        return consumer -> replay(consumer, selector, true);
+    }
+
+    private void replay( DataConsumer consumer, Predicate<String> selector, boolean conffiles ) throws IOException {
+        for (Item item : items) {
+            if ((conffiles ? !item.conffile : !item.data) || !selector.test(item.spooled.path)) {
+                continue;
+            }
+            spool.emit(item.spooled, EntrySpool.copy(item.spooled.entry), consumer);
+        }
+    }
+
+    /**
+     * Deletes the spooled content.
+     */
+    public void close() throws IOException {
+        spool.close();
+        items.clear();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.vafer.jdeb.utils.AsyncOutputStream;
+import org.vafer.jdeb.utils.MultiDigest;
+
+/**
+ * A secondary output of the data archive. The uncompressed tar stream of
+ * the data is written to the sinks while the package is built, so a plain
+ * tarball or a container image layer of the same payload comes from the
+ * same scan and the same read of every file. Every sink compresses on a
+ * thread of its own.
+ */
+public final class DataSink {
+
+    public enum Format {
+
+        /** A gzip compressed tarball */
+        TAR_GZ("tar.gz"),
+
+        /** A zstd compressed tarball, zstd-jni has to be on the classpath */
+        TAR_ZST("tar.zst"),
+
+        /**
+         * A gzip compressed OCI image layer. The descriptor of the layer, with
+         * the digest and the size of the blob and the digest of the
+         * uncompressed tar (the diffID of the image configuration), is
+         * written to a <code>.json</code> file next to the layer.
+         */
+        OCI_LAYER("oci");
+
+        private final String name;
+
+        Format(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the format corresponding to the specified name
+         * (<code>tar.gz</code>, <code>tar.zst</code> or <code>oci</code>).
+         * The matching is case insensitive.
+         *
+         * @return the format, or null if not recognized
+         */
+        public static Format toEnum(String name) {
+            for (Format format : values()) {
+                if (format.name.equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    static final String OCI_LAYER_MEDIA_TYPE = "application/vnd.oci.image.layer.v1.tar+gzip";
+
+    private final Format format;
+    private final File file;
+
+    public DataSink(Format format, File file) {
+        this.format = Objects.requireNonNull(format, "format");
+        this.file = Objects.requireNonNull(file, "file");
+    }
+
+    /**
+     * Creates a sink from the name of its format, as used by the Maven and Ant configurations.
+     */
+    public static DataSink create(String format, File file) throws PackagingException {
+        final Format value = Format.toEnum(format);
+        if (value == null) {
+            throw new PackagingException("The sink format '" + format + "' is not supported (expected 'tar.gz', 'tar.zst' or 'oci')");
+        }
+        if (file == null) {
+            throw new PackagingException("The file of the '" + format + "' sink is missing");
+        }
+        return new DataSink(value, file);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The file the descriptor of an OCI layer is written to.
+     */
+    public File getDescriptorFile() {
+        return new File(file.getPath() + ".json");
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof DataSink)) {
+            return false;
+        }
+        final DataSink other = (DataSink) o;
+        return format == other.format && file.equals(other.file);
+    }
+
+    public int hashCode() {
+        return format.hashCode() * 31 + file.hashCode();
+    }
+
+    public String toString() {
+        return format.getName() + ":" + file;
+    }
+
+    /**
+     * Opens the sink for one build of the data archive.
+     */
+    Output open() throws IOException, CompressorException, NoSuchAlgorithmException {
+        return new Output();
+    }
+
+    /**
+     * The open sink: the uncompressed tar goes in, the compression happens
+     * on the thread of the stream.
+     */
+    final class Output {
+
+        private final MultiDigest blobDigest;
+        private final MultiDigest tarDigest;
+        private final OutputStream stream;
+
+        private Output() throws IOException, CompressorException, NoSuchAlgorithmException {
+            final File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create the directory of " + file);
+            }
+
+            OutputStream output = new FileOutputStream(file);
+            try {
+                if (format == Format.OCI_LAYER) {
+                    blobDigest = new MultiDigest("SHA-256");
+                    tarDigest = new MultiDigest("SHA-256");
+                    output = tarDigest.wrap(Compression.GZIP.toCompressedOutputStream(blobDigest.wrap(output), false, false));
+                } else {
+                    blobDigest = null;
+                    tarDigest = null;
+                    output = format == Format.TAR_ZST
+                        ? new CompressorStreamFactory().createCompressorOutputStream(CompressorStreamFactory.ZSTANDARD, output)
+                        : Compression.GZIP.toCompressedOutputStream(output, false, false);
+                }
+            } catch (CompressorException | NoSuchAlgorithmException e) {
+                output.close();
+                file.delete();
+                throw e;
+            }
+            stream = new AsyncOutputStream(output);
+        }
+
+        /**
+         * The stream receiving the uncompressed tar, closing it completes the sink.
+         */
+        OutputStream getStream() {
+            return stream;
+        }
+
+        /**
+         * Writes the descriptor of the layer, once the stream is closed.
+         */
+        void finish(Console console) throws IOException {
+            console.info("Created " + format.getName() + " sink: " + file);
+            if (format != Format.OCI_LAYER) {
+                return;
+            }
+
+            final long size = blobDigest.getSize();
+            final String digest = "sha256:" + blobDigest.getHexDigest();
+            final String diffId = "sha256:" + tarDigest.getHexDigest();
+            try (Writer writer = Files.newBufferedWriter(getDescriptorFile().toPath(), StandardCharsets.UTF_8)) {
+                writer.write("{\n");
+                writer.write("  \"mediaType\": \"" + OCI_LAYER_MEDIA_TYPE + "\",\n");
+                writer.write("  \"digest\": \"" + digest + "\",\n");
+                writer.write("  \"size\": " + size + ",\n");
+                writer.write("  \"diffID\": \"" + diffId + "\"\n");
+                writer.write("}\n");
+            }
+            console.info("Layer " + digest + " with diffID " + diffId);
+        }
+
+        /**
+         * Deletes the files of a sink whose build failed, once the stream is closed.
+         */
+        void delete() {
+            file.delete();
+            getDescriptorFile().delete();
+        }
+    }
+}
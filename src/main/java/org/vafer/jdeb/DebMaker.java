@@ -19,24 +19,25 @@ package org.vafer.jdeb;
 import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
 import org.apache.commons.compress.archivers.ar.ArArchiveOutputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
-import org.bouncycastle.crypto.digests.MD5Digest;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPSignatureGenerator;
-import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
-import org.bouncycastle.util.encoders.Hex;
 import org.vafer.jdeb.changes.ChangeSet;
 import org.vafer.jdeb.changes.ChangesProvider;
 import org.vafer.jdeb.changes.TextfileChangesProvider;
 import org.vafer.jdeb.debian.BinaryPackageControlFile;
 import org.vafer.jdeb.debian.ChangesFile;
+import org.vafer.jdeb.mapping.ExecutableMapper;
+import org.vafer.jdeb.reader.DataIndex;
+import org.vafer.jdeb.signing.BouncyCastle;
 import org.vafer.jdeb.signing.PGPSigner;
+import org.vafer.jdeb.signing.SignerCache;
+import org.vafer.jdeb.utils.MultiDigest;
 import org.vafer.jdeb.utils.PGPSignatureOutputStream;
 import org.vafer.jdeb.utils.Utils;
 import org.vafer.jdeb.utils.VariableResolver;
+import org.vafer.jdeb.utils.ZsyncOutputStream;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -44,17 +45,19 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.Security;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -83,6 +86,9 @@ public class DebMaker {
     /** The dependencies of the package. */
     private String depends;
 
+    /** The dependencies added to the ones of the control file. */
+    private String extraDepends;
+
     /** The description of the package. Default value if not specified in the control file */
     private String description;
 
@@ -131,6 +137,24 @@ public class DebMaker {
     /** Defines the bigNumberMode of the tar file that is built */
     private String tarBigNumberMode;
 
+    /** Defines the order of the entries in the data archive */
+    private String entryOrder;
+
+    /** Makes the scripts and the ELF binaries of the data executable */
+    private boolean detectExecutables;
+
+    /** Compress the data in a mode friendly to rsync and zsync */
+    private boolean rsyncable;
+
+    /** Write the zsync control file next to the package */
+    private boolean zsync;
+
+    /** Compress the data in independent blocks a reader can seek to */
+    private boolean seekable;
+
+    /** Write the index of the files of the data archive next to the package */
+    private boolean dataIndex;
+
     private Long outputTimestampMs;
 
     private VariableResolver variableResolver;
@@ -140,8 +164,14 @@ public class DebMaker {
     private final Collection<DataProducer> dataProducers = new ArrayList<>();
 
     private final Collection<DataProducer> conffilesProducers = new ArrayList<>();
+
+    /** The secondary outputs of the data archive */
+    private final List<DataSink> sinks = new ArrayList<>();
     private String digest = "SHA256";
 
+    /** Shares the decrypted keys with other builds, the keyring is read for every signature otherwise */
+    private SignerCache signerCache;
+
     public DebMaker(Console console, Collection<DataProducer> dataProducers, Collection<DataProducer> conffileProducers) {
         this.console = console;
         if (dataProducers != null) {
@@ -150,8 +180,44 @@ public class DebMaker {
         if (conffileProducers != null) {
             this.conffilesProducers.addAll(conffileProducers);
         }
+    }
 
-        Security.addProvider(new BouncyCastleProvider());
+    public DebMaker(Console console, PackageConfig config) {
+        this(console, config.getDataProducers(), config.getConffileProducers());
+        deb = config.getDeb();
+        control = config.getControl();
+        packageName = config.getPackage();
+        section = config.getSection();
+        depends = config.getDepends();
+        extraDepends = config.getExtraDepends();
+        description = config.getDescription();
+        homepage = config.getHomepage();
+        keyring = config.getKeyring();
+        key = config.getKey();
+        passphrase = config.getPassphrase();
+        changesIn = config.getChangesIn();
+        changesOut = config.getChangesOut();
+        changesSave = config.getChangesSave();
+        compression = config.getCompression();
+        signPackage = config.isSignPackage();
+        signChanges = config.isSignChanges();
+        signMethod = config.getSignMethod();
+        signRole = config.getSignRole();
+        signDigest = config.getSignDigest();
+        digest = config.getDigest();
+        tarLongFileMode = config.getTarLongFileMode();
+        tarBigNumberMode = config.getTarBigNumberMode();
+        entryOrder = config.getEntryOrder();
+        detectExecutables = config.isDetectExecutables();
+        rsyncable = config.isRsyncable();
+        zsync = config.isZsync();
+        seekable = config.isSeekable();
+        dataIndex = config.isDataIndex();
+        sinks.addAll(config.getSinks());
+        outputTimestampMs = config.getOutputTimestampMs();
+        variableResolver = config.getResolver();
+        openReplaceToken = config.getOpenReplaceToken();
+        closeReplaceToken = config.getCloseReplaceToken();
     }
 
     public void setDeb(File deb) {
@@ -174,6 +240,10 @@ public class DebMaker {
         this.depends = depends;
     }
 
+    public void setExtraDepends(String extraDepends) {
+        this.extraDepends = extraDepends;
+    }
+
     public void setDescription(String description) {
         this.description = description;
     }
@@ -259,10 +329,45 @@ public class DebMaker {
         this.tarBigNumberMode = tarBigNumberMode;
     }
 
+    public void setEntryOrder(String entryOrder) {
+        this.entryOrder = entryOrder;
+    }
+
+    public void setDetectExecutables(boolean detectExecutables) {
+        this.detectExecutables = detectExecutables;
+    }
+
+    public void setRsyncable(boolean rsyncable) {
+        this.rsyncable = rsyncable;
+    }
+
+    public void setZsync(boolean zsync) {
+        this.zsync = zsync;
+    }
+
+    public void setSeekable(boolean seekable) {
+        this.seekable = seekable;
+    }
+
+    public void setDataIndex(boolean dataIndex) {
+        this.dataIndex = dataIndex;
+    }
+
+    public void setSinks(Collection<DataSink> sinks) {
+        this.sinks.clear();
+        if (sinks != null) {
+            this.sinks.addAll(sinks);
+        }
+    }
+
     public void setOutputTimestampMs(Long outputTimestampMs) {
         this.outputTimestampMs = outputTimestampMs;
     }
 
+    void setSignerCache(SignerCache signerCache) {
+        this.signerCache = signerCache;
+    }
+
     /**
      * Validates the input parameters.
      */
@@ -295,14 +400,39 @@ public class DebMaker {
             throw new PackagingException("The compression method '" + compression + "' is not supported (expected 'none', 'gzip', 'bzip2' or 'xz')");
         }
 
+        if (seekable && Compression.toEnum(compression) != null && !Compression.toEnum(compression).isSeekable()) {
+            throw new PackagingException("The seekable data archive requires the 'xz' or 'none' compression, not '" + compression + "'");
+        }
+
+        if (EntryOrder.toEnum(entryOrder) == null) {
+            throw new PackagingException("The entry order '" + entryOrder + "' is not supported (expected 'none', 'path' or 'type')");
+        }
+
         if (deb == null) {
             throw new PackagingException("You need to specify where the deb file is supposed to be created.");
         }
 
-        PGPSigner.getDigestCode(digest);
+        if (signPackage || signChanges) {
+            PGPSigner.getDigestCode(digest);
+        }
     }
 
     public void makeDeb() throws PackagingException {
+        make();
+    }
+
+    /**
+     * Creates the package and its changes file.
+     */
+    PackageResult make() throws PackagingException {
+        return make(null);
+    }
+
+    /**
+     * Creates the package and its changes file around a data archive shared
+     * with other packages, or around a data archive of its own if null.
+     */
+    PackageResult make(DataArchive data) throws PackagingException {
         BinaryPackageControlFile packageControlFile;
         try {
             console.info("Creating debian package: " + deb);
@@ -322,33 +452,47 @@ public class DebMaker {
                     console.warn("Signing requested, but no passphrase supplied");
                 }
 
+                BouncyCastle.register();
+
                 final int digestCode = PGPSigner.getDigestCode(signDigest);
 
-                PGPSigner signer;
-                try (FileInputStream keyRingInput = new FileInputStream(keyring)) {
-                    signer = new PGPSigner(keyRingInput, key, passphrase, digestCode);
-                }
+                PGPSigner signer = createSigner(digestCode);
 
-                PGPSignatureGenerator signatureGenerator = new PGPSignatureGenerator(new BcPGPContentSignerBuilder(signer.getSecretKey().getPublicKey().getAlgorithm(), digestCode));
-                signatureGenerator.init(PGPSignature.BINARY_DOCUMENT, signer.getPrivateKey());
+                PGPSignatureGenerator signatureGenerator = signer.createBinarySignatureGenerator();
 
-                packageControlFile = createSignedDeb(Compression.toEnum(compression), signatureGenerator, signer);
+                packageControlFile = data != null
+                    ? createSignedDeb(data, signatureGenerator, signer)
+                    : createSignedDeb(Compression.toEnum(compression), signatureGenerator, signer);
             } else {
-                packageControlFile = createDeb(Compression.toEnum(compression));
+                packageControlFile = data != null
+                    ? createSignedDeb(data, null, null)
+                    : createDeb(Compression.toEnum(compression));
             }
 
         } catch (Exception e) {
             throw new PackagingException("Failed to create debian package " + deb, e);
         }
 
-        makeChangesFiles(packageControlFile);
+        final File changes = makeChangesFiles(packageControlFile);
+
+        return new PackageResult(deb, changes, packageControlFile);
     }
 
-    private void makeChangesFiles(final BinaryPackageControlFile packageControlFile) throws PackagingException {
-        if (changesOut == null) {
-            changesOut = new File(deb.getParentFile(), FilenameUtils.getBaseName(deb.getName()) + ".changes");
+    private PGPSigner createSigner(int digestCode) throws IOException, PGPException {
+        if (signerCache != null) {
+            return signerCache.get(keyring, key, passphrase, digestCode);
         }
 
+        try (FileInputStream keyRingInput = new FileInputStream(keyring)) {
+            return new PGPSigner(keyRingInput, key, passphrase, digestCode);
+        }
+    }
+
+    private File makeChangesFiles(final BinaryPackageControlFile packageControlFile) throws PackagingException {
+        final File changesOut = this.changesOut != null
+                ? this.changesOut
+                : new File(deb.getParentFile(), FilenameUtils.getBaseName(deb.getName()) + ".changes");
+
         ChangesProvider changesProvider;
         FileOutputStream out = null;
 
@@ -380,12 +524,12 @@ public class DebMaker {
             ChangesFileBuilder builder = new ChangesFileBuilder();
             ChangesFile changesFile = builder.createChanges(packageControlFile, deb, changesProvider);
 
-            final int digestCode = PGPSigner.getDigestCode(signDigest);
-
             // (signChanges || signPackage) - for backward compatibility. signPackage is signing both changes and deb.
             if ((signChanges || signPackage) && keyring != null && key != null && passphrase != null) {
                 console.info("Signing the changes file with the key " + key);
-                PGPSigner signer = new PGPSigner(new FileInputStream(keyring), key, passphrase, digestCode);
+                BouncyCastle.register();
+                final int digestCode = PGPSigner.getDigestCode(signDigest);
+                PGPSigner signer = createSigner(digestCode);
                 signer.clearSign(changesFile.toString(), out);
             } else {
                 out.write(changesFile.toString().getBytes(StandardCharsets.UTF_8));
@@ -399,7 +543,7 @@ public class DebMaker {
         }
 
         if (changesSave == null || !(changesProvider instanceof TextfileChangesProvider)) {
-            return;
+            return changesOut;
         }
 
         try {
@@ -410,9 +554,11 @@ public class DebMaker {
         } catch (Exception e) {
             throw new PackagingException("Failed to save debian changes file " + changesSave, e);
         }
+
+        return changesOut;
     }
 
-    private List<String> populateConffiles(Collection<DataProducer> producers) {
+    List<String> populateConffiles(Collection<DataProducer> producers) {
         final List<String> result = new ArrayList<>();
 
         if (producers == null || producers.isEmpty()) {
@@ -473,48 +619,73 @@ public class DebMaker {
      * @throws PackagingException
      */
     public BinaryPackageControlFile createSignedDeb(Compression compression, final PGPSignatureGenerator signatureGenerator, PGPSigner signer ) throws PackagingException {
-        File tempData = null;
-        File tempControl = null;
+        try (DataArchive data = buildDataArchive(compression)) {
+            return createSignedDeb(data, signatureGenerator, signer);
+        }
+    }
 
+    /**
+     * Builds the compressed data archive of the package out of the data producers.
+     *
+     * @param compression   the compression method used for the data file
+     * @return the archive, to be closed once the packages using it are built
+     */
+    DataArchive buildDataArchive(Compression compression) throws PackagingException {
+        File tempData = null;
         try {
             tempData = File.createTempFile("deb", "data");
-            tempControl = File.createTempFile("deb", "control");
 
             console.debug("Building data");
             DataBuilder dataBuilder = new DataBuilder(console, outputTimestampMs);
+            final DataIndex index = this.dataIndex ? new DataIndex() : null;
+            dataBuilder.setIndex(index);
             StringBuilder md5s = new StringBuilder();
             TarOptions options = new TarOptions()
                 .compression(compression)
                 .longFileMode(tarLongFileMode)
-                .bigNumberMode(tarBigNumberMode);
+                .bigNumberMode(tarBigNumberMode)
+                .entryOrder(EntryOrder.toEnum(entryOrder))
+                .contentMapper(detectExecutables ? ExecutableMapper.INSTANCE : null)
+                .rsyncable(rsyncable)
+                .seekable(seekable)
+                .sinks(sinks);
             BigInteger size = dataBuilder.buildData(dataProducers, tempData, md5s, options);
 
+            String dataName = "data.tar" + compression.getExtension();
+            if (index != null) {
+                index.setMember(dataName, tempData.length());
+            }
+
+            return new DataArchive(console, tempData, dataName, md5s.toString(), size, index);
+
+        } catch (Exception e) {
+            if (tempData != null && !tempData.delete()) {
+                console.warn("Could not delete the temporary file " + tempData);
+            }
+            throw new PackagingException("Could not create deb package", e);
+        }
+    }
+
+    /**
+     * Creates the debian archive with the provided control files around an
+     * already built data archive. The data archive is only read.
+     */
+    private BinaryPackageControlFile createSignedDeb(DataArchive data, final PGPSignatureGenerator signatureGenerator, PGPSigner signer) throws PackagingException {
+        File tempControl = null;
+
+        try {
+            tempControl = File.createTempFile("deb", "control");
+            final File tempData = data.getFile();
+
             console.info("Building conffiles");
             List<String> tempConffiles = populateConffiles(conffilesProducers);
 
             console.debug("Building control");
             ControlBuilder controlBuilder = new ControlBuilder(console, variableResolver, openReplaceToken, closeReplaceToken, outputTimestampMs);
-            BinaryPackageControlFile packageControlFile = controlBuilder.createPackageControlFile(new File(control, "control"), size);
-            if (packageControlFile.get("Package") == null) {
-                packageControlFile.set("Package", packageName);
-            }
-            if (packageControlFile.get("Section") == null) {
-                packageControlFile.set("Section", section);
-            }
-            if (packageControlFile.get("Description") == null) {
-                packageControlFile.set("Description", description);
-            }
-            if (packageControlFile.get("Depends") == null) {
-                // Only add a depends entry to the control file if the field in this object has actually been set
-                if (depends != null && depends.length() > 0) {
-                    packageControlFile.set("Depends", depends);
-                }
-            }
-            if (packageControlFile.get("Homepage") == null) {
-                packageControlFile.set("Homepage", homepage);
-            }
+            BinaryPackageControlFile packageControlFile = controlBuilder.createPackageControlFile(new File(control, "control"), data.getSize());
+            completeControlFile(packageControlFile);
 
-            controlBuilder.buildControl(packageControlFile, control.listFiles(), tempConffiles , md5s, tempControl);
+            controlBuilder.buildControl(packageControlFile, control.listFiles(), tempConffiles , new StringBuilder(data.getMd5s()), tempControl);
 
             if (!packageControlFile.isValid()) {
                 throw new PackagingException("Control file fields are invalid " + packageControlFile.invalidFields() +
@@ -524,12 +695,15 @@ public class DebMaker {
 
             deb.getParentFile().mkdirs();
 
-            ArArchiveOutputStream ar = new ArArchiveOutputStream(new FileOutputStream(deb));
+            // the block checksums of the zsync file are computed on the way to the disk
+            final OutputStream debOutput = new FileOutputStream(deb);
+            final ZsyncOutputStream zsyncOutput = zsync ? new ZsyncOutputStream(debOutput, tempControl.length() + tempData.length()) : null;
+            ArArchiveOutputStream ar = new ArArchiveOutputStream(zsyncOutput != null ? zsyncOutput : debOutput);
 
             String binaryName = "debian-binary";
             String binaryContent = "2.0\n";
             String controlName = "control.tar.gz";
-            String dataName = "data.tar" + compression.getExtension();
+            String dataName = data.getName();
 
             addTo(ar, binaryName, binaryContent);
             addTo(ar, controlName, tempControl);
@@ -538,9 +712,7 @@ public class DebMaker {
             if (signatureGenerator != null) {
                 console.info("Signing package with key " + key);
 
-                if(signRole == null) {
-                    signRole = "origin";
-                }
+                final String signRole = this.signRole != null ? this.signRole : "origin";
 
                 // Use debsig-verify as default
                 if (!"dpkg-sig".equals(signMethod)) {
@@ -555,6 +727,7 @@ public class DebMaker {
                 } else {
 
                     // Sign file to verify with dpkg-sig --verify
+                    final List<Map<String, String>> checksums = MultiDigest.digest(Arrays.asList(tempControl, tempData), "MD5", digest);
                     final String outputStr =
                             "Version: 4\n" +
                                     "Signer: \n" +
@@ -562,8 +735,8 @@ public class DebMaker {
                                     "Role: " + signRole +"\n" +
                                     "Files: \n" +
                                     addFile(binaryName, binaryContent) +
-                                    addFile(controlName, tempControl) +
-                                    addFile(dataName, tempData);
+                                    addFile(controlName, checksums.get(0), tempControl) +
+                                    addFile(dataName, checksums.get(1), tempData);
 
                     ByteArrayOutputStream message = new ByteArrayOutputStream();
                     signer.clearSign(outputStr, message);
@@ -574,16 +747,25 @@ public class DebMaker {
 
             ar.close();
 
+            if (zsyncOutput != null) {
+                final File zsyncFile = new File(deb.getPath() + ".zsync");
+                console.info("Creating zsync file: " + zsyncFile);
+                try (OutputStream output = new FileOutputStream(zsyncFile)) {
+                    zsyncOutput.writeControl(output, deb.getName());
+                }
+            }
+
+            if (data.getIndex() != null) {
+                final File indexFile = new File(deb.getPath() + ".index");
+                console.info("Creating data index: " + indexFile);
+                data.getIndex().write(indexFile);
+            }
+
             return packageControlFile;
 
         } catch (Exception e) {
             throw new PackagingException("Could not create deb package", e);
         } finally {
-            if (tempData != null) {
-                if (!tempData.delete()) {
-                    console.warn("Could not delete the temporary file " + tempData);
-                }
-            }
             if (tempControl != null) {
                 if (!tempControl.delete()) {
                     console.warn("Could not delete the temporary file " + tempControl);
@@ -592,79 +774,56 @@ public class DebMaker {
         }
     }
 
-    private String addFile(String name, String input){
-        return addLine(md5Hash(input), sha1Hash(input), input.length(), name);
-    }
-
-    private String addFile(String name, File input){
-        return addLine(md5Hash(input), sha1Hash(input), input.length(), name);
-    }
-
-    private String addLine(String md5, String sha1, long size, String name){
-        return "\t" + md5 + " " + sha1 + " " + size + " " + name + "\n";
-    }
-
-    private String md5Hash(String input){
-        return md5Hash(input.getBytes());
+    /**
+     * Reads the control file of the package with its variables replaced and
+     * the missing fields filled, without building anything.
+     */
+    BinaryPackageControlFile readControlFile() throws IOException, ParseException {
+        ControlBuilder controlBuilder = new ControlBuilder(console, variableResolver, openReplaceToken, closeReplaceToken, outputTimestampMs);
+        BinaryPackageControlFile packageControlFile = controlBuilder.createPackageControlFile(new File(control, "control"), BigInteger.ZERO);
+        completeControlFile(packageControlFile);
+        return packageControlFile;
     }
 
-    private String md5Hash(File input){
-        try {
-            return md5Hash(FileUtils.readFileToByteArray(input));
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+    /**
+     * Fills the fields missing in the control file with the values configured.
+     */
+    void completeControlFile(BinaryPackageControlFile packageControlFile) {
+        if (packageControlFile.get("Package") == null) {
+            packageControlFile.set("Package", packageName);
+        }
+        if (packageControlFile.get("Section") == null) {
+            packageControlFile.set("Section", section);
+        }
+        if (packageControlFile.get("Description") == null) {
+            packageControlFile.set("Description", description);
+        }
+        if (packageControlFile.get("Depends") == null) {
+            // Only add a depends entry to the control file if the field in this object has actually been set
+            if (depends != null && depends.length() > 0) {
+                packageControlFile.set("Depends", depends);
+            }
+        }
+        if (extraDepends != null && extraDepends.length() > 0) {
+            final String existing = packageControlFile.get("Depends");
+            packageControlFile.set("Depends", existing == null || existing.trim().isEmpty() ? extraDepends : existing + ", " + extraDepends);
+        }
+        if (packageControlFile.get("Homepage") == null) {
+            packageControlFile.set("Homepage", homepage);
         }
-
-        return null;
-    }
-
-    private String md5Hash(byte[] input){
-        //update the input of MD5
-        MD5Digest md5 = new MD5Digest();
-        md5.update(input, 0, input.length);
-
-        //get the output/ digest size and hash it
-        byte[] digest = new byte[md5.getDigestSize()];
-        md5.doFinal(digest, 0);
-
-        return new String(Hex.encode(digest));
     }
 
-    private String sha1Hash(String input){
-        return sha1Hash(input.getBytes());
+    private String addFile(String name, String input) throws NoSuchAlgorithmException {
+        final byte[] content = input.getBytes();
+        return addLine(MultiDigest.digest(content, "MD5", digest), content.length, name);
     }
 
-    private String sha1Hash(File input){
-        try {
-            return sha1Hash(FileUtils.readFileToByteArray(input));
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-
-        return null;
+    private String addFile(String name, Map<String, String> checksums, File input) {
+        return addLine(checksums, input.length(), name);
     }
 
-    private String sha1Hash(byte[] input){
-        try
-        {
-            //prepare the input
-            MessageDigest hash = MessageDigest.getInstance(digest);
-            hash.update(input);
-
-            //proceed ....
-            byte[] digest = hash.digest();
-
-            return new String(Hex.encode(digest));
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            System.err.println("No such algorithm");
-            e.printStackTrace();
-        }
-
-        return null;
+    private String addLine(Map<String, String> checksums, long size, String name){
+        return "\t" + checksums.get("MD5") + " " + checksums.get(digest) + " " + size + " " + name + "\n";
     }
 
     private void addTo(ArArchiveOutputStream pOutput, String pName, String pContent) throws IOException {
@@ -706,7 +865,7 @@ public class DebMaker {
         this.closeReplaceToken = closeReplaceToken;
     }
 
-    private ArArchiveEntry createArArchiveEntry(String pName, long contentLength) {
+    ArArchiveEntry createArArchiveEntry(String pName, long contentLength) {
         if (outputTimestampMs != null) {
             return new ArArchiveEntry(pName, contentLength, 0, 0, DEFAULT_MODE, outputTimestampMs / TimeUnit.SECONDS.toMillis(1));
         }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+/**
+ * Order of the entries in the data archive.
+ */
+public enum EntryOrder {
+
+    /** The order in which the producers emit the entries */
+    NONE,
+
+    /** Sorted by path, reproducible whatever the order of the file system */
+    PATH,
+
+    /**
+     * The directories sorted by path, followed by the other entries sorted by
+     * extension and then by path. Files of the same kind end up next to each
+     * other, in the same window of the compressor.
+     */
+    TYPE;
+
+    /**
+     * Returns the order corresponding to the specified name, case insensitive.
+     *
+     * @param name the name of the order, null for the default
+     * @return the order, or null if not recognized
+     */
+    public static EntryOrder toEnum(String name) {
+        if (name == null || "none".equalsIgnoreCase(name)) {
+            return NONE;
+        } else if ("path".equalsIgnoreCase(name)) {
+            return PATH;
+        } else if ("type".equalsIgnoreCase(name)) {
+            return TYPE;
+        } else {
+            return null;
+        }
+    }
+}
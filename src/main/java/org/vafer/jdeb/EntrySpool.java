@@ -0,0 +1,245 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.vafer.jdeb.utils.DigestedInputStream;
+import org.vafer.jdeb.utils.FileSourceInputStream;
+import org.vafer.jdeb.utils.Utils;
+
+/**
+ * The entries of data producers kept to be passed on later, by the
+ * {@link SortingDataConsumer} and the {@link DataRecording}. Only the
+ * metadata is kept: the files read from the file system are opened again
+ * when the entry is passed on, any other content is spooled to a temporary
+ * file.
+ *
+ * Of the tar entries only the name, type, link name, mode, owner, size and
+ * modification time are kept. The device numbers, the access and change
+ * times and the extended (pax) headers are not set by the producers and
+ * are lost.
+ */
+final class EntrySpool implements Closeable {
+
+    static final byte DIR = 0;
+    static final byte FILE = 1;
+    static final byte LINK = 2;
+
+    /**
+     * The metadata of an entry and where to find its content.
+     */
+    static final class Item {
+        final byte kind;
+        /** the name of the entry without the leading "./" and slashes */
+        final String path;
+        final TarArchiveEntry entry;
+        /** the file holding the content, or null if spooled */
+        File source;
+        long offset;
+        long length;
+        String md5;
+
+        Item( byte kind, TarArchiveEntry entry ) {
+            this.kind = kind;
+            this.path = Utils.normalizePath(entry.getName().replace('\\', '/'));
+            this.entry = entry;
+        }
+
+        void write( DataOutputStream output ) throws IOException {
+            output.writeByte(kind);
+            output.writeUTF(entry.getName());
+            output.writeByte(entry.getLinkFlag());
+            writeNullable(output, entry.getLinkName());
+            output.writeInt(entry.getMode());
+            output.writeLong(entry.getLongUserId());
+            output.writeLong(entry.getLongGroupId());
+            writeNullable(output, entry.getUserName());
+            writeNullable(output, entry.getGroupName());
+            output.writeLong(entry.getSize());
+            output.writeLong(entry.getModTime().getTime());
+            writeNullable(output, source != null ? source.getPath() : null);
+            output.writeLong(offset);
+            output.writeLong(length);
+            writeNullable(output, md5);
+        }
+
+        /**
+         * Reads an item written by {@link #write}, or returns null at the end of the input.
+         */
+        static Item read( DataInputStream input ) throws IOException {
+            final byte kind;
+            try {
+                kind = input.readByte();
+            } catch (EOFException e) {
+                return null;
+            }
+            final String name = input.readUTF();
+            final TarArchiveEntry entry = new TarArchiveEntry(name, input.readByte(), true);
+            entry.setLinkName(readNullable(input));
+            entry.setMode(input.readInt());
+            entry.setUserId(input.readLong());
+            entry.setGroupId(input.readLong());
+            entry.setUserName(readNullable(input));
+            entry.setGroupName(readNullable(input));
+            entry.setSize(input.readLong());
+            entry.setModTime(input.readLong());
+
+            final Item item = new Item(kind, entry);
+            final String source = readNullable(input);
+            item.source = source != null ? new File(source) : null;
+            item.offset = input.readLong();
+            item.length = input.readLong();
+            item.md5 = readNullable(input);
+            return item;
+        }
+
+        private static void writeNullable( DataOutputStream output, String value ) throws IOException {
+            output.writeBoolean(value != null);
+            if (value != null) {
+                output.writeUTF(value);
+            }
+        }
+
+        private static String readNullable( DataInputStream input ) throws IOException {
+            return input.readBoolean() ? input.readUTF() : null;
+        }
+    }
+
+    private File spool;
+    private OutputStream spoolOutput;
+    private long spoolSize;
+
+    Item dir( TarArchiveEntry entry ) {
+        return new Item(DIR, entry);
+    }
+
+    Item link( TarArchiveEntry entry ) {
+        return new Item(LINK, entry);
+    }
+
+    /**
+     * Returns the item of a file, its content is read now unless it comes from the file system.
+     */
+    Item file( InputStream input, TarArchiveEntry entry ) throws IOException {
+        final Item item = new Item(FILE, entry);
+
+        InputStream content = input;
+        if (content instanceof DigestedInputStream) {
+            item.md5 = ((DigestedInputStream) content).getMd5();
+            content = ((DigestedInputStream) content).getInputStream();
+        }
+
+        if (content instanceof FileSourceInputStream) {
+            item.source = ((FileSourceInputStream) content).getFile().getAbsoluteFile();
+        } else {
+            if (spoolOutput == null) {
+                spool = File.createTempFile("jdeb", ".spool");
+                spoolOutput = new BufferedOutputStream(new FileOutputStream(spool));
+            }
+            item.offset = spoolSize;
+            item.length = IOUtils.copyLarge(content, spoolOutput);
+            spoolSize += item.length;
+        }
+        return item;
+    }
+
+    /**
+     * Completes the spool, no file can be added afterwards.
+     */
+    void finish() throws IOException {
+        if (spoolOutput != null) {
+            spoolOutput.close();
+            spoolOutput = null;
+        }
+    }
+
+    /**
+     * Passes an item on to the consumer, with the given entry. Several
+     * items may be passed on concurrently, each file is read with its own
+     * stream.
+     */
+    void emit( Item item, TarArchiveEntry entry, DataConsumer consumer ) throws IOException {
+        switch (item.kind) {
+            case DIR:
+                consumer.onEachDir(entry);
+                break;
+            case LINK:
+                consumer.onEachLink(entry);
+                break;
+            default:
+                InputStream input;
+                if (item.source != null) {
+                    input = new FileSourceInputStream(item.source);
+                } else {
+                    final FileInputStream spoolInput = new FileInputStream(spool);
+                    IOUtils.skipFully(spoolInput, item.offset);
+                    input = BoundedInputStream.builder()
+                        .setInputStream(spoolInput)
+                        .setMaxCount(item.length)
+                        .get();
+                }
+                if (item.md5 != null) {
+                    input = new DigestedInputStream(input, item.md5);
+                }
+                try {
+                    consumer.onEachFile(input, entry);
+                } finally {
+                    input.close();
+                }
+        }
+    }
+
+    /**
+     * Returns a copy of the fields of an entry that are kept.
+     */
+    static TarArchiveEntry copy( TarArchiveEntry entry ) {
+        final TarArchiveEntry copy = new TarArchiveEntry(entry.getName(), entry.getLinkFlag(), true);
+        copy.setLinkName(entry.getLinkName());
+        copy.setMode(entry.getMode());
+        copy.setUserId(entry.getLongUserId());
+        copy.setGroupId(entry.getLongGroupId());
+        copy.setUserName(entry.getUserName());
+        copy.setGroupName(entry.getGroupName());
+        copy.setSize(entry.getSize());
+        copy.setModTime(entry.getModTime());
+        return copy;
+    }
+
+    /**
+     * Deletes the spooled content.
+     */
+    public void close() throws IOException {
+        IOUtils.closeQuietly(spoolOutput);
+        if (spool != null) {
+            spool.delete();
+        }
+    }
+}
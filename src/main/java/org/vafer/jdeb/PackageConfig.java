@@ -0,0 +1,597 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.vafer.jdeb.utils.VariableResolver;
+
+/**
+ * The immutable description of a package to build. Unlike the {@link DebMaker}
+ * it can be shared between threads and handed to a {@link PackageEngine} any
+ * number of times.
+ *
+ * <pre>
+ * PackageConfig config = PackageConfig.builder()
+ *     .deb(new File("target/app.deb"))
+ *     .control(new File("src/deb/control"))
+ *     .data(new DataProducerDirectory(...))
+ *     .build();
+ * </pre>
+ */
+public final class PackageConfig {
+
+    private final File deb;
+    private final File control;
+    private final String packageName;
+    private final String section;
+    private final String depends;
+    private final String extraDepends;
+    private final String description;
+    private final String homepage;
+    private final File keyring;
+    private final String key;
+    private final String passphrase;
+    private final File changesIn;
+    private final File changesOut;
+    private final File changesSave;
+    private final String compression;
+    private final boolean signPackage;
+    private final boolean signChanges;
+    private final String signMethod;
+    private final String signRole;
+    private final String signDigest;
+    private final String digest;
+    private final String tarLongFileMode;
+    private final String tarBigNumberMode;
+    private final String entryOrder;
+    private final boolean detectExecutables;
+    private final boolean rsyncable;
+    private final boolean zsync;
+    private final boolean seekable;
+    private final boolean dataIndex;
+    private final Long outputTimestampMs;
+    private final VariableResolver resolver;
+    private final String openReplaceToken;
+    private final String closeReplaceToken;
+    private final List<DataProducer> dataProducers;
+    private final List<DataProducer> conffileProducers;
+    private final List<DataSink> sinks;
+
+    private PackageConfig(Builder builder) {
+        deb = builder.deb;
+        control = builder.control;
+        packageName = builder.packageName;
+        section = builder.section;
+        depends = builder.depends;
+        extraDepends = builder.extraDepends;
+        description = builder.description;
+        homepage = builder.homepage;
+        keyring = builder.keyring;
+        key = builder.key;
+        passphrase = builder.passphrase;
+        changesIn = builder.changesIn;
+        changesOut = builder.changesOut;
+        changesSave = builder.changesSave;
+        compression = builder.compression;
+        signPackage = builder.signPackage;
+        signChanges = builder.signChanges;
+        signMethod = builder.signMethod;
+        signRole = builder.signRole;
+        signDigest = builder.signDigest;
+        digest = builder.digest;
+        tarLongFileMode = builder.tarLongFileMode;
+        tarBigNumberMode = builder.tarBigNumberMode;
+        entryOrder = builder.entryOrder;
+        detectExecutables = builder.detectExecutables;
+        rsyncable = builder.rsyncable;
+        zsync = builder.zsync;
+        seekable = builder.seekable;
+        dataIndex = builder.dataIndex;
+        outputTimestampMs = builder.outputTimestampMs;
+        resolver = builder.resolver;
+        openReplaceToken = builder.openReplaceToken;
+        closeReplaceToken = builder.closeReplaceToken;
+        dataProducers = Collections.unmodifiableList(new ArrayList<>(builder.dataProducers));
+        conffileProducers = Collections.unmodifiableList(new ArrayList<>(builder.conffileProducers));
+        sinks = Collections.unmodifiableList(new ArrayList<>(builder.sinks));
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns a builder initialized with this configuration, to derive a
+     * slightly different package from it.
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    public File getDeb() {
+        return deb;
+    }
+
+    public File getControl() {
+        return control;
+    }
+
+    public String getPackage() {
+        return packageName;
+    }
+
+    public String getSection() {
+        return section;
+    }
+
+    public String getDepends() {
+        return depends;
+    }
+
+    public String getExtraDepends() {
+        return extraDepends;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getHomepage() {
+        return homepage;
+    }
+
+    public File getKeyring() {
+        return keyring;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getPassphrase() {
+        return passphrase;
+    }
+
+    public File getChangesIn() {
+        return changesIn;
+    }
+
+    public File getChangesOut() {
+        return changesOut;
+    }
+
+    public File getChangesSave() {
+        return changesSave;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public boolean isSignPackage() {
+        return signPackage;
+    }
+
+    public boolean isSignChanges() {
+        return signChanges;
+    }
+
+    public String getSignMethod() {
+        return signMethod;
+    }
+
+    public String getSignRole() {
+        return signRole;
+    }
+
+    public String getSignDigest() {
+        return signDigest;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public String getTarLongFileMode() {
+        return tarLongFileMode;
+    }
+
+    public String getTarBigNumberMode() {
+        return tarBigNumberMode;
+    }
+
+    public String getEntryOrder() {
+        return entryOrder;
+    }
+
+    public boolean isDetectExecutables() {
+        return detectExecutables;
+    }
+
+    public boolean isRsyncable() {
+        return rsyncable;
+    }
+
+    public boolean isZsync() {
+        return zsync;
+    }
+
+    public boolean isSeekable() {
+        return seekable;
+    }
+
+    public boolean isDataIndex() {
+        return dataIndex;
+    }
+
+    public Long getOutputTimestampMs() {
+        return outputTimestampMs;
+    }
+
+    public VariableResolver getResolver() {
+        return resolver;
+    }
+
+    public String getOpenReplaceToken() {
+        return openReplaceToken;
+    }
+
+    public String getCloseReplaceToken() {
+        return closeReplaceToken;
+    }
+
+    public List<DataProducer> getDataProducers() {
+        return dataProducers;
+    }
+
+    public List<DataProducer> getConffileProducers() {
+        return conffileProducers;
+    }
+
+    public List<DataSink> getSinks() {
+        return sinks;
+    }
+
+    /**
+     * Tells if the other package gets the same data archive, from the same
+     * producers with the same options. Only the control files may differ then.
+     */
+    boolean hasSameData(PackageConfig other) {
+        return Objects.equals(compression, other.compression)
+            && Objects.equals(tarLongFileMode, other.tarLongFileMode)
+            && Objects.equals(tarBigNumberMode, other.tarBigNumberMode)
+            && Objects.equals(entryOrder, other.entryOrder)
+            && detectExecutables == other.detectExecutables
+            && rsyncable == other.rsyncable
+            && seekable == other.seekable
+            && dataIndex == other.dataIndex
+            && Objects.equals(outputTimestampMs, other.outputTimestampMs)
+            && dataProducers.equals(other.dataProducers)
+            && sinks.equals(other.sinks);
+    }
+
+    /**
+     * Collects the settings of a {@link PackageConfig}. The defaults are the same as the {@link DebMaker} ones.
+     */
+    public static final class Builder {
+
+        private File deb;
+        private File control;
+        private String packageName;
+        private String section = "java";
+        private String depends;
+        private String extraDepends;
+        private String description;
+        private String homepage;
+        private File keyring;
+        private String key;
+        private String passphrase;
+        private File changesIn;
+        private File changesOut;
+        private File changesSave;
+        private String compression = "gzip";
+        private boolean signPackage;
+        private boolean signChanges;
+        private String signMethod;
+        private String signRole;
+        private String signDigest = "SHA256";
+        private String digest = "SHA256";
+        private String tarLongFileMode;
+        private String tarBigNumberMode;
+        private String entryOrder;
+        private boolean detectExecutables;
+        private boolean rsyncable;
+        private boolean zsync;
+        private boolean seekable;
+        private boolean dataIndex;
+        private Long outputTimestampMs;
+        private VariableResolver resolver;
+        private String openReplaceToken;
+        private String closeReplaceToken;
+        private final List<DataProducer> dataProducers = new ArrayList<>();
+        private final List<DataProducer> conffileProducers = new ArrayList<>();
+        private final List<DataSink> sinks = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        private Builder(PackageConfig config) {
+            deb = config.deb;
+            control = config.control;
+            packageName = config.packageName;
+            section = config.section;
+            depends = config.depends;
+            extraDepends = config.extraDepends;
+            description = config.description;
+            homepage = config.homepage;
+            keyring = config.keyring;
+            key = config.key;
+            passphrase = config.passphrase;
+            changesIn = config.changesIn;
+            changesOut = config.changesOut;
+            changesSave = config.changesSave;
+            compression = config.compression;
+            signPackage = config.signPackage;
+            signChanges = config.signChanges;
+            signMethod = config.signMethod;
+            signRole = config.signRole;
+            signDigest = config.signDigest;
+            digest = config.digest;
+            tarLongFileMode = config.tarLongFileMode;
+            tarBigNumberMode = config.tarBigNumberMode;
+            entryOrder = config.entryOrder;
+            detectExecutables = config.detectExecutables;
+            rsyncable = config.rsyncable;
+            zsync = config.zsync;
+            seekable = config.seekable;
+            dataIndex = config.dataIndex;
+            outputTimestampMs = config.outputTimestampMs;
+            resolver = config.resolver;
+            openReplaceToken = config.openReplaceToken;
+            closeReplaceToken = config.closeReplaceToken;
+            dataProducers.addAll(config.dataProducers);
+            conffileProducers.addAll(config.conffileProducers);
+            sinks.addAll(config.sinks);
+        }
+
+        public Builder deb(File deb) {
+            this.deb = deb;
+            return this;
+        }
+
+        public Builder control(File control) {
+            this.control = control;
+            return this;
+        }
+
+        public Builder packageName(String packageName) {
+            this.packageName = packageName;
+            return this;
+        }
+
+        public Builder section(String section) {
+            this.section = section;
+            return this;
+        }
+
+        public Builder depends(String depends) {
+            this.depends = depends;
+            return this;
+        }
+
+        /**
+         * Adds dependencies to the ones of the control file, unlike {@link #depends(String)}
+         * which only applies to a control file without any.
+         */
+        public Builder extraDepends(String extraDepends) {
+            this.extraDepends = extraDepends;
+            return this;
+        }
+
+        public Builder description(String description) {
+            this.description = description;
+            return this;
+        }
+
+        public Builder homepage(String homepage) {
+            this.homepage = homepage;
+            return this;
+        }
+
+        public Builder keyring(File keyring) {
+            this.keyring = keyring;
+            return this;
+        }
+
+        public Builder key(String key) {
+            this.key = key;
+            return this;
+        }
+
+        public Builder passphrase(String passphrase) {
+            this.passphrase = passphrase;
+            return this;
+        }
+
+        public Builder changesIn(File changesIn) {
+            this.changesIn = changesIn;
+            return this;
+        }
+
+        public Builder changesOut(File changesOut) {
+            this.changesOut = changesOut;
+            return this;
+        }
+
+        public Builder changesSave(File changesSave) {
+            this.changesSave = changesSave;
+            return this;
+        }
+
+        public Builder compression(String compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        public Builder signPackage(boolean signPackage) {
+            this.signPackage = signPackage;
+            return this;
+        }
+
+        public Builder signChanges(boolean signChanges) {
+            this.signChanges = signChanges;
+            return this;
+        }
+
+        public Builder signMethod(String signMethod) {
+            this.signMethod = signMethod;
+            return this;
+        }
+
+        public Builder signRole(String signRole) {
+            this.signRole = signRole;
+            return this;
+        }
+
+        public Builder signDigest(String signDigest) {
+            this.signDigest = signDigest;
+            return this;
+        }
+
+        public Builder digest(String digest) {
+            this.digest = digest;
+            return this;
+        }
+
+        public Builder tarLongFileMode(String tarLongFileMode) {
+            this.tarLongFileMode = tarLongFileMode;
+            return this;
+        }
+
+        public Builder tarBigNumberMode(String tarBigNumberMode) {
+            this.tarBigNumberMode = tarBigNumberMode;
+            return this;
+        }
+
+        /**
+         * The order of the entries in the data archive: none, path or type.
+         */
+        public Builder entryOrder(String entryOrder) {
+            this.entryOrder = entryOrder;
+            return this;
+        }
+
+        /**
+         * Makes the scripts and the ELF binaries of the data executable.
+         */
+        public Builder detectExecutables(boolean detectExecutables) {
+            this.detectExecutables = detectExecutables;
+            return this;
+        }
+
+        /**
+         * Compresses the data in a mode friendly to rsync and zsync.
+         */
+        public Builder rsyncable(boolean rsyncable) {
+            this.rsyncable = rsyncable;
+            return this;
+        }
+
+        /**
+         * Writes the zsync control file next to the package.
+         */
+        public Builder zsync(boolean zsync) {
+            this.zsync = zsync;
+            return this;
+        }
+
+        /**
+         * Compresses the data in independent blocks a reader can seek to, xz only.
+         */
+        public Builder seekable(boolean seekable) {
+            this.seekable = seekable;
+            return this;
+        }
+
+        /**
+         * Writes the index of the files of the data archive next to the package.
+         */
+        public Builder dataIndex(boolean dataIndex) {
+            this.dataIndex = dataIndex;
+            return this;
+        }
+
+        public Builder outputTimestampMs(Long outputTimestampMs) {
+            this.outputTimestampMs = outputTimestampMs;
+            return this;
+        }
+
+        public Builder resolver(VariableResolver resolver) {
+            this.resolver = resolver;
+            return this;
+        }
+
+        public Builder replaceTokens(String open, String close) {
+            this.openReplaceToken = open;
+            this.closeReplaceToken = close;
+            return this;
+        }
+
+        public Builder data(DataProducer producer) {
+            dataProducers.add(producer);
+            return this;
+        }
+
+        public Builder data(Collection<? extends DataProducer> producers) {
+            dataProducers.addAll(producers);
+            return this;
+        }
+
+        public Builder conffiles(DataProducer producer) {
+            conffileProducers.add(producer);
+            return this;
+        }
+
+        public Builder conffiles(Collection<? extends DataProducer> producers) {
+            conffileProducers.addAll(producers);
+            return this;
+        }
+
+        /**
+         * Adds a secondary output of the data archive.
+         */
+        public Builder sink(DataSink sink) {
+            sinks.add(sink);
+            return this;
+        }
+
+        public Builder sinks(Collection<? extends DataSink> sinks) {
+            this.sinks.addAll(sinks);
+            return this;
+        }
+
+        public PackageConfig build() {
+            return new PackageConfig(this);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.vafer.jdeb.signing.SignerCache;
+import org.vafer.jdeb.utils.DaemonThreadFactory;
+
+/**
+ * Builds packages concurrently. The engine is thread-safe: every build works
+ * on its own {@link DebMaker} created from an immutable {@link PackageConfig},
+ * while the threads and the signing keys are shared between builds. The
+ * digests are computed on the pool shared by all the builds of the JVM.
+ *
+ * <pre>
+ * try (PackageEngine engine = new PackageEngine(console)) {
+ *     CompletableFuture&lt;PackageResult&gt; app = engine.build(appConfig);
+ *     CompletableFuture&lt;PackageResult&gt; lib = engine.build(libConfig);
+ *     CompletableFuture.allOf(app, lib).join();
+ * }
+ * </pre>
+ */
+public final class PackageEngine implements AutoCloseable {
+
+    private final Console console;
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final SignerCache signers = new SignerCache();
+
+    /**
+     * Creates an engine running the builds on its own pool, with one thread per processor.
+     */
+    public PackageEngine(Console console) {
+        this(console, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory("jdeb-build")), true);
+    }
+
+    /**
+     * Creates an engine running the builds with the specified executor.
+     * The executor is left running when the engine is closed.
+     */
+    public PackageEngine(Console console, Executor executor) {
+        this(console, executor, false);
+    }
+
+    private PackageEngine(Console console, Executor executor, boolean owned) {
+        this.console = console;
+        this.executor = executor;
+        this.ownedExecutor = owned ? (ExecutorService) executor : null;
+    }
+
+    /**
+     * Builds the package asynchronously, logging to the console of the engine.
+     */
+    public CompletableFuture<PackageResult> build(PackageConfig config) {
+        return build(config, console);
+    }
+
+    /**
+     * Builds the package asynchronously. The future fails with a
+     * {@link CompletionException} wrapping the {@link PackagingException}
+     * if the package can't be created.
+     *
+     * @param config  the package to build
+     * @param console the console receiving the messages of this build
+     */
+    public CompletableFuture<PackageResult> build(final PackageConfig config, final Console console) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return make(config, console);
+            } catch (PackagingException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Builds the package in the calling thread, still sharing the caches of the engine.
+     */
+    public PackageResult make(PackageConfig config, Console console) throws PackagingException {
+        return make(config, null, console);
+    }
+
+    /**
+     * Builds the package asynchronously around a data archive shared with other packages.
+     */
+    CompletableFuture<PackageResult> build(final PackageConfig config, final DataArchive data, final Console console) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return make(config, data, console);
+            } catch (PackagingException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private PackageResult make(PackageConfig config, DataArchive data, Console console) throws PackagingException {
+        final DebMaker debMaker = new DebMaker(console, config);
+        debMaker.setSignerCache(signers);
+        debMaker.validate();
+        return debMaker.make(data);
+    }
+
+    /**
+     * Waits for all the builds, even after one failed, and returns their
+     * results in order. The first failure is thrown with the others
+     * suppressed.
+     */
+    static List<PackageResult> joinAll(List<CompletableFuture<PackageResult>> futures) throws PackagingException {
+        final List<PackageResult> results = new ArrayList<>();
+        PackagingException failure = null;
+        for (CompletableFuture<PackageResult> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                final PackagingException cause = e.getCause() instanceof PackagingException
+                    ? (PackagingException) e.getCause()
+                    : new PackagingException("Failed to create the package", e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Stops the pool of the engine once the pending builds are done.
+     */
+    public void close() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+import org.vafer.jdeb.utils.Utils;
+
+/**
+ * Builds several packages out of the same data producers in one pass. The
+ * producers are scanned once, then every package picks the entries matching
+ * its include and exclude patterns, and the packages are compressed, signed
+ * and written concurrently by a {@link PackageEngine}.
+ *
+ * <pre>
+ * PackageGroup group = new PackageGroup(console);
+ * group.add(appConfig, new String[] { "usr/**" }, null);
+ * group.add(configConfig, new String[] { "etc/**" }, null);
+ * List&lt;PackageResult&gt; results = group.build(producers, conffileProducers);
+ * </pre>
+ */
+public final class PackageGroup {
+
+    private static final class Member {
+        final PackageConfig config;
+        final Predicate<String> selector;
+
+        Member(PackageConfig config, Predicate<String> selector) {
+            this.config = config;
+            this.selector = selector;
+        }
+    }
+
+    private final Console console;
+    private final List<Member> members = new ArrayList<>();
+
+    public PackageGroup(Console console) {
+        this.console = console;
+    }
+
+    /**
+     * Adds a package made of the entries of the shared producers matching
+     * the patterns, on top of the data producers of its configuration. The
+     * patterns are matched against the paths of the entries without their
+     * leading "./" or "/", like <code>usr/share/app/**</code>.
+     *
+     * @param config   the package, its data producers are added to the selected entries
+     * @param includes the patterns of the entries included, all of them by default
+     * @param excludes the patterns of the entries excluded, none by default
+     */
+    public PackageGroup add(PackageConfig config, String[] includes, String[] excludes) {
+        final String[] included = includes != null && includes.length > 0 ? includes.clone() : new String[] { "**" };
+        final String[] excluded = excludes != null ? excludes.clone() : new String[0];
+        members.add(new Member(config, path -> matches(included, path) && !matches(excluded, path)));
+        return this;
+    }
+
+    private static boolean matches(String[] patterns, String path) {
+        for (String pattern : patterns) {
+            if (Utils.matchPath(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the packages with an engine of its own.
+     */
+    public List<PackageResult> build(Collection<? extends DataProducer> dataProducers, Collection<? extends DataProducer> conffileProducers) throws PackagingException {
+        try (PackageEngine engine = new PackageEngine(console)) {
+            return build(engine, dataProducers, conffileProducers);
+        }
+    }
+
+    /**
+     * Scans the shared producers and builds the packages with the engine.
+     *
+     * @param dataProducers     the producers of the data shared by the packages
+     * @param conffileProducers the producers of the conffiles shared by the packages,
+     *                          each package only declares the ones it selects
+     * @return the results, in the order the packages were added
+     */
+    public List<PackageResult> build(PackageEngine engine, Collection<? extends DataProducer> dataProducers, Collection<? extends DataProducer> conffileProducers) throws PackagingException {
+        // fail before the scan if a package is misconfigured
+        for (Member member : members) {
+            new DebMaker(console, member.config).validate();
+            if (!member.config.getSinks().isEmpty()) {
+                throw new PackagingException("The packages of a group can't have sinks, they would all write them: " + member.config.getDeb());
+            }
+        }
+
+        try (DataRecording recording = new DataRecording()) {
+            try {
+                for (DataProducer producer : dataProducers) {
+                    recording.record(producer, true, conffileProducers != null && conffileProducers.contains(producer));
+                }
+                if (conffileProducers != null) {
+                    for (DataProducer producer : conffileProducers) {
+                        if (!dataProducers.contains(producer)) {
+                            recording.record(producer, false, true);
+                        }
+                    }
+                }
+                recording.finish();
+            } catch (IOException e) {
+                throw new PackagingException("Could not read the data of the packages", e);
+            }
+            console.info("Scanned " + recording.size() + " entries for " + members.size() + " packages");
+
+            final List<CompletableFuture<PackageResult>> futures = new ArrayList<>();
+            for (Member member : members) {
+                final PackageConfig config = member.config.toBuilder()
+                    .data(recording.data(member.selector))
+                    .conffiles(recording.conffiles(member.selector))
+                    .build();
+                futures.add(engine.build(config, console));
+            }
+
+            // all the builds have to be done before the recording goes away
+            return PackageEngine.joinAll(futures);
+        } catch (IOException e) {
+            throw new PackagingException("Could not delete the temporary data of the packages", e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+
+import org.vafer.jdeb.debian.BinaryPackageControlFile;
+
+/**
+ * The outcome of a package build.
+ */
+public final class PackageResult {
+
+    private final File deb;
+    private final File changes;
+    private final BinaryPackageControlFile controlFile;
+
+    PackageResult(File deb, File changes, BinaryPackageControlFile controlFile) {
+        this.deb = deb;
+        this.changes = changes;
+        this.controlFile = controlFile;
+    }
+
+    /**
+     * Returns the Debian package created.
+     */
+    public File getDeb() {
+        return deb;
+    }
+
+    /**
+     * Returns the changes file created along with the package.
+     */
+    public File getChanges() {
+        return changes;
+    }
+
+    /**
+     * Returns the control file of the package, with the computed fields filled in.
+     */
+    public BinaryPackageControlFile getControlFile() {
+        return controlFile;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.FileUtils;
+import org.vafer.jdeb.debian.BinaryPackageControlFile;
+import org.vafer.jdeb.reader.DebReader;
+import org.vafer.jdeb.utils.DigestedInputStream;
+import org.vafer.jdeb.utils.MultiDigest;
+import org.vafer.jdeb.utils.Utils;
+
+/**
+ * Splits an application into two packages: the application itself, and a
+ * <code>&lt;name&gt;-libs</code> package with its libraries, which usually
+ * change far less often. The version of the libs package ends with a hash
+ * of its content, and the package is only built again when the hash
+ * changes. The application gets an exact dependency on it.
+ *
+ * <pre>
+ * PackageSplit split = new PackageSplit(console);
+ * split.setLibsDirectory(new File("/srv/apt/pool"));
+ * List&lt;PackageResult&gt; results = split.build(appConfig, libsProducers);
+ * </pre>
+ */
+public final class PackageSplit {
+
+    /** The number of hex digits of the hash kept in the version */
+    private static final int HASH_LENGTH = 16;
+
+    private final Console console;
+    private String libsName;
+    private File libsDirectory;
+
+    private String libsVersion;
+    private File libsDeb;
+    private boolean libsBuilt;
+
+    public PackageSplit(Console console) {
+        this.console = console;
+    }
+
+    /**
+     * Sets the name of the libs package, the name of the application followed by "-libs" by default.
+     */
+    public void setLibsName(String libsName) {
+        this.libsName = libsName;
+    }
+
+    /**
+     * Sets the directory the libs package is written to and looked up in,
+     * the directory of the application package by default. The package is
+     * only reused across builds if the directory is kept.
+     */
+    public void setLibsDirectory(File libsDirectory) {
+        this.libsDirectory = libsDirectory;
+    }
+
+    /**
+     * The name of the libs package, known once built.
+     */
+    public String getLibsName() {
+        return libsName;
+    }
+
+    /**
+     * The version of the libs package the application depends on, known once built.
+     */
+    public String getLibsVersion() {
+        return libsVersion;
+    }
+
+    /**
+     * The libs package, built or reused.
+     */
+    public File getLibsDeb() {
+        return libsDeb;
+    }
+
+    /**
+     * Tells if the libs package was built, or an existing one was reused.
+     */
+    public boolean isLibsBuilt() {
+        return libsBuilt;
+    }
+
+    /**
+     * Builds the application, and the libs package if there is none for the current libraries yet.
+     *
+     * @param app           the application package, without the libraries
+     * @param libsProducers the libraries
+     * @return the packages built, the application first
+     */
+    public List<PackageResult> build(PackageConfig app, Collection<? extends DataProducer> libsProducers) throws PackagingException {
+        final DebMaker appMaker = new DebMaker(console, app);
+        appMaker.validate();
+
+        final BinaryPackageControlFile appControl;
+        final String hash;
+        try {
+            appControl = appMaker.readControlFile();
+            hash = hash(libsProducers);
+        } catch (Exception e) {
+            throw new PackagingException("Could not prepare the libs package", e);
+        }
+
+        final String appName = appControl.get("Package");
+        final String appVersion = appControl.get("Version");
+        if (libsName == null) {
+            libsName = appName + "-libs";
+        }
+        final File directory = libsDirectory != null ? libsDirectory : app.getDeb().getAbsoluteFile().getParentFile();
+
+        libsDeb = find(directory, hash);
+        if (libsDeb != null) {
+            libsVersion = readVersion(libsDeb);
+            libsBuilt = false;
+            console.info("The libraries didn't change, reusing " + libsDeb);
+        } else {
+            libsVersion = appVersion + "+" + hash;
+            libsDeb = new File(directory, libsName + "_" + stripEpoch(libsVersion) + "_all.deb");
+            libsBuilt = true;
+        }
+
+        final List<CompletableFuture<PackageResult>> futures = new ArrayList<>();
+        File control = null;
+        try (PackageEngine engine = new PackageEngine(console)) {
+            futures.add(engine.build(app.toBuilder().extraDepends(libsName + " (= " + libsVersion + ")").build(), console));
+
+            if (libsBuilt) {
+                control = Files.createTempDirectory("jdeb-libs").toFile();
+                Files.write(new File(control, "control").toPath(), libsControl(appControl).toString().getBytes(StandardCharsets.UTF_8));
+                futures.add(engine.build(libsConfig(app, control, libsProducers), console));
+            }
+
+            return PackageEngine.joinAll(futures);
+
+        } catch (IOException e) {
+            throw new PackagingException("Could not write the control file of the libs package", e);
+        } finally {
+            if (control != null) {
+                FileUtils.deleteQuietly(control);
+            }
+        }
+    }
+
+    private BinaryPackageControlFile libsControl(BinaryPackageControlFile appControl) {
+        final BinaryPackageControlFile control = new BinaryPackageControlFile();
+        control.set("Package", libsName);
+        control.set("Version", libsVersion);
+        control.set("Section", appControl.get("Section") != null ? appControl.get("Section") : "java");
+        control.set("Priority", appControl.get("Priority") != null ? appControl.get("Priority") : "optional");
+        control.set("Architecture", "all");
+        control.set("Maintainer", appControl.get("Maintainer"));
+        if (appControl.get("Homepage") != null) {
+            control.set("Homepage", appControl.get("Homepage"));
+        }
+        control.set("Description", "libraries of " + appControl.get("Package") + "\n"
+            + "The third-party libraries of " + appControl.get("Package") + ", shared by its\n"
+            + "releases until they change.");
+        return control;
+    }
+
+    /**
+     * The libs package gets the packaging options of the application, not its
+     * control files, changes or conffiles.
+     */
+    private PackageConfig libsConfig(PackageConfig app, File control, Collection<? extends DataProducer> libsProducers) {
+        return PackageConfig.builder()
+            .deb(libsDeb)
+            .control(control)
+            .compression(app.getCompression())
+            .digest(app.getDigest())
+            .keyring(app.getKeyring())
+            .key(app.getKey())
+            .passphrase(app.getPassphrase())
+            .signPackage(app.isSignPackage())
+            .signChanges(app.isSignChanges())
+            .signMethod(app.getSignMethod())
+            .signRole(app.getSignRole())
+            .signDigest(app.getSignDigest())
+            .tarLongFileMode(app.getTarLongFileMode())
+            .tarBigNumberMode(app.getTarBigNumberMode())
+            .entryOrder(app.getEntryOrder())
+            .detectExecutables(app.isDetectExecutables())
+            .rsyncable(app.isRsyncable())
+            .zsync(app.isZsync())
+            .seekable(app.isSeekable())
+            .dataIndex(app.isDataIndex())
+            .outputTimestampMs(app.getOutputTimestampMs())
+            .data(libsProducers)
+            .build();
+    }
+
+    /**
+     * Hashes the names, the attributes and the content of the entries, in a
+     * stable order. The content is only read if the producer doesn't know its
+     * digest already.
+     */
+    static String hash(Collection<? extends DataProducer> producers) throws IOException, NoSuchAlgorithmException {
+        final List<String> lines = new ArrayList<>();
+        final MultiDigest md5 = new MultiDigest("MD5");
+
+        final DataConsumer consumer = new DataConsumer() {
+            public void onEachDir(TarArchiveEntry entry) {
+                lines.add("d " + Utils.normalizePath(entry.getName()) + " " + attributes(entry));
+            }
+
+            public void onEachFile(InputStream input, TarArchiveEntry entry) throws IOException {
+                final String digest;
+                if (input instanceof DigestedInputStream) {
+                    digest = ((DigestedInputStream) input).getMd5().toLowerCase(Locale.ROOT);
+                } else {
+                    md5.reset();
+                    md5.update(input);
+                    digest = md5.getHexDigest();
+                }
+                lines.add("f " + Utils.normalizePath(entry.getName()) + " " + attributes(entry) + " " + entry.getSize() + " " + digest);
+            }
+
+            public void onEachLink(TarArchiveEntry entry) {
+                lines.add("l " + Utils.normalizePath(entry.getName()) + " " + attributes(entry) + " " + entry.getLinkName());
+            }
+        };
+
+        for (DataProducer producer : producers) {
+            producer.produce(consumer);
+        }
+        Collections.sort(lines);
+
+        final MultiDigest sha = new MultiDigest("SHA-256");
+        for (String line : lines) {
+            final byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+            sha.update(bytes, 0, bytes.length);
+        }
+        return sha.getHexDigest().substring(0, HASH_LENGTH);
+    }
+
+    private static String attributes(TarArchiveEntry entry) {
+        return Integer.toOctalString(entry.getMode() & 07777) + " " + entry.getUserName() + ":" + entry.getGroupName();
+    }
+
+    private File find(File directory, String hash) {
+        final File[] files = directory.listFiles((dir, name) -> name.startsWith(libsName + "_") && name.endsWith("+" + hash + "_all.deb"));
+        if (files == null || files.length == 0) {
+            return null;
+        }
+        // several builds of the same libraries, any of them does
+        Arrays.sort(files);
+        return files[0];
+    }
+
+    private static String readVersion(File deb) throws PackagingException {
+        final String version;
+        try (DebReader reader = DebReader.open(deb)) {
+            version = reader.getControlFields().get("Version");
+        } catch (IOException e) {
+            throw new PackagingException("Could not read the version of " + deb, e);
+        }
+        if (version == null) {
+            throw new PackagingException("The package " + deb + " has no version");
+        }
+        return version;
+    }
+
+    private static String stripEpoch(String version) {
+        final int colon = version.indexOf(':');
+        return colon >= 0 ? version.substring(colon + 1) : version;
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.ar.ArArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.tukaani.xz.BasicArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+import org.vafer.jdeb.debian.BinaryPackageControlFile;
+import org.vafer.jdeb.utils.Gzip;
+import org.vafer.jdeb.utils.InformationInputStream;
+import org.vafer.jdeb.utils.MultiDigest;
+import org.vafer.jdeb.utils.Template;
+import org.vafer.jdeb.utils.Utils;
+import org.vafer.jdeb.utils.VariableResolver;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * A package compiled once and generated in memory any number of times with
+ * different values, for small packages built on request.
+ *
+ * <p>Compiling runs the data producers and reads the control directory
+ * once. The control files and the data files selected as templates are
+ * tokenized, everything else is kept as archive segments, already
+ * compressed when the data archive is gzipped (concatenated gzip members
+ * are a valid gzip stream). Generating a package then only renders the
+ * templates, digests and compresses them, and assembles the segments.
+ * Nothing touches the disk and the compressors are pooled.</p>
+ *
+ * <pre>
+ * PackageTemplate template = PackageTemplate.compile(console, config, "etc/app/**");
+ * ByteBuffer deb = template.render(new MapVariableResolver(values));
+ * </pre>
+ *
+ * <p>A compiled template is immutable and can be rendered concurrently.
+ * The packages can't be signed and no changes file is created.</p>
+ */
+public final class PackageTemplate {
+
+    /** Two empty records end a tar archive */
+    private static final byte[] TAR_EOF = new byte[1024];
+
+    private static final byte[] DEBIAN_BINARY = "2.0\n".getBytes(UTF_8);
+
+    private final Console console;
+    private final DebMaker debMaker;
+    private final Compression compression;
+    private final Long outputTimestampMs;
+    private final String openToken;
+    private final String closeToken;
+    private final int longFileMode;
+    private final int bigNumberMode;
+
+    private final Template control;
+    private final List<ControlEntry> controlEntries = new ArrayList<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final String[] checksums;
+    private final long staticSize;
+    private final int estimatedSize;
+
+    private PackageTemplate(Console console, PackageConfig config, String[] templates) throws Exception {
+        this.console = console;
+        this.debMaker = new DebMaker(console, config);
+        this.compression = Compression.toEnum(config.getCompression());
+        this.outputTimestampMs = config.getOutputTimestampMs();
+        this.openToken = config.getOpenReplaceToken() != null ? config.getOpenReplaceToken() : "[[";
+        this.closeToken = config.getCloseReplaceToken() != null ? config.getCloseReplaceToken() : "]]";
+
+        if (config.getControl() == null || !config.getControl().isDirectory()) {
+            throw new PackagingException("The 'control' attribute doesn't point to a directory. " + config.getControl());
+        }
+        if (compression == null) {
+            throw new PackagingException("The compression method '" + config.getCompression() + "' is not supported (expected 'none', 'gzip', 'bzip2' or 'xz')");
+        }
+        if (config.isSignPackage() || config.isSignChanges()) {
+            throw new PackagingException("Packages generated from a template can't be signed");
+        }
+
+        final TarOptions options = new TarOptions()
+            .compression(Compression.NONE)
+            .longFileMode(config.getTarLongFileMode())
+            .bigNumberMode(config.getTarBigNumberMode());
+        this.longFileMode = options.longFileMode();
+        this.bigNumberMode = options.bigNumberMode();
+
+        // build the whole data archive once, uncompressed, and cut it at the templates
+        console.debug("Compiling data");
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        final StringBuilder md5s = new StringBuilder();
+        final BigInteger size = new DataBuilder(console, outputTimestampMs).buildData(config.getDataProducers(), tar, md5s, options);
+
+        this.checksums = md5s.toString().split("\n", -1);
+        final Map<String, Integer> checksumIndex = new HashMap<>();
+        for (int i = 0; i < checksums.length; i++) {
+            final int separator = checksums[i].indexOf("  ");
+            if (separator > 0) {
+                checksumIndex.put(checksums[i].substring(separator + 2), i);
+            }
+        }
+
+        this.staticSize = compileData(tar.toByteArray(), size.longValue(), templates, checksumIndex);
+
+        console.debug("Compiling control");
+        this.control = compileControl(config);
+
+        int estimate = 4096;
+        for (Segment segment : segments) {
+            estimate += segment.getContent(compression).length;
+        }
+        this.estimatedSize = estimate;
+    }
+
+    /**
+     * Compiles the package described by the configuration.
+     *
+     * @param console   the console receiving the messages of the compilation and of the generations
+     * @param config    the package, the data producers are run once
+     * @param templates the patterns selecting the data files whose variables are replaced on every
+     *                  generation, relative to the root of the package (e.g. <code>etc/app/**</code>)
+     */
+    public static PackageTemplate compile(Console console, PackageConfig config, String... templates) throws PackagingException {
+        try {
+            return new PackageTemplate(console, config, templates);
+        } catch (PackagingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PackagingException("Could not compile the package template", e);
+        }
+    }
+
+    private long compileData(byte[] tar, long size, String[] templates, Map<String, Integer> checksumIndex) throws IOException, PackagingException {
+        int segmentStart = 0;
+        int entryStart = 0;
+
+        try (TarArchiveInputStream input = new TarArchiveInputStream(new ByteArrayInputStream(tar))) {
+            TarArchiveEntry entry;
+            while ((entry = input.getNextEntry()) != null) {
+                final long dataSize = entry.isFile() ? entry.getSize() : 0;
+                final int entryEnd = (int) (input.getBytesRead() + (dataSize + 511) / 512 * 512);
+
+                final String path = entry.getName().startsWith("./") ? entry.getName().substring(2) : entry.getName();
+                if (entry.isFile() && isTemplate(path, templates)) {
+                    final Integer checksum = checksumIndex.get(path);
+                    if (checksum == null) {
+                        throw new PackagingException("No checksum found for the template " + path);
+                    }
+
+                    if (entryStart > segmentStart) {
+                        segments.add(new StaticSegment(Arrays.copyOfRange(tar, segmentStart, entryStart)));
+                    }
+
+                    final Template template = Template.compileLines(new String(IOUtils.toByteArray(input), UTF_8), openToken, closeToken);
+                    segments.add(new TemplateSegment(entry, template, path, checksum));
+                    size -= entry.getSize();
+
+                    console.debug("template: " + path);
+                    segmentStart = entryEnd;
+                }
+
+                entryStart = entryEnd;
+            }
+        }
+
+        final byte[] rest = Arrays.copyOf(Arrays.copyOfRange(tar, segmentStart, entryStart), entryStart - segmentStart + TAR_EOF.length);
+        segments.add(new StaticSegment(rest));
+
+        return size;
+    }
+
+    private static boolean isTemplate(String path, String[] templates) {
+        if (templates != null) {
+            for (String template : templates) {
+                if (Utils.matchPath(Utils.stripLeadingSlash(template), path)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private Template compileControl(PackageConfig config) throws IOException, PackagingException {
+        final File[] controlFiles = config.getControl().listFiles();
+        Arrays.sort(controlFiles, Comparator.comparing(File::toString));
+
+        Template controlTemplate = null;
+        boolean foundConffiles = false;
+
+        for (File file : controlFiles) {
+            if (file.isDirectory()) {
+                if (!ControlBuilder.isDefaultExcludes(file)) {
+                    console.warn("Found directory '" + file + "' in the control directory. Maybe you are pointing to wrong dir?");
+                }
+                continue;
+            }
+
+            final String name = file.getName();
+            if ("conffiles".equals(name)) {
+                foundConffiles = true;
+            }
+
+            if ("control".equals(name)) {
+                controlTemplate = Template.load(file, Charset.defaultCharset(), openToken, closeToken);
+                continue;
+            }
+
+            if (ControlBuilder.CONFIGURATION_FILENAMES.contains(name) || ControlBuilder.MAINTAINER_SCRIPTS.contains(name)) {
+                controlEntries.add(new ControlEntry(name, Template.load(file, Charset.defaultCharset(), openToken, closeToken)));
+
+            } else {
+                // fix line endings for shell scripts, like the ControlBuilder does
+                final byte[] content = FileUtils.readFileToByteArray(file);
+                final InformationInputStream infoStream = new InformationInputStream(new ByteArrayInputStream(content));
+                Utils.copy(infoStream, NullOutputStream.INSTANCE);
+
+                InputStream in = new ByteArrayInputStream(content);
+                if (infoStream.isShell() && !infoStream.hasUnixLineEndings()) {
+                    in = new ByteArrayInputStream(Utils.toUnixLineEndings(in));
+                }
+                controlEntries.add(new ControlEntry(name, IOUtils.toString(in, UTF_8)));
+            }
+        }
+
+        if (controlTemplate == null) {
+            throw new PackagingException("No 'control' file found in " + config.getControl());
+        }
+
+        final List<String> conffiles = debMaker.populateConffiles(config.getConffileProducers());
+        if (foundConffiles) {
+            console.info("Found file 'conffiles' in the control directory. Skipping conffiles generation.");
+        } else if (!conffiles.isEmpty()) {
+            final StringBuilder content = new StringBuilder();
+            for (String conffile : conffiles) {
+                content.append(conffile).append('\n');
+            }
+            controlEntries.add(new ControlEntry("conffiles", content.toString()));
+        }
+
+        return controlTemplate;
+    }
+
+    /**
+     * Generates a package into a buffer.
+     *
+     * @param resolver the values of the variables of this package
+     * @return the package, from the position to the limit of the buffer
+     */
+    public ByteBuffer render(VariableResolver resolver) throws PackagingException {
+        final Buffer buffer = new Buffer(estimatedSize);
+        render(resolver, buffer);
+        return buffer.toByteBuffer();
+    }
+
+    /**
+     * Generates a package into a stream. The stream is flushed but not closed.
+     *
+     * @param resolver the values of the variables of this package
+     * @param output   where to write the package
+     * @return the control file of the package
+     */
+    public BinaryPackageControlFile render(VariableResolver resolver, OutputStream output) throws PackagingException {
+        try {
+            final String[] md5s = checksums.clone();
+            long size = staticSize;
+
+            // the pieces of the data archive, in order
+            final List<byte[]> data = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                if (segment instanceof TemplateSegment) {
+                    final TemplateSegment template = (TemplateSegment) segment;
+                    final byte[] content = template.template.render(resolver).getBytes(UTF_8);
+                    size += content.length;
+                    md5s[template.checksum] = MultiDigest.digest(content, "MD5").get("MD5") + "  " + template.path;
+                    final byte[] entry = template.toTar(content, longFileMode, bigNumberMode);
+                    data.add(compression == Compression.GZIP ? Gzip.compress(entry, 0, entry.length) : entry);
+                } else {
+                    data.add(segment.getContent(compression));
+                }
+            }
+
+            if (compression == Compression.XZ || compression == Compression.BZIP2) {
+                final byte[] compressed = compress(data);
+                data.clear();
+                data.add(compressed);
+            }
+
+            final ByteArrayOutputStream controlArchive = new ByteArrayOutputStream(1024);
+            final BinaryPackageControlFile packageControlFile = renderControl(resolver, md5s, size, controlArchive);
+
+            final ArArchiveOutputStream ar = new ArArchiveOutputStream(output);
+            addTo(ar, "debian-binary", DEBIAN_BINARY);
+            addTo(ar, "control.tar.gz", controlArchive.toByteArray());
+
+            long dataLength = 0;
+            for (byte[] piece : data) {
+                dataLength += piece.length;
+            }
+            ar.putArchiveEntry(debMaker.createArArchiveEntry("data.tar" + compression.getExtension(), dataLength));
+            for (byte[] piece : data) {
+                ar.write(piece);
+            }
+            ar.closeArchiveEntry();
+            ar.finish();
+            ar.flush();
+
+            return packageControlFile;
+
+        } catch (PackagingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PackagingException("Could not generate the package from the template", e);
+        }
+    }
+
+    private BinaryPackageControlFile renderControl(VariableResolver resolver, String[] md5s, long size, OutputStream output) throws Exception {
+        final ControlBuilder controlBuilder = new ControlBuilder(console, resolver, openToken, closeToken, outputTimestampMs);
+
+        final BinaryPackageControlFile packageControlFile = controlBuilder.createPackageControlFile(control.render(resolver), BigInteger.valueOf(size));
+        debMaker.completeControlFile(packageControlFile);
+
+        if (!packageControlFile.isValid()) {
+            throw new PackagingException("Control file fields are invalid " + packageControlFile.invalidFields() +
+                    ". The following fields are mandatory: " + packageControlFile.getMandatoryFields() +
+                    ". Please check the control file of the template.");
+        }
+
+        final ByteArrayOutputStream tar = new ByteArrayOutputStream(4096);
+        final TarArchiveOutputStream tarOutput = new TarArchiveOutputStream(tar);
+        tarOutput.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+
+        for (ControlEntry entry : controlEntries) {
+            controlBuilder.addControlEntry(entry.name, entry.render(resolver), tarOutput);
+        }
+        controlBuilder.addControlEntry("control", packageControlFile.toString(), tarOutput);
+        controlBuilder.addControlEntry("md5sums", String.join("\n", md5s), tarOutput);
+        tarOutput.close();
+
+        final byte[] bytes = tar.toByteArray();
+        Gzip.compress(bytes, 0, bytes.length, output);
+
+        return packageControlFile;
+    }
+
+    private byte[] compress(List<byte[]> pieces) throws Exception {
+        long length = 0;
+        for (byte[] piece : pieces) {
+            length += piece.length;
+        }
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, length / 4 + 64));
+        final OutputStream output = compression == Compression.XZ
+            // the cache saves allocating the dictionary of the encoder for every package
+            ? new XZOutputStream(compressed, new LZMA2Options(), BasicArrayCache.getInstance())
+            : compression.toCompressedOutputStream(compressed);
+        for (byte[] piece : pieces) {
+            output.write(piece);
+        }
+        output.close();
+
+        return compressed.toByteArray();
+    }
+
+    private void addTo(ArArchiveOutputStream ar, String name, byte[] content) throws IOException {
+        ar.putArchiveEntry(debMaker.createArArchiveEntry(name, content.length));
+        ar.write(content);
+        ar.closeArchiveEntry();
+    }
+
+    /**
+     * A control file, rendered or static.
+     */
+    private static final class ControlEntry {
+
+        private final String name;
+        private final Template template;
+        private final String content;
+
+        ControlEntry(String name, Template template) {
+            this.name = name;
+            this.template = template;
+            this.content = null;
+        }
+
+        ControlEntry(String name, String content) {
+            this.name = name;
+            this.template = null;
+            this.content = content;
+        }
+
+        String render(VariableResolver resolver) {
+            return template != null ? template.render(resolver) : content;
+        }
+    }
+
+    /**
+     * A part of the uncompressed data archive.
+     */
+    private abstract static class Segment {
+
+        abstract byte[] getContent(Compression compression);
+    }
+
+    /**
+     * Consecutive entries without templates, kept as they are and gzipped.
+     */
+    private static final class StaticSegment extends Segment {
+
+        private final byte[] raw;
+        private final byte[] gzipped;
+
+        StaticSegment(byte[] raw) {
+            this.raw = raw;
+            this.gzipped = Gzip.compress(raw, 0, raw.length);
+        }
+
+        byte[] getContent(Compression compression) {
+            return compression == Compression.GZIP ? gzipped : raw;
+        }
+    }
+
+    /**
+     * A file rendered on every generation.
+     */
+    private static final class TemplateSegment extends Segment {
+
+        private final TarArchiveEntry entry;
+        private final Template template;
+        private final String path;
+        private final int checksum;
+
+        TemplateSegment(TarArchiveEntry entry, Template template, String path, int checksum) {
+            this.entry = entry;
+            this.template = template;
+            this.path = path;
+            this.checksum = checksum;
+        }
+
+        byte[] getContent(Compression compression) {
+            return new byte[0];
+        }
+
+        /**
+         * Returns the tar entry holding the content, without the end of archive marker.
+         */
+        byte[] toTar(byte[] content, int longFileMode, int bigNumberMode) throws IOException {
+            // the entries are shared between threads, they are never written directly
+            final TarArchiveEntry copy = new TarArchiveEntry(entry.getName(), true);
+            copy.setMode(entry.getMode());
+            copy.setUserId(entry.getLongUserId());
+            copy.setUserName(entry.getUserName());
+            copy.setGroupId(entry.getLongGroupId());
+            copy.setGroupName(entry.getGroupName());
+            copy.setModTime(entry.getModTime());
+            copy.setSize(content.length);
+
+            final ByteArrayOutputStream tar = new ByteArrayOutputStream(content.length + 1024);
+            final TarArchiveOutputStream output = new TarArchiveOutputStream(tar, 512);
+            output.setLongFileMode(longFileMode);
+            output.setBigNumberMode(bigNumberMode);
+            output.putArchiveEntry(copy);
+            output.write(content);
+            output.closeArchiveEntry();
+            output.flush();
+
+            return tar.toByteArray();
+        }
+    }
+
+    /**
+     * Hands over its array without copying it.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer(int size) {
+            super(size);
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+}
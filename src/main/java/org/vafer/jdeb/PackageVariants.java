@@ -0,0 +1,98 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Builds variants of a package that carry the same data but different
+ * control files, like the same <code>Architecture: all</code> payload
+ * published for several distributions with their own <code>Depends</code>,
+ * or under another name. The data archive is compressed once, then every
+ * variant only builds its control archive and writes the shared data
+ * member into its own package, concurrently on a {@link PackageEngine}.
+ *
+ * <pre>
+ * PackageConfig base = PackageConfig.builder().data(producers).compression("xz").build();
+ * PackageVariants variants = new PackageVariants(console);
+ * variants.add(base.toBuilder().deb(bookwormDeb).control(bookwormControl).build());
+ * variants.add(base.toBuilder().deb(jammyDeb).control(jammyControl).build());
+ * List&lt;PackageResult&gt; results = variants.build();
+ * </pre>
+ */
+public final class PackageVariants {
+
+    private final Console console;
+    private final List<PackageConfig> variants = new ArrayList<>();
+
+    public PackageVariants(Console console) {
+        this.console = console;
+    }
+
+    /**
+     * Adds a variant. All the variants need the same data producers and the
+     * same data options (compression, entry order, timestamps...), they only
+     * differ in their control files, their changes files and their signatures.
+     */
+    public PackageVariants add(PackageConfig variant) {
+        variants.add(variant);
+        return this;
+    }
+
+    /**
+     * Builds the variants with an engine of its own.
+     */
+    public List<PackageResult> build() throws PackagingException {
+        try (PackageEngine engine = new PackageEngine(console)) {
+            return build(engine);
+        }
+    }
+
+    /**
+     * Builds the data archive and then the variants with the engine.
+     *
+     * @return the results, in the order the variants were added
+     */
+    public List<PackageResult> build(PackageEngine engine) throws PackagingException {
+        if (variants.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // fail before the compression if a variant is misconfigured
+        final PackageConfig first = variants.get(0);
+        for (PackageConfig variant : variants) {
+            new DebMaker(console, variant).validate();
+            if (!first.hasSameData(variant)) {
+                throw new PackagingException("The variant " + variant.getDeb() + " does not share the data settings of " + first.getDeb());
+            }
+        }
+
+        try (DataArchive data = new DebMaker(console, first).buildDataArchive(Compression.toEnum(first.getCompression()))) {
+            console.info("Built the data archive for " + variants.size() + " variants");
+
+            final List<CompletableFuture<PackageResult>> futures = new ArrayList<>();
+            for (PackageConfig variant : variants) {
+                futures.add(engine.build(variant, data, console));
+            }
+
+            // all the builds have to be done before the archive goes away
+            return PackageEngine.joinAll(futures);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Collects the entries of the producers and passes them on in a stable
+ * order once all of them are known. The entries are kept in an
+ * {@link EntrySpool}. Beyond a number of entries the metadata is sorted in
+ * runs written to temporary files, which are merged at the end.
+ *
+ * The parent directories always come before their children: with the path
+ * order a parent sorts before anything below it, with the type order all
+ * the directories come first. A hard link sorting before its target is held
+ * back until the target is passed on, dpkg can't extract it otherwise.
+ */
+final class SortingDataConsumer implements DataConsumer, Closeable {
+
+    /** The number of entries kept in memory before a sorted run is written to disk */
+    static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    /**
+     * An entry with what it is sorted by.
+     */
+    private static final class Item {
+        final EntrySpool.Item spooled;
+        final String extension;
+        final long sequence;
+
+        Item( EntrySpool.Item spooled, long sequence ) {
+            this.spooled = spooled;
+            this.extension = spooled.kind == EntrySpool.DIR ? "" : extension(spooled.path);
+            this.sequence = sequence;
+        }
+
+        void write( DataOutputStream output ) throws IOException {
+            spooled.write(output);
+            output.writeLong(sequence);
+        }
+
+        static Item read( DataInputStream input ) throws IOException {
+            final EntrySpool.Item spooled = EntrySpool.Item.read(input);
+            return spooled != null ? new Item(spooled, input.readLong()) : null;
+        }
+    }
+
+    /**
+     * A sorted run on disk, with its next item.
+     */
+    private static final class Run implements Closeable {
+        final DataInputStream input;
+        Item head;
+
+        Run( File file ) throws IOException {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            head = Item.read(input);
+        }
+
+        void advance() throws IOException {
+            head = Item.read(input);
+        }
+
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    private final DataConsumer target;
+    private final Comparator<Item> comparator;
+    private final int maxEntries;
+
+    private final EntrySpool spool = new EntrySpool();
+    private final List<Item> items = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+    private long sequence;
+
+    /** The hard links waiting for their target, by the path of the target */
+    private final Map<String, List<Item>> waiting = new LinkedHashMap<>();
+
+    SortingDataConsumer( DataConsumer target, EntryOrder order ) {
+        this(target, order, DEFAULT_MAX_ENTRIES);
+    }
+
+    SortingDataConsumer( DataConsumer target, EntryOrder order, int maxEntries ) {
+        this.target = target;
+        this.maxEntries = Math.max(1, maxEntries);
+
+        final Comparator<Item> byPath = Comparator.comparing((Item item) -> item.spooled.path);
+        if (order == EntryOrder.TYPE) {
+            comparator = Comparator.comparingInt((Item item) -> item.spooled.kind == EntrySpool.DIR ? 0 : 1)
+                .thenComparing((Item item) -> item.extension)
+                .thenComparing(byPath)
+                .thenComparingLong(item -> item.sequence);
+        } else {
+            comparator = byPath.thenComparingLong(item -> item.sequence);
+        }
+    }
+
+    public void onEachDir( TarArchiveEntry dirEntry ) throws IOException {
+        add(spool.dir(dirEntry));
+    }
+
+    public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException {
+        add(spool.file(input, fileEntry));
+    }
+
+    public void onEachLink( TarArchiveEntry linkEntry ) throws IOException {
+        add(spool.link(linkEntry));
+    }
+
+    private void add( EntrySpool.Item spooled ) throws IOException {
+        if (items.size() >= maxEntries) {
+            spill();
+        }
+        items.add(new Item(spooled, sequence++));
+    }
+
+    /**
+     * Passes all the collected entries on to the target, in order.
+     */
+    void finish() throws IOException {
+        spool.finish();
+
+        if (runs.isEmpty()) {
+            items.sort(comparator);
+            for (Item item : items) {
+                emit(item);
+            }
+            items.clear();
+            releaseWaiting();
+            return;
+        }
+
+        spill();
+
+        final PriorityQueue<Run> queue = new PriorityQueue<>(runs.size(), (a, b) -> comparator.compare(a.head, b.head));
+        final List<Run> open = new ArrayList<>(runs.size());
+        try {
+            for (File file : runs) {
+                final Run run = new Run(file);
+                open.add(run);
+                if (run.head != null) {
+                    queue.add(run);
+                }
+            }
+            while (!queue.isEmpty()) {
+                final Run run = queue.poll();
+                emit(run.head);
+                run.advance();
+                if (run.head != null) {
+                    queue.add(run);
+                }
+            }
+        } finally {
+            for (Run run : open) {
+                IOUtils.closeQuietly(run);
+            }
+        }
+        releaseWaiting();
+    }
+
+    private void spill() throws IOException {
+        items.sort(comparator);
+        final File run = File.createTempFile("jdeb", ".run");
+        runs.add(run);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (Item item : items) {
+                item.write(output);
+            }
+        }
+        items.clear();
+    }
+
+    private void emit( Item item ) throws IOException {
+        if (item.spooled.kind == EntrySpool.LINK && item.spooled.entry.isLink()) {
+            final Item linkTarget = new Item(new EntrySpool.Item(EntrySpool.FILE, new TarArchiveEntry(item.spooled.entry.getLinkName(), true)), -1);
+            if (comparator.compare(linkTarget, item) > 0) {
+                waiting.computeIfAbsent(linkTarget.spooled.path, path -> new ArrayList<>()).add(item);
+                return;
+            }
+        }
+        release(item);
+    }
+
+    /**
+     * Passes an item on, followed by the hard links waiting for it.
+     */
+    private void release( Item item ) throws IOException {
+        spool.emit(item.spooled, item.spooled.entry, target);
+        final List<Item> links = waiting.remove(item.spooled.path);
+        if (links != null) {
+            for (Item link : links) {
+                release(link);
+            }
+        }
+    }
+
+    /**
+     * Passes on the hard links whose target never came, the consumer decides about them.
+     */
+    private void releaseWaiting() throws IOException {
+        final List<List<Item>> remaining = new ArrayList<>(waiting.values());
+        waiting.clear();
+        for (List<Item> links : remaining) {
+            for (Item link : links) {
+                release(link);
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary files.
+     */
+    public void close() throws IOException {
+        spool.close();
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private static String extension( String path ) {
+        final int slash = path.lastIndexOf('/');
+        final int dot = path.lastIndexOf('.');
+        return dot > slash + 1 ? path.substring(dot + 1) : "";
+    }
+}
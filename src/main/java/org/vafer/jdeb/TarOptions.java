@@ -1,12 +1,21 @@
 package org.vafer.jdeb;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.vafer.jdeb.mapping.ContentMapper;
 
 public class TarOptions {
 
     private Compression compression = Compression.GZIP;
     private int longFileMode = TarArchiveOutputStream.LONGFILE_GNU;
     private int bigNumberMode = TarArchiveOutputStream.BIGNUMBER_STAR;
+    private EntryOrder entryOrder = EntryOrder.NONE;
+    private ContentMapper contentMapper;
+    private boolean rsyncable;
+    private boolean seekable;
+    private List<DataSink> sinks = Collections.emptyList();
 
     public TarOptions compression(Compression compression) {
         this.compression = compression;
@@ -40,6 +49,36 @@ public class TarOptions {
         return this;
     }
 
+    public TarOptions entryOrder(EntryOrder entryOrder) {
+        this.entryOrder = entryOrder != null ? entryOrder : EntryOrder.NONE;
+
+        return this;
+    }
+
+    public TarOptions contentMapper(ContentMapper contentMapper) {
+        this.contentMapper = contentMapper;
+
+        return this;
+    }
+
+    public TarOptions rsyncable(boolean rsyncable) {
+        this.rsyncable = rsyncable;
+
+        return this;
+    }
+
+    public TarOptions seekable(boolean seekable) {
+        this.seekable = seekable;
+
+        return this;
+    }
+
+    public TarOptions sinks(List<DataSink> sinks) {
+        this.sinks = sinks != null ? sinks : Collections.<DataSink>emptyList();
+
+        return this;
+    }
+
     public int longFileMode() {
         return longFileMode;
     }
@@ -51,4 +90,24 @@ public class TarOptions {
     public Compression compression() {
         return compression;
     }
+
+    public EntryOrder entryOrder() {
+        return entryOrder;
+    }
+
+    public ContentMapper contentMapper() {
+        return contentMapper;
+    }
+
+    public boolean rsyncable() {
+        return rsyncable;
+    }
+
+    public boolean seekable() {
+        return seekable;
+    }
+
+    public List<DataSink> sinks() {
+        return sinks;
+    }
 }
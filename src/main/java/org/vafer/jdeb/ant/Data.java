@@ -26,8 +26,12 @@ import org.apache.tools.ant.types.PatternSet;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.producers.DataProducerArchive;
+import org.vafer.jdeb.producers.DataProducerDeb;
 import org.vafer.jdeb.producers.DataProducerDirectory;
 import org.vafer.jdeb.producers.DataProducerFile;
+import org.vafer.jdeb.producers.DataProducerMtree;
+import org.vafer.jdeb.producers.FilteredDataConsumer;
+import org.vafer.jdeb.producers.RepackingDataConsumer;
 
 import static org.vafer.jdeb.ant.MissingSourceBehavior.*;
 
@@ -50,6 +54,14 @@ public final class Data extends PatternSet implements DataProducer {
 
     private MissingSourceBehavior missingSrc = FAIL;
 
+    private boolean filter;
+
+    private boolean repack;
+
+    private File base;
+
+    private boolean md5sums = true;
+
     public void setSrc(File src) {
         this.src = src;
     }
@@ -74,6 +86,38 @@ public final class Data extends PatternSet implements DataProducer {
         this.destinationName = destinationName;
     }
 
+    /**
+     * Replace the [[variables]] in the content of the files, read as UTF-8
+     * text, with the properties of the project.
+     */
+    public void setFilter(boolean filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Rewrite the jars and zips with their entries stored instead of
+     * deflated, so the compression of the data archive works across them.
+     */
+    public void setRepack(boolean repack) {
+        this.repack = repack;
+    }
+
+    /**
+     * The directory holding the files of a mtree specification, the
+     * directory of the specification by default.
+     */
+    public void setBase(File base) {
+        this.base = base;
+    }
+
+    /**
+     * Reuse the md5sums of the package of the "deb" type instead of hashing
+     * its files again.
+     */
+    public void setMd5sums(boolean md5sums) {
+        this.md5sums = md5sums;
+    }
+
     public void addMapper(Mapper mapper) {
         mapperWrapper.add(mapper);
     }
@@ -83,7 +127,9 @@ public final class Data extends PatternSet implements DataProducer {
         this.missingSrc = MissingSourceBehavior.valueOf(missingSrc.trim().toUpperCase());
     }
 
-    public void produce( final DataConsumer pReceiver ) throws IOException {
+    public void produce( final DataConsumer consumer ) throws IOException {
+        final DataConsumer repacking = repack ? new RepackingDataConsumer(consumer) : consumer;
+        final DataConsumer receiver = filter ? new FilteredDataConsumer(repacking, getProject()::getProperty, "[[", "]]") : repacking;
 
         if (src == null || !src.exists()) {
             if (missingSrc == IGNORE) {
@@ -106,7 +152,7 @@ public final class Data extends PatternSet implements DataProducer {
                 getIncludePatterns(getProject()),
                 getExcludePatterns(getProject()),
                 mappers
-            ).produce(pReceiver);
+            ).produce(receiver);
 
         } else if ("archive".equalsIgnoreCase(type)) {
             new DataProducerArchive(
@@ -114,7 +160,16 @@ public final class Data extends PatternSet implements DataProducer {
                 getIncludePatterns(getProject()),
                 getExcludePatterns(getProject()),
                 mappers
-            ).produce(pReceiver);
+            ).produce(receiver);
+
+        } else if ("deb".equalsIgnoreCase(type)) {
+            new DataProducerDeb(
+                src,
+                getIncludePatterns(getProject()),
+                getExcludePatterns(getProject()),
+                mappers,
+                md5sums
+            ).produce(receiver);
 
         } else if ("directory".equalsIgnoreCase(type)) {
             new DataProducerDirectory(
@@ -122,7 +177,16 @@ public final class Data extends PatternSet implements DataProducer {
                 getIncludePatterns(getProject()),
                 getExcludePatterns(getProject()),
                 mappers
-            ).produce(pReceiver);
+            ).produce(receiver);
+
+        } else if ("mtree".equalsIgnoreCase(type)) {
+            new DataProducerMtree(
+                src,
+                base,
+                getIncludePatterns(getProject()),
+                getExcludePatterns(getProject()),
+                mappers
+            ).produce(receiver);
         }
     }
 }
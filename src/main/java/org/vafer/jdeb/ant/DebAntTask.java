@@ -28,7 +28,11 @@ import org.apache.tools.ant.taskdefs.Tar;
 import org.apache.tools.ant.types.FileSet;
 import org.vafer.jdeb.Console;
 import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.DataSink;
 import org.vafer.jdeb.DebMaker;
+import org.vafer.jdeb.PackageConfig;
+import org.vafer.jdeb.PackageGroup;
+import org.vafer.jdeb.PackageVariants;
 import org.vafer.jdeb.PackagingException;
 import org.vafer.jdeb.producers.DataProducerFileSet;
 import org.vafer.jdeb.utils.OutputTimestampResolver;
@@ -72,10 +76,31 @@ public class DebAntTask extends MatchingTask {
      */
     private String digest = "SHA256";
 
+    /** The order of the entries in the data file (none, path or type) */
+    private String entryOrder;
+
+    /** Make the scripts and the ELF binaries of the data executable */
+    private boolean detectExecutables;
+
+    /** Compress the data in a mode friendly to rsync and zsync */
+    private boolean rsyncable;
+
+    /** Write the zsync control file next to the package */
+    private boolean zsync;
+
+    /** Compress the data in independent blocks a reader can seek to */
+    private boolean seekable;
+
+    /** Write the index of the files of the data archive next to the package */
+    private boolean dataIndex;
+
     /** Trigger the verbose mode detailing all operations */
     private boolean verbose;
 
     private Collection<Link> links = new ArrayList<>();
+    private Collection<PackageSelection> packages = new ArrayList<>();
+    private Collection<PackageVariant> variants = new ArrayList<>();
+    private Collection<Sink> sinks = new ArrayList<>();
 
     private Collection<DataProducer> dataProducers = new ArrayList<>();
     private Collection<DataProducer> conffilesProducers = new ArrayList<>();
@@ -117,6 +142,30 @@ public class DebAntTask extends MatchingTask {
         this.compression = compression;
     }
 
+    public void setEntryOrder( String entryOrder ) {
+        this.entryOrder = entryOrder;
+    }
+
+    public void setDetectExecutables( boolean detectExecutables ) {
+        this.detectExecutables = detectExecutables;
+    }
+
+    public void setRsyncable( boolean rsyncable ) {
+        this.rsyncable = rsyncable;
+    }
+
+    public void setZsync( boolean zsync ) {
+        this.zsync = zsync;
+    }
+
+    public void setSeekable( boolean seekable ) {
+        this.seekable = seekable;
+    }
+
+    public void setDataIndex( boolean dataIndex ) {
+        this.dataIndex = dataIndex;
+    }
+
     public void setVerbose( boolean verbose ) {
         this.verbose = verbose;
     }
@@ -133,6 +182,30 @@ public class DebAntTask extends MatchingTask {
         dataProducers.add(data);
     }
 
+    /**
+     * Adds a package built out of the shared data, the task then builds the
+     * packages of its "package" elements instead of a single package.
+     */
+    public void addPackage( PackageSelection selection ) {
+        packages.add(selection);
+    }
+
+    /**
+     * Adds a variant carrying all the data with control files of its own, the
+     * task then builds the packages of its "variant" elements around one
+     * data archive instead of a single package.
+     */
+    public void addVariant( PackageVariant variant ) {
+        variants.add(variant);
+    }
+
+    /**
+     * Adds a secondary output of the data archive, written from the same pass.
+     */
+    public void addSink( Sink sink ) {
+        sinks.add(sink);
+    }
+
     public void addLink( Link link ) {
         links.add(link);
     }
@@ -152,9 +225,9 @@ public class DebAntTask extends MatchingTask {
             if (dataProducer instanceof Data) {
                 Data data = (Data) dataProducer;
                 if (data.getType() == null) {
-                    throw new BuildException("The type of the data element wasn't specified (expected 'file', 'directory' or 'archive')");
-                } else if (!Arrays.asList("file", "directory", "archive").contains(data.getType().toLowerCase())) {
-                    throw new BuildException("The type '" + data.getType() + "' of the data element is unknown (expected 'file', 'directory' or 'archive')");
+                    throw new BuildException("The type of the data element wasn't specified (expected 'file', 'directory', 'archive' or 'mtree')");
+                } else if (!Arrays.asList("file", "directory", "archive", "mtree").contains(data.getType().toLowerCase())) {
+                    throw new BuildException("The type '" + data.getType() + "' of the data element is unknown (expected 'file', 'directory', 'archive' or 'mtree')");
                 }
                 if (data.getConffile() != null && data.getConffile()) {
                     conffilesProducers.add(dataProducer);
@@ -164,19 +237,78 @@ public class DebAntTask extends MatchingTask {
 
         Console console = new TaskConsole(this, verbose);
 
-        DebMaker debMaker = new DebMaker(console, dataProducers, conffilesProducers);
-        debMaker.setDeb(deb);
-        debMaker.setControl(control);
-        debMaker.setChangesIn(changesIn);
-        debMaker.setChangesOut(changesOut);
-        debMaker.setChangesSave(changesSave);
-        debMaker.setKeyring(keyring);
-        debMaker.setKey(key);
-        debMaker.setPassphrase(passphrase);
-        debMaker.setCompression(compression);
-        debMaker.setDigest(digest);
-        Long outputTimestampMs = new OutputTimestampResolver(console).resolveOutputTimestamp(null);
-        debMaker.setOutputTimestampMs(outputTimestampMs);
+        final PackageConfig.Builder config = PackageConfig.builder()
+            .changesIn(changesIn)
+            .keyring(keyring)
+            .key(key)
+            .passphrase(passphrase)
+            .compression(compression)
+            .digest(digest)
+            .entryOrder(entryOrder)
+            .detectExecutables(detectExecutables)
+            .rsyncable(rsyncable)
+            .zsync(zsync)
+            .seekable(seekable)
+            .dataIndex(dataIndex)
+            .outputTimestampMs(new OutputTimestampResolver(console).resolveOutputTimestamp(null));
+
+        for (Sink sink : sinks) {
+            try {
+                config.sink(DataSink.create(sink.getFormat(), sink.getFile()));
+            } catch (PackagingException e) {
+                throw new BuildException(e.getMessage(), e);
+            }
+        }
+
+        if (!packages.isEmpty() && !variants.isEmpty()) {
+            throw new BuildException("The package and variant elements can't be used together");
+        }
+
+        if (!variants.isEmpty()) {
+            config.data(dataProducers).conffiles(conffilesProducers);
+            final PackageVariants group = new PackageVariants(console);
+            for (PackageVariant variant : variants) {
+                group.add(config.build().toBuilder()
+                    .deb(variant.getDeb())
+                    .control(variant.getControl())
+                    .changesOut(variant.getChangesOut())
+                    .build());
+            }
+            try {
+                group.build();
+            } catch (PackagingException e) {
+                log("Failed to create the Debian packages", e, Project.MSG_ERR);
+                throw new BuildException("Failed to create the Debian packages", e);
+            }
+            return;
+        }
+
+        if (!packages.isEmpty()) {
+            final PackageGroup group = new PackageGroup(console);
+            for (PackageSelection selection : packages) {
+                group.add(config.build().toBuilder()
+                    .deb(selection.getDeb())
+                    .control(selection.getControl())
+                    .changesOut(selection.getChangesOut())
+                    .build(), selection.getIncludes(getProject()), selection.getExcludes(getProject()));
+            }
+            try {
+                group.build(dataProducers, conffilesProducers);
+            } catch (PackagingException e) {
+                log("Failed to create the Debian packages", e, Project.MSG_ERR);
+                throw new BuildException("Failed to create the Debian packages", e);
+            }
+            return;
+        }
+
+        DebMaker debMaker = new DebMaker(console, config
+            .deb(deb)
+            .control(control)
+            .changesOut(changesOut)
+            .changesSave(changesSave)
+            .data(dataProducers)
+            .conffiles(conffilesProducers)
+            .build());
 
         try {
             debMaker.validate();
@@ -16,15 +16,18 @@
 package org.vafer.jdeb.ant;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.vafer.jdeb.mapping.LsMapper;
+import org.vafer.jdeb.mapping.MtreeMapper;
 import org.vafer.jdeb.mapping.PermMapper;
+import org.vafer.jdeb.mapping.RulesMapper;
 
 /**
  * Ant "mapper" element acting as factory for the entry mapper.
- * Supported types: ls, perm
+ * Supported types: ls, mtree, perm, rules
  */
 public final class Mapper {
 
@@ -39,6 +42,7 @@ public final class Mapper {
     private String group;
     private String fileMode;
     private String dirMode;
+    private final List<Rule> rules = new ArrayList<>();
 
     public void setType( final String pType ) {
         mapperType = pType;
@@ -82,6 +86,10 @@ public final class Mapper {
         dirMode = pDirMode;
     }
 
+    public void addRule( final Rule pRule ) {
+        rules.add(pRule);
+    }
+
     public org.vafer.jdeb.mapping.Mapper createMapper() throws IOException {
 
         if ("perm".equalsIgnoreCase(mapperType)) {
@@ -90,12 +98,24 @@ public final class Mapper {
 
         if ("ls".equalsIgnoreCase(mapperType)) {
             try {
-                return new LsMapper(new FileInputStream(src));
+                return new LsMapper(src);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
 
+        if ("mtree".equalsIgnoreCase(mapperType)) {
+            return new MtreeMapper(src);
+        }
+
+        if ("rules".equalsIgnoreCase(mapperType)) {
+            final List<RulesMapper.Rule> list = new ArrayList<>();
+            for (Rule rule : rules) {
+                list.add(rule.createRule());
+            }
+            return new RulesMapper(list);
+        }
+
         throw new IOException("Unknown mapper type '" + mapperType + "'");
     }
 
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.ant;
+
+import java.io.File;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.types.PatternSet;
+
+/**
+ * Ant "package" element of the deb task: one of the packages built out of
+ * the entries of the shared data matching its patterns.
+ */
+public final class PackageSelection {
+
+    private File deb;
+    private File control;
+    private File changesOut;
+    private final PatternSet patterns = new PatternSet();
+
+    public File getDeb() {
+        return deb;
+    }
+
+    public void setDestfile( File deb ) {
+        this.deb = deb;
+    }
+
+    public File getControl() {
+        return control;
+    }
+
+    public void setControl( File control ) {
+        this.control = control;
+    }
+
+    public File getChangesOut() {
+        return changesOut;
+    }
+
+    public void setChangesOut( File changesOut ) {
+        this.changesOut = changesOut;
+    }
+
+    /**
+     * Sets the comma or space separated patterns of the entries included, all of them by default.
+     */
+    public void setIncludes( String includes ) {
+        patterns.setIncludes(includes);
+    }
+
+    /**
+     * Sets the comma or space separated patterns of the entries excluded.
+     */
+    public void setExcludes( String excludes ) {
+        patterns.setExcludes(excludes);
+    }
+
+    String[] getIncludes( Project project ) {
+        return patterns.getIncludePatterns(project);
+    }
+
+    String[] getExcludes( Project project ) {
+        return patterns.getExcludePatterns(project);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.ant;
+
+import java.io.File;
+
+/**
+ * Ant "variant" element of the deb task: one of the packages carrying all
+ * the data with control files of their own.
+ */
+public final class PackageVariant {
+
+    private File deb;
+    private File control;
+    private File changesOut;
+
+    public File getDeb() {
+        return deb;
+    }
+
+    public void setDestfile( File deb ) {
+        this.deb = deb;
+    }
+
+    public File getControl() {
+        return control;
+    }
+
+    public void setControl( File control ) {
+        this.control = control;
+    }
+
+    public File getChangesOut() {
+        return changesOut;
+    }
+
+    public void setChangesOut( File changesOut ) {
+        this.changesOut = changesOut;
+    }
+}
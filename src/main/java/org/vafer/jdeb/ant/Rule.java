@@ -0,0 +1,71 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.ant;
+
+import org.vafer.jdeb.mapping.RulesMapper;
+
+/**
+ * Ant "rule" element of a "rules" mapper.
+ */
+public final class Rule {
+
+    private String pattern;
+    private String target;
+    private int uid = -1;
+    private int gid = -1;
+    private String user;
+    private String group;
+    private String fileMode;
+    private String dirMode;
+
+    public void setPattern( final String pPattern ) {
+        pattern = pPattern;
+    }
+
+    public void setTarget( final String pTarget ) {
+        target = pTarget;
+    }
+
+    public void setUid( final int pUid ) {
+        uid = pUid;
+    }
+
+    public void setGid( final int pGid ) {
+        gid = pGid;
+    }
+
+    public void setUser( final String pUser ) {
+        user = pUser;
+    }
+
+    public void setGroup( final String pGroup ) {
+        group = pGroup;
+    }
+
+    public void setFileMode( final String pFileMode ) {
+        fileMode = pFileMode;
+    }
+
+    public void setDirMode( final String pDirMode ) {
+        dirMode = pDirMode;
+    }
+
+    public RulesMapper.Rule createRule() {
+        return new RulesMapper.Rule(pattern, target, uid, gid, user, group, fileMode, dirMode);
+    }
+
+}
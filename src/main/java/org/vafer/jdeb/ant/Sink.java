@@ -0,0 +1,47 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.ant;
+
+import java.io.File;
+
+/**
+ * Ant "sink" element of the deb task: a secondary output of the data archive.
+ */
+public final class Sink {
+
+    private String format;
+    private File file;
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the format of the output: <code>tar.gz</code>, <code>tar.zst</code> or <code>oci</code>.
+     */
+    public void setFormat( String format ) {
+        this.format = format;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setFile( File file ) {
+        this.file = file;
+    }
+}
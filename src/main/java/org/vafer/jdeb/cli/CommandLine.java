@@ -0,0 +1,444 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.cli;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.DataSink;
+import org.vafer.jdeb.PackageConfig;
+import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.mapping.LsMapper;
+import org.vafer.jdeb.mapping.MtreeMapper;
+import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.mapping.PermMapper;
+import org.vafer.jdeb.producers.DataProducerArchive;
+import org.vafer.jdeb.producers.DataProducerDeb;
+import org.vafer.jdeb.producers.DataProducerDirectory;
+import org.vafer.jdeb.producers.DataProducerFile;
+import org.vafer.jdeb.producers.DataProducerFiles;
+import org.vafer.jdeb.producers.DataProducerLink;
+import org.vafer.jdeb.producers.DataProducerMtree;
+import org.vafer.jdeb.producers.DataProducerPathTemplate;
+import org.vafer.jdeb.producers.RepackingDataConsumer;
+import org.vafer.jdeb.utils.MapVariableResolver;
+import org.vafer.jdeb.utils.OutputTimestampResolver;
+
+/**
+ * The options of the command line launcher. They mirror the configuration
+ * of the Maven plugin.
+ *
+ * A data source is given as <code>type:src[,option=value]...</code>, for example
+ * <code>directory:target/dist,prefix=/opt/app,user=app,filemode=640</code>.
+ * Include and exclude patterns are separated with ';'.
+ */
+final class CommandLine {
+
+    static final String USAGE =
+        "usage: jdeb [options] <deb>\n" +
+        "       jdeb --daemon <port file>\n" +
+        "       jdeb --connect <port file> [options] <deb>\n" +
+        "       jdeb --connect <port file> --stop\n" +
+        "       jdeb --delta <old deb> <new deb> <delta>\n" +
+        "       jdeb --apply-delta <old deb> <delta> <new deb>\n" +
+        "       jdeb --verify [--keyring <file>] <deb>...\n" +
+        "\n" +
+        "options:\n" +
+        "  --control <dir>             directory with the control files (required)\n" +
+        "  --data <type:src[,opt=val]> data source, type is file, directory, archive, deb, mtree, link, template or files\n" +
+        "                              options: dst, includes, excludes, conffile, repack, missingSrc, target, symlink,\n" +
+        "                              base, paths, prefix, strip, user, group, uid, gid, filemode, dirmode, ls, mtree\n" +
+        "  --compression <method>      none, gzip, bzip2 or xz (default gzip)\n" +
+        "  --digest <algorithm>        digest for the dpkg-sig manifest (default SHA256)\n" +
+        "  --changes-in <file>         changes to add\n" +
+        "  --changes-out <file>        changes file to generate\n" +
+        "  --changes-save <file>       merged changes file\n" +
+        "  --sign-package              sign the package\n" +
+        "  --sign-changes              sign the changes file\n" +
+        "  --sign-method <method>      debsig-verify or dpkg-sig (default debsig-verify)\n" +
+        "  --sign-role <role>          role of the signature (default origin)\n" +
+        "  --sign-digest <algorithm>   digest for the signature (default SHA256)\n" +
+        "  --keyring <file>            keyring with the signing key\n" +
+        "  --key <id>                  signing key\n" +
+        "  --passphrase-env <name>     environment variable holding the passphrase\n" +
+        "  --define <name=value>       variable available to the control files\n" +
+        "  --output-timestamp <time>   timestamp of the entries for reproducible builds\n" +
+        "  --tar-long-file-mode <mode> gnu, posix, error or truncate (default gnu)\n" +
+        "  --tar-big-number-mode <mode> gnu, posix or error (default gnu)\n" +
+        "  --entry-order <order>        none, path or type (default none)\n" +
+        "  --detect-executables        make the scripts and ELF binaries executable\n" +
+        "  --rsyncable                 compress the data for delta transfers (gzip and xz)\n" +
+        "  --zsync                     write the zsync file next to the package\n" +
+        "  --seekable                  compress the data in blocks a reader can seek to (xz)\n" +
+        "  --data-index                write the index of the data files next to the package\n" +
+        "  --sink <format:file>        also write the data as tar.gz, tar.zst or oci layer\n" +
+        "  --verbose                   print debug messages\n";
+
+    private final File baseDir;
+
+    File deb;
+    File control;
+    String compression = "gzip";
+    String digest = "SHA256";
+    File changesIn;
+    File changesOut;
+    File changesSave;
+    boolean signPackage;
+    boolean signChanges;
+    String signMethod = "debsig-verify";
+    String signRole = "origin";
+    String signDigest = "SHA256";
+    File keyring;
+    String key;
+    String passphrase;
+    String outputTimestamp;
+    String tarLongFileMode = "gnu";
+    String tarBigNumberMode = "gnu";
+    String entryOrder = "none";
+    boolean detectExecutables;
+    boolean rsyncable;
+    boolean zsync;
+    boolean seekable;
+    boolean dataIndex;
+    boolean verbose;
+    final Map<String, String> variables = new HashMap<>();
+    final List<DataProducer> dataProducers = new ArrayList<>();
+    final List<DataProducer> conffileProducers = new ArrayList<>();
+    final List<DataSink> sinks = new ArrayList<>();
+
+    /**
+     * @param baseDir the directory relative paths are resolved against
+     */
+    CommandLine(File baseDir) {
+        this.baseDir = baseDir;
+    }
+
+    static CommandLine parse(File baseDir, Map<String, String> environment, String... args) throws PackagingException {
+        final CommandLine line = new CommandLine(baseDir);
+
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+
+            if (!arg.startsWith("--")) {
+                if (line.deb != null) {
+                    throw new PackagingException("Unexpected argument '" + arg + "', the deb is already set to " + line.deb);
+                }
+                line.deb = line.resolve(arg);
+                continue;
+            }
+
+            switch (arg) {
+                case "--sign-package":
+                    line.signPackage = true;
+                    continue;
+                case "--sign-changes":
+                    line.signChanges = true;
+                    continue;
+                case "--detect-executables":
+                    line.detectExecutables = true;
+                    continue;
+                case "--rsyncable":
+                    line.rsyncable = true;
+                    continue;
+                case "--zsync":
+                    line.zsync = true;
+                    continue;
+                case "--seekable":
+                    line.seekable = true;
+                    continue;
+                case "--data-index":
+                    line.dataIndex = true;
+                    continue;
+                case "--verbose":
+                    line.verbose = true;
+                    continue;
+                default:
+                    break;
+            }
+
+            if (i + 1 >= args.length) {
+                throw new PackagingException("Missing value for " + arg);
+            }
+            final String value = args[++i];
+
+            switch (arg) {
+                case "--control":
+                    line.control = line.resolve(value);
+                    break;
+                case "--data":
+                    line.addData(value);
+                    break;
+                case "--compression":
+                    line.compression = value;
+                    break;
+                case "--digest":
+                    line.digest = value;
+                    break;
+                case "--changes-in":
+                    line.changesIn = line.resolve(value);
+                    break;
+                case "--changes-out":
+                    line.changesOut = line.resolve(value);
+                    break;
+                case "--changes-save":
+                    line.changesSave = line.resolve(value);
+                    break;
+                case "--sign-method":
+                    line.signMethod = value;
+                    break;
+                case "--sign-role":
+                    line.signRole = value;
+                    break;
+                case "--sign-digest":
+                    line.signDigest = value;
+                    break;
+                case "--keyring":
+                    line.keyring = line.resolve(value);
+                    break;
+                case "--key":
+                    line.key = value;
+                    break;
+                case "--passphrase-env":
+                    line.passphrase = environment.get(value);
+                    if (line.passphrase == null) {
+                        throw new PackagingException("The environment variable " + value + " is not set");
+                    }
+                    break;
+                case "--define":
+                    final int eq = value.indexOf('=');
+                    if (eq <= 0) {
+                        throw new PackagingException("Expected name=value for --define but got '" + value + "'");
+                    }
+                    line.variables.put(value.substring(0, eq), value.substring(eq + 1));
+                    break;
+                case "--output-timestamp":
+                    line.outputTimestamp = value;
+                    break;
+                case "--tar-long-file-mode":
+                    line.tarLongFileMode = value;
+                    break;
+                case "--tar-big-number-mode":
+                    line.tarBigNumberMode = value;
+                    break;
+                case "--entry-order":
+                    line.entryOrder = value;
+                    break;
+                case "--sink":
+                    final int colon = value.indexOf(':');
+                    if (colon <= 0) {
+                        throw new PackagingException("Expected format:file for --sink but got '" + value + "'");
+                    }
+                    line.sinks.add(DataSink.create(value.substring(0, colon), line.resolve(value.substring(colon + 1))));
+                    break;
+                default:
+                    throw new PackagingException("Unknown option " + arg);
+            }
+        }
+
+        if (line.deb == null) {
+            throw new PackagingException("No deb file specified");
+        }
+
+        return line;
+    }
+
+    File resolve(String path) {
+        final File file = new File(path);
+        return file.isAbsolute() || baseDir == null ? file : new File(baseDir, path);
+    }
+
+    private void addData(String spec) throws PackagingException {
+        final int colon = spec.indexOf(':');
+        if (colon <= 0) {
+            throw new PackagingException("Expected type:src[,option=value]... for --data but got '" + spec + "'");
+        }
+
+        final String type = spec.substring(0, colon);
+        final String[] parts = spec.substring(colon + 1).split(",");
+        final String src = parts[0];
+        final Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 1; i < parts.length; i++) {
+            final int eq = parts[i].indexOf('=');
+            if (eq <= 0) {
+                throw new PackagingException("Expected option=value in --data " + spec + " but got '" + parts[i] + "'");
+            }
+            options.put(parts[i].substring(0, eq), parts[i].substring(eq + 1));
+        }
+
+        final DataProducer created = createProducer(type, src, options);
+        if (created == null) {
+            return;
+        }
+
+        final DataProducer producer = Boolean.parseBoolean(options.get("repack"))
+            ? consumer -> created.produce(new RepackingDataConsumer(consumer))
+            : created;
+
+        dataProducers.add(producer);
+        if (Boolean.parseBoolean(options.get("conffile"))) {
+            conffileProducers.add(producer);
+        }
+    }
+
+    private DataProducer createProducer(String type, String src, Map<String, String> options) throws PackagingException {
+        final String[] includes = patterns(options.get("includes"));
+        final String[] excludes = patterns(options.get("excludes"));
+        final Mapper[] mappers = createMappers(options);
+
+        if ("link".equalsIgnoreCase(type)) {
+            final String target = options.get("target");
+            if (target == null) {
+                throw new PackagingException("The link " + src + " needs a target option");
+            }
+            final boolean symlink = !options.containsKey("symlink") || Boolean.parseBoolean(options.get("symlink"));
+            return new DataProducerLink(src, target, symlink, includes, excludes, mappers);
+        }
+
+        if ("template".equalsIgnoreCase(type)) {
+            return new DataProducerPathTemplate(paths(src), includes, excludes, mappers);
+        }
+
+        if ("files".equalsIgnoreCase(type)) {
+            return new DataProducerFiles(paths(src), options.get("dst"), mappers);
+        }
+
+        final File file = resolve(src);
+        if (!file.exists()) {
+            if ("ignore".equalsIgnoreCase(options.get("missingSrc"))) {
+                return null;
+            }
+            throw new PackagingException("Data source not found : " + file);
+        }
+
+        if ("file".equalsIgnoreCase(type)) {
+            return new DataProducerFile(file, options.get("dst"), includes, excludes, mappers);
+        }
+        if ("directory".equalsIgnoreCase(type)) {
+            return new DataProducerDirectory(file, includes, excludes, mappers);
+        }
+        if ("archive".equalsIgnoreCase(type)) {
+            return new DataProducerArchive(file, includes, excludes, mappers);
+        }
+        if ("deb".equalsIgnoreCase(type)) {
+            return new DataProducerDeb(file, includes, excludes, mappers, !"false".equalsIgnoreCase(options.get("md5sums")));
+        }
+        if ("mtree".equalsIgnoreCase(type)) {
+            return new DataProducerMtree(file, options.containsKey("base") ? resolve(options.get("base")) : null, includes, excludes, mappers);
+        }
+
+        throw new PackagingException("Unknown type '" + type + "' (file|directory|archive|deb|mtree|template|link|files) for " + src);
+    }
+
+    private Mapper[] createMappers(Map<String, String> options) throws PackagingException {
+        final List<Mapper> mappers = new ArrayList<>();
+
+        if (options.containsKey("ls")) {
+            final File listing = resolve(options.get("ls"));
+            try {
+                mappers.add(new LsMapper(listing));
+            } catch (Exception e) {
+                throw new PackagingException("Failed to read the ls mapping " + listing, e);
+            }
+        }
+
+        if (options.containsKey("mtree")) {
+            final File spec = resolve(options.get("mtree"));
+            try {
+                mappers.add(new MtreeMapper(spec));
+            } catch (Exception e) {
+                throw new PackagingException("Failed to read the mtree mapping " + spec, e);
+            }
+        }
+
+        final String[] permOptions = { "prefix", "strip", "user", "group", "uid", "gid", "filemode", "dirmode" };
+        for (String option : permOptions) {
+            if (options.containsKey(option)) {
+                mappers.add(new PermMapper(
+                    toInt(options.get("uid")),
+                    toInt(options.get("gid")),
+                    options.get("user"),
+                    options.get("group"),
+                    options.get("filemode"),
+                    options.get("dirmode"),
+                    Math.max(0, toInt(options.get("strip"))),
+                    options.get("prefix")));
+                break;
+            }
+        }
+
+        return mappers.toArray(new Mapper[0]);
+    }
+
+    private String[] paths(String src) {
+        return src.split(";");
+    }
+
+    private static String[] patterns(String value) {
+        return value == null || value.isEmpty() ? null : value.split(";");
+    }
+
+    private static int toInt(String value) throws PackagingException {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new PackagingException("Expected a number but got '" + value + "'", e);
+        }
+    }
+
+    PackageConfig createConfig(Console console) {
+        return PackageConfig.builder()
+            .data(dataProducers)
+            .conffiles(conffileProducers)
+            .sinks(sinks)
+            .deb(deb)
+            .control(control)
+            .changesIn(changesIn)
+            .changesOut(changesOut)
+            .changesSave(changesSave)
+            .compression(compression)
+            .digest(digest)
+            .keyring(keyring)
+            .key(key)
+            .passphrase(passphrase)
+            .signPackage(signPackage)
+            .signChanges(signChanges)
+            .signMethod(signMethod)
+            .signRole(signRole)
+            .signDigest(signDigest)
+            .resolver(new MapVariableResolver(variables))
+            .replaceTokens("[[", "]]")
+            .tarLongFileMode(tarLongFileMode)
+            .tarBigNumberMode(tarBigNumberMode)
+            .entryOrder(entryOrder)
+            .detectExecutables(detectExecutables)
+            .rsyncable(rsyncable)
+            .zsync(zsync)
+            .seekable(seekable)
+            .dataIndex(dataIndex)
+            .outputTimestampMs(new OutputTimestampResolver(console).resolveOutputTimestamp(outputTimestamp))
+            .build();
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.cli;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.vafer.jdeb.PackageEngine;
+import org.vafer.jdeb.utils.Utils;
+
+/**
+ * Resident build server for the command line launcher.
+ *
+ * The daemon listens on the loopback interface and writes its port and a
+ * random access token to the port file, which is only readable by its owner.
+ * A request consists of the token, the working directory of the client, the
+ * environment variables referenced by the arguments and the arguments, each
+ * on its own line. The messages of the build are sent back prefixed with
+ * <code>log</code>, the last line is <code>exit</code> and the exit code.
+ */
+final class Daemon {
+
+    private static final String STOP = "--stop";
+
+    private final File portFile;
+    private final String token;
+    private final ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    /** The builds run on the connection threads, the engine shares the signing keys between them */
+    private final PackageEngine engine = new PackageEngine(new StreamConsole(System.err, false), workers);
+
+    private volatile ServerSocket server;
+
+    /** Where the failures of the connections are reported on the daemon side */
+    private volatile PrintStream log = System.err;
+
+    Daemon(File portFile) {
+        this.portFile = portFile;
+        final byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        this.token = Utils.toHex(bytes);
+    }
+
+    /**
+     * Accepts requests until a client asks the daemon to stop.
+     */
+    void serve(PrintStream out) throws IOException {
+        log = out;
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        try {
+            writePortFile(server.getLocalPort());
+            out.println("jdeb daemon listening on port " + server.getLocalPort() + " (" + portFile + ")");
+
+            while (!server.isClosed()) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketException e) {
+                    // closed by a stop request
+                    break;
+                }
+                workers.execute(() -> handle(socket));
+            }
+        } finally {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            server.close();
+            Files.deleteIfExists(portFile.toPath());
+        }
+    }
+
+    private void writePortFile(int port) throws IOException {
+        Files.deleteIfExists(portFile.toPath());
+        if (portFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            // private from the start, the token is never readable by others
+            Files.createFile(portFile.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            // not a POSIX file system, the token still keeps out other processes not reading the file
+            Files.createFile(portFile.toPath());
+        }
+        Files.write(portFile.toPath(), (port + "\n" + token + "\n").getBytes(StandardCharsets.UTF_8));
+        portFile.deleteOnExit();
+    }
+
+    private void handle(Socket socket) {
+        PrintStream out = null;
+        try (Socket s = socket) {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintStream(new LinePrefixOutputStream(new BufferedOutputStream(s.getOutputStream()), "log "), true, "UTF-8");
+
+            final String clientToken = in.readLine();
+            if (clientToken == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), clientToken.getBytes(StandardCharsets.UTF_8))) {
+                reply(s, 3);
+                return;
+            }
+
+            final File baseDir = new File(in.readLine());
+
+            final Map<String, String> environment = new HashMap<>();
+            final int envCount = Integer.parseInt(in.readLine());
+            for (int i = 0; i < envCount; i++) {
+                final String entry = in.readLine();
+                final int eq = entry.indexOf('=');
+                environment.put(entry.substring(0, eq), entry.substring(eq + 1));
+            }
+
+            final int argCount = Integer.parseInt(in.readLine());
+            final String[] args = new String[argCount];
+            for (int i = 0; i < argCount; i++) {
+                args[i] = in.readLine();
+            }
+
+            if (argCount == 1 && STOP.equals(args[0])) {
+                out.println("stopping");
+                out.flush();
+                reply(s, 0);
+                server.close();
+                return;
+            }
+
+            final int code = Main.build(engine, baseDir, environment, out, args);
+            out.flush();
+            reply(s, code);
+
+        } catch (Exception e) {
+            // the client sent garbage, or went away and only the daemon log gets it
+            log.println("[ERROR] Request failed: " + e);
+            if (out != null && !socket.isClosed()) {
+                out.println("[ERROR] The daemon failed to handle the request: " + e);
+                out.flush();
+                try {
+                    reply(socket, 1);
+                } catch (IOException ignored) {
+                    // the client is gone
+                }
+            }
+        }
+    }
+
+    private static void reply(Socket socket, int code) throws IOException {
+        final OutputStream out = socket.getOutputStream();
+        out.write(("exit " + code + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Sends the arguments to a running daemon and prints its messages.
+     *
+     * @return the exit code of the build
+     */
+    static int connect(File portFile, File baseDir, PrintStream out, String... args) throws IOException {
+        final List<String> lines = Files.readAllLines(portFile.toPath(), StandardCharsets.UTF_8);
+        if (lines.size() < 2) {
+            throw new IOException("Invalid port file " + portFile);
+        }
+
+        final int port = Integer.parseInt(lines.get(0).trim());
+        final String token = lines.get(1).trim();
+
+        // the daemon has its own environment, forward what the arguments refer to
+        final Map<String, String> environment = new HashMap<>();
+        final List<String> arguments = new ArrayList<>();
+        boolean hasTimestamp = false;
+        for (int i = 0; i < args.length; i++) {
+            arguments.add(args[i]);
+            if ("--passphrase-env".equals(args[i]) && i + 1 < args.length && System.getenv(args[i + 1]) != null) {
+                environment.put(args[i + 1], System.getenv(args[i + 1]));
+            }
+            if ("--output-timestamp".equals(args[i])) {
+                hasTimestamp = true;
+            }
+        }
+
+        // the protocol is line based, a line break would shift the following lines
+        for (String argument : arguments) {
+            checkLine("The argument " + argument.trim().split("\\R", 2)[0], argument);
+        }
+        for (Map.Entry<String, String> entry : environment.entrySet()) {
+            checkLine("The environment variable " + entry.getKey(), entry.getValue());
+        }
+        checkLine("The working directory", baseDir.getAbsolutePath());
+
+        final String sourceDateEpoch = System.getenv("SOURCE_DATE_EPOCH");
+        if (!hasTimestamp && sourceDateEpoch != null && !sourceDateEpoch.isEmpty() && !(args.length == 1 && STOP.equals(args[0]))) {
+            arguments.add(0, "--output-timestamp");
+            arguments.add(1, sourceDateEpoch);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            final Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(token + "\n");
+            writer.write(baseDir.getAbsolutePath() + "\n");
+            writer.write(environment.size() + "\n");
+            for (Map.Entry<String, String> entry : environment.entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+            writer.write(arguments.size() + "\n");
+            for (String argument : arguments) {
+                writer.write(argument + "\n");
+            }
+            writer.flush();
+
+            final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("log ")) {
+                    out.println(line.substring(4));
+                } else if (line.startsWith("exit ")) {
+                    return Integer.parseInt(line.substring(5).trim());
+                }
+            }
+        }
+
+        throw new IOException("The daemon closed the connection without an exit code");
+    }
+
+    private static void checkLine(String what, String value) throws IOException {
+        if (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+            throw new IOException(what + " contains a line break, it can't be sent to the daemon");
+        }
+    }
+
+    /**
+     * Prefixes every line written to the underlying stream.
+     */
+    private static final class LinePrefixOutputStream extends FilterOutputStream {
+
+        private final byte[] prefix;
+        private boolean lineStart = true;
+
+        LinePrefixOutputStream(OutputStream out, String prefix) {
+            super(out);
+            this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public void write(int b) throws IOException {
+            if (lineStart) {
+                out.write(prefix);
+                lineStart = false;
+            }
+            out.write(b);
+            if (b == '\n') {
+                lineStart = true;
+            }
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+    }
+}
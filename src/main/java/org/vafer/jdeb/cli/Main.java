@@ -0,0 +1,163 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.cli;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.PackageEngine;
+import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.delta.DeltaApplier;
+import org.vafer.jdeb.delta.DeltaBuilder;
+import org.vafer.jdeb.reader.DebVerifier;
+import org.vafer.jdeb.reader.VerificationResult;
+
+/**
+ * Command line launcher for building Debian packages without Maven or Ant.
+ * With --daemon it stays resident and takes build requests from clients
+ * started with --connect, which keeps the JVM and its caches warm. With
+ * --delta and --apply-delta it creates and applies the deltas between two
+ * versions of a package. With --verify it checks the content and the
+ * signatures of packages.
+ */
+public final class Main {
+
+    private Main() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(new File(".").getAbsoluteFile(), System.getenv(), System.out, args));
+    }
+
+    /**
+     * Runs the launcher.
+     *
+     * @param baseDir the directory relative paths are resolved against
+     * @param environment the environment variables
+     * @param out where to print the messages
+     * @param args the command line arguments
+     * @return the exit code
+     */
+    static int run(File baseDir, Map<String, String> environment, PrintStream out, String... args) {
+        if (args.length == 0 || "--help".equals(args[0])) {
+            out.print(CommandLine.USAGE);
+            return args.length == 0 ? 1 : 0;
+        }
+
+        try {
+            if ("--daemon".equals(args[0]) && args.length == 2) {
+                new Daemon(new CommandLine(baseDir).resolve(args[1]).getAbsoluteFile()).serve(out);
+                return 0;
+            }
+
+            if ("--delta".equals(args[0]) && args.length == 4) {
+                final CommandLine line = new CommandLine(baseDir);
+                new DeltaBuilder(new StreamConsole(out, false)).build(line.resolve(args[1]), line.resolve(args[2]), line.resolve(args[3]));
+                return 0;
+            }
+
+            if ("--apply-delta".equals(args[0]) && args.length == 4) {
+                final CommandLine line = new CommandLine(baseDir);
+                new DeltaApplier(new StreamConsole(out, false)).apply(line.resolve(args[1]), line.resolve(args[2]), line.resolve(args[3]));
+                return 0;
+            }
+
+            if ("--verify".equals(args[0]) && args.length >= 2) {
+                return verify(new CommandLine(baseDir), out, Arrays.copyOfRange(args, 1, args.length));
+            }
+
+            if ("--connect".equals(args[0]) && args.length >= 3) {
+                return Daemon.connect(new CommandLine(baseDir).resolve(args[1]).getAbsoluteFile(), baseDir, out, Arrays.copyOfRange(args, 2, args.length));
+            }
+
+            // a single build has nothing to share, it runs in the calling thread
+            return build(new PackageEngine(new StreamConsole(out, false), Runnable::run), baseDir, environment, out, args);
+
+        } catch (Exception e) {
+            out.println("[ERROR] " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Verifies the packages and prints the result of every package.
+     *
+     * @return 0 if all the packages are valid, 1 otherwise
+     */
+    static int verify(CommandLine line, PrintStream out, String... args) throws IOException {
+        final DebVerifier verifier = new DebVerifier(new StreamConsole(out, false));
+        final List<File> debs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--keyring".equals(args[i]) && i + 1 < args.length) {
+                try (InputStream input = new FileInputStream(line.resolve(args[++i]))) {
+                    verifier.addKeyring(input);
+                }
+            } else {
+                debs.add(line.resolve(args[i]));
+            }
+        }
+
+        int exitCode = 0;
+        for (VerificationResult result : verifier.verify(debs)) {
+            for (String warning : result.getWarnings()) {
+                out.println("[WARN] " + result.getFile() + ": " + warning);
+            }
+            if (result.isValid()) {
+                out.println(result.getFile() + ": OK" + (result.getSignatures().isEmpty() ? "" : ", signed by " + String.join(", ", result.getSignatures())));
+            } else {
+                for (String problem : result.getProblems()) {
+                    out.println("[ERROR] " + result.getFile() + ": " + problem);
+                }
+                exitCode = 1;
+            }
+        }
+        return exitCode;
+    }
+
+    static int build(PackageEngine engine, File baseDir, Map<String, String> environment, PrintStream out, String... args) {
+        final CommandLine line;
+        try {
+            line = CommandLine.parse(baseDir, environment, args);
+        } catch (PackagingException e) {
+            out.println("[ERROR] " + e.getMessage());
+            out.print(CommandLine.USAGE);
+            return 2;
+        }
+
+        try {
+            final Console console = new StreamConsole(out, line.verbose);
+            engine.make(line.createConfig(console), console);
+            return 0;
+        } catch (PackagingException e) {
+            out.println("[ERROR] Failed to create the Debian package " + line.deb + ": " + e.getMessage());
+            Throwable cause = e.getCause();
+            while (cause != null) {
+                out.println("[ERROR]   caused by: " + cause);
+                cause = cause.getCause();
+            }
+            return 1;
+        }
+    }
+}
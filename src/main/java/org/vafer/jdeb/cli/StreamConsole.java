@@ -0,0 +1,50 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.cli;
+
+import java.io.PrintStream;
+
+import org.vafer.jdeb.Console;
+
+/**
+ * Console printing to a stream. debug messages are only displayed
+ * when verbose is enabled.
+ */
+class StreamConsole implements Console {
+
+    private final PrintStream out;
+    private final boolean verbose;
+
+    StreamConsole(PrintStream out, boolean verbose) {
+        this.out = out;
+        this.verbose = verbose;
+    }
+
+    public void debug(String message) {
+        if (verbose) {
+            out.println(message);
+        }
+    }
+
+    public void info(String message) {
+        out.println(message);
+    }
+
+    public void warn(String message) {
+        out.println("[WARN] " + message);
+    }
+}
@@ -64,6 +64,13 @@ public final class BinaryPackageControlFile extends ControlFile {
         parse(input);
     }
 
+    /**
+     * Creates the control file of a paragraph of a Packages index or of a control file.
+     */
+    public BinaryPackageControlFile(Deb822Paragraph paragraph) {
+        parse(paragraph);
+    }
+
     public void set(final String field, final String value) {
         super.set(field, value);
     }
@@ -57,6 +57,14 @@ public final class ChangesFile extends ControlFile {
         set("Distribution", "stable");
     }
 
+    /**
+     * Creates the changes file of a paragraph read with a {@link Deb822Reader},
+     * without the defaults of the new changes files.
+     */
+    public ChangesFile(Deb822Paragraph paragraph) {
+        parse(paragraph);
+    }
+
     /**
      * Initializes the fields on the changes file with the values of the specified
      * binary package control file.
@@ -16,9 +16,7 @@
 
 package org.vafer.jdeb.debian;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.StringReader;
 
 /**
  * A field of a control file. This class is immutable.
@@ -95,34 +93,70 @@ public class ControlField {
      */
     public String format(String value) {
         StringBuilder s = new StringBuilder();
+        try {
+            format(value, s);
+        } catch (IOException e) {
+            // a StringBuilder doesn't throw
+        }
+        return s.toString();
+    }
+
+    /**
+     * Appends the field with the specified value properly formatted, without
+     * building the lines as strings.
+     *
+     * @see #format(String)
+     */
+    public void format(CharSequence value, Appendable out) throws IOException {
+        if (value == null || isBlank(value, 0, value.length())) {
+            return;
+        }
+
+        boolean continuationLine = false;
 
-        if (value != null && value.trim().length() > 0) {
-            boolean continuationLine = false;
+        out.append(getName()).append(":");
+        final int length = value.length();
+        int start = 0;
+        if (isFirstLineEmpty()) {
+            out.append("\n");
+            continuationLine = true;
 
-            s.append(getName()).append(":");
-            if (isFirstLineEmpty()) {
-                s.append("\n");
-                continuationLine = true;
+            // a parsed value starts with the empty first line already
+            if (value.charAt(0) == '\n') {
+                start = 1;
+            } else if (value.charAt(0) == '\r') {
+                start = length > 1 && value.charAt(1) == '\n' ? 2 : 1;
             }
+        }
+
+        // the lines are split like BufferedReader.readLine() does
+        while (start < length) {
+            int end = start;
+            while (end < length && value.charAt(end) != '\n' && value.charAt(end) != '\r') {
+                end++;
+            }
+
+            if (continuationLine && isBlank(value, start, end)) {
+                // put a dot on the empty continuation lines
+                out.append(" .\n");
+            } else {
+                out.append(' ').append(value, start, end).append('\n');
+            }
+            continuationLine = true;
 
-            try {
-                BufferedReader reader = new BufferedReader(new StringReader(value));
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (continuationLine && line.trim().length() == 0) {
-                        // put a dot on the empty continuation lines
-                        s.append(" .\n");
-                    } else {
-                        s.append(" ").append(line).append("\n");
-                    }
-
-                    continuationLine = true;
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (end < length && value.charAt(end) == '\r' && end + 1 < length && value.charAt(end + 1) == '\n') {
+                end++;
             }
+            start = end + 1;
         }
+    }
 
-        return s.toString();
+    private static boolean isBlank(CharSequence value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -16,11 +16,9 @@
 
 package org.vafer.jdeb.debian;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -45,61 +43,29 @@ public abstract class ControlFile {
         parse(new ByteArrayInputStream(input.getBytes(UTF_8)));
     }
 
+    /**
+     * Parses a control file with a single paragraph, an empty line is an error.
+     */
     public void parse(InputStream input) throws IOException, ParseException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8));
-        StringBuilder buffer = new StringBuilder();
-        String field = null;
-        int linenr = 0;
-        while (true) {
-            final String line = reader.readLine();
-
-            if (line == null) {
-                // flush value of the previous field
-                set(field, buffer.toString());
-                break;
-            }
-
-            linenr++;
-
-            if (line.length() == 0) {
-                throw new ParseException("Empty line", linenr);
-            }
-
-            final char first = line.charAt(0);
-            if (first == '#') {
-                // ignore commented out lines
-                continue;
-            }
-
-            if (Character.isLetter(first)) {
-
-                // new field
-
-                // flush value of the previous field
-                set(field, buffer.toString());
-                buffer = new StringBuilder();
-
-
-                final int i = line.indexOf(':');
-
-                if (i < 0) {
-                    throw new ParseException("Line misses ':' delimiter", linenr);
-                }
-
-                field = line.substring(0, i);
-                buffer.append(line.substring(i + 1).trim());
-
-                continue;
+        try (Deb822Reader reader = new Deb822Reader(input)) {
+            final Deb822Paragraph paragraph = reader.next();
+            if (reader.getEmptyLineNumber() > 0) {
+                throw new ParseException("Empty line", reader.getEmptyLineNumber());
             }
-
-            // continuing old value, lines with only a dot are ignored
-            buffer.append('\n');
-            if (!".".equals(line.substring(1).trim())) {
-                buffer.append(line.substring(1));
+            if (paragraph != null) {
+                parse(paragraph);
             }
         }
-        reader.close();
+    }
 
+    /**
+     * Sets the fields of a paragraph read with a {@link Deb822Reader}. The
+     * values are copied, the paragraph can be reused afterwards.
+     */
+    public void parse(Deb822Paragraph paragraph) {
+        for (int i = 0; i < paragraph.size(); i++) {
+            set(paragraph.getName(i), paragraph.getValue(i));
+        }
     }
 
     public void set(String field, final String value) {
@@ -163,18 +129,36 @@ public abstract class ControlFile {
 
     public String toString(ControlField... fields) {
         StringBuilder s = new StringBuilder();
-        for (ControlField field : fields) {
-            String value = values.get(field.getName());
-            s.append(field.format(value));
+        try {
+            format(s, fields);
+        } catch (IOException e) {
+            // a StringBuilder doesn't throw
         }
         return s.toString();
     }
 
     public String toString() {
+        return toString(getAllFields());
+    }
+
+    /**
+     * Appends the fields of the control file, in the order of {@link #toString()}.
+     */
+    void format(Appendable out) throws IOException {
+        format(out, getAllFields());
+    }
+
+    private void format(Appendable out, ControlField... fields) throws IOException {
+        for (ControlField field : fields) {
+            field.format(values.get(field.getName()), out);
+        }
+    }
+
+    private ControlField[] getAllFields() {
         List<ControlField> fields = new ArrayList<>();
         fields.addAll(Arrays.asList(getFields()));
         fields.addAll(getUserDefinedFieldNames());
-        return toString(fields.toArray(new ControlField[fields.size()]));
+        return fields.toArray(new ControlField[fields.size()]);
     }
 
     /**
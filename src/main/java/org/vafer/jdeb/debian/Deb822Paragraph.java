@@ -0,0 +1,230 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.debian;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * A paragraph of a deb822 file, as returned by {@link Deb822Reader}.
+ *
+ * The paragraph keeps the raw bytes of its lines and the offsets of the
+ * fields, the values are only decoded when they are asked for. The reader
+ * refills the same instance for every paragraph, it is only valid until the
+ * next call to {@link Deb822Reader#next()}. Use {@link #toMap()} or
+ * {@link ControlFile#parse(Deb822Paragraph)} to keep the values.
+ */
+public final class Deb822Paragraph {
+
+    /** The raw lines of the paragraph, every line terminated by a new line */
+    byte[] data = new byte[4096];
+    int length;
+
+    /** The name start, name end, value start and value end of every field */
+    private int[] fields = new int[4 * 32];
+    private int count;
+
+    private int lineNumber;
+
+    /** The buffer the multiline values are unfolded into */
+    private byte[] scratch = new byte[256];
+
+    void reset() {
+        length = 0;
+        count = 0;
+        lineNumber = 0;
+    }
+
+    void ensureCapacity( int capacity ) {
+        if (capacity > data.length) {
+            final byte[] grown = new byte[Math.max(capacity, data.length * 2)];
+            System.arraycopy(data, 0, grown, 0, length);
+            data = grown;
+        }
+    }
+
+    void addField( int nameStart, int nameEnd, int valueStart, int valueEnd, int line ) {
+        if (4 * (count + 1) > fields.length) {
+            final int[] grown = new int[fields.length * 2];
+            System.arraycopy(fields, 0, grown, 0, fields.length);
+            fields = grown;
+        }
+        if (count == 0) {
+            lineNumber = line;
+        }
+        fields[4 * count] = nameStart;
+        fields[4 * count + 1] = nameEnd;
+        fields[4 * count + 2] = valueStart;
+        fields[4 * count + 3] = valueEnd;
+        count++;
+    }
+
+    void continueField( int valueEnd ) {
+        fields[4 * count - 1] = valueEnd;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the number of fields of the paragraph.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the line number of the first field of the paragraph.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns the name of the field at the specified position.
+     */
+    public String getName( int index ) {
+        final int start = fields[4 * index];
+        return new String(data, start, fields[4 * index + 1] - start, UTF_8);
+    }
+
+    /**
+     * Returns the value of the field at the specified position. The first
+     * line is trimmed, the continuation lines lose their leading space and
+     * the lines with a single dot become empty lines.
+     */
+    public String getValue( int index ) {
+        final int end = fields[4 * index + 3];
+        int start = fields[4 * index + 2];
+        int eol = indexOf('\n', start, end);
+
+        // the first line is trimmed
+        while (start < eol && (data[start] & 0xff) <= ' ') {
+            start++;
+        }
+        int firstEnd = eol;
+        while (firstEnd > start && (data[firstEnd - 1] & 0xff) <= ' ') {
+            firstEnd--;
+        }
+        if (eol == end) {
+            return new String(data, start, firstEnd - start, UTF_8);
+        }
+
+        if (scratch.length < end - start) {
+            scratch = new byte[Math.max(end - start, scratch.length * 2)];
+        }
+        int size = firstEnd - start;
+        System.arraycopy(data, start, scratch, 0, size);
+
+        while (eol < end) {
+            final int lineStart = eol + 1;
+            eol = indexOf('\n', lineStart, end);
+            scratch[size++] = '\n';
+            if (!isDot(lineStart + 1, eol)) {
+                System.arraycopy(data, lineStart + 1, scratch, size, eol - lineStart - 1);
+                size += eol - lineStart - 1;
+            }
+        }
+
+        return new String(scratch, 0, size, UTF_8);
+    }
+
+    /**
+     * Returns the value of the specified field, or null if the paragraph
+     * doesn't have it. The names are compared ignoring the case.
+     */
+    public String get( String name ) {
+        final int index = indexOf(name);
+        return index >= 0 ? getValue(index) : null;
+    }
+
+    public boolean contains( String name ) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * Returns the position of the specified field, or -1 if the paragraph
+     * doesn't have it. The field names are matched without decoding them.
+     */
+    public int indexOf( String name ) {
+        for (int i = 0; i < count; i++) {
+            final int start = fields[4 * i];
+            if (fields[4 * i + 1] - start == name.length() && matches(name, start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a copy of the decoded fields, in the order of the paragraph.
+     */
+    public Map<String, String> toMap() {
+        final Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            map.put(getName(i), getValue(i));
+        }
+        return map;
+    }
+
+    /**
+     * Writes the lines of the paragraph as they were read, without the
+     * comments and without the terminating empty line.
+     */
+    public void writeTo( OutputStream output ) throws IOException {
+        output.write(data, 0, length);
+    }
+
+    public String toString() {
+        return new String(data, 0, length, UTF_8);
+    }
+
+    private boolean matches( String name, int start ) {
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            final int b = data[start + i] & 0xff;
+            if (c != b && Character.toLowerCase(c) != Character.toLowerCase((char) b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isDot( int start, int end ) {
+        while (start < end && (data[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (data[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return end - start == 1 && data[start] == '.';
+    }
+
+    private int indexOf( int b, int start, int end ) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == b) {
+                return i;
+            }
+        }
+        return end;
+    }
+}
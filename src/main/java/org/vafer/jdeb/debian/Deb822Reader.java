@@ -0,0 +1,178 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.debian;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+
+/**
+ * Pull reader of the paragraphs of a deb822 file, like the Packages and
+ * Sources indexes or the changes files of a repository.
+ *
+ * The paragraphs are separated by empty lines and the lines starting with
+ * '#' are ignored. The lines with only spaces or tabs are continuation
+ * lines, only a really empty line ends a paragraph. The input is read in
+ * large chunks and the lines are copied into the buffer of a single
+ * {@link Deb822Paragraph} reused for all the paragraphs, nothing is decoded
+ * until a value is asked for, so files with hundreds of thousands of
+ * paragraphs are read in constant memory.
+ *
+ * <pre>
+ * try (Deb822Reader reader = new Deb822Reader(input)) {
+ *     Deb822Paragraph paragraph;
+ *     while ((paragraph = reader.next()) != null) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ */
+public final class Deb822Reader implements Closeable {
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[64 * 1024];
+    private int position;
+    private int limit;
+
+    private final Deb822Paragraph paragraph = new Deb822Paragraph();
+
+    private int lineNumber;
+    private int emptyLineNumber;
+
+    public Deb822Reader( InputStream input ) {
+        this.input = input;
+    }
+
+    /**
+     * Reads the next paragraph.
+     *
+     * @return the paragraph, valid until the next call, or null at the end of the input
+     */
+    public Deb822Paragraph next() throws IOException, ParseException {
+        paragraph.reset();
+
+        while (true) {
+            final int start = paragraph.length;
+            if (!readLine()) {
+                return paragraph.isEmpty() ? null : paragraph;
+            }
+            lineNumber++;
+
+            final byte[] data = paragraph.data;
+            final int end = paragraph.length - 1;
+
+            if (start == end) {
+                paragraph.length = start;
+                emptyLineNumber = lineNumber;
+                if (!paragraph.isEmpty()) {
+                    return paragraph;
+                }
+                continue;
+            }
+
+            final byte first = data[start];
+            if (first == '#') {
+                // ignore commented out lines
+                paragraph.length = start;
+                continue;
+            }
+
+            if (first == ' ' || first == '\t') {
+                if (paragraph.isEmpty()) {
+                    throw new ParseException("Continuation line without a field", lineNumber);
+                }
+                paragraph.continueField(end);
+                continue;
+            }
+
+            int colon = start;
+            while (colon < end && data[colon] != ':') {
+                colon++;
+            }
+            if (colon == end) {
+                throw new ParseException("Line misses ':' delimiter", lineNumber);
+            }
+            paragraph.addField(start, colon, colon + 1, end, lineNumber);
+        }
+    }
+
+    /**
+     * Returns the number of the last line read.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns the number of the last empty line read, or 0 if there was none yet.
+     */
+    public int getEmptyLineNumber() {
+        return emptyLineNumber;
+    }
+
+    public void close() throws IOException {
+        input.close();
+    }
+
+    /**
+     * Appends the next line to the paragraph, terminated by a new line
+     * whatever the line ending of the input was.
+     *
+     * @return false at the end of the input
+     */
+    private boolean readLine() throws IOException {
+        boolean read = false;
+        while (true) {
+            if (position == limit) {
+                limit = input.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    if (read) {
+                        append(buffer, 0, 0, true);
+                    }
+                    return read;
+                }
+            }
+            read = true;
+
+            int eol = position;
+            while (eol < limit && buffer[eol] != '\n') {
+                eol++;
+            }
+            final boolean complete = eol < limit;
+            append(buffer, position, eol, complete);
+            position = complete ? eol + 1 : eol;
+            if (complete) {
+                return true;
+            }
+        }
+    }
+
+    private void append( byte[] b, int start, int end, boolean complete ) {
+        paragraph.ensureCapacity(paragraph.length + end - start + 1);
+        System.arraycopy(b, start, paragraph.data, paragraph.length, end - start);
+        paragraph.length += end - start;
+        if (complete) {
+            if (paragraph.length > 0 && paragraph.data[paragraph.length - 1] == '\r') {
+                paragraph.length--;
+            }
+            paragraph.data[paragraph.length++] = '\n';
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.debian;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writer of deb822 files. The fields are formatted by their
+ * {@link ControlField} straight into the buffer of the writer, encoded as
+ * UTF-8 on the way, without building the lines as strings first.
+ *
+ * Every paragraph is terminated by an empty line with {@link #endParagraph()}.
+ */
+public final class Deb822Writer implements Appendable, Flushable, Closeable {
+
+    private final OutputStream output;
+    private final byte[] buffer = new byte[16 * 1024];
+    private int count;
+
+    /** Tells if something was written since the end of the last paragraph */
+    private boolean open;
+
+    /** The high surrogate appended alone, waiting for its low surrogate */
+    private char highSurrogate;
+
+    public Deb822Writer( OutputStream output ) {
+        this.output = output;
+    }
+
+    /**
+     * Writes a field formatted as specified by the field, nothing is written
+     * for an empty value.
+     */
+    public Deb822Writer field( ControlField field, CharSequence value ) throws IOException {
+        field.format(value, this);
+        return this;
+    }
+
+    /**
+     * Writes a simple field.
+     */
+    public Deb822Writer field( String name, CharSequence value ) throws IOException {
+        return field(new ControlField(name), value);
+    }
+
+    /**
+     * Writes a simple field with a numeric value.
+     */
+    public Deb822Writer field( String name, long value ) throws IOException {
+        append(name).append(": ").append(Long.toString(value)).append('\n');
+        return this;
+    }
+
+    /**
+     * Writes the fields of the control file as a paragraph.
+     */
+    public Deb822Writer paragraph( ControlFile controlFile ) throws IOException {
+        endParagraph();
+        controlFile.format(this);
+        return endParagraph();
+    }
+
+    /**
+     * Copies the paragraph as it was read.
+     */
+    public Deb822Writer paragraph( Deb822Paragraph paragraph ) throws IOException {
+        endParagraph();
+        if (paragraph.length > 0) {
+            open = true;
+            ensure(paragraph.length);
+            if (paragraph.length > buffer.length) {
+                output.write(paragraph.data, 0, paragraph.length);
+            } else {
+                System.arraycopy(paragraph.data, 0, buffer, count, paragraph.length);
+                count += paragraph.length;
+            }
+        }
+        return endParagraph();
+    }
+
+    /**
+     * Terminates the current paragraph with an empty line. Nothing is
+     * written if no field was written since the last paragraph.
+     */
+    public Deb822Writer endParagraph() throws IOException {
+        if (open) {
+            write('\n');
+            open = false;
+        }
+        return this;
+    }
+
+    public Deb822Writer append( CharSequence csq ) throws IOException {
+        return append(csq, 0, csq.length());
+    }
+
+    public Deb822Writer append( CharSequence csq, int start, int end ) throws IOException {
+        for (int i = start; i < end; i++) {
+            append(csq.charAt(i));
+        }
+        return this;
+    }
+
+    public Deb822Writer append( char c ) throws IOException {
+        if (c < 0x80) {
+            write(c);
+        } else if (c < 0x800) {
+            ensure(2);
+            buffer[count++] = (byte) (0xc0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c) && highSurrogate != 0) {
+            final int codePoint = Character.toCodePoint(highSurrogate, c);
+            highSurrogate = 0;
+            ensure(4);
+            buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else if (Character.isLowSurrogate(c)) {
+            write('?');
+        } else {
+            ensure(3);
+            buffer[count++] = (byte) (0xe0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+        return this;
+    }
+
+    public void flush() throws IOException {
+        output.write(buffer, 0, count);
+        count = 0;
+        output.flush();
+    }
+
+    public void close() throws IOException {
+        flush();
+        output.close();
+    }
+
+    private void write( char c ) throws IOException {
+        if (highSurrogate != 0) {
+            // a high surrogate not followed by its low surrogate
+            highSurrogate = 0;
+            write('?');
+        }
+        ensure(1);
+        buffer[count++] = (byte) c;
+        open = true;
+    }
+
+    private void ensure( int size ) throws IOException {
+        if (count + size > buffer.length) {
+            output.write(buffer, 0, count);
+            count = 0;
+        }
+        open = true;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.debian;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * A version of a Debian package, <code>[epoch:]upstream_version[-debian_revision]</code>,
+ * ordered like dpkg orders them.
+ *
+ * The order is precomputed into a binary sort key when the version is
+ * parsed, comparing two versions is then a plain comparison of bytes.
+ *
+ * @see <a href="https://www.debian.org/doc/debian-policy/ch-controlfields.html#version">Debian Policy Manual - Version</a>
+ */
+public final class DebianVersion implements Comparable<DebianVersion> {
+
+    /** Ends the non digit parts and the strings, after the tilde and before everything else */
+    private static final int END = 0x02;
+
+    private final String version;
+    private final int epoch;
+    private final String upstream;
+    private final String revision;
+    private final byte[] sortKey;
+
+    private DebianVersion( String version, int epoch, String upstream, String revision ) {
+        this.version = version;
+        this.epoch = epoch;
+        this.upstream = upstream;
+        this.revision = revision;
+        this.sortKey = sortKey(epoch, upstream, revision);
+    }
+
+    /**
+     * Parses a version.
+     *
+     * @throws IllegalArgumentException if the version is empty, the epoch is not a number
+     *         or the version has characters other than printable ASCII
+     */
+    public static DebianVersion parse( String version ) {
+        final String trimmed = version != null ? version.trim() : "";
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException("Empty version");
+        }
+
+        int epoch = 0;
+        String rest = trimmed;
+        final int colon = rest.indexOf(':');
+        if (colon >= 0) {
+            try {
+                epoch = Integer.parseInt(rest.substring(0, colon));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid epoch in the version " + version, e);
+            }
+            if (epoch < 0) {
+                throw new IllegalArgumentException("Negative epoch in the version " + version);
+            }
+            rest = rest.substring(colon + 1);
+        }
+
+        final int hyphen = rest.lastIndexOf('-');
+        final String upstream = hyphen >= 0 ? rest.substring(0, hyphen) : rest;
+        final String revision = hyphen >= 0 ? rest.substring(hyphen + 1) : "";
+        if (upstream.isEmpty()) {
+            throw new IllegalArgumentException("Empty upstream version in " + version);
+        }
+        for (int i = 0; i < rest.length(); i++) {
+            final char c = rest.charAt(i);
+            if (c <= ' ' || c > '~') {
+                throw new IllegalArgumentException("Invalid character in the version " + version);
+            }
+        }
+
+        return new DebianVersion(trimmed, epoch, upstream, revision);
+    }
+
+    /**
+     * Compares two versions like <code>dpkg --compare-versions</code>.
+     */
+    public static int compare( String version1, String version2 ) {
+        return parse(version1).compareTo(parse(version2));
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public String getUpstreamVersion() {
+        return upstream;
+    }
+
+    /**
+     * Returns the Debian revision, or an empty string if there is none.
+     */
+    public String getRevision() {
+        return revision;
+    }
+
+    /**
+     * Tells if the upstream version and the revision are only made of
+     * numbers separated by dots, which excludes the snapshots, the
+     * milestones and the release candidates.
+     */
+    public boolean isRelease() {
+        return upstream.matches("[0-9]+(\\.[0-9]+)*") && (revision.isEmpty() || revision.matches("[0-9]+(\\.[0-9]+)*"));
+    }
+
+    /**
+     * Returns the binary sort key of the version. Comparing the keys of two
+     * versions as unsigned bytes, with {@link Arrays#compareUnsigned(byte[], byte[])},
+     * orders them like dpkg, and equal versions have equal keys. The keys
+     * can be stored to sort large numbers of versions without parsing them again.
+     */
+    public byte[] getSortKey() {
+        return sortKey.clone();
+    }
+
+    public int compareTo( DebianVersion other ) {
+        return Arrays.compareUnsigned(sortKey, other.sortKey);
+    }
+
+    public boolean equals( Object o ) {
+        return o instanceof DebianVersion && Arrays.equals(sortKey, ((DebianVersion) o).sortKey);
+    }
+
+    /**
+     * Consistent with equals: the versions equal for dpkg, like 1.0 and
+     * 1.00 or 1.0 and 0:1.0-0, share the hash code.
+     */
+    public int hashCode() {
+        return Arrays.hashCode(sortKey);
+    }
+
+    /**
+     * Encodes the algorithm of dpkg: the strings are compared as alternating
+     * non digit and digit parts. The non digit parts are compared character
+     * by character with the letters before the other characters and the
+     * tilde before everything, even the end of the part. The digit parts are
+     * compared numerically.
+     *
+     * Every non digit part is written with the characters mapped to their
+     * rank and terminated with END, every digit part is written without its
+     * leading zeros and prefixed with its length, a missing part being an
+     * empty one. The epoch is encoded like a digit part, the upstream version
+     * and the revision like strings terminated with END.
+     */
+    private static byte[] sortKey( int epoch, String upstream, String revision ) {
+        final ByteArrayOutputStream key = new ByteArrayOutputStream(2 * (upstream.length() + revision.length()) + 16);
+        final String epochDigits = Integer.toString(epoch);
+        encodeNumber(key, epochDigits, 0, epochDigits.length());
+        encode(key, upstream);
+        encode(key, revision);
+        return key.toByteArray();
+    }
+
+    private static void encode( ByteArrayOutputStream key, String part ) {
+        int i = 0;
+        do {
+            while (i < part.length() && !isDigit(part.charAt(i))) {
+                key.write(rank(part.charAt(i)));
+                i++;
+            }
+            key.write(END);
+
+            final int start = i;
+            while (i < part.length() && isDigit(part.charAt(i))) {
+                i++;
+            }
+            encodeNumber(key, part, start, i);
+        } while (i < part.length());
+        key.write(END);
+    }
+
+    private static void encodeNumber( ByteArrayOutputStream key, String digits, int start, int end ) {
+        while (start < end && digits.charAt(start) == '0') {
+            start++;
+        }
+        final int length = end - start;
+        if (length > 0xffff) {
+            throw new IllegalArgumentException("Number too long in the version");
+        }
+        key.write(length >> 8);
+        key.write(length);
+        for (int i = start; i < end; i++) {
+            key.write(digits.charAt(i));
+        }
+    }
+
+    private static boolean isDigit( char c ) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * The rank of a printable ASCII character of a non digit part: the tilde
+     * below END, the letters above it and the other characters after the letters.
+     */
+    private static int rank( char c ) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return c;
+        } else if (c == '~') {
+            return 0x01;
+        } else {
+            return c + 0x80;
+        }
+    }
+
+    public String toString() {
+        return version;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.delta;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Binary diff in the way of rsync. The blocks of the source are indexed by
+ * their rolling checksum, the target is scanned byte by byte for blocks of
+ * the source, anything in between is literal. The block size grows with the
+ * source so the index never holds more than 65536 blocks.
+ */
+final class BlockDiff {
+
+    private static final int MIN_BLOCK_SIZE = 1024;
+    private static final int MAX_BLOCKS = 1 << 16;
+
+    private BlockDiff() {
+    }
+
+    static int blockSize( long sourceLength ) {
+        int blockSize = MIN_BLOCK_SIZE;
+        while (sourceLength / blockSize > MAX_BLOCKS) {
+            blockSize <<= 1;
+        }
+        return blockSize;
+    }
+
+    /**
+     * Writes the target as the copies of the source and the literals in between.
+     *
+     * @param source the file holding the source
+     * @param sourceOffset the offset of the source in the file
+     * @param sourceLength the length of the source
+     * @param target the target, buffered since it is read byte by byte
+     * @param targetLength the length of the target
+     */
+    static void diff( FileChannel source, long sourceOffset, long sourceLength, InputStream target, long targetLength, DeltaWriter writer ) throws IOException {
+        final int blockSize = blockSize(sourceLength);
+        final int blocks = (int) (sourceLength / blockSize);
+        if (blocks == 0 || targetLength < blockSize) {
+            writer.literal(target, targetLength);
+            return;
+        }
+
+        // open addressing, only the first block of every checksum is kept
+        final int capacity = Integer.highestOneBit(blocks) * 4;
+        final int[] sums = new int[capacity];
+        final int[] indexes = new int[capacity];
+        Arrays.fill(indexes, -1);
+
+        final ByteBuffer block = ByteBuffer.allocate(blockSize);
+        for (int k = 0; k < blocks; k++) {
+            read(source, block, sourceOffset + (long) k * blockSize);
+            final int sum = checksum(block.array());
+            int slot = slot(sum, capacity);
+            while (indexes[slot] >= 0 && sums[slot] != sum) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (indexes[slot] < 0) {
+                sums[slot] = sum;
+                indexes[slot] = k;
+            }
+        }
+
+        final byte[] window = new byte[blockSize];
+        IOUtils.readFully(target, window);
+        long remaining = targetLength - blockSize;
+        int head = 0;
+        int sum = checksum(window);
+
+        while (true) {
+            final int match = find(source, sourceOffset, block, sums, indexes, sum, window, head);
+            if (match >= 0) {
+                writer.copy(sourceOffset + (long) match * blockSize, blockSize);
+                if (remaining < blockSize) {
+                    writer.literal(target, remaining);
+                    return;
+                }
+                IOUtils.readFully(target, window);
+                remaining -= blockSize;
+                head = 0;
+                sum = checksum(window);
+                continue;
+            }
+
+            if (remaining == 0) {
+                writer.literal(window, head, blockSize - head);
+                writer.literal(window, 0, head);
+                return;
+            }
+
+            final int in = target.read();
+            if (in < 0) {
+                throw new IOException("Unexpected end of the target");
+            }
+            remaining--;
+            final int out = window[head] & 0xff;
+            writer.literal(out);
+            window[head] = (byte) in;
+            head = head + 1 == blockSize ? 0 : head + 1;
+
+            // rolls the checksum of rsync one byte forward
+            final int a = ((sum & 0xffff) - out + in) & 0xffff;
+            final int b = ((sum >>> 16) - blockSize * out + a) & 0xffff;
+            sum = b << 16 | a;
+        }
+    }
+
+    /**
+     * The checksum of rsync: a is the sum of the bytes, b the sum of the sums.
+     */
+    static int checksum( byte[] block ) {
+        int a = 0;
+        int b = 0;
+        for (byte x : block) {
+            a += x & 0xff;
+            b += a;
+        }
+        return (b & 0xffff) << 16 | (a & 0xffff);
+    }
+
+    private static int find( FileChannel source, long sourceOffset, ByteBuffer block, int[] sums, int[] indexes, int sum, byte[] window, int head ) throws IOException {
+        final int capacity = sums.length;
+        int slot = slot(sum, capacity);
+        while (indexes[slot] >= 0) {
+            if (sums[slot] == sum) {
+                // the checksum is weak, the bytes decide
+                final int index = indexes[slot];
+                read(source, block, sourceOffset + (long) index * window.length);
+                final byte[] candidate = block.array();
+                final int tail = window.length - head;
+                if (Arrays.equals(candidate, 0, tail, window, head, window.length)
+                    && Arrays.equals(candidate, tail, window.length, window, 0, head)) {
+                    return index;
+                }
+                return -1;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return -1;
+    }
+
+    private static int slot( int sum, int capacity ) {
+        final int hash = sum * 0x9e3779b1;
+        return (hash ^ hash >>> 15) & (capacity - 1);
+    }
+
+    private static void read( FileChannel channel, ByteBuffer buffer, long position ) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the source");
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.delta;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.tukaani.xz.XZInputStream;
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.utils.ArLayout;
+import org.vafer.jdeb.utils.MultiDigest;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Rebuilds the new version of a package from the old one and the delta
+ * written by {@link DeltaBuilder}. The delta is checked against the SHA-256
+ * of the old package before, and the result against the SHA-256 of the new
+ * package after.
+ */
+public final class DeltaApplier {
+
+    private final Console console;
+
+    public DeltaApplier( Console console ) {
+        this.console = console;
+    }
+
+    /**
+     * Writes the new package built from the old one and the delta.
+     */
+    public void apply( File oldDeb, File delta, File newDeb ) throws PackagingException {
+        File oldTar = null;
+        boolean complete = false;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(delta))) {
+            final byte[] magic = DeltaWriter.MAGIC.getBytes(US_ASCII);
+            final byte[] header = IOUtils.readFully(input, magic.length);
+            if (!DeltaWriter.MAGIC.equals(new String(header, US_ASCII))) {
+                throw new PackagingException(delta + " is not a delta of jdeb");
+            }
+
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new XZInputStream(input), DeltaWriter.CHUNK_SIZE));
+            final String oldSha256 = in.readUTF();
+            final String newSha256 = in.readUTF();
+            final long newLength = in.readLong();
+
+            if (!oldSha256.equals(DeltaBuilder.sha256(oldDeb))) {
+                throw new PackagingException("The delta " + delta + " was not created from " + oldDeb);
+            }
+
+            final MultiDigest digest = new MultiDigest("SHA-256");
+            try (FileChannel oldChannel = FileChannel.open(oldDeb.toPath(), StandardOpenOption.READ);
+                 OutputStream out = digest.wrap(new BufferedOutputStream(new FileOutputStream(newDeb), DeltaWriter.CHUNK_SIZE))) {
+
+                int record;
+                while ((record = in.read()) != DeltaWriter.END) {
+                    switch (record) {
+                        case DeltaWriter.RAW:
+                            IOUtils.copyLarge(in, out, 0, in.readInt());
+                            break;
+
+                        case DeltaWriter.DATA:
+                            final int source = in.read();
+                            final Recipe recipe = Recipe.valueOf(in.readUTF());
+                            if (source == DeltaWriter.SOURCE_TAR && oldTar == null) {
+                                final ArLayout.Member oldData = ArLayout.find(ArLayout.scan(oldDeb), "data.tar");
+                                if (oldData == null) {
+                                    throw new IOException("No data.tar member in " + oldDeb);
+                                }
+                                oldTar = DeltaBuilder.extractTar(oldChannel, oldData);
+                            }
+                            try (FileChannel sourceChannel = source == DeltaWriter.SOURCE_TAR ? FileChannel.open(oldTar.toPath(), StandardOpenOption.READ) : null;
+                                 OutputStream data = recipe.compress(CloseShieldOutputStream.wrap(out))) {
+                                applyOperations(in, sourceChannel != null ? sourceChannel : oldChannel, data);
+                            }
+                            break;
+
+                        default:
+                            throw new IOException("Invalid record " + record + " in the delta");
+                    }
+                }
+            }
+
+            if (newDeb.length() != newLength || !newSha256.equals(digest.getHexDigest())) {
+                throw new PackagingException("The package rebuilt from the delta " + delta + " differs from the original one");
+            }
+            complete = true;
+            console.info("Rebuilt " + newDeb + " from " + oldDeb + " and the delta " + delta);
+
+        } catch (IOException | NoSuchAlgorithmException | IllegalArgumentException e) {
+            throw new PackagingException("Could not apply the delta " + delta + " to " + oldDeb, e);
+        } finally {
+            DeltaBuilder.delete(oldTar);
+            if (!complete) {
+                newDeb.delete();
+            }
+        }
+    }
+
+    private static void applyOperations( DataInputStream in, FileChannel source, OutputStream out ) throws IOException {
+        int operation;
+        while ((operation = in.read()) != DeltaWriter.END) {
+            switch (operation) {
+                case DeltaWriter.LITERAL:
+                    IOUtils.copyLarge(in, out, 0, in.readInt());
+                    break;
+
+                case DeltaWriter.COPY:
+                    final long offset = in.readLong();
+                    final long length = in.readLong();
+                    if (offset < 0 || length < 0 || offset + length > source.size()) {
+                        throw new IOException("Invalid copy of " + length + " bytes at offset " + offset);
+                    }
+                    IOUtils.copyLarge(new FileRange(source, offset, length), out, new byte[DeltaWriter.CHUNK_SIZE]);
+                    break;
+
+                default:
+                    throw new IOException("Invalid operation " + operation + " in the delta");
+            }
+        }
+    }
+}
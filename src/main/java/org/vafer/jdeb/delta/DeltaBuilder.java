@@ -0,0 +1,334 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.delta;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.reader.DebReader;
+import org.vafer.jdeb.utils.ArLayout;
+import org.vafer.jdeb.utils.MultiDigest;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Builds the delta between two versions of a package, from which
+ * {@link DeltaApplier} rebuilds the new package byte for byte out of the
+ * old one.
+ *
+ * The data archives are compared entry by entry: the files found in the old
+ * package with the same MD5 digest in its md5sums are copied from it, the
+ * files with the same path are diffed against their old version, and only
+ * the rest is stored. This works on the uncompressed archive, and it's only
+ * possible when the new data archive compresses again to the same bytes on
+ * any host, which holds for the xz and bzip2 archives built by jdeb. The
+ * output of zlib depends on its version, so the gzip archives are diffed
+ * compressed like the ones of other packages, which works well with the
+ * rsyncable compression.
+ *
+ * The archives are uncompressed into temporary files and read from there,
+ * the memory used only grows with the number of entries. The format of the
+ * delta is described in the documentation of the command line.
+ */
+public final class DeltaBuilder {
+
+    private final Console console;
+
+    public DeltaBuilder( Console console ) {
+        this.console = console;
+    }
+
+    /**
+     * Writes the delta turning the old package into the new one.
+     */
+    public void build( File oldDeb, File newDeb, File delta ) throws PackagingException {
+        File oldTar = null;
+        File newTar = null;
+        try {
+            final List<ArLayout.Member> oldMembers = ArLayout.scan(oldDeb);
+            final List<ArLayout.Member> newMembers = ArLayout.scan(newDeb);
+            final ArLayout.Member oldData = find(oldMembers, "data.tar", oldDeb);
+            final ArLayout.Member newData = find(newMembers, "data.tar", newDeb);
+
+            try (FileChannel oldChannel = FileChannel.open(oldDeb.toPath(), StandardOpenOption.READ);
+                 FileChannel newChannel = FileChannel.open(newDeb.toPath(), StandardOpenOption.READ);
+                 OutputStream output = new FileOutputStream(delta)) {
+
+                output.write(DeltaWriter.MAGIC.getBytes(US_ASCII));
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new XZOutputStream(output, new LZMA2Options())));
+                out.writeUTF(sha256(oldDeb));
+                out.writeUTF(sha256(newDeb));
+                out.writeLong(newChannel.size());
+
+                final DeltaWriter writer = new DeltaWriter(out);
+
+                // everything up to the content of the data member as is
+                writer.raw(new FileRange(newChannel, 0, newData.contentOffset), newData.contentOffset);
+
+                Recipe recipe = null;
+                final List<Recipe> candidates = Recipe.candidates(newData.name);
+                // the zlib of the host applying the delta may compress differently
+                candidates.removeIf(Recipe::isZlib);
+                if (!candidates.isEmpty()) {
+                    newTar = extractTar(newChannel, newData);
+                    for (Recipe candidate : candidates) {
+                        if (compressesTo(candidate, newTar, newChannel, newData)) {
+                            recipe = candidate;
+                            break;
+                        }
+                    }
+                }
+
+                if (recipe != null) {
+                    console.info("Diffing the data of " + newDeb + " entry by entry, compressed with " + recipe);
+                    oldTar = extractTar(oldChannel, oldData);
+                    writer.beginData(DeltaWriter.SOURCE_TAR, recipe.name());
+                    diffTar(oldTar, md5sums(oldDeb), newTar, md5sums(newDeb), writer);
+                    writer.endData();
+                } else {
+                    console.info("The data of " + newDeb + " can't be compressed again the same way, diffing it compressed");
+                    writer.beginData(DeltaWriter.SOURCE_PACKAGE, Recipe.NONE.name());
+                    try (InputStream input = new BufferedInputStream(new FileRange(newChannel, newData.contentOffset, newData.size))) {
+                        BlockDiff.diff(oldChannel, oldData.contentOffset, oldData.size, input, newData.size, writer);
+                    }
+                    writer.endData();
+                }
+
+                // the padding and the members after the data as is
+                final long end = newData.contentOffset + newData.size;
+                writer.raw(new FileRange(newChannel, end, newChannel.size() - end), newChannel.size() - end);
+                writer.finish();
+                out.close();
+
+                console.info("Created the delta " + delta + " (" + delta.length() + " bytes): "
+                    + writer.getCopiedBytes() + " bytes copied, " + writer.getLiteralBytes() + " bytes stored");
+            }
+
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new PackagingException("Could not create the delta from " + oldDeb + " to " + newDeb, e);
+        } finally {
+            delete(oldTar);
+            delete(newTar);
+        }
+    }
+
+    /**
+     * Writes the tar archive as the copies of the files of the old archive
+     * and the literals in between.
+     */
+    private static void diffTar( File oldTar, Map<String, String> oldMd5sums, File newTar, Map<String, String> newMd5sums, DeltaWriter writer ) throws IOException {
+        final Map<String, TarLayout.Entry> oldByPath = new HashMap<>();
+        final Map<String, TarLayout.Entry> oldByMd5 = new HashMap<>();
+        for (TarLayout.Entry entry : TarLayout.scan(oldTar)) {
+            if (entry.file) {
+                oldByPath.putIfAbsent(entry.path, entry);
+                final String md5 = oldMd5sums.get(entry.path);
+                if (md5 != null) {
+                    oldByMd5.putIfAbsent(md5, entry);
+                }
+            }
+        }
+
+        try (FileChannel oldChannel = FileChannel.open(oldTar.toPath(), StandardOpenOption.READ);
+             FileChannel newChannel = FileChannel.open(newTar.toPath(), StandardOpenOption.READ);
+             InputStream input = new BufferedInputStream(new FileInputStream(newTar))) {
+
+            long position = 0;
+            for (TarLayout.Entry entry : TarLayout.scan(newTar)) {
+                if (!entry.file || entry.size == 0) {
+                    continue;
+                }
+
+                // the headers and the padding of the previous entry
+                writer.literal(input, entry.contentOffset - position);
+                position = entry.contentOffset + entry.size;
+
+                final String md5 = newMd5sums.get(entry.path);
+                final TarLayout.Entry same = md5 != null ? oldByMd5.get(md5) : null;
+                final TarLayout.Entry previous = oldByPath.get(entry.path);
+
+                // the digests come from the packages, the content has the last word
+                if (same != null && equal(oldChannel, same, newChannel, entry)) {
+                    writer.copy(same.contentOffset, entry.size);
+                    IOUtils.skipFully(input, entry.size);
+                } else if (previous != null && previous != same && equal(oldChannel, previous, newChannel, entry)) {
+                    writer.copy(previous.contentOffset, entry.size);
+                    IOUtils.skipFully(input, entry.size);
+                } else if (previous != null) {
+                    BlockDiff.diff(oldChannel, previous.contentOffset, previous.size, input, entry.size, writer);
+                } else {
+                    writer.literal(input, entry.size);
+                }
+            }
+
+            writer.literal(input, newChannel.size() - position);
+        }
+    }
+
+    private static boolean equal( FileChannel oldChannel, TarLayout.Entry oldEntry, FileChannel newChannel, TarLayout.Entry newEntry ) throws IOException {
+        if (oldEntry.size != newEntry.size) {
+            return false;
+        }
+        final ByteBuffer oldBuffer = ByteBuffer.allocate(DeltaWriter.CHUNK_SIZE);
+        final ByteBuffer newBuffer = ByteBuffer.allocate(DeltaWriter.CHUNK_SIZE);
+        long position = 0;
+        while (position < newEntry.size) {
+            final int n = (int) Math.min(DeltaWriter.CHUNK_SIZE, newEntry.size - position);
+            read(oldChannel, oldBuffer, oldEntry.contentOffset + position, n);
+            read(newChannel, newBuffer, newEntry.contentOffset + position, n);
+            if (!oldBuffer.equals(newBuffer)) {
+                return false;
+            }
+            position += n;
+        }
+        return true;
+    }
+
+    private static void read( FileChannel channel, ByteBuffer buffer, long position, int length ) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the archive");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Tells if the recipe compresses the uncompressed archive to the content of the data member.
+     */
+    private static boolean compressesTo( Recipe recipe, File tar, FileChannel channel, ArLayout.Member member ) throws IOException {
+        final ComparingOutputStream comparing = new ComparingOutputStream(new BufferedInputStream(new FileRange(channel, member.contentOffset, member.size)));
+        try (InputStream input = new FileInputStream(tar); OutputStream compressed = recipe.compress(comparing)) {
+            IOUtils.copy(input, compressed);
+        } catch (IOException e) {
+            if (comparing.mismatch) {
+                return false;
+            }
+            throw e;
+        }
+        return !comparing.mismatch && comparing.expected.read() < 0;
+    }
+
+    /**
+     * Compares the bytes written with the expected ones, and fails on the first difference.
+     */
+    private static final class ComparingOutputStream extends OutputStream {
+
+        private final InputStream expected;
+        private final byte[] buffer = new byte[8192];
+        private boolean mismatch;
+
+        ComparingOutputStream( InputStream expected ) {
+            this.expected = expected;
+        }
+
+        public void write( int b ) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write( byte[] b, int off, int len ) throws IOException {
+            while (len > 0 && !mismatch) {
+                final int n = IOUtils.read(expected, buffer, 0, Math.min(len, buffer.length));
+                if (n == 0 || !Arrays.equals(buffer, 0, n, b, off, off + n)) {
+                    mismatch = true;
+                }
+                off += n;
+                len -= n;
+            }
+            if (mismatch) {
+                throw new IOException("The compressed data differs");
+            }
+        }
+    }
+
+    /**
+     * Uncompresses the data member into a temporary file.
+     */
+    static File extractTar( FileChannel channel, ArLayout.Member member ) throws IOException {
+        final File tar = File.createTempFile("jdeb", ".tar");
+        try (InputStream input = uncompress(new FileRange(channel, member.contentOffset, member.size), member.name)) {
+            FileUtils.copyInputStreamToFile(input, tar);
+        } catch (IOException e) {
+            delete(tar);
+            throw e;
+        }
+        return tar;
+    }
+
+    private static InputStream uncompress( InputStream input, String name ) throws IOException {
+        final InputStream buffered = new BufferedInputStream(input, DeltaWriter.CHUNK_SIZE);
+        if (name.endsWith(".tar")) {
+            return buffered;
+        }
+        try {
+            return new CompressorStreamFactory(true).createCompressorInputStream(buffered);
+        } catch (CompressorException e) {
+            throw new IOException("Could not uncompress the member " + name, e);
+        }
+    }
+
+    /**
+     * Reads the md5sums of the package, the digests by path.
+     */
+    private static Map<String, String> md5sums( File deb ) throws IOException {
+        try (DebReader reader = DebReader.open(deb, null)) {
+            return reader.getMd5sums();
+        }
+    }
+
+    private static ArLayout.Member find( List<ArLayout.Member> members, String prefix, File deb ) throws IOException {
+        final ArLayout.Member member = ArLayout.find(members, prefix);
+        if (member == null) {
+            throw new IOException("No " + prefix + " member in " + deb);
+        }
+        return member;
+    }
+
+    static String sha256( File file ) throws IOException, NoSuchAlgorithmException {
+        return MultiDigest.digest(file, "SHA-256").get("SHA-256");
+    }
+
+    static void delete( File file ) {
+        if (file != null) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.delta;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes the records of a delta. The literals are gathered in chunks and
+ * the copies of adjacent ranges are merged into one.
+ */
+final class DeltaWriter {
+
+    static final String MAGIC = "jdeb delta 1\n";
+
+    /** The bytes of the new package, as is */
+    static final int RAW = 'R';
+
+    /** The content of the data member, built from the following operations */
+    static final int DATA = 'D';
+
+    /** Bytes written as is */
+    static final int LITERAL = 'L';
+
+    /** A range of the source copied */
+    static final int COPY = 'C';
+
+    /** The end of the operations of the data member, or of the delta */
+    static final int END = 'E';
+
+    /** The operations copy from the old package as is */
+    static final int SOURCE_PACKAGE = 0;
+
+    /** The operations copy from the uncompressed data member of the old package */
+    static final int SOURCE_TAR = 1;
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final byte[] literal = new byte[CHUNK_SIZE];
+    private int literalLength;
+    private long copyOffset;
+    private long copyLength;
+
+    private long literalBytes;
+    private long copiedBytes;
+
+    DeltaWriter( DataOutputStream out ) {
+        this.out = out;
+    }
+
+    void raw( InputStream input, long length ) throws IOException {
+        final byte[] buffer = new byte[CHUNK_SIZE];
+        while (length > 0) {
+            final int n = (int) Math.min(length, buffer.length);
+            IOUtils.readFully(input, buffer, 0, n);
+            out.write(RAW);
+            out.writeInt(n);
+            out.write(buffer, 0, n);
+            literalBytes += n;
+            length -= n;
+        }
+    }
+
+    void beginData( int source, String recipe ) throws IOException {
+        out.write(DATA);
+        out.write(source);
+        out.writeUTF(recipe);
+    }
+
+    void literal( int b ) throws IOException {
+        flushCopy();
+        if (literalLength == literal.length) {
+            flushLiteral();
+        }
+        literal[literalLength++] = (byte) b;
+    }
+
+    void literal( byte[] b, int off, int len ) throws IOException {
+        flushCopy();
+        while (len > 0) {
+            if (literalLength == literal.length) {
+                flushLiteral();
+            }
+            final int n = Math.min(len, literal.length - literalLength);
+            System.arraycopy(b, off, literal, literalLength, n);
+            literalLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    void literal( InputStream input, long length ) throws IOException {
+        flushCopy();
+        while (length > 0) {
+            if (literalLength == literal.length) {
+                flushLiteral();
+            }
+            final int n = (int) Math.min(length, literal.length - literalLength);
+            IOUtils.readFully(input, literal, literalLength, n);
+            literalLength += n;
+            length -= n;
+        }
+    }
+
+    void copy( long offset, long length ) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        flushLiteral();
+        if (copyLength > 0 && copyOffset + copyLength == offset) {
+            copyLength += length;
+            return;
+        }
+        flushCopy();
+        copyOffset = offset;
+        copyLength = length;
+    }
+
+    void endData() throws IOException {
+        flushLiteral();
+        flushCopy();
+        out.write(END);
+    }
+
+    void finish() throws IOException {
+        out.write(END);
+        out.flush();
+    }
+
+    long getLiteralBytes() {
+        return literalBytes;
+    }
+
+    long getCopiedBytes() {
+        return copiedBytes;
+    }
+
+    private void flushLiteral() throws IOException {
+        if (literalLength > 0) {
+            out.write(LITERAL);
+            out.writeInt(literalLength);
+            out.write(literal, 0, literalLength);
+            literalBytes += literalLength;
+            literalLength = 0;
+        }
+    }
+
+    private void flushCopy() throws IOException {
+        if (copyLength > 0) {
+            out.write(COPY);
+            out.writeLong(copyOffset);
+            out.writeLong(copyLength);
+            copiedBytes += copyLength;
+            copyLength = 0;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.delta;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stream over a range of a file, read with positional reads so several
+ * ranges of the same channel can be read at once.
+ */
+final class FileRange extends InputStream {
+
+    private final FileChannel channel;
+    private long position;
+    private final long end;
+
+    FileRange( FileChannel channel, long offset, long length ) {
+        this.channel = channel;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if (position >= end) {
+            return -1;
+        }
+        final int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+        if (n < 0) {
+            throw new IOException("Unexpected end of the file at offset " + position);
+        }
+        position += n;
+        return n;
+    }
+
+    public long skip( long n ) {
+        final long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.delta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.vafer.jdeb.ContentType;
+import org.vafer.jdeb.utils.AdaptiveGzipOutputStream;
+
+/**
+ * Feeds a tar archive to the gzip stream the way the data builder does: in
+ * blocks of 512 bytes, and in the adaptive mode with the fast level for the
+ * files with compressed content, switched before the headers of the file.
+ * The output is then the same as the one of the data builder.
+ */
+final class GzipTarOutputStream extends OutputStream {
+
+    private final AdaptiveGzipOutputStream gzip;
+    private final boolean adaptive;
+
+    private final byte[] block = new byte[TarLayout.BLOCK_SIZE];
+    private int blockLength;
+
+    /** The headers of the next entry, held back until its content type is known */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /** The remaining blocks of a GNU long name or pax header */
+    private long headerBlocks;
+
+    /** The remaining blocks of the content of the current entry */
+    private long contentBlocks;
+
+    /** The size of the file whose first block of content tells its type */
+    private long detectSize = -1;
+
+    /** Past the end of the entries */
+    private boolean trailer;
+
+    GzipTarOutputStream( AdaptiveGzipOutputStream gzip, boolean adaptive ) {
+        this.gzip = gzip;
+        this.adaptive = adaptive;
+    }
+
+    public void write( int b ) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write( byte[] b, int off, int len ) throws IOException {
+        while (len > 0) {
+            final int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == block.length) {
+                onBlock();
+                blockLength = 0;
+            }
+        }
+    }
+
+    private void onBlock() throws IOException {
+        if (!adaptive || trailer) {
+            gzip.write(block);
+
+        } else if (detectSize >= 0) {
+            gzip.setFast(ContentType.detect(block, 0, (int) Math.min(block.length, detectSize)).isCompressed());
+            flushPending();
+            gzip.write(block);
+            detectSize = -1;
+
+        } else if (contentBlocks > 0) {
+            gzip.write(block);
+            contentBlocks--;
+
+        } else if (headerBlocks > 0) {
+            pending.write(block);
+            headerBlocks--;
+
+        } else if (isEmpty(block)) {
+            flushPending();
+            gzip.write(block);
+            trailer = true;
+
+        } else {
+            final TarArchiveEntry header;
+            try {
+                header = new TarArchiveEntry(block);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid tar header", e);
+            }
+            final long blocks = TarLayout.blocks(header.getSize());
+
+            if (header.isGNULongNameEntry() || header.isGNULongLinkEntry() || header.isPaxHeader() || header.isGlobalPaxHeader()) {
+                pending.write(block);
+                headerBlocks = blocks;
+            } else if (header.isFile() && header.getSize() > 0) {
+                pending.write(block);
+                detectSize = header.getSize();
+                contentBlocks = blocks - 1;
+            } else {
+                if (header.isFile()) {
+                    gzip.setFast(ContentType.detect(block, 0, 0).isCompressed());
+                }
+                flushPending();
+                gzip.write(block);
+                contentBlocks = blocks;
+            }
+        }
+    }
+
+    private void flushPending() throws IOException {
+        final byte[] headers = pending.toByteArray();
+        for (int off = 0; off < headers.length; off += block.length) {
+            gzip.write(headers, off, block.length);
+        }
+        pending.reset();
+    }
+
+    private static boolean isEmpty( byte[] block ) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void close() throws IOException {
+        try {
+            flushPending();
+            if (blockLength > 0) {
+                gzip.write(block, 0, blockLength);
+            }
+        } finally {
+            gzip.close();
+        }
+    }
+}
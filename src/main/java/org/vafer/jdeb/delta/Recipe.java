@@ -0,0 +1,98 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.delta;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.vafer.jdeb.Compression;
+import org.vafer.jdeb.utils.AdaptiveGzipOutputStream;
+
+/**
+ * The ways jdeb compresses the data archive. A delta only keeps the changes
+ * of the uncompressed archive when one of them compresses it again to the
+ * very same bytes.
+ */
+enum Recipe {
+
+    NONE(Compression.NONE, false, false, false),
+    GZIP(Compression.GZIP, false, false, false),
+    GZIP_ADAPTIVE(Compression.GZIP, true, false, false),
+    GZIP_RSYNCABLE(Compression.GZIP, false, true, false),
+    GZIP_ADAPTIVE_RSYNCABLE(Compression.GZIP, true, true, false),
+    BZIP2(Compression.BZIP2, false, false, false),
+    XZ(Compression.XZ, false, false, false),
+    XZ_RSYNCABLE(Compression.XZ, false, true, false),
+    XZ_SEEKABLE(Compression.XZ, false, false, true);
+
+    private final Compression compression;
+    private final boolean adaptive;
+    private final boolean rsyncable;
+    private final boolean seekable;
+
+    Recipe( Compression compression, boolean adaptive, boolean rsyncable, boolean seekable ) {
+        this.compression = compression;
+        this.adaptive = adaptive;
+        this.rsyncable = rsyncable;
+        this.seekable = seekable;
+    }
+
+    /**
+     * Returns a stream compressing the uncompressed archive to the stream.
+     * Closing it completes the compressed data and closes the stream.
+     */
+    OutputStream compress( OutputStream out ) throws IOException {
+        final OutputStream compressed;
+        try {
+            compressed = compression.toCompressedOutputStream(out, rsyncable, seekable);
+        } catch (CompressorException e) {
+            throw new IOException("Could not create the " + this + " stream", e);
+        }
+        if (compressed instanceof AdaptiveGzipOutputStream) {
+            return new GzipTarOutputStream((AdaptiveGzipOutputStream) compressed, adaptive);
+        }
+        return compressed;
+    }
+
+    /**
+     * Whether the recipe compresses with the zlib of the JVM, whose output
+     * may differ between the hosts. The other compressions are done in Java.
+     */
+    boolean isZlib() {
+        return compression == Compression.GZIP;
+    }
+
+    /**
+     * The recipes worth trying for the data member, the ones of the current
+     * version of jdeb first.
+     */
+    static List<Recipe> candidates( String memberName ) {
+        final List<Recipe> candidates = new ArrayList<>();
+        for (Recipe recipe : values()) {
+            if (memberName.equals("data.tar" + recipe.compression.getExtension())) {
+                candidates.add(recipe);
+            }
+        }
+        if (candidates.remove(GZIP_ADAPTIVE)) {
+            candidates.add(0, GZIP_ADAPTIVE);
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.delta;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.vafer.jdeb.utils.Utils;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * The entries of a tar archive and where their headers and content are.
+ * Only the headers are read, the content is skipped.
+ */
+final class TarLayout {
+
+    static final int BLOCK_SIZE = TarConstants.DEFAULT_RCDSIZE;
+
+    static final class Entry {
+        /** The name, without the leading ./ or / */
+        final String path;
+        /** The offset of the first header, including the GNU long name and pax headers before the entry */
+        final long offset;
+        final long contentOffset;
+        final long size;
+        final boolean file;
+
+        Entry( String path, long offset, long contentOffset, long size, boolean file ) {
+            this.path = path;
+            this.offset = offset;
+            this.contentOffset = contentOffset;
+            this.size = size;
+            this.file = file;
+        }
+
+        /** The offset of the next entry, after the content padded to a full block */
+        long end() {
+            return contentOffset + blocks(size) * BLOCK_SIZE;
+        }
+    }
+
+    private TarLayout() {
+    }
+
+    /**
+     * Scans the headers of the archive, up to the first empty block.
+     */
+    static List<Entry> scan( File file ) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+            final long length = channel.size();
+
+            long offset = 0;
+            // the offset of the first header of the next entry
+            long entryOffset = -1;
+            String longName = null;
+            while (offset + BLOCK_SIZE <= length) {
+                readFully(channel, block, offset);
+                if (isEmpty(block.array())) {
+                    break;
+                }
+
+                final TarArchiveEntry header;
+                try {
+                    header = new TarArchiveEntry(block.array());
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid tar header at offset " + offset + " of " + file, e);
+                }
+                if (entryOffset < 0) {
+                    entryOffset = offset;
+                }
+                final long size = header.getSize();
+                final long contentOffset = offset + BLOCK_SIZE;
+
+                if (header.isGNULongNameEntry() || header.isPaxHeader()) {
+                    final String name = readName(channel, contentOffset, size, header.isPaxHeader());
+                    if (name != null) {
+                        longName = name;
+                    }
+                } else if (!header.isGNULongLinkEntry() && !header.isGlobalPaxHeader()) {
+                    final String name = longName != null ? longName : header.getName();
+                    entries.add(new Entry(Utils.normalizePath(name), entryOffset, contentOffset, size, header.isFile()));
+                    longName = null;
+                    entryOffset = -1;
+                }
+
+                offset = contentOffset + blocks(size) * BLOCK_SIZE;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the name from the content of a GNU long name entry or a pax header.
+     */
+    private static String readName( FileChannel channel, long offset, long size, boolean pax ) throws IOException {
+        if (size > 64 * 1024) {
+            throw new IOException("The tar header at offset " + offset + " is too long");
+        }
+        final ByteBuffer content = ByteBuffer.allocate((int) size);
+        while (content.hasRemaining()) {
+            if (channel.read(content, offset + content.position()) < 0) {
+                throw new IOException("Unexpected end of the tar archive");
+            }
+        }
+
+        final byte[] bytes = content.array();
+        if (!pax) {
+            int end = 0;
+            while (end < bytes.length && bytes[end] != 0) {
+                end++;
+            }
+            return new String(bytes, 0, end, UTF_8);
+        }
+
+        // records of the form "<length> <key>=<value>\n", the length counts the bytes of the whole record
+        int position = 0;
+        while (position < bytes.length) {
+            int space = position;
+            int recordLength = 0;
+            while (space < bytes.length && bytes[space] >= '0' && bytes[space] <= '9') {
+                recordLength = recordLength * 10 + bytes[space] - '0';
+                space++;
+            }
+            if (space >= bytes.length || bytes[space] != ' ' || recordLength <= space - position || position + recordLength > bytes.length) {
+                break;
+            }
+            final String record = new String(bytes, space + 1, position + recordLength - space - 2, UTF_8);
+            if (record.startsWith("path=")) {
+                return record.substring("path=".length());
+            }
+            position += recordLength;
+        }
+        return null;
+    }
+
+    static long blocks( long size ) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    private static boolean isEmpty( byte[] block ) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void readFully( FileChannel channel, ByteBuffer buffer, long position ) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the tar archive");
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.vafer.jdeb.ContentType;
+
+/**
+ * Maps a file entry knowing the kind of its content. Unlike the other
+ * mappers it's applied by the data builder, once the first bytes of the
+ * file have been read.
+ */
+public interface ContentMapper {
+
+    TarArchiveEntry map( final TarArchiveEntry entry, final ContentType type );
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.vafer.jdeb.ContentType;
+
+/**
+ * Makes the scripts and the ELF binaries executable by whoever can read them.
+ */
+public final class ExecutableMapper implements ContentMapper {
+
+    public static final ContentMapper INSTANCE = new ExecutableMapper();
+
+    private ExecutableMapper() {
+    }
+
+    public TarArchiveEntry map( final TarArchiveEntry pEntry, final ContentType pType ) {
+        if (pType.isExecutable()) {
+            final int mode = pEntry.getMode();
+            pEntry.setMode(mode | (mode & 0444) >> 2);
+        }
+        return pEntry;
+    }
+
+}
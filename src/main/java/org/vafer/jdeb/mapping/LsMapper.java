@@ -15,24 +15,24 @@
  */
 package org.vafer.jdeb.mapping;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.vafer.jdeb.utils.CacheDirectory;
 
 /**
  * Reads permissions and ownerships from a "ls -laR &gt; mapping.txt" dump and
  * maps entries accordingly.
+ *
+ * The listing is kept as a compact index, and the index of a listing file
+ * is cached in the private cache directory of the user so the next builds
+ * only map it into memory.
  */
 public final class LsMapper implements Mapper {
 
-    private final Map<String, TarArchiveEntry> mapping;
+    private final PathIndex index;
 
 
     public final static class ParseError extends Exception {
@@ -46,7 +46,11 @@ public final class LsMapper implements Mapper {
 
 
     public LsMapper( final InputStream pInput ) throws IOException, ParseError {
-        mapping = parse(pInput);
+        index = PathIndex.parse(pInput, new LsParser());
+    }
+
+    public LsMapper( final File pListing ) throws IOException, ParseError {
+        index = PathIndex.load(pListing, "ls", new LsParser(), CacheDirectory.get(PathIndex.CACHE_NAME));
     }
 
     /*
@@ -62,162 +66,22 @@ drwxr-xr-x    4 tcurdt  tcurdt   136 Jun 25 03:48 classes
 ./trunk/target/test-classes/org/vafer/dependency/classes:
      */
 
-    final private Pattern basePattern = Pattern.compile("^\\./(.*):$");
-    final private Pattern totalPattern = Pattern.compile("^total ([0-9]+)$");
-    final private Pattern dirPattern = Pattern.compile("^d([rwx-]{9})\\s+([0-9]+)\\s+(\\S*)\\s+(\\S*)\\s+([0-9]+)\\s+(.*)\\s+[.]{1,2}$");
-    final private Pattern filePattern = Pattern.compile("^([d-])([rwx-]{9})\\s+([0-9]+)\\s+(\\S*)\\s+(\\S*)\\s+([0-9]+)\\s+(.*)\\s+(.*)$");
-    final private Pattern newlinePattern = Pattern.compile("$");
-
-    private String readBase( final BufferedReader reader ) throws IOException, ParseError {
-        final String line = reader.readLine();
-        if (line == null) {
-            return null;
-        }
-        final Matcher matcher = basePattern.matcher(line);
-        if (!matcher.matches()) {
-            throw new ParseError("expected base line but got \"" + line + "\"");
-        }
-        return matcher.group(1);
-    }
-
-    private String readTotal( final BufferedReader reader ) throws IOException, ParseError {
-        final String line = reader.readLine();
-        final Matcher matcher = totalPattern.matcher(line);
-        if (!matcher.matches()) {
-            throw new ParseError("expected total line but got \"" + line + "\"");
-        }
-        return matcher.group(1);
-    }
-
-    private TarArchiveEntry readDir( final BufferedReader reader, final String base ) throws IOException, ParseError {
-        final String current = reader.readLine();
-        final Matcher currentMatcher = dirPattern.matcher(current);
-        if (!currentMatcher.matches()) {
-            throw new ParseError("expected dirline but got \"" + current + "\"");
-        }
-
-        final String parent = reader.readLine();
-        final Matcher parentMatcher = dirPattern.matcher(parent);
-        if (!parentMatcher.matches()) {
-            throw new ParseError("expected dirline but got \"" + parent + "\"");
-        }
-
-        final TarArchiveEntry entry = new TarArchiveEntry(base, true);
-
-        entry.setMode(convertModeFromString(currentMatcher.group(1)));
-        entry.setUserName(currentMatcher.group(3));
-        entry.setGroupName(currentMatcher.group(4));
-
-        return entry;
-    }
-
-
-    private int convertModeFromString( final String mode ) {
-
-        final char[] m = mode.toCharArray();
-        /*
-           -rwxrwxrwx
-
-           4000    set-user-ID-on-execution bit
-           2000    set-user-ID-on-execution bit
-           1000    sticky bit
-           0400    allow read by owner.
-           0200    allow write by owner.
-           0100    execute / search
-           0040    allow read by group members.
-           0020    allow write by group members.
-           0010    execute / search
-           0004    allow read by others.
-           0002    allow write by others.
-           0001    execute / search
-         */
-        // TODO: simplified - needs fixing
-        int sum = 0;
-        int bit = 1;
-        for (int i = m.length - 1; i >= 0; i--) {
-            if (m[i] != '-') {
-                sum += bit;
-            }
-            bit += bit;
-        }
-        return sum;
-    }
-
-    private TarArchiveEntry readFile( final BufferedReader reader, final String base ) throws IOException, ParseError {
-
-        while (true) {
-            final String line = reader.readLine();
-
-            if (line == null) {
-                return null;
-            }
-
-            final Matcher currentMatcher = filePattern.matcher(line);
-            if (!currentMatcher.matches()) {
-                final Matcher newlineMatcher = newlinePattern.matcher(line);
-                if (newlineMatcher.matches()) {
-                    return null;
-                }
-                throw new ParseError("expected file line but got \"" + line + "\"");
-            }
-
-            final String type = currentMatcher.group(1);
-            if (type.startsWith("-")) {
-                final TarArchiveEntry entry = new TarArchiveEntry(base + "/" + currentMatcher.group(8), true);
-
-                entry.setMode(convertModeFromString(currentMatcher.group(2)));
-                entry.setUserName(currentMatcher.group(4));
-                entry.setGroupName(currentMatcher.group(5));
-
-                return entry;
-            }
+    /**
+     * Returns a copy of the entry with the permissions and the ownership of
+     * the listing, or the entry itself if it isn't listed.
+     */
+    public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
+        final String name = pEntry.getName();
+        int position = index.find(name);
+        if (position < 0 && name.length() > 1 && name.endsWith("/")) {
+            // the directories are listed without the trailing slash
+            position = index.find(name.substring(0, name.length() - 1));
         }
-
-    }
-
-    private Map<String, TarArchiveEntry> parse( final InputStream pInput ) throws IOException, ParseError {
-        final Map<String, TarArchiveEntry> mapping = new HashMap<>();
-
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(pInput));
-
-        boolean first = true;
-        while (true) {
-
-            final String base;
-            if (first) {
-                base = "";
-                first = false;
-            } else {
-                base = readBase(reader);
-                if (base == null) {
-                    break;
-                }
-            }
-
-            readTotal(reader);
-            final TarArchiveEntry dir = readDir(reader, base);
-            mapping.put(dir.getName(), dir);
-
-            while (true) {
-                final TarArchiveEntry file = readFile(reader, base);
-
-                if (file == null) {
-                    break;
-                }
-
-                mapping.put(file.getName(), file);
-            }
+        if (position < 0) {
+            return pEntry;
         }
 
-        return mapping;
-    }
-
-    public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
-        final TarArchiveEntry entry = mapping.get(pEntry.getName());
-        if (entry != null) {
-            return entry;
-        }
-        return pEntry;
+        return index.apply(position, pEntry);
     }
 
 }
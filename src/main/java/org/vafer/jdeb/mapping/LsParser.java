@@ -0,0 +1,216 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.vafer.jdeb.mapping.LsMapper.ParseError;
+
+/**
+ * Reads a "ls -laR" dump line by line, without regular expressions. The
+ * stream is not closed.
+ */
+final class LsParser implements PathIndex.Parser {
+
+    /** The fields of the last line */
+    private char type;
+    private int mode;
+    private String user;
+    private String group;
+    private String name;
+
+    public void parse( final InputStream input, final PathIndex.Builder builder ) throws IOException, ParseError {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+        String line = reader.readLine();
+        String base = "";
+
+        // GNU ls starts with a header for the current directory, BSD ls doesn't
+        if (".:".equals(line)) {
+            line = reader.readLine();
+        }
+
+        while (true) {
+            expectTotal(line);
+
+            parseLine(reader.readLine(), "expected dirline but got ");
+            if (type != 'd' || !".".equals(name)) {
+                throw new ParseError("expected dirline but got \"" + name + "\"");
+            }
+            final int dirMode = mode;
+            final String dirUser = user;
+            final String dirGroup = group;
+
+            parseLine(reader.readLine(), "expected dirline but got ");
+            if (type != 'd' || !"..".equals(name)) {
+                throw new ParseError("expected dirline but got \"" + name + "\"");
+            }
+
+            builder.add(base, dirMode, -1, -1, dirUser, dirGroup);
+
+            while (true) {
+                line = reader.readLine();
+                if (line == null || line.isEmpty()) {
+                    break;
+                }
+                parseLine(line, "expected file line but got ");
+                // only the regular files, the directories get their own section
+                if (type == '-') {
+                    builder.add(base + "/" + name, mode, -1, -1, user, group);
+                }
+            }
+
+            if (line == null) {
+                return;
+            }
+
+            line = reader.readLine();
+            if (line == null) {
+                return;
+            }
+            if (!line.startsWith("./") || !line.endsWith(":")) {
+                throw new ParseError("expected base line but got \"" + line + "\"");
+            }
+            base = line.substring(2, line.length() - 1);
+
+            line = reader.readLine();
+        }
+    }
+
+    private static void expectTotal( final String line ) throws ParseError {
+        if (line == null || !line.startsWith("total ") || !isDigits(line, 6, line.length())) {
+            throw new ParseError("expected total line but got \"" + line + "\"");
+        }
+    }
+
+    private static boolean isDigits( final String s, final int start, final int end ) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits "-rwxr-xr-x  1 user group  size date name" into the fields.
+     */
+    private void parseLine( final String line, final String error ) throws ParseError {
+        if (line == null || line.length() < 10) {
+            throw new ParseError(error + "\"" + line + "\"");
+        }
+
+        type = line.charAt(0);
+        if (type != '-' && type != 'd' && type != 'l' && type != 'c' && type != 'b' && type != 'p' && type != 's') {
+            throw new ParseError(error + "\"" + line + "\"");
+        }
+        mode = parseMode(line);
+        if (mode < 0) {
+            throw new ParseError(error + "\"" + line + "\"");
+        }
+
+        // an alternate access method may follow the permissions (ACL, SELinux context)
+        int i = 10;
+        if (i < line.length() && (line.charAt(i) == '+' || line.charAt(i) == '.' || line.charAt(i) == '@')) {
+            i++;
+        }
+
+        final int linksStart = skipSpaces(line, i, error);
+        final int linksEnd = token(line, linksStart);
+        if (!isDigits(line, linksStart, linksEnd)) {
+            throw new ParseError(error + "\"" + line + "\"");
+        }
+
+        final int userStart = skipSpaces(line, linksEnd, error);
+        final int userEnd = token(line, userStart);
+        final int groupStart = skipSpaces(line, userEnd, error);
+        final int groupEnd = token(line, groupStart);
+        final int sizeStart = skipSpaces(line, groupEnd, error);
+
+        if (type == '-' || type == 'd') {
+            final int sizeEnd = token(line, sizeStart);
+            if (!isDigits(line, sizeStart, sizeEnd)) {
+                throw new ParseError(error + "\"" + line + "\"");
+            }
+            skipSpaces(line, sizeEnd, error);
+        }
+
+        // the name is the last field, the date before it has a locale dependent format
+        int nameStart = line.length();
+        while (nameStart > sizeStart && !Character.isWhitespace(line.charAt(nameStart - 1))) {
+            nameStart--;
+        }
+
+        user = line.substring(userStart, userEnd);
+        group = line.substring(groupStart, groupEnd);
+        name = line.substring(nameStart);
+    }
+
+    private static int skipSpaces( final String line, final int start, final String error ) throws ParseError {
+        int i = start;
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i == start || i == line.length()) {
+            throw new ParseError(error + "\"" + line + "\"");
+        }
+        return i;
+    }
+
+    private static int token( final String line, final int start ) {
+        int i = start;
+        while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Converts the permissions of a listing (e.g. "rwsr-xr-t") into a mode,
+     * with the setuid, setgid and sticky bits.
+     *
+     * @return the mode, or -1 if the permissions are malformed
+     */
+    static int parseMode( final String line ) {
+        int mode = 0;
+        for (int i = 0; i < 9; i++) {
+            final char c = line.charAt(1 + i);
+            final int bit = 1 << (8 - i);
+            final int position = i % 3;
+            if (c == '-') {
+                continue;
+            }
+            if (position == 0 && c == 'r' || position == 1 && c == 'w' || position == 2 && c == 'x') {
+                mode |= bit;
+            } else if (position == 2 && i < 6 && (c == 's' || c == 'S')) {
+                // setuid for the owner, setgid for the group
+                mode |= (i < 3 ? 04000 : 02000) | (c == 's' ? bit : 0);
+            } else if (position == 2 && i == 8 && (c == 't' || c == 'T')) {
+                mode |= 01000 | (c == 't' ? bit : 0);
+            } else {
+                return -1;
+            }
+        }
+        return mode;
+    }
+}
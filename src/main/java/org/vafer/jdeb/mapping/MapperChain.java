@@ -0,0 +1,77 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+
+/**
+ * Runs a sequence of mappers as a single one. The permission and rules
+ * mappers are fused: they only pass the name along and update the other
+ * attributes in place, the name of the entry is set once at the end instead
+ * of being rebuilt and normalized by every mapper. Any other mapper gets
+ * the entry as it would have standalone.
+ */
+public final class MapperChain implements Mapper {
+
+    private final Mapper[] mappers;
+
+    private MapperChain( final Mapper[] pMappers ) {
+        mappers = pMappers;
+    }
+
+    /**
+     * Returns a mapper applying the specified mappers in order.
+     */
+    public static Mapper compile( final Mapper... pMappers ) {
+        if (pMappers == null || pMappers.length == 0) {
+            return NullMapper.INSTANCE;
+        }
+        if (pMappers.length == 1) {
+            return pMappers[0];
+        }
+        return new MapperChain(pMappers.clone());
+    }
+
+    public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
+        TarArchiveEntry entry = pEntry;
+        String name = entry.getName();
+        boolean renamed = false;
+
+        for (Mapper mapper : mappers) {
+            if (mapper instanceof PermMapper) {
+                name = ((PermMapper) mapper).map(name, entry);
+                renamed = true;
+            } else if (mapper instanceof RulesMapper) {
+                final String mapped = ((RulesMapper) mapper).map(name, entry);
+                renamed |= mapped != name;
+                name = mapped;
+            } else {
+                if (renamed) {
+                    entry.setName(name);
+                    renamed = false;
+                }
+                entry = mapper.map(entry);
+                name = entry.getName();
+            }
+        }
+
+        if (renamed) {
+            entry.setName(name);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.vafer.jdeb.mapping.LsMapper.ParseError;
+import org.vafer.jdeb.utils.CacheDirectory;
+import org.vafer.jdeb.utils.MtreeReader;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Reads permissions and ownerships from a BSD mtree specification and maps
+ * entries accordingly. Only the keywords present in the specification are
+ * applied: mode, uid, gid, uname and gname.
+ *
+ * Like for the {@link LsMapper} the specification is kept as a compact
+ * index, cached on disk when read from a file.
+ */
+public final class MtreeMapper implements Mapper {
+
+    private static final PathIndex.Parser PARSER = new PathIndex.Parser() {
+        public void parse( InputStream input, PathIndex.Builder builder ) throws IOException {
+            final MtreeReader reader = new MtreeReader(new InputStreamReader(input, UTF_8));
+            MtreeReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                if (!entry.getPath().isEmpty()) {
+                    builder.add(entry.getPath(), entry.getMode(), entry.getUserId(), entry.getGroupId(), entry.getUserName(), entry.getGroupName());
+                }
+            }
+        }
+    };
+
+    private final PathIndex index;
+
+    public MtreeMapper( final InputStream pInput ) throws IOException {
+        try {
+            index = PathIndex.parse(pInput, PARSER);
+        } catch (ParseError e) {
+            // never thrown by the mtree parser
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    public MtreeMapper( final File pSpec ) throws IOException {
+        try {
+            index = PathIndex.load(pSpec, "mtree", PARSER, CacheDirectory.get(PathIndex.CACHE_NAME));
+        } catch (ParseError e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns a copy of the entry with the permissions and the ownership of
+     * the specification, or the entry itself if it isn't specified.
+     */
+    public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
+        String name = pEntry.getName();
+        if (name.startsWith("./")) {
+            name = name.substring(2);
+        } else if (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        if (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+        }
+
+        final int position = index.find(name);
+        if (position < 0) {
+            return pEntry;
+        }
+
+        return index.apply(position, pEntry);
+    }
+
+}
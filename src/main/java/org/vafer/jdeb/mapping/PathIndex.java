@@ -0,0 +1,532 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.vafer.jdeb.mapping.LsMapper.ParseError;
+import org.vafer.jdeb.utils.Utils;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * The permissions and ownerships of a large number of paths, stored compactly.
+ *
+ * <p>The paths are sorted and concatenated as UTF-8 into a single arena,
+ * the modes, the ids and the indexes of the user and group names are kept
+ * in primitive arrays and the names themselves are interned. A lookup is a
+ * binary search over the arena, without any object per entry. A value that
+ * isn't specified is stored as -1.</p>
+ *
+ * <p>The index can be saved in a binary form that is memory mapped when
+ * loaded again, the source is then neither read nor parsed.</p>
+ */
+final class PathIndex {
+
+    /** "JDLS" */
+    private static final int MAGIC = 0x4a444c53;
+    private static final int VERSION = 2;
+
+    /** The name of the directory the indexes are cached in, below the cache directory of jdeb */
+    static final String CACHE_NAME = "index";
+
+    /** Beyond this number of indexes kept in memory the cache is reset */
+    private static final int CACHE_SIZE = 16;
+
+    private static final Map<List<Object>, PathIndex> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Reads a source of permissions into an index.
+     */
+    interface Parser {
+
+        void parse( InputStream input, Builder builder ) throws IOException, ParseError;
+    }
+
+    private final ByteBuffer arena;
+    /** The start of every path in the arena, followed by the end of the last one */
+    private final IntBuffer offsets;
+    private final IntBuffer modes;
+    private final LongBuffer userIds;
+    private final LongBuffer groupIds;
+    private final IntBuffer users;
+    private final IntBuffer groups;
+    private final String[] userNames;
+    private final String[] groupNames;
+
+    private PathIndex( ByteBuffer arena, IntBuffer offsets, IntBuffer modes, LongBuffer userIds, LongBuffer groupIds, IntBuffer users, IntBuffer groups, String[] userNames, String[] groupNames ) {
+        this.arena = arena;
+        this.offsets = offsets;
+        this.modes = modes;
+        this.userIds = userIds;
+        this.groupIds = groupIds;
+        this.users = users;
+        this.groups = groups;
+        this.userNames = userNames;
+        this.groupNames = groupNames;
+    }
+
+    int size() {
+        return modes.limit();
+    }
+
+    /**
+     * Returns the position of the path in the index, or -1 if it isn't listed.
+     */
+    int find( final String path ) {
+        final byte[] key = path.getBytes(UTF_8);
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final int cmp = compare(offsets.get(middle), offsets.get(middle + 1), key);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    int getMode( int index ) {
+        return modes.get(index);
+    }
+
+    long getUserId( int index ) {
+        return userIds.get(index);
+    }
+
+    long getGroupId( int index ) {
+        return groupIds.get(index);
+    }
+
+    String getUserName( int index ) {
+        final int user = users.get(index);
+        return user < 0 ? null : userNames[user];
+    }
+
+    String getGroupName( int index ) {
+        final int group = groups.get(index);
+        return group < 0 ? null : groupNames[group];
+    }
+
+    /**
+     * Returns a copy of the entry with the permissions and the ownership
+     * specified at the position, the others are kept.
+     */
+    TarArchiveEntry apply( final int index, final TarArchiveEntry pEntry ) {
+        final TarArchiveEntry entry = new TarArchiveEntry(pEntry.getName(), pEntry.getLinkFlag(), true);
+        entry.setLinkName(pEntry.getLinkName());
+        entry.setSize(pEntry.getSize());
+        entry.setModTime(pEntry.getModTime());
+        entry.setMode(getMode(index) >= 0 ? getMode(index) : pEntry.getMode());
+        entry.setUserId(getUserId(index) >= 0 ? getUserId(index) : pEntry.getLongUserId());
+        entry.setGroupId(getGroupId(index) >= 0 ? getGroupId(index) : pEntry.getLongGroupId());
+        entry.setUserName(getUserName(index) != null ? getUserName(index) : pEntry.getUserName());
+        entry.setGroupName(getGroupName(index) != null ? getGroupName(index) : pEntry.getGroupName());
+        return entry;
+    }
+
+    private int compare( final int start, final int end, final byte[] key ) {
+        final int length = Math.min(end - start, key.length);
+        for (int i = 0; i < length; i++) {
+            final int cmp = (arena.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return (end - start) - key.length;
+    }
+
+    /**
+     * Parses a source. The stream is not closed.
+     */
+    static PathIndex parse( final InputStream input, final Parser parser ) throws IOException, ParseError {
+        final Builder builder = new Builder();
+        parser.parse(input, builder);
+        return builder.toIndex();
+    }
+
+    /**
+     * Returns the index of a source file, from the memory or the disk cache
+     * if the file is unchanged. Otherwise the file is parsed and the index
+     * saved into the cache directory, if any.
+     *
+     * @param format the name of the format of the source, part of the cache key
+     */
+    static PathIndex load( final File source, final String format, final Parser parser, final File cacheDirectory ) throws IOException, ParseError {
+        final long length = source.length();
+        final long lastModified = source.lastModified();
+        final List<Object> key = Arrays.asList(format, source.getCanonicalPath(), length, lastModified);
+
+        PathIndex index = CACHE.get(key);
+        if (index != null) {
+            return index;
+        }
+
+        final File cache = cacheDirectory != null ? new File(cacheDirectory, cacheName(format, source.getCanonicalPath())) : null;
+        if (cache != null && cache.isFile()) {
+            try {
+                index = read(cache, length, lastModified);
+            } catch (IOException e) {
+                // a corrupt or foreign cache file is rebuilt
+                index = null;
+            }
+        }
+
+        if (index == null) {
+            try (InputStream input = new FileInputStream(source)) {
+                index = parse(input, parser);
+            }
+            if (cache != null) {
+                try {
+                    index.write(cache, length, lastModified);
+                } catch (IOException e) {
+                    // the cache is only an optimization
+                }
+            }
+        }
+
+        if (CACHE.size() >= CACHE_SIZE) {
+            CACHE.clear();
+        }
+        CACHE.put(key, index);
+        return index;
+    }
+
+    private static String cacheName( final String format, final String path ) {
+        try {
+            return Utils.toHex(MessageDigest.getInstance("SHA-1").digest(path.getBytes(UTF_8))) + "." + format + ".idx";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Saves the index, stamped with the size and the modification time of the source.
+     */
+    void write( final File file, final long sourceLength, final long sourceLastModified ) throws IOException {
+        final File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the directory " + directory);
+        }
+
+        final File temp = File.createTempFile("jdeb", ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceLength);
+                out.writeLong(sourceLastModified);
+                out.writeInt(size());
+                out.writeInt(arena.limit());
+                writeNames(out, userNames);
+                writeNames(out, groupNames);
+                for (int i = 0; i <= size(); i++) {
+                    out.writeInt(offsets.get(i));
+                }
+                for (int i = 0; i < size(); i++) {
+                    out.writeInt(modes.get(i));
+                }
+                for (int i = 0; i < size(); i++) {
+                    out.writeLong(userIds.get(i));
+                }
+                for (int i = 0; i < size(); i++) {
+                    out.writeLong(groupIds.get(i));
+                }
+                for (int i = 0; i < size(); i++) {
+                    out.writeInt(users.get(i));
+                }
+                for (int i = 0; i < size(); i++) {
+                    out.writeInt(groups.get(i));
+                }
+                for (int i = 0; i < arena.limit(); i++) {
+                    out.write(arena.get(i));
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static void writeNames( final DataOutputStream out, final String[] names ) throws IOException {
+        out.writeInt(names.length);
+        for (String name : names) {
+            final byte[] bytes = name.getBytes(UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Maps a saved index into memory.
+     *
+     * @return the index, or null if it was saved for another version of the source
+     */
+    static PathIndex read( final File file, final long sourceLength, final long sourceLastModified ) throws IOException {
+        final ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a path index: " + file);
+            }
+            if (buffer.getLong() != sourceLength || buffer.getLong() != sourceLastModified) {
+                return null;
+            }
+
+            final int count = buffer.getInt();
+            final int arenaSize = buffer.getInt();
+            final String[] userNames = readNames(buffer);
+            final String[] groupNames = readNames(buffer);
+            final IntBuffer offsets = slice(buffer, count + 1, 4).asIntBuffer();
+            final IntBuffer modes = slice(buffer, count, 4).asIntBuffer();
+            final LongBuffer userIds = slice(buffer, count, 8).asLongBuffer();
+            final LongBuffer groupIds = slice(buffer, count, 8).asLongBuffer();
+            final IntBuffer users = slice(buffer, count, 4).asIntBuffer();
+            final IntBuffer groups = slice(buffer, count, 4).asIntBuffer();
+            final ByteBuffer arena = buffer.slice();
+            if (arena.limit() != arenaSize) {
+                throw new IOException("Truncated path index: " + file);
+            }
+
+            return new PathIndex(arena, offsets, modes, userIds, groupIds, users, groups, userNames, groupNames);
+
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt path index: " + file, e);
+        }
+    }
+
+    private static ByteBuffer slice( final ByteBuffer buffer, final int count, final int width ) {
+        final ByteBuffer slice = buffer.slice();
+        slice.limit(count * width);
+        buffer.position(buffer.position() + count * width);
+        return slice;
+    }
+
+    private static String[] readNames( final ByteBuffer buffer ) {
+        final String[] names = new String[buffer.getInt()];
+        for (int i = 0; i < names.length; i++) {
+            final byte[] name = new byte[buffer.getShort() & 0xffff];
+            buffer.get(name);
+            names[i] = new String(name, UTF_8);
+        }
+        return names;
+    }
+
+    /**
+     * Collects the entries and sorts them into an index.
+     */
+    static final class Builder {
+
+        private byte[] arena = new byte[64 * 1024];
+        private int arenaSize;
+        private int[] starts = new int[1024 + 1];
+        private int[] modes = new int[1024];
+        private long[] userIds = new long[1024];
+        private long[] groupIds = new long[1024];
+        private int[] users = new int[1024];
+        private int[] groups = new int[1024];
+        private int count;
+
+        private final Map<String, Integer> userTable = new HashMap<>();
+        private final Map<String, Integer> groupTable = new HashMap<>();
+
+        /**
+         * Adds an entry, replacing any previous entry with the same path.
+         */
+        void add( final String path, final int mode, final long userId, final long groupId, final String user, final String group ) {
+            final byte[] bytes = path.getBytes(UTF_8);
+            if (arenaSize + bytes.length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + bytes.length));
+            }
+            System.arraycopy(bytes, 0, arena, arenaSize, bytes.length);
+
+            if (count == modes.length) {
+                final int capacity = count * 2;
+                starts = Arrays.copyOf(starts, capacity + 1);
+                modes = Arrays.copyOf(modes, capacity);
+                userIds = Arrays.copyOf(userIds, capacity);
+                groupIds = Arrays.copyOf(groupIds, capacity);
+                users = Arrays.copyOf(users, capacity);
+                groups = Arrays.copyOf(groups, capacity);
+            }
+            starts[count] = arenaSize;
+            modes[count] = mode;
+            userIds[count] = userId;
+            groupIds[count] = groupId;
+            users[count] = intern(userTable, user);
+            groups[count] = intern(groupTable, group);
+            count++;
+            arenaSize += bytes.length;
+            starts[count] = arenaSize;
+        }
+
+        private static int intern( final Map<String, Integer> table, final String name ) {
+            if (name == null) {
+                return -1;
+            }
+            Integer index = table.get(name);
+            if (index == null) {
+                index = table.size();
+                table.put(name, index);
+            }
+            return index;
+        }
+
+        private static String[] toArray( final Map<String, Integer> table ) {
+            final String[] names = new String[table.size()];
+            for (Map.Entry<String, Integer> entry : table.entrySet()) {
+                names[entry.getValue()] = entry.getKey();
+            }
+            return names;
+        }
+
+        private int compare( final int a, final int b ) {
+            final int aStart = starts[a];
+            final int aLength = starts[a + 1] - aStart;
+            final int bStart = starts[b];
+            final int bLength = starts[b + 1] - bStart;
+            final int length = Math.min(aLength, bLength);
+            for (int i = 0; i < length; i++) {
+                final int cmp = (arena[aStart + i] & 0xff) - (arena[bStart + i] & 0xff);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return aLength - bLength;
+        }
+
+        /**
+         * Sorts the entries by path, and keeps the last of the entries added
+         * more than once.
+         */
+        PathIndex toIndex() {
+            final int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            // a stable sort keeps the duplicates in the order they were added
+            mergeSort(order, new int[count], 0, count);
+
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (i + 1 < count && compare(order[i], order[i + 1]) == 0) {
+                    continue;
+                }
+                order[unique++] = order[i];
+            }
+
+            final byte[] sortedArena = new byte[arenaSize];
+            final int[] sortedOffsets = new int[unique + 1];
+            final int[] sortedModes = new int[unique];
+            final long[] sortedUserIds = new long[unique];
+            final long[] sortedGroupIds = new long[unique];
+            final int[] sortedUsers = new int[unique];
+            final int[] sortedGroups = new int[unique];
+            int position = 0;
+            for (int i = 0; i < unique; i++) {
+                final int entry = order[i];
+                final int length = starts[entry + 1] - starts[entry];
+                System.arraycopy(arena, starts[entry], sortedArena, position, length);
+                sortedOffsets[i] = position;
+                sortedModes[i] = modes[entry];
+                sortedUserIds[i] = userIds[entry];
+                sortedGroupIds[i] = groupIds[entry];
+                sortedUsers[i] = users[entry];
+                sortedGroups[i] = groups[entry];
+                position += length;
+            }
+            sortedOffsets[unique] = position;
+
+            return new PathIndex(
+                ByteBuffer.wrap(sortedArena, 0, position).slice(),
+                IntBuffer.wrap(sortedOffsets),
+                IntBuffer.wrap(sortedModes),
+                LongBuffer.wrap(sortedUserIds),
+                LongBuffer.wrap(sortedGroupIds),
+                IntBuffer.wrap(sortedUsers),
+                IntBuffer.wrap(sortedGroups),
+                toArray(userTable),
+                toArray(groupTable));
+        }
+
+        private void mergeSort( final int[] a, final int[] temp, final int from, final int to ) {
+            if (to - from < 2) {
+                return;
+            }
+            if (to - from <= 16) {
+                // insertion sort, stable as well
+                for (int i = from + 1; i < to; i++) {
+                    final int value = a[i];
+                    int j = i - 1;
+                    while (j >= from && compare(a[j], value) > 0) {
+                        a[j + 1] = a[j];
+                        j--;
+                    }
+                    a[j + 1] = value;
+                }
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+            mergeSort(a, temp, from, middle);
+            mergeSort(a, temp, middle, to);
+            if (compare(a[middle - 1], a[middle]) <= 0) {
+                return;
+            }
+
+            System.arraycopy(a, from, temp, from, to - from);
+            int i = from;
+            int j = middle;
+            for (int k = from; k < to; k++) {
+                if (j >= to || (i < middle && compare(temp[i], temp[j]) <= 0)) {
+                    a[k] = temp[i++];
+                } else {
+                    a[k] = temp[j++];
+                }
+            }
+        }
+    }
+}
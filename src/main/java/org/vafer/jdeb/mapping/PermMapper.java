@@ -16,7 +16,6 @@
 package org.vafer.jdeb.mapping;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.vafer.jdeb.utils.Utils;
 
 /**
  * Applies a uniform set of permissions and ownership to all entries.
@@ -56,11 +55,17 @@ public final class PermMapper implements Mapper {
     }
 
     public TarArchiveEntry map( final TarArchiveEntry entry ) {
-        entry.setName(Utils.stripLeadingSlash(Utils.joinUnixPath(
-            prefix,
-            Utils.stripPath(strip, entry.getName())
-        )));
+        entry.setName(map(entry.getName(), entry));
+        return entry;
+    }
 
+    /**
+     * Applies the ownership and the permissions to the entry and returns the
+     * new name, without touching the name of the entry. Same as stripping,
+     * joining with the prefix and removing the leading slash with the Utils
+     * methods, but with a single copy of the name.
+     */
+    String map( final String name, final TarArchiveEntry entry ) {
         // Set ownership
         if (uid > -1) {
             entry.setUserId(uid);
@@ -86,6 +91,37 @@ public final class PermMapper implements Mapper {
             }
         }
 
-        return entry;
+        int start = 0;
+        if (strip > 0) {
+            int x = 0;
+            for (int i = 0; i < strip; i++) {
+                x = name.indexOf('/', x + 1);
+                if (x < 0) {
+                    break;
+                }
+            }
+            start = x < 0 ? 0 : x + 1;
+        }
+
+        if (prefix.isEmpty()) {
+            if (start < name.length() && isSlash(name.charAt(start))) {
+                start++;
+            }
+            return name.substring(start);
+        }
+
+        final int skip = isSlash(prefix.charAt(0)) ? 1 : 0;
+        final boolean separator = start >= name.length() || name.charAt(start) != '/';
+        final StringBuilder sb = new StringBuilder(prefix.length() + name.length() - start + 1);
+        sb.append(prefix, skip, prefix.length());
+        if (separator) {
+            sb.append('/');
+        }
+        sb.append(name, start, name.length());
+        return sb.toString();
+    }
+
+    private static boolean isSlash( final char c ) {
+        return c == '/' || c == '\\';
     }
 }
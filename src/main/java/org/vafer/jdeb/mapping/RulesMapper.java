@@ -0,0 +1,393 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+
+/**
+ * Applies an ordered list of rules to the entries. Every rule has an Ant
+ * style pattern or a directory prefix (ending with '/') and sets the
+ * permissions, the ownership and/or the target path of the entries it
+ * matches. All the matching rules apply, a later rule overriding what an
+ * earlier one set.
+ *
+ * The target replaces the leading literal directories of the pattern, so
+ * the rule "opt/app/bin/**" with the target "usr/bin" moves "opt/app/bin/run"
+ * to "usr/bin/run", and a pattern without wildcards renames a single path.
+ *
+ * The rules are indexed in a trie by their leading literal directories, an
+ * entry is only tested against the rules anchored above it and the patterns
+ * are matched without splitting the path, so the cost per entry doesn't grow
+ * with the number of rules for other directories.
+ */
+public final class RulesMapper implements Mapper {
+
+    /**
+     * A single rule. The ids and the modes are ignored when negative, the
+     * names and the target when null.
+     */
+    public static final class Rule {
+
+        private final String pattern;
+        private final String target;
+        private final int uid;
+        private final int gid;
+        private final String user;
+        private final String group;
+        private final int fileMode;
+        private final int dirMode;
+
+        /** the elements of the normalized pattern */
+        private final String[] elements;
+        /** the number of leading elements without wildcards */
+        private final int literals;
+
+        public Rule( String pattern, String target, int uid, int gid, String user, String group, int fileMode, int dirMode ) {
+            if (pattern == null || pattern.trim().isEmpty()) {
+                throw new IllegalArgumentException("A rule requires a pattern");
+            }
+            this.pattern = pattern;
+            this.target = target == null ? null : trimSlashes(target);
+            this.uid = uid;
+            this.gid = gid;
+            this.user = user;
+            this.group = group;
+            this.fileMode = fileMode;
+            this.dirMode = dirMode;
+
+            String normalized = pattern.trim().replace('\\', '/');
+            if (normalized.endsWith("/")) {
+                normalized = normalized + "**";
+            }
+            final List<String> list = new ArrayList<>();
+            for (String element : trimSlashes(normalized).split("/+")) {
+                if (!element.isEmpty() && !".".equals(element)) {
+                    list.add(element);
+                }
+            }
+            elements = list.toArray(new String[0]);
+
+            int count = 0;
+            while (count < elements.length && isLiteral(elements[count])) {
+                count++;
+            }
+            literals = count;
+        }
+
+        public Rule( String pattern, String target, int uid, int gid, String user, String group, String fileMode, String dirMode ) {
+            this(pattern, target, uid, gid, user, group, PermMapper.toMode(fileMode), PermMapper.toMode(dirMode));
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        private static boolean isLiteral( String element ) {
+            return element.indexOf('*') < 0 && element.indexOf('?') < 0;
+        }
+
+        /**
+         * Matches the pattern against the path between start and end.
+         */
+        boolean matches( String path, int start, int end ) {
+            return matches(0, path, start, end);
+        }
+
+        private boolean matches( int index, String path, int position, int end ) {
+            if (index == elements.length) {
+                return position >= end;
+            }
+
+            if ("**".equals(elements[index])) {
+                if (matches(index + 1, path, position, end)) {
+                    return true;
+                }
+                while (position < end) {
+                    position = nextElement(path, position, end);
+                    if (matches(index + 1, path, position, end)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            if (position >= end) {
+                return false;
+            }
+            int separator = path.indexOf('/', position);
+            if (separator < 0 || separator > end) {
+                separator = end;
+            }
+            if (!matchElement(elements[index], path, position, separator)) {
+                return false;
+            }
+            return matches(index + 1, path, separator < end ? separator + 1 : end, end);
+        }
+    }
+
+    /**
+     * A node of the trie, the children are sorted by name.
+     */
+    private static final class Node {
+        String[] names = new String[0];
+        Node[] children = new Node[0];
+        int[] rules = new int[0];
+
+        Node child( String path, int start, int end ) {
+            int low = 0;
+            int high = names.length - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final int cmp = compare(names[middle], path, start, end);
+                if (cmp < 0) {
+                    low = middle + 1;
+                } else if (cmp > 0) {
+                    high = middle - 1;
+                } else {
+                    return children[middle];
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Rule[] rules;
+    private final Node root;
+
+    public RulesMapper( final Rule... pRules ) {
+        this(Arrays.asList(pRules));
+    }
+
+    public RulesMapper( final List<Rule> pRules ) {
+        rules = pRules.toArray(new Rule[0]);
+        root = compile(rules);
+    }
+
+    private static Node compile( final Rule[] rules ) {
+        final Map<String, Object> tree = new TreeMap<>();
+        for (int i = 0; i < rules.length; i++) {
+            Map<String, Object> level = tree;
+            for (int j = 0; j < rules[i].literals; j++) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> next = (Map<String, Object>) level.get(rules[i].elements[j]);
+                if (next == null) {
+                    next = new TreeMap<>();
+                    level.put(rules[i].elements[j], next);
+                }
+                level = next;
+            }
+            @SuppressWarnings("unchecked")
+            List<Integer> anchored = (List<Integer>) level.get("");
+            if (anchored == null) {
+                // the rules anchored at this level are kept under the empty name, an element is never empty
+                anchored = new ArrayList<>();
+                level.put("", anchored);
+            }
+            anchored.add(i);
+        }
+        return toNode(tree);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Node toNode( final Map<String, Object> level ) {
+        final Node node = new Node();
+        final List<Integer> anchored = (List<Integer>) level.remove("");
+        if (anchored != null) {
+            node.rules = new int[anchored.size()];
+            for (int i = 0; i < node.rules.length; i++) {
+                node.rules[i] = anchored.get(i);
+            }
+        }
+        node.names = level.keySet().toArray(new String[0]);
+        node.children = new Node[node.names.length];
+        for (int i = 0; i < node.names.length; i++) {
+            node.children[i] = toNode((Map<String, Object>) level.get(node.names[i]));
+        }
+        return node;
+    }
+
+    public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
+        final String name = pEntry.getName();
+        final String mapped = map(name, pEntry);
+        if (!mapped.equals(name)) {
+            pEntry.setName(mapped);
+        }
+        return pEntry;
+    }
+
+    /**
+     * Applies the rules matching the name to the attributes of the entry and
+     * returns the new name, without touching the name of the entry.
+     */
+    String map( final String name, final TarArchiveEntry entry ) {
+        int start = 0;
+        if (name.startsWith("./")) {
+            start = 2;
+        }
+        while (start < name.length() && name.charAt(start) == '/') {
+            start++;
+        }
+        int end = name.length();
+        while (end > start && name.charAt(end - 1) == '/') {
+            end--;
+        }
+
+        // the index of the last matching rule for every attribute
+        int uid = -1;
+        int gid = -1;
+        int user = -1;
+        int group = -1;
+        int mode = -1;
+        int target = -1;
+
+        final boolean directory = entry.isDirectory();
+        Node node = root;
+        int position = start;
+        while (node != null) {
+            for (int index : node.rules) {
+                final Rule rule = rules[index];
+                if (!rule.matches(name, start, end)) {
+                    continue;
+                }
+                if (rule.uid > -1 && index > uid) {
+                    uid = index;
+                }
+                if (rule.gid > -1 && index > gid) {
+                    gid = index;
+                }
+                if (rule.user != null && index > user) {
+                    user = index;
+                }
+                if (rule.group != null && index > group) {
+                    group = index;
+                }
+                if ((directory ? rule.dirMode : rule.fileMode) > -1 && index > mode) {
+                    mode = index;
+                }
+                if (rule.target != null && index > target) {
+                    target = index;
+                }
+            }
+            if (position >= end) {
+                break;
+            }
+            final int next = nextElement(name, position, end);
+            node = node.child(name, position, next < end ? next - 1 : end);
+            position = next;
+        }
+
+        if (uid > -1) {
+            entry.setUserId(rules[uid].uid);
+        }
+        if (gid > -1) {
+            entry.setGroupId(rules[gid].gid);
+        }
+        if (user > -1) {
+            entry.setUserName(rules[user].user);
+        }
+        if (group > -1) {
+            entry.setGroupName(rules[group].group);
+        }
+        if (mode > -1) {
+            entry.setMode(directory ? rules[mode].dirMode : rules[mode].fileMode);
+        }
+        if (target < 0) {
+            return name;
+        }
+
+        // replace the leading literal elements of the pattern with the target
+        final Rule rule = rules[target];
+        int rest = start;
+        for (int i = 0; i < rule.literals && rest < end; i++) {
+            rest = nextElement(name, rest, end);
+        }
+        final StringBuilder sb = new StringBuilder(rule.target.length() + name.length() - rest + 1);
+        sb.append(rule.target);
+        if (rest < name.length()) {
+            if (sb.length() > 0 && rest < end) {
+                sb.append('/');
+            }
+            sb.append(name, rest, name.length());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the start of the element following the one at the position, or the end.
+     */
+    private static int nextElement( final String path, final int position, final int end ) {
+        final int separator = path.indexOf('/', position);
+        return separator < 0 || separator >= end ? end : separator + 1;
+    }
+
+    private static String trimSlashes( final String path ) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+
+    private static int compare( final String name, final String path, final int start, final int end ) {
+        final int length = Math.min(name.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            final int cmp = name.charAt(i) - path.charAt(start + i);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return name.length() - (end - start);
+    }
+
+    /**
+     * Matches a single path element against a pattern with '*' and '?' wildcards.
+     */
+    private static boolean matchElement( final String pattern, final String path, final int start, final int end ) {
+        int p = 0;
+        int e = start;
+        int star = -1;
+        int backtrack = 0;
+        while (e < end) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == path.charAt(e))) {
+                p++;
+                e++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                backtrack = e;
+            } else if (star != -1) {
+                p = star + 1;
+                e = ++backtrack;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+}
@@ -20,18 +20,36 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.resolver.filter.ScopeArtifactFilter;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.producers.DataProducerArchive;
+import org.vafer.jdeb.producers.DataProducerDeb;
+import org.vafer.jdeb.producers.DataProducerDependencies;
 import org.vafer.jdeb.producers.DataProducerDirectory;
 import org.vafer.jdeb.producers.DataProducerFile;
 import org.vafer.jdeb.producers.DataProducerFiles;
 import org.vafer.jdeb.producers.DataProducerLink;
+import org.vafer.jdeb.producers.DataProducerMtree;
 import org.vafer.jdeb.producers.DataProducerPathTemplate;
+import org.vafer.jdeb.producers.FilteredDataConsumer;
+import org.vafer.jdeb.producers.RepackingDataConsumer;
+import org.vafer.jdeb.reader.DebReader;
+import org.vafer.jdeb.utils.DigestCache;
+import org.vafer.jdeb.utils.MapVariableResolver;
+import org.vafer.jdeb.utils.Utils;
+import org.vafer.jdeb.utils.VariableResolver;
 
 import static org.vafer.jdeb.maven.MissingSourceBehavior.*;
 
@@ -63,6 +81,16 @@ public final class Data implements DataProducer {
         this.type = type;
     }
 
+    /**
+     * The directory holding the files of a mtree specification, the directory of the specification by default.
+     */
+    @Parameter
+    private File base;
+
+    public void setBase( File base ) {
+        this.base = base;
+    }
+
     @Parameter
     private MissingSourceBehavior missingSrc = FAIL;
 
@@ -104,6 +132,48 @@ public final class Data implements DataProducer {
         return this.conffile;
     }
 
+    /**
+     * Replace the variables in the content of the files, read as UTF-8 text.
+     */
+    @Parameter
+    private boolean filter = false;
+
+    public void setFilter( boolean filter ) {
+        this.filter = filter;
+    }
+
+    public boolean getFilter() {
+        return filter;
+    }
+
+    /**
+     * Rewrite the jars and zips with their entries stored instead of
+     * deflated, so the compression of the data archive works across them.
+     */
+    @Parameter
+    private boolean repack = false;
+
+    public void setRepack( boolean repack ) {
+        this.repack = repack;
+    }
+
+    public boolean getRepack() {
+        return repack;
+    }
+
+    private VariableResolver resolver;
+    private String openReplaceToken;
+    private String closeReplaceToken;
+
+    /**
+     * Sets how the variables are resolved when the files are filtered.
+     */
+    void setResolver( VariableResolver resolver, String openReplaceToken, String closeReplaceToken ) {
+        this.resolver = resolver;
+        this.openReplaceToken = openReplaceToken;
+        this.closeReplaceToken = closeReplaceToken;
+    }
+
     @Parameter(alias = "includes")
     private String[] includePatterns;
 
@@ -118,6 +188,73 @@ public final class Data implements DataProducer {
         excludePatterns = splitPatterns(excludes);
     }
 
+    /**
+     * The scope of the dependencies of the "dependencies" type: compile, runtime, provided or system.
+     */
+    @Parameter
+    private String scope = "runtime";
+
+    public void setScope( String scope ) {
+        this.scope = scope;
+    }
+
+    /**
+     * The path of the dependencies of the "dependencies" type below "dst". The variables
+     * groupId, groupPath, artifactId, version, baseVersion, classifier, extension and
+     * file (the name of the file in the repository) are available.
+     */
+    @Parameter
+    private String layout = "[[file]]";
+
+    public void setLayout( String layout ) {
+        this.layout = layout;
+    }
+
+    /**
+     * Reuse the md5sums of the package of the "deb" type instead of hashing its files again.
+     */
+    @Parameter
+    private boolean md5sums = true;
+
+    public void setMd5sums( boolean md5sums ) {
+        this.md5sums = md5sums;
+    }
+
+    /**
+     * Exposes the control fields of the package of the "deb" type as variables, their
+     * names prefixed with this value. The Version field is [[vendor.Version]] with
+     * the "vendor." prefix.
+     */
+    @Parameter
+    private String controlPrefix;
+
+    public void setControlPrefix( String controlPrefix ) {
+        this.controlPrefix = controlPrefix;
+    }
+
+    /**
+     * Adds the control fields of the package of the "deb" type to the variables, if a prefix is set.
+     */
+    void addControlVariables( Map<String, String> variables ) throws IOException {
+        if (!typeIs("deb") || controlPrefix == null || src == null || !src.isFile()) {
+            return;
+        }
+        try (DebReader reader = DebReader.open(src)) {
+            for (Map.Entry<String, String> field : reader.getControlFields().entrySet()) {
+                variables.put(controlPrefix + field.getKey(), field.getValue());
+            }
+        }
+    }
+
+    private Collection<Artifact> artifacts = Collections.emptySet();
+
+    /**
+     * Sets the resolved dependencies of the project the "dependencies" type selects from.
+     */
+    void setArtifacts( Collection<Artifact> artifacts ) {
+        this.artifacts = artifacts != null ? artifacts : Collections.<Artifact>emptySet();
+    }
+
     @Parameter
     private Mapper mapper;
 
@@ -142,7 +279,10 @@ public final class Data implements DataProducer {
         return result;
     }
 
-    public void produce( final DataConsumer pReceiver ) throws IOException {
+    public void produce( final DataConsumer consumer ) throws IOException {
+        final DataConsumer repacking = repack ? new RepackingDataConsumer(consumer) : consumer;
+        final DataConsumer receiver = filter ? new FilteredDataConsumer(repacking, resolver, openReplaceToken, closeReplaceToken) : repacking;
+
         org.vafer.jdeb.mapping.Mapper[] mappers = null;
         if (mapper != null) {
             mappers = new org.vafer.jdeb.mapping.Mapper[] { mapper.createMapper() };
@@ -158,7 +298,7 @@ public final class Data implements DataProducer {
                 throw new RuntimeException("linkTarget is not set");
             }
 
-            new DataProducerLink(linkName, linkTarget, symlink, includePatterns, excludePatterns, mappers).produce(pReceiver);
+            new DataProducerLink(linkName, linkTarget, symlink, includePatterns, excludePatterns, mappers).produce(receiver);
             return;
         }
 
@@ -166,13 +306,18 @@ public final class Data implements DataProducer {
 
         if (typeIs("template")) {
             checkPaths();
-            new DataProducerPathTemplate(paths, includePatterns, excludePatterns, mappers).produce(pReceiver);
+            new DataProducerPathTemplate(paths, includePatterns, excludePatterns, mappers).produce(receiver);
             return;
         }
 
         if (typeIs("files")) {
             checkPaths();
-            new DataProducerFiles(paths, dst, mappers).produce(pReceiver);
+            new DataProducerFiles(paths, dst, mappers).produce(receiver);
+            return;
+        }
+
+        if (typeIs("dependencies")) {
+            new DataProducerDependencies(selectDependencies(), mappers, DigestCache.getDefault()).produce(receiver);
             return;
         }
 
@@ -187,21 +332,108 @@ public final class Data implements DataProducer {
         }
 
         if (typeIs("file")) {
-            new DataProducerFile(src, dst, includePatterns, excludePatterns, mappers).produce(pReceiver);
+            new DataProducerFile(src, dst, includePatterns, excludePatterns, mappers).produce(receiver);
             return;
         }
 
         if (typeIs("archive")) {
-            new DataProducerArchive(src, includePatterns, excludePatterns, mappers).produce(pReceiver);
+            new DataProducerArchive(src, includePatterns, excludePatterns, mappers).produce(receiver);
             return;
         }
 
         if (typeIs("directory")) {
-            new DataProducerDirectory(src, includePatterns, excludePatterns, mappers).produce(pReceiver);
+            new DataProducerDirectory(src, includePatterns, excludePatterns, mappers).produce(receiver);
+            return;
+        }
+
+        if (typeIs("deb")) {
+            new DataProducerDeb(src, includePatterns, excludePatterns, mappers, md5sums).produce(receiver);
             return;
         }
 
-        throw new IOException("Unknown type '" + type + "' (file|directory|archive|template|link) for " + src);
+        if (typeIs("mtree")) {
+            new DataProducerMtree(src, base, includePatterns, excludePatterns, mappers).produce(receiver);
+            return;
+        }
+
+        throw new IOException("Unknown type '" + type + "' (file|directory|archive|deb|mtree|template|link|dependencies) for " + src);
+    }
+
+    /**
+     * Picks the dependencies in the scope matching the patterns, and lays them out below "dst".
+     * The patterns are made of <code>groupId:artifactId:type:classifier</code>, the missing
+     * parts match anything and '*' matches any characters.
+     */
+    Map<String, File> selectDependencies() throws IOException {
+        if (dst == null || dst.trim().isEmpty()) {
+            throw new IOException("The 'dst' directory of the dependencies is not set");
+        }
+
+        final ScopeArtifactFilter filter = new ScopeArtifactFilter(scope);
+        final List<Artifact> selected = new ArrayList<>();
+        for (Artifact artifact : artifacts) {
+            if (!filter.include(artifact)) {
+                continue;
+            }
+            if (includePatterns != null && !matchesAny(includePatterns, artifact)) {
+                continue;
+            }
+            if (excludePatterns != null && matchesAny(excludePatterns, artifact)) {
+                continue;
+            }
+            selected.add(artifact);
+        }
+        // the same archive for the same dependencies, whatever the resolution order
+        selected.sort(Comparator.comparing(Artifact::getId));
+
+        final String directory = dst.trim().endsWith("/") ? dst.trim() : dst.trim() + "/";
+        final Map<String, File> files = new LinkedHashMap<>();
+        for (Artifact artifact : selected) {
+            final File file = artifact.getFile();
+            if (file == null) {
+                throw new IOException("The dependency " + artifact + " is not resolved");
+            }
+
+            final Map<String, String> variables = new HashMap<>();
+            variables.put("groupId", artifact.getGroupId());
+            variables.put("groupPath", artifact.getGroupId().replace('.', '/'));
+            variables.put("artifactId", artifact.getArtifactId());
+            variables.put("version", artifact.getVersion());
+            variables.put("baseVersion", artifact.getBaseVersion());
+            variables.put("classifier", artifact.getClassifier() != null ? artifact.getClassifier() : "");
+            variables.put("extension", artifact.getArtifactHandler() != null ? artifact.getArtifactHandler().getExtension() : artifact.getType());
+            variables.put("file", file.getName());
+
+            final String name = directory + Utils.replaceVariables(new MapVariableResolver(variables), layout, "[[", "]]");
+            if (files.put(name, file) != null) {
+                throw new IOException("Several dependencies are laid out to " + name);
+            }
+        }
+        return files;
+    }
+
+    private static boolean matchesAny( final String[] patterns, final Artifact artifact ) {
+        final String[] values = {
+            artifact.getGroupId(),
+            artifact.getArtifactId(),
+            artifact.getType(),
+            artifact.getClassifier() != null ? artifact.getClassifier() : ""
+        };
+        for (String pattern : patterns) {
+            final String[] parts = pattern.split(":");
+            boolean matches = parts.length <= values.length;
+            for (int i = 0; matches && i < parts.length; i++) {
+                matches = Utils.matchPath(parts[i], values[i]);
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String getType() {
+        return type;
     }
 
     private boolean typeIs( final String type ) {
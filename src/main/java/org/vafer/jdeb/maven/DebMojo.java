@@ -19,17 +19,21 @@ package org.vafer.jdeb.maven;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.RepositoryUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
@@ -38,20 +42,31 @@ import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.DefaultDependencyResolutionRequest;
+import org.apache.maven.project.DependencyResolutionException;
+import org.apache.maven.project.DependencyResolutionResult;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
-import org.apache.maven.settings.Profile;
+import org.apache.maven.project.ProjectDependenciesResolver;
 import org.apache.maven.settings.Settings;
 import org.apache.tools.tar.TarEntry;
+import org.eclipse.aether.graph.DependencyFilter;
 import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
-import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
 import org.vafer.jdeb.Console;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.DataSink;
 import org.vafer.jdeb.DebMaker;
+import org.vafer.jdeb.PackageConfig;
+import org.vafer.jdeb.PackageGroup;
+import org.vafer.jdeb.PackageResult;
+import org.vafer.jdeb.PackageSplit;
+import org.vafer.jdeb.PackageVariants;
 import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.utils.ChainVariableResolver;
 import org.vafer.jdeb.utils.MapVariableResolver;
 import org.vafer.jdeb.utils.OutputTimestampResolver;
+import org.vafer.jdeb.utils.PropertiesVariableResolver;
 import org.vafer.jdeb.utils.SymlinkUtils;
 import org.vafer.jdeb.utils.Utils;
 import org.vafer.jdeb.utils.VariableResolver;
@@ -71,6 +86,9 @@ public class DebMojo extends AbstractMojo {
     @Component(hint = "jdeb-sec")
     private SecDispatcher secDispatcher;
 
+    @Component
+    private ProjectDependenciesResolver dependenciesResolver;
+
     /**
      * Defines the name of deb package.
      */
@@ -233,6 +251,77 @@ public class DebMojo extends AbstractMojo {
     @Parameter
     private Data[] dataSet;
 
+    /**
+     * Builds several packages out of the dataSet in one pass, instead of the
+     * single package of "deb" and "controlDir". The dataSet is scanned once,
+     * every package takes the entries matching its patterns, and the packages
+     * are compressed, signed and written concurrently. The other settings are
+     * shared by all the packages.
+     *
+     * <pre>
+     *   &lt;packages&gt;
+     *     &lt;package&gt;
+     *       &lt;deb&gt;[[buildDir]]/app_[[version]]_all.deb&lt;/deb&gt;
+     *       &lt;controlDir&gt;[[baseDir]]/src/deb/app&lt;/controlDir&gt;
+     *       &lt;includes&gt;opt/app/**&lt;/includes&gt;
+     *     &lt;/package&gt;
+     *     &lt;package&gt;
+     *       &lt;deb&gt;[[buildDir]]/app-config_[[version]]_all.deb&lt;/deb&gt;
+     *       &lt;controlDir&gt;[[baseDir]]/src/deb/app-config&lt;/controlDir&gt;
+     *       &lt;includes&gt;etc/**&lt;/includes&gt;
+     *     &lt;/package&gt;
+     *   &lt;/packages&gt;
+     * </pre>
+     */
+    @Parameter
+    private PackageSelection[] packages;
+
+    /**
+     * Builds variants of the package that only differ in their control files,
+     * instead of the single package of "deb" and "controlDir". The data
+     * archive is compressed once and shared by all the variants, which is
+     * useful to publish the same payload for several distributions.
+     *
+     * <pre>
+     *   &lt;variants&gt;
+     *     &lt;variant&gt;
+     *       &lt;deb&gt;[[buildDir]]/app_[[version]]~bookworm_all.deb&lt;/deb&gt;
+     *       &lt;controlDir&gt;[[baseDir]]/src/deb/bookworm&lt;/controlDir&gt;
+     *     &lt;/variant&gt;
+     *     &lt;variant&gt;
+     *       &lt;deb&gt;[[buildDir]]/app_[[version]]~jammy_all.deb&lt;/deb&gt;
+     *       &lt;controlDir&gt;[[baseDir]]/src/deb/jammy&lt;/controlDir&gt;
+     *     &lt;/variant&gt;
+     *   &lt;/variants&gt;
+     * </pre>
+     */
+    @Parameter
+    private PackageVariant[] variants;
+
+    /**
+     * Splits the package in two: the application, and a "libs" package with
+     * the dependencies, which usually change far less often. The dependencies
+     * are the items of the dataSet of the "dependencies" type, or the resolved
+     * dependencies of the project when there is no dataSet. The libs package
+     * is versioned by a hash of its content and only built again when the hash
+     * changes, the application depends on its exact version.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean split;
+
+    /**
+     * The name of the libs package of the split, the name of the application followed by "-libs" by default.
+     */
+    @Parameter
+    private String libsName;
+
+    /**
+     * The directory the libs package of the split is written to and looked up
+     * in, to be reused by the next builds. The directory of "deb" by default.
+     */
+    @Parameter
+    private String libsDirectory;
+
     /**
      * When enabled SNAPSHOT inside the version gets replaced with current timestamp or
      * if set a value of a environment variable.
@@ -352,6 +441,64 @@ public class DebMojo extends AbstractMojo {
     @Parameter(defaultValue = "gnu")
     private String tarBigNumberMode;
 
+    /**
+     * Sets the order of the entries in the data archive. Valid values are "none" (the order of the data
+     * elements), "path" or "type" (the directories first, then the files grouped by extension)
+     */
+    @Parameter(defaultValue = "none")
+    private String entryOrder;
+
+    /**
+     * Makes the scripts (starting with a shebang) and the ELF binaries of the data executable
+     * by whoever can read them.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean detectExecutables;
+
+    /**
+     * Compresses the data in a mode friendly to delta transfers: gzip resets and xz ends its blocks
+     * at boundaries found from the content, so only the output around the changes differs between builds.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean rsyncable;
+
+    /**
+     * Writes a zsync control file with the block checksums of the package next to it, so the
+     * clients can download only the blocks that changed.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean zsync;
+
+    /**
+     * Compresses the data with xz in independent blocks of a fixed size, so a single file can be
+     * read from the package without decompressing the whole archive. Requires the xz compression.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean seekable;
+
+    /**
+     * Writes the offsets of the files of the data archive in a <code>.index</code> file next to the
+     * package, used to read a single file without scanning the archive.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean dataIndex;
+
+    /**
+     * Secondary outputs of the data archive written from the same pass, like
+     * a plain tarball or an OCI image layer of the payload.
+     *
+     * <pre>
+     *   &lt;sinks&gt;
+     *     &lt;sink&gt;
+     *       &lt;format&gt;oci&lt;/format&gt;
+     *       &lt;file&gt;[[buildDir]]/[[artifactId]]-layer.tar.gz&lt;/file&gt;
+     *     &lt;/sink&gt;
+     *   &lt;/sinks&gt;
+     * </pre>
+     */
+    @Parameter
+    private Sink[] sinks;
+
     /**
      * Timestamp for reproducible output archive entries, either formatted as ISO 8601
      * <code>yyyy-MM-dd'T'HH:mm:ssXXX</code> or as an int representing seconds since the epoch (like
@@ -364,15 +511,12 @@ public class DebMojo extends AbstractMojo {
 
     /* end of parameters */
 
-    private static final String KEY = "key";
-    private static final String KEYRING = "keyring";
-    private static final String PASSPHRASE = "passphrase";
-
     private String openReplaceToken = "[[";
     private String closeReplaceToken = "]]";
     private Console console;
     private Collection<DataProducer> dataProducers = new ArrayList<>();
     private Collection<DataProducer> conffileProducers = new ArrayList<>();
+    private Collection<DataProducer> libsProducers = new ArrayList<>();
 
     public void setOpenReplaceToken( String openReplaceToken ) {
         this.openReplaceToken = openReplaceToken;
@@ -397,10 +541,12 @@ public class DebMojo extends AbstractMojo {
         }
     }
 
-    @SuppressWarnings("unchecked,rawtypes")
+    /**
+     * Creates the resolver of the variables. The variables specific to the plugin
+     * are put into the map, the system and the project properties are only looked
+     * up when a variable isn't found there, in this order.
+     */
     protected VariableResolver initializeVariableResolver( Map<String, String> variables ) {
-        variables.putAll((Map) getProject().getProperties());
-        variables.putAll((Map) System.getProperties());
         variables.put("name", name != null ? name : getProject().getName());
         variables.put("artifactId", getProject().getArtifactId());
         variables.put("groupId", getProject().getGroupId());
@@ -425,7 +571,10 @@ public class DebMojo extends AbstractMojo {
 
         variables.put("url", getProject().getUrl());
 
-        return new MapVariableResolver(variables);
+        return new ChainVariableResolver(
+            new MapVariableResolver(variables),
+            new PropertiesVariableResolver(System.getProperties()),
+            new PropertiesVariableResolver(getProject().getProperties()));
     }
 
     /**
@@ -473,6 +622,43 @@ public class DebMojo extends AbstractMojo {
         return artifact.getFile() != null && artifact.getFile().isFile();
     }
 
+    /**
+     * @return whether the dependencies of the project are packaged, by the
+     * "dependencies" data or by the split
+     */
+    private boolean needsDependencies() {
+        if (split) {
+            return true;
+        }
+        if (dataSet != null) {
+            for (Data item : dataSet) {
+                if ("dependencies".equalsIgnoreCase(item.getType())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolves the compile and runtime dependencies of the project. The goal
+     * doesn't require the resolution of the dependencies, so they are only
+     * resolved when they are packaged.
+     */
+    private Set<Artifact> resolveDependencies() throws MojoExecutionException {
+        final DependencyFilter filter = (node, parents) -> node.getDependency() == null || !"test".equals(node.getDependency().getScope());
+        final DefaultDependencyResolutionRequest request = new DefaultDependencyResolutionRequest(project, session.getRepositorySession());
+        request.setResolutionFilter(filter);
+        try {
+            final DependencyResolutionResult result = dependenciesResolver.resolve(request);
+            final Set<Artifact> artifacts = new LinkedHashSet<>();
+            RepositoryUtils.toArtifacts(artifacts, result.getDependencyGraph().getChildren(), Collections.singletonList(project.getArtifact().getId()), filter);
+            return artifacts;
+        } catch (DependencyResolutionException e) {
+            throw new MojoExecutionException("Could not resolve the dependencies of " + project.getId(), e);
+        }
+    }
+
     /**
      * Main entry point
      *
@@ -500,11 +686,47 @@ public class DebMojo extends AbstractMojo {
 
         setData(dataSet);
 
+        libsProducers.clear();
+        if (split && dataSet != null) {
+            // the dependencies go to the libs package, which has no conffiles
+            for (Data item : dataSet) {
+                if ("dependencies".equalsIgnoreCase(item.getType())) {
+                    dataProducers.remove(item);
+                    conffileProducers.remove(item);
+                    libsProducers.add(item);
+                    if (item.getConffile()) {
+                        getLog().warn("The dependencies of a split go to the libs package, they are not conffiles of the application");
+                    }
+                }
+            }
+        }
+
         console = new MojoConsole(getLog(), verbose);
 
         initializeSignProperties();
 
-        final VariableResolver resolver = initializeVariableResolver(new HashMap<String, String>());
+        // the control fields of the source packages, the variables of the plugin take precedence
+        final Map<String, String> variables = new HashMap<>();
+        if (dataSet != null) {
+            for (Data item : dataSet) {
+                try {
+                    item.addControlVariables(variables);
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Could not read the control fields of a package of the dataSet", e);
+                }
+            }
+        }
+
+        final VariableResolver resolver = initializeVariableResolver(variables);
+
+        final Set<Artifact> dependencies = needsDependencies() ? resolveDependencies() : Collections.<Artifact>emptySet();
+
+        if (dataSet != null) {
+            for (Data item : dataSet) {
+                item.setResolver(resolver, openReplaceToken, closeReplaceToken);
+                item.setArtifacts(dependencies);
+            }
+        }
 
         final File debFile = new File(Utils.replaceVariables(resolver, deb, openReplaceToken, closeReplaceToken));
         final File controlDirFile = new File(Utils.replaceVariables(resolver, controlDir, openReplaceToken, closeReplaceToken));
@@ -515,7 +737,7 @@ public class DebMojo extends AbstractMojo {
         final File keyringFile = keyring == null ? null : new File(Utils.replaceVariables(resolver, keyring, openReplaceToken, closeReplaceToken));
 
         // if there are no producers defined we try to use the artifacts
-        if (dataProducers.isEmpty()) {
+        if (dataProducers.isEmpty() && libsProducers.isEmpty()) {
 
             if (hasMainArtifact()) {
                 Set<Artifact> artifacts = new HashSet<>();
@@ -525,7 +747,9 @@ public class DebMojo extends AbstractMojo {
                 @SuppressWarnings("unchecked")
                 final Set<Artifact> projectArtifacts = project.getArtifacts();
 
-                artifacts.addAll(projectArtifacts);
+                if (!split) {
+                    artifacts.addAll(projectArtifacts);
+                }
 
                 @SuppressWarnings("unchecked")
                 final List<Artifact> attachedArtifacts = project.getAttachedArtifacts();
@@ -535,67 +759,100 @@ public class DebMojo extends AbstractMojo {
                 for (Artifact artifact : artifacts) {
                     final File file = artifact.getFile();
                     if (file != null) {
-                        dataProducers.add(new DataProducer() {
-                            public void produce( final DataConsumer receiver ) {
-                                try {
-                                    final File path = new File(installDirFile.getPath(), file.getName());
-                                    final String entryName = path.getPath();
-
-                                    final boolean symbolicLink = SymlinkUtils.isSymbolicLink(path);
-                                    final TarArchiveEntry e;
-                                    if (symbolicLink) {
-                                        e = new TarArchiveEntry(entryName, TarConstants.LF_SYMLINK);
-                                        e.setLinkName(SymlinkUtils.readSymbolicLink(path));
-                                    } else {
-                                        e = new TarArchiveEntry(entryName, true);
-                                    }
-
-                                    e.setUserId(0);
-                                    e.setGroupId(0);
-                                    e.setUserName("root");
-                                    e.setGroupName("root");
-                                    e.setMode(TarEntry.DEFAULT_FILE_MODE);
-                                    e.setSize(file.length());
-
-                                    receiver.onEachFile(new FileInputStream(file), e);
-                                } catch (Exception e) {
-                                    getLog().error(e);
-                                }
-                            }
-                        });
+                        dataProducers.add(createArtifactProducer(file, installDirFile));
                     } else {
                         getLog().error("No file for artifact " + artifact);
                     }
                 }
+
+                if (split) {
+                    for (Artifact artifact : dependencies) {
+                        final File file = artifact.getFile();
+                        if (file != null) {
+                            libsProducers.add(createArtifactProducer(file, installDirFile));
+                        } else {
+                            getLog().error("No file for artifact " + artifact);
+                        }
+                    }
+                }
+            }
+        }
+
+        final PackageConfig.Builder config = PackageConfig.builder()
+            .packageName(getProject().getArtifactId())
+            .description(getProject().getDescription())
+            .homepage(getProject().getUrl())
+            .changesIn(changesInFile)
+            .compression(compression)
+            .keyring(keyringFile)
+            .key(key)
+            .passphrase(passphrase)
+            .signPackage(signPackage)
+            .signChanges(signChanges)
+            .signMethod(signMethod)
+            .signRole(signRole)
+            .resolver(resolver)
+            .replaceTokens(openReplaceToken, closeReplaceToken)
+            .digest(digest)
+            .tarBigNumberMode(tarBigNumberMode)
+            .tarLongFileMode(tarLongFileMode)
+            .entryOrder(entryOrder)
+            .detectExecutables(detectExecutables)
+            .rsyncable(rsyncable)
+            .zsync(zsync)
+            .seekable(seekable)
+            .dataIndex(dataIndex)
+            .outputTimestampMs(new OutputTimestampResolver(console).resolveOutputTimestamp(outputTimestamp));
+
+        if (sinks != null) {
+            for (Sink sink : sinks) {
+                final File sinkFile = sink.getFile() != null ? new File(Utils.replaceVariables(resolver, sink.getFile(), openReplaceToken, closeReplaceToken)) : null;
+                try {
+                    config.sink(DataSink.create(sink.getFormat(), sinkFile));
+                } catch (PackagingException e) {
+                    throw new MojoExecutionException(e.getMessage(), e);
+                }
             }
         }
 
+        if (packages != null && packages.length > 0 && variants != null && variants.length > 0) {
+            throw new MojoExecutionException("The 'packages' and 'variants' parameters can't be used together");
+        }
+
+        if (split && ((packages != null && packages.length > 0) || (variants != null && variants.length > 0))) {
+            throw new MojoExecutionException("The 'split' parameter can't be used with 'packages' or 'variants'");
+        }
+
+        if (packages != null && packages.length > 0) {
+            makePackages(config, resolver);
+            return;
+        }
+
+        if (variants != null && variants.length > 0) {
+            makeVariants(config, resolver);
+            return;
+        }
+
+        if (split) {
+            makeSplit(config
+                .deb(debFile)
+                .control(controlDirFile)
+                .changesOut(changesOutFile)
+                .changesSave(changesSaveFile)
+                .data(dataProducers)
+                .conffiles(conffileProducers), resolver);
+            return;
+        }
+
         try {
-            DebMaker debMaker = new DebMaker(console, dataProducers, conffileProducers);
-            debMaker.setDeb(debFile);
-            debMaker.setControl(controlDirFile);
-            debMaker.setPackage(getProject().getArtifactId());
-            debMaker.setDescription(getProject().getDescription());
-            debMaker.setHomepage(getProject().getUrl());
-            debMaker.setChangesIn(changesInFile);
-            debMaker.setChangesOut(changesOutFile);
-            debMaker.setChangesSave(changesSaveFile);
-            debMaker.setCompression(compression);
-            debMaker.setKeyring(keyringFile);
-            debMaker.setKey(key);
-            debMaker.setPassphrase(passphrase);
-            debMaker.setSignPackage(signPackage);
-            debMaker.setSignChanges(signChanges);
-            debMaker.setSignMethod(signMethod);
-            debMaker.setSignRole(signRole);
-            debMaker.setResolver(resolver);
-            debMaker.setOpenReplaceToken(openReplaceToken);
-            debMaker.setCloseReplaceToken(closeReplaceToken);
-            debMaker.setDigest(digest);
-            debMaker.setTarBigNumberMode(tarBigNumberMode);
-            debMaker.setTarLongFileMode(tarLongFileMode);
-            Long outputTimestampMs = new OutputTimestampResolver(console).resolveOutputTimestamp(outputTimestamp);
-            debMaker.setOutputTimestampMs(outputTimestampMs);
+            DebMaker debMaker = new DebMaker(console, config
+                .deb(debFile)
+                .control(controlDirFile)
+                .changesOut(changesOutFile)
+                .changesSave(changesSaveFile)
+                .data(dataProducers)
+                .conffiles(conffileProducers)
+                .build());
             debMaker.validate();
             debMaker.makeDeb();
 
@@ -626,6 +883,148 @@ public class DebMojo extends AbstractMojo {
 
     }
 
+    /**
+     * Creates the producer of an artifact in the default layout, the file in "installDir".
+     */
+    private DataProducer createArtifactProducer( final File file, final File installDirFile ) {
+        return new DataProducer() {
+            public void produce( final DataConsumer receiver ) {
+                try {
+                    final File path = new File(installDirFile.getPath(), file.getName());
+                    final String entryName = path.getPath();
+
+                    final boolean symbolicLink = SymlinkUtils.isSymbolicLink(path);
+                    final TarArchiveEntry e;
+                    if (symbolicLink) {
+                        e = new TarArchiveEntry(entryName, TarConstants.LF_SYMLINK);
+                        e.setLinkName(SymlinkUtils.readSymbolicLink(path));
+                    } else {
+                        e = new TarArchiveEntry(entryName, true);
+                    }
+
+                    e.setUserId(0);
+                    e.setGroupId(0);
+                    e.setUserName("root");
+                    e.setGroupName("root");
+                    e.setMode(TarEntry.DEFAULT_FILE_MODE);
+                    e.setSize(file.length());
+
+                    receiver.onEachFile(new FileInputStream(file), e);
+                } catch (Exception e) {
+                    getLog().error(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Builds the packages of the "packages" list out of one scan of the dataSet.
+     */
+    private void makePackages( PackageConfig.Builder config, VariableResolver resolver ) throws MojoExecutionException {
+        final PackageGroup group = new PackageGroup(console);
+        for (PackageSelection selection : packages) {
+            final PackageConfig.Builder builder = config.build().toBuilder()
+                .deb(new File(Utils.replaceVariables(resolver, selection.getDeb(), openReplaceToken, closeReplaceToken)))
+                .control(new File(Utils.replaceVariables(resolver, selection.getControlDir(), openReplaceToken, closeReplaceToken)));
+            if (selection.getChangesOut() != null) {
+                builder.changesOut(new File(Utils.replaceVariables(resolver, selection.getChangesOut(), openReplaceToken, closeReplaceToken)));
+            }
+            group.add(builder.build(), selection.getIncludes(), selection.getExcludes());
+        }
+
+        final List<PackageResult> results;
+        try {
+            results = group.build(dataProducers, conffileProducers);
+        } catch (PackagingException e) {
+            getLog().error("Failed to create the debian packages", e);
+            throw new MojoExecutionException("Failed to create the debian packages", e);
+        }
+
+        if ("true".equalsIgnoreCase(attach)) {
+            for (int i = 0; i < results.size(); i++) {
+                final PackageResult result = results.get(i);
+                final String packageClassifier = packages[i].getClassifier() != null ? packages[i].getClassifier() : result.getControlFile().get("Package");
+                console.info("Attaching created debian package " + result.getDeb());
+                projectHelper.attachArtifact(getProject(), type, packageClassifier, result.getDeb());
+            }
+        }
+    }
+
+    /**
+     * Builds the variants of the "variants" list around one data archive.
+     */
+    private void makeVariants( PackageConfig.Builder config, VariableResolver resolver ) throws MojoExecutionException {
+        config.data(dataProducers).conffiles(conffileProducers);
+
+        final PackageVariants group = new PackageVariants(console);
+        for (PackageVariant variant : variants) {
+            final PackageConfig.Builder builder = config.build().toBuilder()
+                .deb(new File(Utils.replaceVariables(resolver, variant.getDeb(), openReplaceToken, closeReplaceToken)))
+                .control(new File(Utils.replaceVariables(resolver, variant.getControlDir(), openReplaceToken, closeReplaceToken)));
+            if (variant.getChangesOut() != null) {
+                builder.changesOut(new File(Utils.replaceVariables(resolver, variant.getChangesOut(), openReplaceToken, closeReplaceToken)));
+            }
+            group.add(builder.build());
+        }
+
+        final List<PackageResult> results;
+        try {
+            results = group.build();
+        } catch (PackagingException e) {
+            getLog().error("Failed to create the debian packages", e);
+            throw new MojoExecutionException("Failed to create the debian packages", e);
+        }
+
+        if ("true".equalsIgnoreCase(attach)) {
+            for (int i = 0; i < results.size(); i++) {
+                final PackageResult result = results.get(i);
+                final String packageClassifier = variants[i].getClassifier() != null ? variants[i].getClassifier() : FilenameUtils.getBaseName(result.getDeb().getName());
+                console.info("Attaching created debian package " + result.getDeb());
+                projectHelper.attachArtifact(getProject(), type, packageClassifier, result.getDeb());
+            }
+        }
+    }
+
+    /**
+     * Builds the application and, unless the dependencies didn't change, its libs package.
+     */
+    private void makeSplit( PackageConfig.Builder config, VariableResolver resolver ) throws MojoExecutionException {
+        final PackageSplit packageSplit = new PackageSplit(console);
+        packageSplit.setLibsName(libsName);
+        if (libsDirectory != null) {
+            packageSplit.setLibsDirectory(new File(Utils.replaceVariables(resolver, libsDirectory, openReplaceToken, closeReplaceToken)));
+        }
+
+        final List<PackageResult> results;
+        try {
+            results = packageSplit.build(config.build(), libsProducers);
+        } catch (PackagingException e) {
+            getLog().error("Failed to create the debian packages", e);
+            throw new MojoExecutionException("Failed to create the debian packages", e);
+        }
+
+        if ("true".equalsIgnoreCase(attach)) {
+            final File debFile = results.get(0).getDeb();
+            console.info("Attaching created debian package " + debFile);
+            if (!isType()) {
+                projectHelper.attachArtifact(getProject(), type, classifier, debFile);
+            } else {
+                getProject().getArtifact().setFile(debFile);
+            }
+
+            // a reused libs package was attached by the build that created it
+            if (packageSplit.isLibsBuilt()) {
+                console.info("Attaching created debian package " + packageSplit.getLibsDeb());
+                projectHelper.attachArtifact(getProject(), type, packageSplit.getLibsName(), packageSplit.getLibsDeb());
+            }
+        }
+
+        if (!isBlank(propertyPrefix)) {
+            getProject().getProperties().put(propertyPrefix + "libs.version", packageSplit.getLibsVersion());
+            getProject().getProperties().put(propertyPrefix + "libs.deb", packageSplit.getLibsDeb().getAbsolutePath());
+        }
+    }
+
     /**
      * Initializes unspecified sign properties using available defaults
      * and global settings.
@@ -640,11 +1039,11 @@ public class DebMojo extends AbstractMojo {
         }
 
         Map<String, String> properties =
-                readPropertiesFromActiveProfiles(signCfgPrefix, KEY, KEYRING, PASSPHRASE);
+                readPropertiesFromActiveProfiles(signCfgPrefix, SigningSettings.KEY, SigningSettings.KEYRING, SigningSettings.PASSPHRASE);
 
-        key = lookupIfEmpty(key, properties, KEY);
-        keyring = lookupIfEmpty(keyring, properties, KEYRING);
-        passphrase = decrypt(lookupIfEmpty(passphrase, properties, PASSPHRASE));
+        key = lookupIfEmpty(key, properties, SigningSettings.KEY);
+        keyring = lookupIfEmpty(keyring, properties, SigningSettings.KEYRING);
+        passphrase = decrypt(lookupIfEmpty(passphrase, properties, SigningSettings.PASSPHRASE));
 
         if (keyring == null) {
             try {
@@ -664,23 +1063,7 @@ public class DebMojo extends AbstractMojo {
      * @return decrypted passphrase
      */
     private String decrypt( final String maybeEncryptedPassphrase ) {
-        if (maybeEncryptedPassphrase == null) {
-            return null;
-        }
-
-        try {
-            final String decrypted = secDispatcher.decrypt(maybeEncryptedPassphrase);
-            if (maybeEncryptedPassphrase.equals(decrypted)) {
-                console.info("Passphrase was not encrypted");
-            } else {
-                console.info("Passphrase was successfully decrypted");
-            }
-            return decrypted;
-        } catch (SecDispatcherException e) {
-            console.warn("Unable to decrypt passphrase: " + e.getMessage());
-        }
-
-        return maybeEncryptedPassphrase;
+        return SigningSettings.decrypt(secDispatcher, console, maybeEncryptedPassphrase);
     }
 
     /**
@@ -713,38 +1096,7 @@ public class DebMojo extends AbstractMojo {
      */
     public Map<String, String> readPropertiesFromActiveProfiles( final String prefix,
                                                                  final String... properties ) {
-        if (settings == null) {
-            console.debug("No maven setting injected");
-            return Collections.emptyMap();
-        }
-
-        final List<String> activeProfilesList = settings.getActiveProfiles();
-        if (activeProfilesList.isEmpty()) {
-            console.debug("No active profiles found");
-            return Collections.emptyMap();
-        }
-
-        final Map<String, String> map = new HashMap<>();
-        final Set<String> activeProfiles = new HashSet<>(activeProfilesList);
-
-        // Iterate over all active profiles in order
-        for (final Profile profile : settings.getProfiles()) {
-            // Check if the profile is active
-            final String profileId = profile.getId();
-            if (activeProfiles.contains(profileId)) {
-                console.debug("Trying active profile " + profileId);
-                for (final String property : properties) {
-                    final String propKey = prefix != null ? prefix + property : property;
-                    final String value = profile.getProperties().getProperty(propKey);
-                    if (value != null) {
-                        console.debug("Found property " + property + " in profile " + profileId);
-                        map.put(property, value);
-                    }
-                }
-            }
-        }
-
-        return map;
+        return SigningSettings.readPropertiesFromActiveProfiles(settings, console, prefix, properties);
     }
 
 }
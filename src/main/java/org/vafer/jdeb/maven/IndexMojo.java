@@ -0,0 +1,248 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.settings.Settings;
+import org.bouncycastle.openpgp.PGPException;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.repository.RepositoryIndexer;
+import org.vafer.jdeb.repository.RepositoryPruner;
+import org.vafer.jdeb.repository.RepositoryView;
+import org.vafer.jdeb.signing.PGPSigner;
+
+import static org.vafer.jdeb.utils.Utils.lookupIfEmpty;
+
+/**
+ * Writes the indexes of flat APT repositories of Debian packages, only
+ * reading the packages that changed since the previous run.
+ */
+@Mojo(name = "index", requiresProject = false, threadSafe = true)
+public class IndexMojo extends AbstractMojo {
+
+    /**
+     * The root of the repository, the URL the APT sources point to. The
+     * packages are referenced relatively to this directory.
+     */
+    @Parameter(property = "jdeb.repository", required = true)
+    private File repository;
+
+    /**
+     * The directory holding the packages, below the root of the repository.
+     * The index of all the packages is written there. Defaults to the root.
+     */
+    @Parameter(property = "jdeb.packagesDirectory")
+    private File packagesDirectory;
+
+    /**
+     * The directory of the index of the released versions only, without the
+     * snapshots, milestones and release candidates.
+     */
+    @Parameter(property = "jdeb.stableDirectory")
+    private File stableDirectory;
+
+    /**
+     * The directory of the index of the released versions of the branch set with ltsBranch.
+     */
+    @Parameter(property = "jdeb.ltsDirectory")
+    private File ltsDirectory;
+
+    /**
+     * The long term support branch, like 7.4 for 7.4, 7.4.1 and 7.4-2.
+     */
+    @Parameter(property = "jdeb.ltsBranch")
+    private String ltsBranch;
+
+    @Parameter(property = "jdeb.origin")
+    private String origin;
+
+    @Parameter(property = "jdeb.label")
+    private String label;
+
+    @Parameter(property = "jdeb.suite")
+    private String suite;
+
+    @Parameter(property = "jdeb.codename")
+    private String codename;
+
+    /**
+     * The keyring used to sign the Release files. They are not signed
+     * without a keyring, a key or a passphrase. Once one of them is set the
+     * others are looked up in the active profiles of the settings, like for
+     * the jdeb goal, and the goal fails if one is still missing.
+     */
+    @Parameter(property = "jdeb.keyring")
+    private File keyring;
+
+    /**
+     * The identifier of the key used to sign the Release files.
+     */
+    @Parameter(property = "jdeb.key")
+    private String key;
+
+    /**
+     * The passphrase of the key, it may be encrypted with the master password of Maven.
+     */
+    @Parameter(property = "jdeb.passphrase")
+    private String passphrase;
+
+    /**
+     * The prefix of the signing properties in the settings.
+     */
+    @Parameter(defaultValue = "jdeb.")
+    private String signCfgPrefix;
+
+    @Parameter(defaultValue = "${settings}")
+    private Settings settings;
+
+    @Component(hint = "jdeb-sec")
+    private SecDispatcher secDispatcher;
+
+    /**
+     * The digest algorithm of the signatures.
+     */
+    @Parameter(defaultValue = "SHA512")
+    private String signDigest;
+
+    /**
+     * The number of versions kept per package, architecture and channel (the
+     * release versions and the others). The older packages are deleted
+     * before the indexes are written. All the packages are kept by default.
+     */
+    @Parameter(property = "jdeb.index.keep", defaultValue = "0")
+    private int keep;
+
+    /**
+     * The file caching what was read from the packages. Defaults to .jdeb-index in the root of the repository.
+     */
+    @Parameter(property = "jdeb.indexCache")
+    private File cacheFile;
+
+    /**
+     * The number of packages read concurrently, the number of processors by default.
+     */
+    @Parameter(property = "jdeb.index.threads", defaultValue = "0")
+    private int threads;
+
+    /**
+     * If verbose is true more build messages are logged.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean verbose;
+
+    /**
+     * Indicates if the execution should be disabled. If <code>true</code>, nothing will occur during execution.
+     */
+    @Parameter(property = "jdeb.skip", defaultValue = "false")
+    private boolean skip;
+
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("skipping as configured (skip)");
+            return;
+        }
+
+        final Console console = new MojoConsole(getLog(), verbose);
+        final RepositoryIndexer indexer = new RepositoryIndexer(console, repository);
+        indexer.setReleaseField("Origin", origin);
+        indexer.setReleaseField("Label", label);
+        indexer.setReleaseField("Suite", suite);
+        indexer.setReleaseField("Codename", codename);
+        if (cacheFile != null) {
+            indexer.setCacheFile(cacheFile);
+        }
+        if (threads > 0) {
+            indexer.setThreads(threads);
+        }
+
+        indexer.setSigner(createSigner(console));
+
+        final File directory = packagesDirectory != null ? packagesDirectory : repository;
+        final List<RepositoryView> views = new ArrayList<>();
+        views.add(RepositoryView.all(directory.getName(), directory));
+        if (stableDirectory != null) {
+            views.add(RepositoryView.stable(stableDirectory));
+        }
+        if (ltsDirectory != null) {
+            if (ltsBranch == null) {
+                throw new MojoExecutionException("ltsBranch is required with ltsDirectory");
+            }
+            views.add(RepositoryView.lts(ltsDirectory, ltsBranch));
+        }
+
+        try {
+            if (keep > 0) {
+                final RepositoryPruner pruner = new RepositoryPruner(console, indexer);
+                pruner.setKeep(keep);
+                pruner.prune(directory);
+            }
+            indexer.index(directory, views);
+        } catch (PackagingException e) {
+            throw new MojoExecutionException("Failed to index the repository " + repository, e);
+        }
+    }
+
+    /**
+     * Returns the signer of the Release files, or null if signing isn't configured at all.
+     */
+    private PGPSigner createSigner( Console console ) throws MojoExecutionException {
+        if (keyring == null && key == null && passphrase == null) {
+            return null;
+        }
+
+        final Map<String, String> properties = SigningSettings.readPropertiesFromActiveProfiles(settings, console, signCfgPrefix,
+            SigningSettings.KEY, SigningSettings.KEYRING, SigningSettings.PASSPHRASE);
+        final String signKey = lookupIfEmpty(key, properties, SigningSettings.KEY);
+        final String signKeyring = lookupIfEmpty(keyring != null ? keyring.getPath() : null, properties, SigningSettings.KEYRING);
+        final String signPassphrase = SigningSettings.decrypt(secDispatcher, console, lookupIfEmpty(passphrase, properties, SigningSettings.PASSPHRASE));
+
+        final List<String> missing = new ArrayList<>();
+        if (signKeyring == null) {
+            missing.add(SigningSettings.KEYRING);
+        }
+        if (signKey == null) {
+            missing.add(SigningSettings.KEY);
+        }
+        if (signPassphrase == null) {
+            missing.add(SigningSettings.PASSPHRASE);
+        }
+        if (!missing.isEmpty()) {
+            // an unsigned index would replace the signed one
+            throw new MojoExecutionException("The signing of the Release files is only partly configured, missing: " + String.join(", ", missing));
+        }
+
+        try (InputStream input = new FileInputStream(signKeyring)) {
+            return new PGPSigner(input, signKey, signPassphrase, PGPSigner.getDigestCode(signDigest));
+        } catch (IOException | PGPException | PackagingException e) {
+            throw new MojoExecutionException("Could not load the key " + signKey + " from " + signKeyring, e);
+        }
+    }
+}
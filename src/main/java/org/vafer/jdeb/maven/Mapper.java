@@ -17,17 +17,20 @@
 package org.vafer.jdeb.maven;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.maven.plugins.annotations.Parameter;
 import org.vafer.jdeb.mapping.LsMapper;
+import org.vafer.jdeb.mapping.MtreeMapper;
 import org.vafer.jdeb.mapping.NullMapper;
 import org.vafer.jdeb.mapping.PermMapper;
+import org.vafer.jdeb.mapping.RulesMapper;
 
 /**
  * Maven "mapper" element acting as factory for the entry mapper.
- * Supported types: ls, perm
+ * Supported types: ls, mtree, perm, rules
  */
 public final class Mapper {
 
@@ -61,21 +64,38 @@ public final class Mapper {
     @Parameter
     private File src;
 
+    @Parameter
+    private Rule[] rules;
+
 
     public org.vafer.jdeb.mapping.Mapper createMapper() throws IOException {
 
         if ("ls".equalsIgnoreCase(type)) {
             try {
-                return new LsMapper(new FileInputStream(src));
+                return new LsMapper(src);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
 
+        if ("mtree".equalsIgnoreCase(type)) {
+            return new MtreeMapper(src);
+        }
+
         if ("perm".equalsIgnoreCase(type)) {
             return new PermMapper(uid, gid, user, group, filemode, dirmode, strip, prefix);
         }
 
+        if ("rules".equalsIgnoreCase(type)) {
+            final List<RulesMapper.Rule> list = new ArrayList<>();
+            if (rules != null) {
+                for (Rule rule : rules) {
+                    list.add(rule.createRule());
+                }
+            }
+            return new RulesMapper(list);
+        }
+
         /* NullMapper required for DataProducerPathTemplate */
         return NullMapper.INSTANCE;
     }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.maven;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Maven "package" element of the "packages" list: one of the packages built
+ * out of the entries of the shared "dataSet" matching its patterns.
+ */
+public final class PackageSelection {
+
+    /**
+     * The Debian package created, the same variables as for the "deb" parameter are supported.
+     */
+    @Parameter(required = true)
+    private String deb;
+
+    /**
+     * The directory with the control files of the package.
+     */
+    @Parameter(required = true)
+    private String controlDir;
+
+    /**
+     * The changes file written, the changes file is written next to the package by default.
+     */
+    @Parameter
+    private String changesOut;
+
+    /**
+     * The entries of the dataSet included in the package, comma separated, all of them by default.
+     */
+    @Parameter
+    private String includes;
+
+    /**
+     * The entries of the dataSet excluded from the package, comma separated.
+     */
+    @Parameter
+    private String excludes;
+
+    /**
+     * The classifier the package is attached with, the name of the package by default.
+     */
+    @Parameter
+    private String classifier;
+
+    public String getDeb() {
+        return deb;
+    }
+
+    public String getControlDir() {
+        return controlDir;
+    }
+
+    public String getChangesOut() {
+        return changesOut;
+    }
+
+    public String[] getIncludes() {
+        return splitPatterns(includes);
+    }
+
+    public String[] getExcludes() {
+        return splitPatterns(excludes);
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    private static String[] splitPatterns( String patterns ) {
+        if (patterns == null || patterns.isEmpty()) {
+            return null;
+        }
+        final List<String> tokens = new ArrayList<>();
+        final StringTokenizer tokenizer = new StringTokenizer(patterns, ", ", false);
+        while (tokenizer.hasMoreTokens()) {
+            tokens.add(tokenizer.nextToken());
+        }
+        return tokens.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.maven;
+
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Maven "variant" element of the "variants" list: one of the packages
+ * carrying the whole "dataSet" with control files of their own.
+ */
+public final class PackageVariant {
+
+    /**
+     * The Debian package created, the same variables as for the "deb" parameter are supported.
+     */
+    @Parameter(required = true)
+    private String deb;
+
+    /**
+     * The directory with the control files of the variant.
+     */
+    @Parameter(required = true)
+    private String controlDir;
+
+    /**
+     * The changes file written, the changes file is written next to the package by default.
+     */
+    @Parameter
+    private String changesOut;
+
+    /**
+     * The classifier the package is attached with, the name of the package file by default.
+     */
+    @Parameter
+    private String classifier;
+
+    public String getDeb() {
+        return deb;
+    }
+
+    public String getControlDir() {
+        return controlDir;
+    }
+
+    public String getChangesOut() {
+        return changesOut;
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+}
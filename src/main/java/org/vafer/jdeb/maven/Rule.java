@@ -0,0 +1,55 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.maven;
+
+import org.apache.maven.plugins.annotations.Parameter;
+import org.vafer.jdeb.mapping.RulesMapper;
+
+/**
+ * Maven "rule" element of a "rules" mapper.
+ */
+public final class Rule {
+
+    @Parameter(required = true)
+    private String pattern;
+
+    @Parameter
+    private String target;
+
+    @Parameter
+    private int uid = -1;
+
+    @Parameter
+    private int gid = -1;
+
+    @Parameter
+    private String user;
+
+    @Parameter
+    private String group;
+
+    @Parameter
+    private String filemode;
+
+    @Parameter
+    private String dirmode;
+
+    public RulesMapper.Rule createRule() {
+        return new RulesMapper.Rule(pattern, target, uid, gid, user, group, filemode, dirmode);
+    }
+
+}
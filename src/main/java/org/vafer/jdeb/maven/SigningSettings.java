@@ -0,0 +1,122 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.maven;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.settings.Profile;
+import org.apache.maven.settings.Settings;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcher;
+import org.sonatype.plexus.components.sec.dispatcher.SecDispatcherException;
+import org.vafer.jdeb.Console;
+
+/**
+ * The signing configuration found in the Maven settings, shared by the goals signing with a key.
+ */
+final class SigningSettings {
+
+    static final String KEY = "key";
+    static final String KEYRING = "keyring";
+    static final String PASSPHRASE = "passphrase";
+
+    private SigningSettings() {
+    }
+
+    /**
+     * Read properties from the active profiles.
+     *
+     * Goes through all active profiles (in the order the
+     * profiles are defined in settings.xml) and extracts
+     * the desired properties (if present). The prefix is
+     * used when looking up properties in the profile but
+     * not in the returned map.
+     *
+     * @param prefix The prefix to use or null if no prefix should be used
+     * @param properties The properties to read
+     *
+     * @return A map containing the values for the properties that were found
+     */
+    static Map<String, String> readPropertiesFromActiveProfiles( final Settings settings,
+                                                                 final Console console,
+                                                                 final String prefix,
+                                                                 final String... properties ) {
+        if (settings == null) {
+            console.debug("No maven setting injected");
+            return Collections.emptyMap();
+        }
+
+        final List<String> activeProfilesList = settings.getActiveProfiles();
+        if (activeProfilesList.isEmpty()) {
+            console.debug("No active profiles found");
+            return Collections.emptyMap();
+        }
+
+        final Map<String, String> map = new HashMap<>();
+        final Set<String> activeProfiles = new HashSet<>(activeProfilesList);
+
+        // Iterate over all active profiles in order
+        for (final Profile profile : settings.getProfiles()) {
+            // Check if the profile is active
+            final String profileId = profile.getId();
+            if (activeProfiles.contains(profileId)) {
+                console.debug("Trying active profile " + profileId);
+                for (final String property : properties) {
+                    final String propKey = prefix != null ? prefix + property : property;
+                    final String value = profile.getProperties().getProperty(propKey);
+                    if (value != null) {
+                        console.debug("Found property " + property + " in profile " + profileId);
+                        map.put(property, value);
+                    }
+                }
+            }
+        }
+
+        return map;
+    }
+
+    /**
+     * Decrypts given passphrase if needed using maven security dispatcher.
+     * See http://maven.apache.org/guides/mini/guide-encryption.html for details.
+     *
+     * @param maybeEncryptedPassphrase possibly encrypted passphrase
+     * @return decrypted passphrase
+     */
+    static String decrypt( final SecDispatcher secDispatcher, final Console console, final String maybeEncryptedPassphrase ) {
+        if (maybeEncryptedPassphrase == null) {
+            return null;
+        }
+
+        try {
+            final String decrypted = secDispatcher.decrypt(maybeEncryptedPassphrase);
+            if (maybeEncryptedPassphrase.equals(decrypted)) {
+                console.info("Passphrase was not encrypted");
+            } else {
+                console.info("Passphrase was successfully decrypted");
+            }
+            return decrypted;
+        } catch (SecDispatcherException e) {
+            console.warn("Unable to decrypt passphrase: " + e.getMessage());
+        }
+
+        return maybeEncryptedPassphrase;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.reader.DebVerifier;
+import org.vafer.jdeb.reader.VerificationResult;
+
+/**
+ * Verifies Debian packages: the content against the md5sums, and the
+ * signatures against a keyring.
+ */
+@Mojo(name = "verify", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
+public class VerifyMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project.build.directory}", readonly = true)
+    private File buildDirectory;
+
+    /**
+     * The packages to verify. All the .deb files of the build directory by default.
+     */
+    @Parameter
+    private File[] packages;
+
+    /**
+     * The public or secret keyring holding the keys the signatures are checked with.
+     * Without keyring the signatures are not checked.
+     */
+    @Parameter(property = "jdeb.verify.keyring")
+    private File keyring;
+
+    /**
+     * If requireSignature is true the packages without signature fail the verification.
+     */
+    @Parameter(property = "jdeb.verify.requireSignature", defaultValue = "false")
+    private boolean requireSignature;
+
+    /**
+     * The number of packages verified concurrently, the number of processors by default.
+     */
+    @Parameter(property = "jdeb.verify.threads", defaultValue = "0")
+    private int threads;
+
+    /**
+     * If verbose is true more build messages are logged.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean verbose;
+
+    /**
+     * Indicates if the execution should be disabled. If <code>true</code>, nothing will occur during execution.
+     */
+    @Parameter(property = "jdeb.skip", defaultValue = "false")
+    private boolean skip;
+
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("skipping as configured (skip)");
+            return;
+        }
+
+        final List<File> debs = new ArrayList<>();
+        if (packages != null && packages.length > 0) {
+            debs.addAll(Arrays.asList(packages));
+        } else {
+            final File[] files = buildDirectory.listFiles((dir, name) -> name.endsWith(".deb"));
+            if (files != null) {
+                Arrays.sort(files);
+                debs.addAll(Arrays.asList(files));
+            }
+        }
+        if (debs.isEmpty()) {
+            getLog().info("No package to verify");
+            return;
+        }
+
+        final Console console = new MojoConsole(getLog(), verbose);
+        final DebVerifier verifier = new DebVerifier(console);
+        verifier.setRequireSignature(requireSignature);
+        if (threads > 0) {
+            verifier.setThreads(threads);
+        }
+        if (keyring != null) {
+            try (InputStream input = new FileInputStream(keyring)) {
+                verifier.addKeyring(input);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not read the keyring " + keyring, e);
+            }
+        }
+
+        int invalid = 0;
+        for (VerificationResult result : verifier.verify(debs)) {
+            for (String warning : result.getWarnings()) {
+                getLog().warn(result.getFile().getName() + ": " + warning);
+            }
+            if (result.isValid()) {
+                getLog().info("Verified " + result.getFile() + " (" + result.getFiles() + " files"
+                    + (result.getSignatures().isEmpty() ? "" : ", signed by " + String.join(", ", result.getSignatures())) + ")");
+            } else {
+                invalid++;
+                for (String problem : result.getProblems()) {
+                    getLog().error(result.getFile().getName() + ": " + problem);
+                }
+            }
+        }
+
+        if (invalid > 0) {
+            throw new MojoFailureException(invalid + " of " + debs.size() + " packages failed the verification");
+        }
+    }
+}
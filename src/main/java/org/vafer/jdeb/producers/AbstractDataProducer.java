@@ -16,13 +16,14 @@
 package org.vafer.jdeb.producers;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.tools.ant.types.selectors.SelectorUtils;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.mapping.MapperChain;
+import org.vafer.jdeb.utils.FileSourceInputStream;
+import org.vafer.jdeb.utils.Utils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 /**
@@ -32,13 +33,13 @@ public abstract class AbstractDataProducer implements DataProducer {
 
     private final String[] includes;
     private final String[] excludes;
-    private final Mapper[] mappers;
+    private final Mapper mapper;
 
 
     public AbstractDataProducer( final String[] pIncludes, final String[] pExcludes, final Mapper[] pMapper ) {
         excludes = (pExcludes != null) ? pExcludes : new String[0];
         includes = (pIncludes != null) ? pIncludes : new String[] { "**" };
-        mappers = (pMapper != null) ? pMapper : new Mapper[0];
+        mapper = MapperChain.compile(pMapper);
     }
 
     public boolean isIncluded( final String pName ) {
@@ -53,7 +54,7 @@ public abstract class AbstractDataProducer implements DataProducer {
 
     private boolean isIncluded( String name, String[] includes ) {
         for (String include : includes) {
-            if (SelectorUtils.matchPath(include, name)) {
+            if (Utils.matchPath(include, name)) {
                 return true;
             }
         }
@@ -63,7 +64,7 @@ public abstract class AbstractDataProducer implements DataProducer {
 
     private boolean isExcluded( String name, String[] excludes ) {
         for (String exclude : excludes) {
-            if (SelectorUtils.matchPath(exclude, name)) {
+            if (Utils.matchPath(exclude, name)) {
                 return true;
             }
         }
@@ -85,17 +86,10 @@ public abstract class AbstractDataProducer implements DataProducer {
         TarArchiveEntry fileEntry = Producers.defaultFileEntryWithName(fileName);
         fileEntry.setSize(file.length());
         fileEntry = map(fileEntry);
-        Producers.produceInputStreamWithEntry(consumer, new FileInputStream(file), fileEntry);
+        Producers.produceInputStreamWithEntry(consumer, new FileSourceInputStream(file), fileEntry);
     }
 
     public TarArchiveEntry map( final TarArchiveEntry pEntry ) {
-
-        TarArchiveEntry entry = pEntry;
-
-        for (Mapper mapper : mappers) {
-            entry = mapper.map(entry);
-        }
-
-        return entry;
+        return mapper.map(pEntry);
     }
 }
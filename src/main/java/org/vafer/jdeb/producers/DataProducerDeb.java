@@ -0,0 +1,104 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.reader.DebReader;
+import org.vafer.jdeb.utils.DigestedInputStream;
+import org.vafer.jdeb.utils.Utils;
+
+/**
+ * Providing the data of a Debian package, keeping permissions and ownerships.
+ * The data archive is streamed out of the package in any of the supported
+ * compressions, nothing is extracted to the disk. The digests of the md5sums
+ * of the package can be reused for the files, to spare hashing them again.
+ */
+public final class DataProducerDeb extends AbstractDataProducer implements DataProducer {
+
+    private final File deb;
+    private final boolean md5sums;
+
+    public DataProducerDeb( final File pDeb, final String[] pIncludes, final String[] pExcludes, final Mapper[] pMappers ) {
+        this(pDeb, pIncludes, pExcludes, pMappers, true);
+    }
+
+    /**
+     * @param pMd5sums reuse the digests of the md5sums of the package
+     */
+    public DataProducerDeb( final File pDeb, final String[] pIncludes, final String[] pExcludes, final Mapper[] pMappers, final boolean pMd5sums ) {
+        super(pIncludes, pExcludes, pMappers);
+        deb = pDeb;
+        md5sums = pMd5sums;
+    }
+
+    public void produce( final DataConsumer pReceiver ) throws IOException {
+        try (DebReader reader = DebReader.open(deb)) {
+            final Map<String, String> digests = md5sums ? reader.getMd5sums() : Collections.<String, String>emptyMap();
+
+            try (TarArchiveInputStream data = reader.openData()) {
+                TarArchiveEntry entry;
+                while ((entry = data.getNextEntry()) != null) {
+                    final String name = entry.getName();
+                    if (!isIncluded(name)) {
+                        continue;
+                    }
+
+                    if (entry.isCharacterDevice() || entry.isBlockDevice() || entry.isFIFO()) {
+                        throw new IOException("The device or fifo " + name + " of " + deb + " can't be packaged");
+                    }
+
+                    entry = map(entry);
+
+                    if (entry.isSymbolicLink()) {
+                        pReceiver.onEachLink(entry);
+                        continue;
+                    }
+
+                    if (entry.isLink()) {
+                        // a hard link points to another entry of the archive, it moves along with it
+                        if (!isIncluded(entry.getLinkName())) {
+                            throw new IOException("The hard link " + name + " of " + deb + " points to " + entry.getLinkName() + " which is excluded");
+                        }
+                        entry.setLinkName(map(new TarArchiveEntry(entry.getLinkName(), true)).getName());
+                        pReceiver.onEachLink(entry);
+                        continue;
+                    }
+
+                    if (entry.isDirectory()) {
+                        pReceiver.onEachDir(entry);
+                        continue;
+                    }
+
+                    // the digest belongs to the path in the source package, the mappers don't change the content
+                    final String md5 = digests.get(Utils.normalizePath(name));
+                    final InputStream input = md5 != null ? new DigestedInputStream(data, md5) : data;
+                    pReceiver.onEachFile(input, entry);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.utils.DigestCache;
+import org.vafer.jdeb.utils.DigestedInputStream;
+import org.vafer.jdeb.utils.FileSourceInputStream;
+
+/**
+ * DataProducer streaming files from where they are, typically the artifacts
+ * of the local Maven repository, without copying them first. Their MD5
+ * digests come from a {@link DigestCache}, so a file is only read once per
+ * build, to write it into the archive.
+ */
+public final class DataProducerDependencies extends AbstractDataProducer implements DataProducer {
+
+    private final Map<String, File> files;
+
+    private final DigestCache cache;
+
+    /**
+     * @param pFiles  the files keyed by the name of their entry, in the order they are produced
+     * @param pMapper the mappers applied to the entries
+     * @param pCache  the cache of the digests
+     */
+    public DataProducerDependencies( final Map<String, File> pFiles, final Mapper[] pMapper, final DigestCache pCache ) {
+        super(null, null, pMapper);
+        files = new LinkedHashMap<>(pFiles);
+        cache = pCache;
+    }
+
+    public void produce( final DataConsumer pReceiver ) throws IOException {
+        final List<File> sources = new ArrayList<>(files.values());
+        for (File source : sources) {
+            if (!source.isFile()) {
+                throw new IOException("The dependency " + source + " is not a file");
+            }
+        }
+
+        final List<String> md5s = cache.md5(sources);
+
+        int i = 0;
+        for (Map.Entry<String, File> file : files.entrySet()) {
+            TarArchiveEntry entry = Producers.defaultFileEntryWithName(file.getKey());
+
+            entry = map(entry);
+
+            entry.setSize(file.getValue().length());
+
+            Producers.produceInputStreamWithEntry(pReceiver, new DigestedInputStream(new FileSourceInputStream(file.getValue()), md5s.get(i++)), entry);
+        }
+    }
+}
@@ -17,8 +17,11 @@ package org.vafer.jdeb.producers;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
-import org.apache.tools.ant.DirectoryScanner;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.mapping.Mapper;
@@ -30,68 +33,99 @@ import org.vafer.jdeb.utils.Utils;
  */
 public final class DataProducerDirectory extends AbstractDataProducer implements DataProducer {
 
-    private final DirectoryScanner scanner = new DirectoryScanner();
+    private final File baseDir;
+    private final String[] includes;
+    private final String[] excludes;
 
     public DataProducerDirectory( final File pDir, final String[] pIncludes, final String[] pExcludes, final Mapper[] pMappers ) {
         super(pIncludes, pExcludes, pMappers);
-        scanner.setBasedir(pDir);
-        scanner.setIncludes(pIncludes);
-        scanner.setExcludes(pExcludes);
-        scanner.setCaseSensitive(true);
-        scanner.setFollowSymlinks(true);
+        baseDir = pDir;
+        includes = normalizePatterns(pIncludes != null ? pIncludes : new String[] { "**" });
+        excludes = normalizePatterns(pExcludes != null ? pExcludes : new String[0]);
     }
 
     public void produce( final DataConsumer pReceiver ) throws IOException {
 
-        scanner.scan();
-
-        final File baseDir = scanner.getBasedir();
+        if (!baseDir.isDirectory()) {
+            throw new IOException("The directory " + baseDir + " does not exist or is not a directory");
+        }
 
-        for (String dir : scanner.getIncludedDirectories()) {
-            final File file = new File(baseDir, dir);
-            String dirname = getFilename(baseDir, file);
+        final List<String> dirs = new ArrayList<>();
+        final List<String> files = new ArrayList<>();
+        scan(baseDir, "", new HashSet<>(), dirs, files);
 
-            if ("".equals(dirname)) {
+        for (String dir : dirs) {
+            if (!isIncluded(dir)) {
                 continue;
             }
 
-            if ('/' != File.separatorChar) {
-                dirname = dirname.replace(File.separatorChar, '/');
-            }
+            produceDir(pReceiver, dir + "/");
+        }
 
-            if (!isIncluded(dirname)) {
+        for (String filename : files) {
+            if (!isIncluded(filename)) {
                 continue;
             }
 
-            if (!dirname.endsWith("/")) {
-                dirname += "/";
-            }
-
-            produceDir(pReceiver, dirname);
+            produceFile(pReceiver, new File(baseDir, filename), filename);
         }
+    }
 
+    /**
+     * Walks the directory depth first, following symbolic links but not
+     * cycles, and collects the selected directories and files in the order
+     * they are found.
+     */
+    private void scan( final File dir, final String prefix, final Set<File> parents, final List<String> dirs, final List<String> files ) throws IOException {
+        final File canonical = dir.getCanonicalFile();
+        if (!parents.add(canonical)) {
+            return;
+        }
 
-        for (String f : scanner.getIncludedFiles()) {
-            final File file = new File(baseDir, f);
-            String filename = getFilename(baseDir, file);
-
-            if ('/' != File.separatorChar) {
-                filename = filename.replace(File.separatorChar, '/');
-            }
+        final String[] names = dir.list();
+        if (names == null) {
+            throw new IOException("Unable to list the content of " + dir);
+        }
 
-            if (!isIncluded(filename)) {
-                continue;
+        for (String name : names) {
+            final File file = new File(dir, name);
+            final String path = prefix + name;
+            if (file.isDirectory()) {
+                if (isSelected(path)) {
+                    dirs.add(path);
+                }
+                scan(file, path + "/", parents, dirs, files);
+            } else if (file.isFile() && isSelected(path)) {
+                files.add(path);
             }
-
-            produceFile(pReceiver, file, filename);
         }
+
+        parents.remove(canonical);
     }
 
-    private String getFilename( File root, File file ) {
+    private boolean isSelected( final String path ) {
+        return matchesAny(includes, path) && !matchesAny(excludes, path);
+    }
 
-        final String relativeFilename = file.getAbsolutePath().substring(root.getAbsolutePath().length());
+    private static boolean matchesAny( final String[] patterns, final String path ) {
+        for (String pattern : patterns) {
+            if (Utils.matchPath(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        return Utils.stripLeadingSlash(relativeFilename);
+    /**
+     * A pattern ending with a separator selects everything below, as it always did with Ant's DirectoryScanner.
+     */
+    private static String[] normalizePatterns( final String[] patterns ) {
+        final String[] normalized = new String[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            final String pattern = patterns[i].replace('\\', '/');
+            normalized[i] = pattern.endsWith("/") ? pattern + "**" : pattern;
+        }
+        return normalized;
     }
 
-}
\ No newline at end of file
+}
@@ -16,13 +16,13 @@
 package org.vafer.jdeb.producers;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.vafer.jdeb.DataConsumer;
 import org.vafer.jdeb.DataProducer;
 import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.utils.FileSourceInputStream;
 
 /**
  * DataProducer representing a single file
@@ -54,7 +54,7 @@ public final class DataProducerFile extends AbstractDataProducer implements Data
 
         entry.setSize(file.length());
 
-        Producers.produceInputStreamWithEntry(pReceiver, new FileInputStream(file), entry);
+        Producers.produceInputStreamWithEntry(pReceiver, new FileSourceInputStream(file), entry);
     }
 
 }
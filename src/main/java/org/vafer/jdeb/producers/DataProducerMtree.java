@@ -0,0 +1,147 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.utils.DigestedInputStream;
+import org.vafer.jdeb.utils.FileSourceInputStream;
+import org.vafer.jdeb.utils.MtreeReader;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * DataProducer reading the entries from a BSD mtree specification, with
+ * their type, permissions, ownership and link targets. The content of the
+ * files is read from a base directory. The MD5 digests found in the
+ * specification are used for the md5sums file instead of hashing the files
+ * again.
+ *
+ * The specification is read as it's produced, it's never held in memory.
+ * Block and character devices, fifos and sockets are skipped.
+ */
+public final class DataProducerMtree extends AbstractDataProducer implements DataProducer {
+
+    private final File spec;
+    private final File baseDir;
+
+    /**
+     * @param pSpec    the mtree specification
+     * @param pBaseDir the directory holding the content of the files, the directory of the specification if null
+     */
+    public DataProducerMtree( final File pSpec, final File pBaseDir, final String[] pIncludes, final String[] pExcludes, final Mapper[] pMappers ) {
+        super(pIncludes, pExcludes, pMappers);
+        spec = pSpec;
+        baseDir = pBaseDir != null ? pBaseDir : pSpec.getAbsoluteFile().getParentFile();
+    }
+
+    public void produce( final DataConsumer pReceiver ) throws IOException {
+        try (MtreeReader reader = new MtreeReader(new InputStreamReader(new FileInputStream(spec), UTF_8))) {
+            MtreeReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                final String path = entry.getPath();
+                if (path.isEmpty() || !isIncluded(path)) {
+                    continue;
+                }
+
+                final String type = entry.getType();
+                if ("dir".equals(type)) {
+                    TarArchiveEntry dirEntry = Producers.defaultDirEntryWithName(path + "/");
+                    apply(entry, dirEntry);
+                    dirEntry = map(dirEntry);
+                    dirEntry.setSize(0);
+                    Producers.produceDirEntry(pReceiver, dirEntry);
+
+                } else if ("file".equals(type)) {
+                    produceFile(pReceiver, entry);
+
+                } else if ("link".equals(type)) {
+                    if (entry.getLink() == null) {
+                        throw new IOException("The link " + path + " has no target in " + spec);
+                    }
+                    TarArchiveEntry linkEntry = new TarArchiveEntry(path, TarArchiveEntry.LF_SYMLINK);
+                    linkEntry.setUserId(Producers.ROOT_UID);
+                    linkEntry.setUserName(Producers.ROOT_NAME);
+                    linkEntry.setGroupId(Producers.ROOT_UID);
+                    linkEntry.setGroupName(Producers.ROOT_NAME);
+                    linkEntry.setMode(TarArchiveEntry.DEFAULT_FILE_MODE);
+                    apply(entry, linkEntry);
+                    linkEntry.setLinkName(entry.getLink());
+                    linkEntry = map(linkEntry);
+                    pReceiver.onEachLink(linkEntry);
+                }
+            }
+        }
+    }
+
+    private void produceFile( final DataConsumer pReceiver, final MtreeReader.Entry entry ) throws IOException {
+        final String path = entry.getPath();
+        final File file = new File(baseDir, entry.getContents() != null ? entry.getContents() : path);
+        if (!file.isFile()) {
+            if (entry.isOptional()) {
+                return;
+            }
+            throw new IOException("The file " + file + " listed in " + spec + " doesn't exist");
+        }
+
+        final long size = entry.getSize();
+        if (size >= 0 && size != file.length()) {
+            throw new IOException("The size of " + file + " is " + file.length() + " but " + size + " in " + spec);
+        }
+
+        TarArchiveEntry fileEntry = Producers.defaultFileEntryWithName(path);
+        fileEntry.setSize(file.length());
+        apply(entry, fileEntry);
+        fileEntry = map(fileEntry);
+
+        InputStream input = new FileSourceInputStream(file);
+        if (entry.getMd5() != null) {
+            input = new DigestedInputStream(input, entry.getMd5());
+        }
+        Producers.produceInputStreamWithEntry(pReceiver, input, fileEntry);
+    }
+
+    private static void apply( final MtreeReader.Entry entry, final TarArchiveEntry tarEntry ) throws IOException {
+        if (entry.getMode() >= 0) {
+            tarEntry.setMode(entry.getMode());
+        }
+        if (entry.getUserId() >= 0) {
+            tarEntry.setUserId(entry.getUserId());
+        }
+        if (entry.getGroupId() >= 0) {
+            tarEntry.setGroupId(entry.getGroupId());
+        }
+        if (entry.getUserName() != null) {
+            tarEntry.setUserName(entry.getUserName());
+        }
+        if (entry.getGroupName() != null) {
+            tarEntry.setGroupName(entry.getGroupName());
+        }
+        if (entry.getTime() >= 0) {
+            tarEntry.setModTime(entry.getTime());
+        }
+    }
+
+}
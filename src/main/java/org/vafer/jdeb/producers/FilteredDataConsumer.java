@@ -0,0 +1,90 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.utils.Template;
+import org.vafer.jdeb.utils.VariableResolver;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Consumer replacing the variables in the content of the files before
+ * passing them on. The files are read as UTF-8 text and filtered line by
+ * line. The size of a file is only known once it has been filtered, the
+ * result is kept in memory up to a threshold and in a temporary file
+ * beyond it.
+ */
+public final class FilteredDataConsumer implements DataConsumer {
+
+    /** The filtered files larger than this are buffered on disk */
+    private static final int MEMORY_THRESHOLD = 1024 * 1024;
+
+    private final DataConsumer consumer;
+    private final VariableResolver resolver;
+    private final String openToken;
+    private final String closeToken;
+
+    public FilteredDataConsumer( final DataConsumer consumer, final VariableResolver resolver, final String openToken, final String closeToken ) {
+        this.consumer = consumer;
+        this.resolver = resolver;
+        this.openToken = openToken != null ? openToken : "[[";
+        this.closeToken = closeToken != null ? closeToken : "]]";
+    }
+
+    public void onEachDir( final TarArchiveEntry dirEntry ) throws IOException {
+        consumer.onEachDir(dirEntry);
+    }
+
+    public void onEachFile( final InputStream input, final TarArchiveEntry fileEntry ) throws IOException {
+        final DeferredFileOutputStream filtered = DeferredFileOutputStream.builder()
+            .setThreshold(MEMORY_THRESHOLD)
+            .setPrefix("jdeb")
+            .setSuffix(".filtered")
+            .get();
+
+        try {
+            // the input belongs to the producer, only the writer is closed
+            try (Writer writer = new OutputStreamWriter(filtered, UTF_8)) {
+                Template.filter(new InputStreamReader(input, UTF_8), writer, resolver, openToken, closeToken);
+            }
+
+            fileEntry.setSize(filtered.getByteCount());
+            try (InputStream content = filtered.toInputStream()) {
+                consumer.onEachFile(content, fileEntry);
+            }
+
+        } finally {
+            if (!filtered.isInMemory()) {
+                filtered.getFile().delete();
+            }
+        }
+    }
+
+    public void onEachLink( final TarArchiveEntry linkEntry ) throws IOException {
+        consumer.onEachLink(linkEntry);
+    }
+
+}
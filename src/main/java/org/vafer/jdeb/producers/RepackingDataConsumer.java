@@ -0,0 +1,267 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.utils.CacheDirectory;
+import org.vafer.jdeb.utils.DigestedInputStream;
+import org.vafer.jdeb.utils.FileSourceInputStream;
+import org.vafer.jdeb.utils.MultiDigest;
+
+/**
+ * Consumer rewriting the jars and zips with all their entries stored
+ * instead of deflated before passing them on. The deflated entries of a jar
+ * are incompressible, stored they let the compression of the data archive
+ * work across the classes and across the jars.
+ *
+ * The rewrite is deterministic: the entries are sorted by name, with the
+ * manifest kept first as the jar format requires, the timestamps are set to
+ * a fixed date and the extra fields and comments are dropped. The results
+ * are cached in the private cache directory of the user by the SHA-256 of
+ * the input, so the same jar is only rewritten once across the builds.
+ * Files that can't be opened as zips are passed on unchanged.
+ */
+public final class RepackingDataConsumer implements DataConsumer {
+
+    /** The name of the directory the rewritten archives are cached in, by the hash of their input */
+    static final String CACHE_NAME = "repack";
+
+    /** Changes whenever the output of the rewrite changes, to leave the stale entries of the cache behind */
+    private static final String FORMAT_VERSION = "1";
+
+    private static final String[] EXTENSIONS = { ".jar", ".war", ".ear", ".zip" };
+
+    /**
+     * The time of all the entries. Zip timestamps are local times, the fixed
+     * local date is converted with the default zone of the JVM so the stored
+     * fields are the same whatever the zone of the build.
+     */
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2010, 1, 1, 12, 0);
+
+    /** The entries the jar format expects first, in that order */
+    private static final List<String> LEADING = List.of("META-INF/", "META-INF/MANIFEST.MF");
+
+    private static final Comparator<ZipArchiveEntry> ORDER = Comparator
+        .comparingInt((ZipArchiveEntry entry) -> {
+            final int index = LEADING.indexOf(entry.getName());
+            return index < 0 ? LEADING.size() : index;
+        })
+        .thenComparing(ZipArchiveEntry::getName);
+
+    private final DataConsumer consumer;
+    private final File cacheDirectory;
+
+    public RepackingDataConsumer( final DataConsumer consumer ) {
+        this(consumer, CacheDirectory.get(CACHE_NAME));
+    }
+
+    /**
+     * @param cacheDirectory where the rewritten archives are cached, or null to rewrite them every time
+     */
+    RepackingDataConsumer( final DataConsumer consumer, final File cacheDirectory ) {
+        this.consumer = consumer;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public void onEachDir( final TarArchiveEntry dirEntry ) throws IOException {
+        consumer.onEachDir(dirEntry);
+    }
+
+    public void onEachFile( final InputStream input, final TarArchiveEntry fileEntry ) throws IOException {
+        if (!isArchive(fileEntry.getName())) {
+            consumer.onEachFile(input, fileEntry);
+            return;
+        }
+
+        // a digest known up front belongs to the original content, it is dropped with it
+        final InputStream source = input instanceof DigestedInputStream ? ((DigestedInputStream) input).getInputStream() : input;
+
+        File spooled = null;
+        File uncached = null;
+        try {
+            final File original;
+            if (source instanceof FileSourceInputStream) {
+                original = ((FileSourceInputStream) source).getFile();
+            } else {
+                spooled = File.createTempFile("jdeb", ".repack");
+                FileUtils.copyInputStreamToFile(source, spooled);
+                original = spooled;
+            }
+
+            final File repacked;
+            if (cacheDirectory != null) {
+                repacked = repack(original);
+            } else {
+                uncached = File.createTempFile("jdeb", ".zip");
+                repacked = rewrite(original, uncached) ? uncached : null;
+            }
+
+            // the temporary files are deleted below, they are passed as plain streams so nobody reopens them later
+            if (repacked == null) {
+                if (spooled == null) {
+                    consumer.onEachFile(input, fileEntry);
+                } else {
+                    try (InputStream content = Files.newInputStream(spooled.toPath())) {
+                        consumer.onEachFile(content, fileEntry);
+                    }
+                }
+                return;
+            }
+
+            fileEntry.setSize(repacked.length());
+            try (InputStream content = repacked == uncached ? Files.newInputStream(repacked.toPath()) : new FileSourceInputStream(repacked)) {
+                consumer.onEachFile(content, fileEntry);
+            }
+
+        } finally {
+            if (spooled != null) {
+                spooled.delete();
+            }
+            if (uncached != null) {
+                uncached.delete();
+            }
+        }
+    }
+
+    public void onEachLink( final TarArchiveEntry linkEntry ) throws IOException {
+        consumer.onEachLink(linkEntry);
+    }
+
+    static boolean isArchive( final String name ) {
+        final String lowerCase = name.toLowerCase(Locale.ROOT);
+        for (String extension : EXTENSIONS) {
+            if (lowerCase.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the rewritten archive from the cache, rewriting it first if
+     * needed, or null if the file is not a zip. A cached archive is only used
+     * if it matches the digest saved next to it.
+     */
+    File repack( final File original ) throws IOException {
+        final String hash = sha256(original);
+
+        final File cached = new File(cacheDirectory, hash + "-" + FORMAT_VERSION + ".zip");
+        final File digest = new File(cacheDirectory, cached.getName() + ".sha256");
+        if (cached.isFile() && digest.isFile()) {
+            final String expected = new String(Files.readAllBytes(digest.toPath()), StandardCharsets.US_ASCII).trim();
+            if (expected.equals(sha256(cached))) {
+                return cached;
+            }
+        }
+
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs() && !cacheDirectory.isDirectory()) {
+            throw new IOException("Could not create the directory " + cacheDirectory);
+        }
+
+        // concurrent builds may rewrite the same archive, each one in its own files before the atomic renames
+        final File temp = File.createTempFile(hash, ".tmp", cacheDirectory);
+        final File tempDigest = File.createTempFile(hash, ".tmp", cacheDirectory);
+        try {
+            if (!rewrite(original, temp)) {
+                return null;
+            }
+            Files.write(tempDigest.toPath(), sha256(temp).getBytes(StandardCharsets.US_ASCII));
+            Files.move(tempDigest.toPath(), digest.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return cached;
+
+        } finally {
+            temp.delete();
+            tempDigest.delete();
+        }
+    }
+
+    /**
+     * Rewrites the archive into the target file.
+     *
+     * @return false if the file can't be opened as a zip
+     */
+    private static boolean rewrite( final File original, final File target ) throws IOException {
+        final ZipFile zip;
+        try {
+            zip = ZipFile.builder().setFile(original).get();
+        } catch (IOException e) {
+            // not a zip after all, or one without a readable central directory
+            return false;
+        }
+        try (ZipFile z = zip) {
+            write(z, target);
+        }
+        return true;
+    }
+
+    private static String sha256( final File file ) throws IOException {
+        try {
+            return MultiDigest.digest(file, "SHA-256").get("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void write( final ZipFile zip, final File target ) throws IOException {
+        final List<ZipArchiveEntry> entries = new ArrayList<>(Collections.list(zip.getEntries()));
+        entries.sort(ORDER);
+
+        final long time = TIMESTAMP.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+        try (ZipArchiveOutputStream output = new ZipArchiveOutputStream(target.toPath())) {
+            for (ZipArchiveEntry entry : entries) {
+                final ZipArchiveEntry stored = new ZipArchiveEntry(entry.getName());
+                stored.setMethod(ZipEntry.STORED);
+                stored.setTime(time);
+                if (entry.getPlatform() == ZipArchiveEntry.PLATFORM_UNIX) {
+                    stored.setUnixMode(entry.getUnixMode());
+                }
+
+                output.putArchiveEntry(stored);
+                if (!entry.isDirectory()) {
+                    try (InputStream content = zip.getInputStream(entry)) {
+                        IOUtils.copy(content, output);
+                    }
+                }
+                output.closeArchiveEntry();
+            }
+        }
+    }
+}
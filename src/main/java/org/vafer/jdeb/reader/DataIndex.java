@@ -0,0 +1,196 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.reader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vafer.jdeb.utils.Utils;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * The offsets of the files in the uncompressed data archive of a package,
+ * written next to the package so a reader can go straight to a file.
+ *
+ * The index is a UTF-8 text file. The first line is the format, the second
+ * line the name and the size of the data member it belongs to, and every
+ * following line is a file of the archive:
+ *
+ * <pre>
+ * jdeb index 1
+ * data data.tar.xz 123456
+ * 1536 42 usr/share/doc/foo/README
+ * </pre>
+ *
+ * The offset is the one of the tar header of the file, the size the one of
+ * its content. The paths have no leading "./", backslashes and line feeds
+ * are escaped.
+ */
+public final class DataIndex {
+
+    private static final String FORMAT = "jdeb index 1";
+
+    /**
+     * A file of the data archive.
+     */
+    public static final class Entry {
+        private final long offset;
+        private final long size;
+        private final String path;
+
+        Entry( long offset, long size, String path ) {
+            this.offset = offset;
+            this.size = size;
+            this.path = path;
+        }
+
+        /** The offset of the tar header of the file in the uncompressed archive */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getPath() {
+            return path;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private String member;
+    private long memberSize;
+
+    /**
+     * Records a file of the data archive. The path may start with "./" or "/".
+     */
+    public void add( long offset, long size, String path ) {
+        final String normalized = Utils.normalizePath(path);
+        entries.put(normalized, new Entry(offset, size, normalized));
+    }
+
+    /**
+     * Sets the data member the offsets belong to, the index is only used
+     * for a package with the same member.
+     */
+    public void setMember( String member, long memberSize ) {
+        this.member = member;
+        this.memberSize = memberSize;
+    }
+
+    public String getMember() {
+        return member;
+    }
+
+    public long getMemberSize() {
+        return memberSize;
+    }
+
+    /**
+     * Returns the file at the specified path, or null if there is none.
+     */
+    public Entry find( String path ) {
+        return entries.get(Utils.normalizePath(path));
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<>(entries.values()));
+    }
+
+    public void write( File file ) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8)) {
+            writer.write(FORMAT + "\n");
+            writer.write("data " + member + " " + memberSize + "\n");
+            for (Entry entry : entries.values()) {
+                writer.write(entry.offset + " " + entry.size + " " + escape(entry.path) + "\n");
+            }
+        }
+    }
+
+    public static DataIndex read( File file ) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            if (!FORMAT.equals(reader.readLine())) {
+                throw new IOException("Unsupported index format in " + file);
+            }
+
+            final DataIndex index = new DataIndex();
+            final String[] data = split(reader.readLine(), file);
+            if (!"data".equals(data[0])) {
+                throw new IOException("Missing data member in " + file);
+            }
+            index.setMember(data[1], parse(data[2], file));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final String[] fields = split(line, file);
+                final String path = unescape(fields[2]);
+                index.entries.put(path, new Entry(parse(fields[0], file), parse(fields[1], file), path));
+            }
+            return index;
+        }
+    }
+
+    private static String[] split( String line, File file ) throws IOException {
+        final String[] fields = line != null ? line.split(" ", 3) : new String[0];
+        if (fields.length != 3) {
+            throw new IOException("Invalid line in " + file + ": " + line);
+        }
+        return fields;
+    }
+
+    private static long parse( String value, File file ) throws IOException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number in " + file + ": " + value, e);
+        }
+    }
+
+    private static String escape( String path ) {
+        return path.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private static String unescape( String path ) {
+        final StringBuilder result = new StringBuilder(path.length());
+        for (int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            if (c == '\\' && i + 1 < path.length()) {
+                final char next = path.charAt(++i);
+                result.append(next == 'n' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
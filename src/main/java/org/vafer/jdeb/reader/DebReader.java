@@ -0,0 +1,335 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.IOUtils;
+import org.tukaani.xz.SeekableXZInputStream;
+import org.vafer.jdeb.debian.Deb822Paragraph;
+import org.vafer.jdeb.debian.Deb822Reader;
+import org.vafer.jdeb.utils.ArLayout;
+import org.vafer.jdeb.utils.Utils;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Reads a Debian package. The package is mapped in memory and its members
+ * are listed from their headers, nothing is decompressed until a member is
+ * opened. The control and data archives are read with any of the
+ * compressions of {@link org.vafer.jdeb.Compression}.
+ *
+ * Single files can be read out of the data archive. When the package has an
+ * up to date {@link DataIndex} next to it the file is found without
+ * scanning the archive: an uncompressed archive is read at the offset of
+ * the file directly, and an xz archive is decompressed from the xz block
+ * holding the offset, which is close to the file when the package was built
+ * with seekable compression. Without an index, or with another compression,
+ * the archive is decompressed until the file is found.
+ *
+ * The reader is safe for concurrent use, every stream it opens reads the
+ * package on its own.
+ */
+public final class DebReader implements Closeable {
+
+    /** The size of the buffer used when the archive is read sequentially */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File deb;
+    private final FileChannel channel;
+    private final ByteBuffer map;
+    private final List<ArLayout.Member> members;
+    private final ArLayout.Member data;
+    private final DataIndex index;
+
+    private DebReader( File deb, FileChannel channel, ByteBuffer map, List<ArLayout.Member> members, ArLayout.Member data, DataIndex index ) {
+        this.deb = deb;
+        this.channel = channel;
+        this.map = map;
+        this.members = members;
+        this.data = data;
+        this.index = index;
+    }
+
+    /**
+     * Opens the package, with the index found next to it if it matches the
+     * data member of the package.
+     */
+    public static DebReader open( File deb ) throws IOException {
+        final File indexFile = new File(deb.getPath() + ".index");
+        return open(deb, indexFile.isFile() ? DataIndex.read(indexFile) : null);
+    }
+
+    /**
+     * Opens the package with the specified index, which is ignored if it
+     * belongs to another data member.
+     */
+    public static DebReader open( File deb, DataIndex index ) throws IOException {
+        final FileChannel channel = FileChannel.open(deb.toPath(), StandardOpenOption.READ);
+        try {
+            // the packages larger than what a buffer can address are read from the channel
+            final ByteBuffer map = channel.size() <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) : null;
+            final List<ArLayout.Member> members = map != null ? ArLayout.scan(map, deb) : ArLayout.scan(deb);
+            final ArLayout.Member data = ArLayout.find(members, "data.tar");
+            if (data == null) {
+                throw new IOException("No data archive found in " + deb);
+            }
+
+            if (index != null && (!data.name.equals(index.getMember()) || data.size != index.getMemberSize())) {
+                index = null;
+            }
+
+            return new DebReader(deb, channel, map, members, data, index);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return deb;
+    }
+
+    /**
+     * Returns the names and the sizes of the members of the package, in
+     * the order of the package.
+     */
+    public Map<String, Long> getMembers() {
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (ArLayout.Member member : members) {
+            result.put(member.name, member.size);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Returns the name of the data member of the package.
+     */
+    public String getDataMember() {
+        return data.name;
+    }
+
+    /**
+     * Returns the name of the control member of the package, or null if
+     * there is none.
+     */
+    public String getControlMember() {
+        final ArLayout.Member control = ArLayout.find(members, "control.tar");
+        return control != null ? control.name : null;
+    }
+
+    /**
+     * Returns the index used to find the files, or null if the archive is
+     * scanned.
+     */
+    public DataIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Opens the raw content of a member of the package.
+     *
+     * @throws FileNotFoundException if the package has no such member
+     */
+    public InputStream openMember( String name ) throws IOException {
+        return stream(member(name));
+    }
+
+    /**
+     * Opens the uncompressed control archive.
+     */
+    public TarArchiveInputStream openControl() throws IOException {
+        final String name = getControlMember();
+        if (name == null) {
+            throw new FileNotFoundException("No control archive found in " + deb);
+        }
+        return new TarArchiveInputStream(uncompress(stream(member(name)), name));
+    }
+
+    /**
+     * Opens the uncompressed data archive.
+     */
+    public TarArchiveInputStream openData() throws IOException {
+        return new TarArchiveInputStream(uncompress(stream(data), data.name));
+    }
+
+    /**
+     * Returns the MD5 digests of the md5sums control file keyed by path,
+     * the paths without leading "./". The map is empty if the package has
+     * no md5sums.
+     */
+    public Map<String, String> getMd5sums() throws IOException {
+        try (TarArchiveInputStream control = openControl()) {
+            TarArchiveEntry entry;
+            while ((entry = control.getNextEntry()) != null) {
+                if ("md5sums".equals(Utils.normalizePath(entry.getName()))) {
+                    return readMd5sums(control);
+                }
+            }
+        }
+        return new LinkedHashMap<>();
+    }
+
+    /**
+     * Parses a md5sums control file, the MD5 digests keyed by path. The
+     * stream is left open.
+     */
+    public static Map<String, String> readMd5sums( InputStream input ) throws IOException {
+        final Map<String, String> md5sums = new LinkedHashMap<>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            // the digest and the path are separated by two spaces, or by a space and a star in binary mode
+            if (line.length() > 34 && line.charAt(32) == ' ') {
+                md5sums.put(Utils.normalizePath(line.substring(34)), line.substring(0, 32).toLowerCase(Locale.ROOT));
+            }
+        }
+        return md5sums;
+    }
+
+    /**
+     * Returns the fields of the control file, in the order of the file.
+     */
+    public Map<String, String> getControlFields() throws IOException {
+        try (TarArchiveInputStream control = openControl()) {
+            TarArchiveEntry entry;
+            while ((entry = control.getNextEntry()) != null) {
+                if (!"control".equals(Utils.normalizePath(entry.getName()))) {
+                    continue;
+                }
+                final Map<String, String> fields = new LinkedHashMap<>();
+                final Deb822Paragraph paragraph = new Deb822Reader(control).next();
+                if (paragraph != null) {
+                    for (int i = 0; i < paragraph.size(); i++) {
+                        fields.put(paragraph.getName(i), paragraph.getValue(i));
+                    }
+                }
+                return fields;
+            }
+        } catch (ParseException e) {
+            throw new IOException("Could not parse the control file of " + deb, e);
+        }
+        throw new FileNotFoundException("No control file found in " + deb);
+    }
+
+    /**
+     * Opens the file at the specified path in the data archive. The stream
+     * ends with the content of the file.
+     *
+     * @throws FileNotFoundException if the archive has no such file
+     */
+    public InputStream openFile( String path ) throws IOException {
+        final String normalized = Utils.normalizePath(path);
+
+        if (index != null) {
+            final DataIndex.Entry entry = index.find(normalized);
+            if (entry == null) {
+                throw new FileNotFoundException(path + " not found in " + deb);
+            }
+            final InputStream input = openAt(entry.getOffset());
+            final TarArchiveInputStream tar = new TarArchiveInputStream(input);
+            final TarArchiveEntry tarEntry = tar.getNextEntry();
+            if (tarEntry == null || !normalized.equals(Utils.normalizePath(tarEntry.getName()))) {
+                tar.close();
+                throw new IOException("The index of " + deb + " doesn't match its data archive at " + path);
+            }
+            return tar;
+        }
+
+        final TarArchiveInputStream tar = openData();
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextEntry()) != null) {
+            if (entry.isFile() && normalized.equals(Utils.normalizePath(entry.getName()))) {
+                return tar;
+            }
+        }
+        tar.close();
+        throw new FileNotFoundException(path + " not found in " + deb);
+    }
+
+    /**
+     * Returns the uncompressed archive from the specified offset on.
+     */
+    private InputStream openAt( long offset ) throws IOException {
+        final MemberInputStream member = stream(data);
+        if (data.name.endsWith(".tar")) {
+            member.seek(offset);
+            return new BufferedInputStream(member, BUFFER_SIZE);
+        }
+        if (data.name.endsWith(".tar.xz")) {
+            final SeekableXZInputStream xz = new SeekableXZInputStream(member);
+            xz.seek(offset);
+            return xz;
+        }
+
+        final InputStream input = uncompress(member, data.name);
+        if (IOUtils.skip(input, offset) != offset) {
+            input.close();
+            throw new IOException("The index of " + deb + " points past the end of its data archive");
+        }
+        return input;
+    }
+
+    private ArLayout.Member member( String name ) throws FileNotFoundException {
+        for (ArLayout.Member member : members) {
+            if (member.name.equals(name)) {
+                return member;
+            }
+        }
+        throw new FileNotFoundException("No member " + name + " found in " + deb);
+    }
+
+    private MemberInputStream stream( ArLayout.Member member ) {
+        return new MemberInputStream(map, channel, member.contentOffset, member.size);
+    }
+
+    private static InputStream uncompress( InputStream input, String name ) throws IOException {
+        final InputStream buffered = new BufferedInputStream(input, BUFFER_SIZE);
+        if (name.endsWith(".tar")) {
+            return buffered;
+        }
+        try {
+            return new CompressorStreamFactory(true).createCompressorInputStream(buffered);
+        } catch (CompressorException e) {
+            throw new IOException("Could not uncompress the member " + name, e);
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
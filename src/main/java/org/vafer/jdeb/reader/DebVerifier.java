@@ -0,0 +1,442 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.bcpg.ArmoredInputStream;
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPObjectFactory;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureList;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.bc.BcKeyFingerprintCalculator;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentVerifierBuilderProvider;
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.utils.DaemonThreadFactory;
+import org.vafer.jdeb.utils.MultiDigest;
+import org.vafer.jdeb.utils.Utils;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Verifies Debian packages without dpkg: the content of the data archive
+ * against the md5sums of the control archive, and the signatures written by
+ * {@link org.vafer.jdeb.DebMaker}. The debsig-verify signatures are checked
+ * over the debian-binary, control and data members. The dpkg-sig manifests
+ * are checked against the members they list, and their clear signature is
+ * checked as well.
+ *
+ * The signatures are only checked when the public key is in the keyring set
+ * on the verifier. A signature made with an unknown key is a problem when a
+ * keyring is set or a signature is required, and a warning otherwise. Only
+ * the signatures that were checked satisfy a required signature. Several
+ * packages are verified concurrently.
+ */
+public final class DebVerifier {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SIGNED_MESSAGE = "-----BEGIN PGP SIGNED MESSAGE-----";
+
+    private final Console console;
+    private final Map<Long, PGPPublicKey> keys = new HashMap<>();
+    private boolean requireSignature;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public DebVerifier( Console console ) {
+        this.console = console;
+    }
+
+    /**
+     * Adds the keys of a public or secret keyring, binary or ASCII armored,
+     * to the keys the signatures are checked with.
+     */
+    public void addKeyring( InputStream keyring ) throws IOException {
+        final PGPObjectFactory factory = new PGPObjectFactory(PGPUtil.getDecoderStream(keyring), new BcKeyFingerprintCalculator());
+        Object object;
+        while ((object = factory.nextObject()) != null) {
+            final Iterator<PGPPublicKey> publicKeys;
+            if (object instanceof PGPPublicKeyRing) {
+                publicKeys = ((PGPPublicKeyRing) object).getPublicKeys();
+            } else if (object instanceof PGPSecretKeyRing) {
+                publicKeys = ((PGPSecretKeyRing) object).getPublicKeys();
+            } else {
+                continue;
+            }
+            while (publicKeys.hasNext()) {
+                final PGPPublicKey key = publicKeys.next();
+                keys.put(key.getKeyID(), key);
+            }
+        }
+    }
+
+    /**
+     * Reports the packages without signature as invalid.
+     */
+    public void setRequireSignature( boolean requireSignature ) {
+        this.requireSignature = requireSignature;
+    }
+
+    /**
+     * Sets the number of packages verified concurrently, the number of processors by default.
+     */
+    public void setThreads( int threads ) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Verifies the packages concurrently.
+     *
+     * @return the results, in the order of the packages
+     */
+    public List<VerificationResult> verify( List<File> debs ) {
+        if (debs.size() < 2 || threads == 1) {
+            final List<VerificationResult> results = new ArrayList<>(debs.size());
+            for (File deb : debs) {
+                results.add(verify(deb));
+            }
+            return results;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, debs.size()), new DaemonThreadFactory("jdeb-verify"));
+        try {
+            final List<Future<VerificationResult>> futures = new ArrayList<>(debs.size());
+            for (File deb : debs) {
+                futures.add(executor.submit(() -> verify(deb)));
+            }
+
+            final List<VerificationResult> results = new ArrayList<>(debs.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // verify reports the failures in the result, this is a bug
+                    throw new IllegalStateException("Failed to verify " + debs.get(i), e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while verifying the packages", e);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verifies a package. The failures are reported in the result, nothing is thrown.
+     */
+    public VerificationResult verify( File deb ) {
+        final VerificationResult result = new VerificationResult(deb);
+        try (DebReader reader = DebReader.open(deb, null)) {
+            final Map<String, Long> members = reader.getMembers();
+            final Iterator<String> names = members.keySet().iterator();
+            if (!names.hasNext() || !"debian-binary".equals(names.next())) {
+                result.problem("debian-binary is not the first member");
+            }
+            if (reader.getControlMember() == null) {
+                result.problem("No control archive found");
+                return result;
+            }
+
+            verifyContent(reader, result);
+
+            boolean signed = false;
+            int verified = 0;
+            for (String member : members.keySet()) {
+                if (member.startsWith("_gpg")) {
+                    signed = true;
+                    if (verifySignature(reader, member, result)) {
+                        verified++;
+                    }
+                }
+            }
+            if (requireSignature && verified == 0) {
+                result.problem(signed ? "The package has no valid signature of a known key" : "The package is not signed");
+            }
+
+        } catch (IOException | PGPException | NoSuchAlgorithmException | RuntimeException e) {
+            result.problem("Could not read the package: " + e);
+        }
+
+        console.debug(result.toString());
+        return result;
+    }
+
+    /**
+     * Checks the files of the data archive against the md5sums.
+     */
+    private void verifyContent( DebReader reader, VerificationResult result ) throws IOException, NoSuchAlgorithmException {
+        final Map<String, String> md5sums = reader.getMd5sums();
+        if (md5sums.isEmpty()) {
+            result.warning("No md5sums found, the content is not checked");
+        }
+
+        final MultiDigest digest = new MultiDigest("MD5");
+        final Set<String> seen = new HashSet<>();
+        // the digests of the files, a hard link is checked against the digest of its target
+        final Map<String, String> digests = new HashMap<>();
+        int files = 0;
+        try (TarArchiveInputStream data = reader.openData()) {
+            TarArchiveEntry entry;
+            while ((entry = data.getNextEntry()) != null) {
+                if (entry.isSymbolicLink() || (!entry.isFile() && !entry.isLink())) {
+                    continue;
+                }
+                final String path = Utils.normalizePath(entry.getName());
+                final String actual;
+                if (entry.isLink()) {
+                    // dh_md5sums lists the hard links like the files, the target comes first in the archive
+                    actual = digests.get(Utils.normalizePath(entry.getLinkName()));
+                } else {
+                    digest.update(data);
+                    actual = digest.getHexDigest();
+                    digests.put(path, actual);
+                }
+
+                final String expected = md5sums.get(path);
+                if (expected == null) {
+                    continue;
+                }
+                files++;
+                seen.add(path);
+                if (actual == null) {
+                    result.problem(path + " is a hard link to " + entry.getLinkName() + " which is not in the data archive");
+                } else if (!expected.equals(actual)) {
+                    result.problem(path + " doesn't match its md5sum");
+                }
+            }
+        }
+
+        for (String path : md5sums.keySet()) {
+            if (!seen.contains(path)) {
+                result.problem(path + " is in the md5sums but not in the data archive");
+            }
+        }
+        result.setFiles(files);
+    }
+
+    /**
+     * @return true if the signature was made with a known key and matches the package
+     */
+    private boolean verifySignature( DebReader reader, String member, VerificationResult result ) throws IOException, PGPException, NoSuchAlgorithmException {
+        final byte[] content;
+        try (InputStream input = reader.openMember(member)) {
+            content = IOUtils.toByteArray(input);
+        }
+        final String role = member.substring("_gpg".length());
+
+        if (new String(content, 0, Math.min(content.length, SIGNED_MESSAGE.length()), US_ASCII).equals(SIGNED_MESSAGE)) {
+            return verifyManifest(reader, member, content, role, result);
+        }
+
+        final PGPSignature signature = readSignature(new ArmoredInputStream(new ByteArrayInputStream(content)));
+        if (signature == null) {
+            result.problem(member + " holds no signature");
+            return false;
+        }
+        final PGPPublicKey key = key(member, signature, result);
+        if (key == null) {
+            return false;
+        }
+
+        // debsig-verify signs the concatenation of the members
+        signature.init(new BcPGPContentVerifierBuilderProvider(), key);
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        for (String name : Arrays.asList("debian-binary", reader.getControlMember(), reader.getDataMember())) {
+            try (InputStream input = reader.openMember(name)) {
+                int n;
+                while ((n = input.read(buffer)) > 0) {
+                    signature.update(buffer, 0, n);
+                }
+            }
+        }
+        return check(member, signature, role, result);
+    }
+
+    /**
+     * Checks a dpkg-sig manifest: the checksums and the sizes of the members
+     * it lists, and its clear signature.
+     */
+    private boolean verifyManifest( DebReader reader, String member, byte[] content, String role, VerificationResult result ) throws IOException, PGPException, NoSuchAlgorithmException {
+        final ArmoredInputStream armored = new ArmoredInputStream(new ByteArrayInputStream(content));
+        final ByteArrayOutputStream clearText = new ByteArrayOutputStream();
+        int c;
+        while ((c = armored.read()) >= 0 && armored.isClearText()) {
+            clearText.write(c);
+        }
+        final String[] lines = new String(clearText.toByteArray(), UTF_8).split("\r?\n", -1);
+
+        // the signature covers the lines without their trailing spaces, and without the last line end
+        int count = lines.length;
+        while (count > 0 && lines[count - 1].isEmpty()) {
+            count--;
+        }
+        final StringBuilder signed = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                signed.append('\n');
+            }
+            signed.append(lines[i].replaceAll("\\s+$", ""));
+        }
+
+        boolean files = false;
+        for (int i = 0; i < count; i++) {
+            final String line = lines[i];
+            if (line.startsWith("Files:")) {
+                files = true;
+            } else if (files && line.startsWith("\t")) {
+                verifyManifestLine(reader, member, line.trim(), result);
+            } else {
+                files = false;
+            }
+        }
+
+        final PGPSignature signature = readSignature(armored);
+        if (signature == null) {
+            result.problem(member + " holds no signature");
+            return false;
+        }
+        final PGPPublicKey key = key(member, signature, result);
+        if (key == null) {
+            return false;
+        }
+
+        signature.init(new BcPGPContentVerifierBuilderProvider(), key);
+        signature.update(signed.toString().getBytes(UTF_8));
+        return check(member, signature, role, result);
+    }
+
+    private void verifyManifestLine( DebReader reader, String member, String line, VerificationResult result ) throws IOException, NoSuchAlgorithmException {
+        // <md5> <digest> <size> <name>
+        final String[] fields = line.split("\\s+");
+        if (fields.length != 4) {
+            result.problem(member + " has an invalid line: " + line);
+            return;
+        }
+        final String name = fields[3];
+        if (!reader.getMembers().containsKey(name)) {
+            result.problem(member + " lists " + name + " which is not in the package");
+            return;
+        }
+        if (!fields[2].equals(String.valueOf(reader.getMembers().get(name)))) {
+            result.problem(name + " doesn't match the size in " + member);
+            return;
+        }
+
+        // the manifest doesn't tell the digest, only its length
+        final Set<String> algorithms = new LinkedHashSet<>();
+        algorithms.add("MD5");
+        algorithms.addAll(digestsOfLength(fields[1].length()));
+        final MultiDigest digest = new MultiDigest(algorithms.toArray(new String[0]));
+        try (InputStream input = reader.openMember(name)) {
+            digest.update(input);
+        }
+        final Map<String, String> digests = digest.getHexDigests();
+        if (!digests.get("MD5").equalsIgnoreCase(fields[0])) {
+            result.problem(name + " doesn't match the MD5 in " + member);
+            return;
+        }
+        for (String value : digests.values()) {
+            if (value.equalsIgnoreCase(fields[1])) {
+                return;
+            }
+        }
+        result.problem(name + " doesn't match the digest in " + member);
+    }
+
+    private static List<String> digestsOfLength( int hexLength ) {
+        switch (hexLength) {
+            case 32:
+                return Arrays.asList("MD5");
+            case 40:
+                return Arrays.asList("SHA1", "RIPEMD160");
+            case 56:
+                return Arrays.asList("SHA-224");
+            case 64:
+                return Arrays.asList("SHA-256");
+            case 96:
+                return Arrays.asList("SHA-384");
+            case 128:
+                return Arrays.asList("SHA-512");
+            default:
+                return Arrays.asList();
+        }
+    }
+
+    private PGPPublicKey key( String member, PGPSignature signature, VerificationResult result ) {
+        final PGPPublicKey key = keys.get(signature.getKeyID());
+        if (key == null) {
+            final String message = member + " is signed with the unknown key " + String.format("%016X", signature.getKeyID());
+            // anyone can sign with a key of their own, it only counts if the key is trusted
+            if (requireSignature || !keys.isEmpty()) {
+                result.problem(message);
+            } else {
+                result.warning(message + ", the signature is not checked");
+            }
+        }
+        return key;
+    }
+
+    private static boolean check( String member, PGPSignature signature, String role, VerificationResult result ) throws PGPException {
+        if (signature.verify()) {
+            result.signature(role);
+            return true;
+        }
+        result.problem("The signature in " + member + " doesn't match the package");
+        return false;
+    }
+
+    private static PGPSignature readSignature( InputStream input ) throws IOException {
+        final PGPObjectFactory factory = new PGPObjectFactory(input, new BcKeyFingerprintCalculator());
+        Object object;
+        while ((object = factory.nextObject()) != null) {
+            if (object instanceof PGPSignatureList && !((PGPSignatureList) object).isEmpty()) {
+                return ((PGPSignatureList) object).get(0);
+            }
+        }
+        return null;
+    }
+}
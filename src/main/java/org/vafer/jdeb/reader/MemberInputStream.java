@@ -0,0 +1,109 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.tukaani.xz.SeekableInputStream;
+
+/**
+ * Seekable stream over a member of an ar archive, copied from the archive
+ * mapped in memory, or read with positional reads from its channel when it
+ * is too large to be mapped.
+ */
+final class MemberInputStream extends SeekableInputStream {
+
+    private final ByteBuffer map;
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+    private long position;
+
+    MemberInputStream( FileChannel channel, long offset, long length ) {
+        this(null, channel, offset, length);
+    }
+
+    MemberInputStream( ByteBuffer map, FileChannel channel, long offset, long length ) {
+        this.map = map != null ? map.duplicate() : null;
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    public int read( byte[] b, int off, int len ) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+        final int count = (int) Math.min(len, length - position);
+        if (map != null) {
+            if (offset + position + count > map.limit()) {
+                throw new IOException("Unexpected end of the package at offset " + map.limit());
+            }
+            map.position((int) (offset + position));
+            map.get(b, off, count);
+            position += count;
+            return count;
+        }
+        final int n = channel.read(ByteBuffer.wrap(b, off, count), offset + position);
+        if (n < 0) {
+            throw new IOException("Unexpected end of the package at offset " + (offset + position));
+        }
+        position += n;
+        return n;
+    }
+
+    public long skip( long n ) {
+        final long skipped = Math.max(0, Math.min(n, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, length - position);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public long position() {
+        return position;
+    }
+
+    public void seek( long pos ) throws IOException {
+        if (pos < 0) {
+            throw new IOException("Negative position " + pos);
+        }
+        position = pos;
+    }
+
+    /**
+     * The channel belongs to the reader, it is closed with it.
+     */
+    public void close() {
+    }
+}
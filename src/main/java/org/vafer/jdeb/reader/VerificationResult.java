@@ -0,0 +1,97 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.reader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of the verification of a package by {@link DebVerifier}.
+ */
+public final class VerificationResult {
+
+    private final File deb;
+    private final List<String> problems = new ArrayList<>();
+    private final List<String> warnings = new ArrayList<>();
+    private final List<String> signatures = new ArrayList<>();
+    private int files;
+
+    VerificationResult( File deb ) {
+        this.deb = deb;
+    }
+
+    void problem( String message ) {
+        problems.add(message);
+    }
+
+    void warning( String message ) {
+        warnings.add(message);
+    }
+
+    void signature( String role ) {
+        signatures.add(role);
+    }
+
+    void setFiles( int files ) {
+        this.files = files;
+    }
+
+    public File getFile() {
+        return deb;
+    }
+
+    /**
+     * Returns true if no problem was found.
+     */
+    public boolean isValid() {
+        return problems.isEmpty();
+    }
+
+    /**
+     * Returns the problems found, a package with problems is broken or was tampered with.
+     */
+    public List<String> getProblems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * Returns what could not be checked, like the signatures made with an unknown key.
+     */
+    public List<String> getWarnings() {
+        return Collections.unmodifiableList(warnings);
+    }
+
+    /**
+     * Returns the roles of the signatures checked successfully, like "origin".
+     */
+    public List<String> getSignatures() {
+        return Collections.unmodifiableList(signatures);
+    }
+
+    /**
+     * Returns the number of files of the data archive checked against the md5sums.
+     */
+    public int getFiles() {
+        return files;
+    }
+
+    public String toString() {
+        return deb + (isValid() ? " is valid" : " is invalid: " + String.join(", ", problems));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.repository;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.List;
+
+import org.vafer.jdeb.debian.BinaryPackageControlFile;
+import org.vafer.jdeb.debian.DebianVersion;
+
+/**
+ * A package of a repository, with what the indexes need to know about it:
+ * its control file, its size and digests, and the paths of its files.
+ */
+public final class IndexedPackage {
+
+    private final String path;
+    private final long size;
+    private final long lastModified;
+    private final String md5;
+    private final String sha1;
+    private final String sha256;
+    private final String controlText;
+    private final BinaryPackageControlFile control;
+    private final DebianVersion version;
+    private final List<String> contents;
+
+    IndexedPackage( String path, long size, long lastModified, String md5, String sha1, String sha256, String controlText, List<String> contents ) throws IOException, ParseException {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.md5 = md5;
+        this.sha1 = sha1;
+        this.sha256 = sha256;
+        this.controlText = controlText;
+        this.control = new BinaryPackageControlFile(controlText);
+        if (control.get("Package") == null || control.get("Version") == null) {
+            throw new ParseException("The control file of " + path + " has no Package or Version", 0);
+        }
+        try {
+            this.version = DebianVersion.parse(control.get("Version"));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid version in " + path + ": " + e.getMessage(), 0);
+        }
+        this.contents = Collections.unmodifiableList(contents);
+    }
+
+    /**
+     * Returns the path of the package relative to the root of the repository, with '/' as separator.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getMd5() {
+        return md5;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public BinaryPackageControlFile getControl() {
+        return control;
+    }
+
+    /**
+     * Returns the control file as found in the package.
+     */
+    public String getControlText() {
+        return controlText;
+    }
+
+    public String getName() {
+        return control.get("Package");
+    }
+
+    public DebianVersion getVersion() {
+        return version;
+    }
+
+    public String getArchitecture() {
+        final String architecture = control.get("Architecture");
+        return architecture != null ? architecture : "all";
+    }
+
+    /**
+     * Returns the paths of the files of the package, without leading "./".
+     */
+    public List<String> getContents() {
+        return contents;
+    }
+
+    public String toString() {
+        return getName() + " " + version + " (" + path + ")";
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.repository;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.vafer.jdeb.debian.ControlField;
+import org.vafer.jdeb.debian.Deb822Paragraph;
+import org.vafer.jdeb.debian.Deb822Reader;
+import org.vafer.jdeb.debian.Deb822Writer;
+
+/**
+ * The packages indexed by a previous run, keyed by path. An entry is only
+ * reused if the size and the modification time of the package didn't
+ * change.
+ *
+ * The cache is a deb822 file, a paragraph with the format followed by one
+ * paragraph per package:
+ *
+ * <pre>
+ * Format: jdeb repository cache 2
+ *
+ * Path: releases/foo_1.0_all.deb
+ * Size: 1234
+ * Modified: 1700000000000
+ * MD5sum: ...
+ * SHA1: ...
+ * SHA256: ...
+ * Contents:
+ *  usr/share/foo/README
+ * Control:
+ *  Package: foo
+ *  Version: 1.0
+ * </pre>
+ */
+final class PackageCache {
+
+    private static final String FORMAT = "jdeb repository cache 2";
+
+    private static final ControlField CONTENTS = new ControlField("Contents", false, ControlField.Type.MULTILINE, true);
+    private static final ControlField CONTROL = new ControlField("Control", false, ControlField.Type.MULTILINE, true);
+
+    private PackageCache() {
+    }
+
+    /**
+     * Reads the cache, an unreadable cache is treated as empty.
+     */
+    static Map<String, IndexedPackage> read( File file ) {
+        final Map<String, IndexedPackage> packages = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return packages;
+        }
+
+        try (Deb822Reader reader = new Deb822Reader(new BufferedInputStream(new FileInputStream(file)))) {
+            Deb822Paragraph paragraph = reader.next();
+            if (paragraph == null || !FORMAT.equals(paragraph.get("Format"))) {
+                return packages;
+            }
+
+            while ((paragraph = reader.next()) != null) {
+                final IndexedPackage indexed = toPackage(paragraph);
+                packages.put(indexed.getPath(), indexed);
+            }
+        } catch (IOException | ParseException | RuntimeException e) {
+            // the packages get indexed again
+            packages.clear();
+        }
+        return packages;
+    }
+
+    private static IndexedPackage toPackage( Deb822Paragraph paragraph ) throws IOException, ParseException {
+        final List<String> contents = new ArrayList<>();
+        final String paths = paragraph.get(CONTENTS.getName());
+        if (paths != null) {
+            for (String path : paths.split("\n")) {
+                if (!path.isEmpty()) {
+                    contents.add(path);
+                }
+            }
+        }
+
+        // the control has no empty line, the empty lines read are its dots
+        final StringBuilder control = new StringBuilder();
+        for (String line : value(paragraph, CONTROL.getName()).split("\n")) {
+            if (control.length() > 0 || !line.isEmpty()) {
+                control.append(line.isEmpty() ? " ." : line).append('\n');
+            }
+        }
+
+        return new IndexedPackage(
+            value(paragraph, "Path"),
+            Long.parseLong(value(paragraph, "Size")),
+            Long.parseLong(value(paragraph, "Modified")),
+            value(paragraph, "MD5sum"),
+            value(paragraph, "SHA1"),
+            value(paragraph, "SHA256"),
+            control.toString(),
+            contents);
+    }
+
+    private static String value( Deb822Paragraph paragraph, String name ) throws ParseException {
+        final String value = paragraph.get(name);
+        if (value == null) {
+            throw new ParseException("Missing field " + name, 0);
+        }
+        return value;
+    }
+
+    /**
+     * Writes the cache, replacing the previous one at once.
+     */
+    static void write( File file, Collection<IndexedPackage> packages ) throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        try (Deb822Writer writer = new Deb822Writer(new FileOutputStream(temp))) {
+            writer.field("Format", FORMAT).endParagraph();
+            for (IndexedPackage indexed : packages) {
+                writer.field("Path", indexed.getPath())
+                    .field("Size", indexed.getSize())
+                    .field("Modified", indexed.getLastModified())
+                    .field("MD5sum", indexed.getMd5())
+                    .field("SHA1", indexed.getSha1())
+                    .field("SHA256", indexed.getSha256())
+                    .field(CONTENTS, String.join("\n", indexed.getContents()))
+                    .field(CONTROL, indexed.getControlText())
+                    .endParagraph();
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
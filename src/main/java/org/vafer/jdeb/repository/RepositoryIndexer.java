@@ -0,0 +1,458 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.openpgp.PGPException;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.debian.Deb822Writer;
+import org.vafer.jdeb.reader.DebReader;
+import org.vafer.jdeb.signing.PGPSigner;
+import org.vafer.jdeb.utils.DaemonThreadFactory;
+import org.vafer.jdeb.utils.MultiDigest;
+import org.vafer.jdeb.utils.PGPSignatureOutputStream;
+import org.vafer.jdeb.utils.Utils;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Writes the indexes of flat APT repositories, the way dpkg-scanpackages
+ * and apt-ftparchive do, without rescanning the packages that didn't
+ * change.
+ *
+ * Only the control member of a package is read: the control file, and the
+ * md5sums for the list of its files. The data archive is only read for the
+ * packages without md5sums. What is read is cached with the size, the
+ * digests and the modification time of the package, and the packages with
+ * the same size and modification time as in the cache are not opened again.
+ * The new packages are read concurrently.
+ *
+ * Every view gets a Packages index (plain, gzip and xz), a Contents index
+ * per architecture and a Release file listing them, with by-hash copies of
+ * the indexes. With a signer the Release file is signed into InRelease and
+ * Release.gpg. The Filename of the packages is relative to the root of the
+ * repository.
+ */
+public final class RepositoryIndexer {
+
+    /** The digests of the Release files, by field name */
+    private static final Map<String, String> RELEASE_DIGESTS = new LinkedHashMap<>();
+
+    static {
+        RELEASE_DIGESTS.put("MD5Sum", "MD5");
+        RELEASE_DIGESTS.put("SHA1", "SHA-1");
+        RELEASE_DIGESTS.put("SHA256", "SHA-256");
+    }
+
+    private static final DateTimeFormatter RELEASE_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'UTC'", Locale.ENGLISH);
+
+    private final Console console;
+    private final File root;
+    private File cacheFile;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private PGPSigner signer;
+    private final Map<String, String> releaseFields = new LinkedHashMap<>();
+    private ZonedDateTime date;
+
+    /**
+     * @param root the root of the repository, the URL the APT sources point to
+     */
+    public RepositoryIndexer( Console console, File root ) {
+        this.console = console;
+        this.root = root.getAbsoluteFile();
+        this.cacheFile = new File(this.root, ".jdeb-index");
+    }
+
+    /**
+     * Returns the root of the repository, the paths of the packages are relative to it.
+     */
+    public File getRoot() {
+        return root;
+    }
+
+    public void setCacheFile( File cacheFile ) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Sets the number of packages read concurrently, the number of processors by default.
+     */
+    public void setThreads( int threads ) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is required");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the signer of the Release files, they are not signed without.
+     */
+    public void setSigner( PGPSigner signer ) {
+        this.signer = signer;
+    }
+
+    /**
+     * Sets a field of the Release files, like Origin, Label, Suite or Codename.
+     */
+    public void setReleaseField( String name, String value ) {
+        if (value == null || value.isEmpty()) {
+            releaseFields.remove(name);
+        } else {
+            releaseFields.put(name, value);
+        }
+    }
+
+    /**
+     * Sets the Date of the Release files, the current time by default.
+     */
+    public void setDate( ZonedDateTime date ) {
+        this.date = date;
+    }
+
+    /**
+     * Scans the packages of the directory and writes the indexes of every
+     * view. Without a signer a view that is already signed is refused.
+     */
+    public void index( File directory, List<RepositoryView> views ) throws PackagingException {
+        if (signer == null) {
+            for (RepositoryView view : views) {
+                // the signatures are never dropped implicitly, they would no longer match the Release file
+                if (new File(view.getDirectory(), "InRelease").exists() || new File(view.getDirectory(), "Release.gpg").exists()) {
+                    throw new PackagingException("The repository " + view.getDirectory() + " is signed and no key is set,"
+                        + " delete its InRelease and Release.gpg files to write unsigned indexes");
+                }
+            }
+        }
+
+        final List<IndexedPackage> packages = scan(directory);
+        for (RepositoryView view : views) {
+            try {
+                write(view, packages);
+            } catch (IOException | NoSuchAlgorithmException | PGPException e) {
+                throw new PackagingException("Could not write the indexes of the " + view.getName() + " repository in " + view.getDirectory(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns the packages found below the directory, read from the cache
+     * when they didn't change. The cache is updated.
+     */
+    public List<IndexedPackage> scan( File directory ) throws PackagingException {
+        final List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory.toPath())) {
+            files = walk.filter(path -> path.getFileName().toString().endsWith(".deb") && Files.isRegularFile(path)).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new PackagingException("Could not list the packages of " + directory, e);
+        }
+
+        final Map<String, IndexedPackage> cache = PackageCache.read(cacheFile);
+        final List<IndexedPackage> packages = new ArrayList<>(files.size());
+        final Map<Path, Future<IndexedPackage>> pending = new LinkedHashMap<>();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("jdeb-index"));
+        try {
+            for (Path file : files) {
+                final File deb = file.toFile().getAbsoluteFile();
+                final String path = relativePath(deb);
+                final long size = deb.length();
+                final long lastModified = deb.lastModified();
+
+                final IndexedPackage cached = cache.get(path);
+                if (cached != null && cached.getSize() == size && cached.getLastModified() == lastModified) {
+                    packages.add(cached);
+                } else {
+                    pending.put(file, executor.submit(() -> read(deb, path, size, lastModified)));
+                }
+            }
+
+            console.info("Indexing " + pending.size() + " new or changed packages out of " + files.size());
+
+            for (Map.Entry<Path, Future<IndexedPackage>> entry : pending.entrySet()) {
+                try {
+                    packages.add(entry.getValue().get());
+                } catch (ExecutionException e) {
+                    // like dpkg-scanpackages the broken packages are left out
+                    console.warn("Skipping " + entry.getKey() + ": " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PackagingException("Interrupted while reading the packages", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        packages.sort(Comparator.comparing(IndexedPackage::getPath));
+
+        try {
+            PackageCache.write(cacheFile, packages);
+        } catch (IOException e) {
+            console.warn("Could not write the cache " + cacheFile + ": " + e.getMessage());
+        }
+        return packages;
+    }
+
+    private String relativePath( File file ) throws PackagingException {
+        final Path path = root.toPath().relativize(file.toPath());
+        if (path.startsWith("..")) {
+            throw new PackagingException(file + " is not below the root of the repository " + root);
+        }
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Reads the control member of the package, and the digests of the package.
+     */
+    static IndexedPackage read( File deb, String path, long size, long lastModified ) throws IOException, ParseException, NoSuchAlgorithmException {
+        String control = null;
+        final List<String> contents = new ArrayList<>();
+        try (DebReader reader = DebReader.open(deb, null)) {
+            try (TarArchiveInputStream tar = reader.openControl()) {
+                TarArchiveEntry entry;
+                while ((entry = tar.getNextEntry()) != null) {
+                    final String name = Utils.normalizePath(entry.getName());
+                    if ("control".equals(name)) {
+                        control = IOUtils.toString(tar, UTF_8);
+                    } else if ("md5sums".equals(name)) {
+                        contents.addAll(DebReader.readMd5sums(tar).keySet());
+                    }
+                }
+            }
+
+            if (contents.isEmpty()) {
+                try (TarArchiveInputStream tar = reader.openData()) {
+                    TarArchiveEntry entry;
+                    while ((entry = tar.getNextEntry()) != null) {
+                        if (!entry.isDirectory()) {
+                            contents.add(Utils.normalizePath(entry.getName()));
+                        }
+                    }
+                }
+            }
+        }
+        if (control == null) {
+            throw new IOException("No control file found in " + deb);
+        }
+
+        final Map<String, String> digests = MultiDigest.digest(deb, "MD5", "SHA-1", "SHA-256");
+        contents.sort(null);
+        return new IndexedPackage(path, size, lastModified, digests.get("MD5"), digests.get("SHA-1"), digests.get("SHA-256"), trimControl(control), contents);
+    }
+
+    /**
+     * Drops the empty lines, a paragraph of an index can't have any.
+     */
+    private static String trimControl( String control ) {
+        final StringBuilder result = new StringBuilder();
+        for (String line : control.split("\r?\n")) {
+            if (!line.trim().isEmpty()) {
+                result.append(line).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    private void write( RepositoryView view, List<IndexedPackage> all ) throws IOException, NoSuchAlgorithmException, PGPException {
+        final List<IndexedPackage> packages = new ArrayList<>();
+        for (IndexedPackage indexed : all) {
+            if (view.accepts(indexed)) {
+                packages.add(indexed);
+            }
+        }
+        packages.sort(Comparator.comparing(IndexedPackage::getName).thenComparing(IndexedPackage::getVersion).thenComparing(IndexedPackage::getPath));
+
+        final File directory = view.getDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the directory " + directory);
+        }
+        console.info("Writing the indexes of the " + view.getName() + " repository with " + packages.size() + " packages in " + directory);
+
+        // the files listed in the Release file, by name
+        final Map<String, byte[]> indexes = new LinkedHashMap<>();
+
+        final byte[] index = packagesIndex(packages);
+        indexes.put("Packages", index);
+        indexes.put("Packages.gz", gzip(index));
+        indexes.put("Packages.xz", xz(index));
+
+        final TreeSet<String> architectures = new TreeSet<>();
+        for (IndexedPackage indexed : packages) {
+            architectures.add(indexed.getArchitecture());
+        }
+        for (String architecture : architectures) {
+            final byte[] contents = contentsIndex(packages, architecture).getBytes(UTF_8);
+            indexes.put("Contents-" + architecture, contents);
+            indexes.put("Contents-" + architecture + ".gz", gzip(contents));
+        }
+
+        final Map<String, Map<String, String>> digests = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : indexes.entrySet()) {
+            final Map<String, String> fileDigests = MultiDigest.digest(entry.getValue(), RELEASE_DIGESTS.values().toArray(new String[0]));
+            digests.put(entry.getKey(), fileDigests);
+
+            // the clients fetching by hash are not disturbed while the indexes get replaced
+            for (Map.Entry<String, String> digest : RELEASE_DIGESTS.entrySet()) {
+                final File byHash = new File(directory, "by-hash/" + digest.getKey() + "/" + fileDigests.get(digest.getValue()));
+                if (!byHash.isFile()) {
+                    writeAtomically(byHash, entry.getValue());
+                }
+            }
+            writeAtomically(new File(directory, entry.getKey()), entry.getValue());
+        }
+
+        final String release = release(architectures, indexes, digests);
+        writeAtomically(new File(directory, "Release"), release.getBytes(UTF_8));
+
+        if (signer != null) {
+            final ByteArrayOutputStream inRelease = new ByteArrayOutputStream();
+            signer.clearSign(release, inRelease);
+            writeAtomically(new File(directory, "InRelease"), inRelease.toByteArray());
+
+            final PGPSignatureOutputStream signature = new PGPSignatureOutputStream(signer.createBinarySignatureGenerator());
+            signature.write(release.getBytes(UTF_8));
+            writeAtomically(new File(directory, "Release.gpg"), signature.generateASCIISignature().getBytes(US_ASCII));
+        }
+    }
+
+    private static byte[] packagesIndex( List<IndexedPackage> packages ) throws IOException {
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        try (Deb822Writer writer = new Deb822Writer(index)) {
+            for (IndexedPackage indexed : packages) {
+                writer.append(indexed.getControlText());
+                writer.field("Filename", indexed.getPath());
+                writer.field("Size", indexed.getSize());
+                writer.field("MD5sum", indexed.getMd5());
+                writer.field("SHA1", indexed.getSha1());
+                writer.field("SHA256", indexed.getSha256());
+                writer.endParagraph();
+            }
+        }
+        return index.toByteArray();
+    }
+
+    /**
+     * The files of the packages of the architecture, the architecture
+     * independent packages belong to every architecture.
+     */
+    private static String contentsIndex( List<IndexedPackage> packages, String architecture ) {
+        final Map<String, TreeSet<String>> locations = new TreeMap<>();
+        for (IndexedPackage indexed : packages) {
+            if (!architecture.equals(indexed.getArchitecture()) && !"all".equals(indexed.getArchitecture())) {
+                continue;
+            }
+            final String section = indexed.getControl().get("Section");
+            final String location = (section != null && !section.isEmpty() ? section : "misc") + "/" + indexed.getName();
+            for (String path : indexed.getContents()) {
+                locations.computeIfAbsent(path, p -> new TreeSet<>()).add(location);
+            }
+        }
+
+        final StringBuilder index = new StringBuilder();
+        for (Map.Entry<String, TreeSet<String>> entry : locations.entrySet()) {
+            index.append(entry.getKey()).append(' ').append(String.join(",", entry.getValue())).append('\n');
+        }
+        return index.toString();
+    }
+
+    private String release( TreeSet<String> architectures, Map<String, byte[]> indexes, Map<String, Map<String, String>> digests ) {
+        final StringBuilder release = new StringBuilder();
+        for (Map.Entry<String, String> field : releaseFields.entrySet()) {
+            release.append(field.getKey()).append(": ").append(field.getValue()).append('\n');
+        }
+        release.append("Date: ").append((date != null ? date : ZonedDateTime.now()).withZoneSameInstant(ZoneOffset.UTC).format(RELEASE_DATE)).append('\n');
+        if (!architectures.isEmpty()) {
+            release.append("Architectures: ").append(String.join(" ", architectures)).append('\n');
+        }
+        release.append("Acquire-By-Hash: yes\n");
+
+        for (Map.Entry<String, String> digest : RELEASE_DIGESTS.entrySet()) {
+            release.append(digest.getKey()).append(":\n");
+            for (Map.Entry<String, byte[]> index : indexes.entrySet()) {
+                release.append(' ').append(digests.get(index.getKey()).get(digest.getValue()))
+                    .append(' ').append(String.format("%16d", index.getValue().length))
+                    .append(' ').append(index.getKey()).append('\n');
+            }
+        }
+        return release.toString();
+    }
+
+    private static byte[] gzip( byte[] content ) throws IOException {
+        final GzipParameters parameters = new GzipParameters();
+        parameters.setCompressionLevel(9);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream output = new GzipCompressorOutputStream(bytes, parameters)) {
+            output.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] xz( byte[] content ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream output = new XZOutputStream(bytes, new LZMA2Options())) {
+            output.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeAtomically( File file, byte[] content ) throws IOException {
+        final File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the directory " + directory);
+        }
+        final File temp = new File(directory, "." + file.getName() + ".tmp");
+        try (OutputStream output = new FileOutputStream(temp)) {
+            output.write(content);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
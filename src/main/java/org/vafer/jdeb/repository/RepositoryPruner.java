@@ -0,0 +1,143 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.debian.DebianVersion;
+
+/**
+ * Removes the old versions of the packages of a repository, keeping the
+ * latest versions of every package per architecture and channel.
+ *
+ * The packages are found with the scan of a {@link RepositoryIndexer}, so
+ * only the control members of the packages not in its cache yet are read.
+ * The channel separates the versions pruned independently, by default the
+ * release versions and the others: the snapshots don't push the last
+ * releases out.
+ */
+public final class RepositoryPruner {
+
+    /** The release versions in the "stable" channel and the others in the "unstable" channel */
+    public static final Function<IndexedPackage, String> RELEASE_CHANNELS = indexed -> indexed.getVersion().isRelease() ? "stable" : "unstable";
+
+    /** The files written next to a package */
+    private static final String[] SIDECARS = { ".index", ".zsync" };
+
+    private final Console console;
+    private final RepositoryIndexer indexer;
+    private int keep = 3;
+    private Function<IndexedPackage, String> channel = RELEASE_CHANNELS;
+    private boolean dryRun;
+
+    public RepositoryPruner( Console console, RepositoryIndexer indexer ) {
+        this.console = console;
+        this.indexer = indexer;
+    }
+
+    /**
+     * Sets the number of versions kept per package, architecture and channel, 3 by default.
+     */
+    public void setKeep( int keep ) {
+        if (keep < 1) {
+            throw new IllegalArgumentException("At least one version must be kept");
+        }
+        this.keep = keep;
+    }
+
+    public void setChannel( Function<IndexedPackage, String> channel ) {
+        this.channel = channel;
+    }
+
+    /**
+     * Only reports the packages that would be removed.
+     */
+    public void setDryRun( boolean dryRun ) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Removes the old packages below the directory.
+     *
+     * @return the packages removed
+     */
+    public List<IndexedPackage> prune( File directory ) throws PackagingException {
+        final List<IndexedPackage> all = indexer.scan(directory);
+        final Map<String, List<IndexedPackage>> groups = new LinkedHashMap<>();
+        for (IndexedPackage indexed : all) {
+            final String group = indexed.getName() + ' ' + indexed.getArchitecture() + ' ' + channel.apply(indexed);
+            groups.computeIfAbsent(group, k -> new ArrayList<>()).add(indexed);
+        }
+
+        final List<IndexedPackage> removed = new ArrayList<>();
+        for (List<IndexedPackage> packages : groups.values()) {
+            removed.addAll(expired(packages, keep));
+        }
+
+        for (IndexedPackage indexed : removed) {
+            final File deb = new File(indexer.getRoot(), indexed.getPath());
+            console.info((dryRun ? "Would remove " : "Removing ") + indexed.getPath());
+            if (dryRun) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(deb.toPath());
+                for (String sidecar : SIDECARS) {
+                    Files.deleteIfExists(new File(deb.getPath() + sidecar).toPath());
+                }
+            } catch (IOException e) {
+                throw new PackagingException("Could not remove " + deb, e);
+            }
+        }
+
+        console.info((dryRun ? "Would remove " : "Removed ") + removed.size() + " old packages out of " + all.size());
+        return removed;
+    }
+
+    /**
+     * Returns the packages of the group beyond the latest versions. The
+     * copies of a version, in different directories, count as one version.
+     */
+    static List<IndexedPackage> expired( List<IndexedPackage> packages, int keep ) {
+        // the versions carry their sort keys, the sort is a comparison of bytes
+        packages.sort(Comparator.comparing(IndexedPackage::getVersion).reversed());
+
+        final List<IndexedPackage> expired = new ArrayList<>();
+        DebianVersion previous = null;
+        int versions = 0;
+        for (IndexedPackage indexed : packages) {
+            if (!indexed.getVersion().equals(previous)) {
+                versions++;
+                previous = indexed.getVersion();
+            }
+            if (versions > keep) {
+                expired.add(indexed);
+            }
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.repository;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.function.Predicate;
+
+import org.vafer.jdeb.debian.DebianVersion;
+
+/**
+ * A flat repository made of some of the packages: the indexes written in
+ * a directory for the packages accepted by a filter.
+ */
+public final class RepositoryView {
+
+    private final String name;
+    private final File directory;
+    private final Predicate<IndexedPackage> filter;
+
+    public RepositoryView( String name, File directory, Predicate<IndexedPackage> filter ) {
+        this.name = name;
+        this.directory = directory;
+        this.filter = filter;
+    }
+
+    /**
+     * All the packages.
+     */
+    public static RepositoryView all( String name, File directory ) {
+        return new RepositoryView(name, directory, indexed -> true);
+    }
+
+    /**
+     * The released versions only, without the snapshots, milestones and
+     * release candidates.
+     *
+     * @see DebianVersion#isRelease()
+     */
+    public static RepositoryView stable( File directory ) {
+        return new RepositoryView("stable", directory, indexed -> indexed.getVersion().isRelease());
+    }
+
+    /**
+     * The released versions of a branch, like 7.4, 7.4.1 or 7.4-2 for the
+     * branch 7.4: the versions from the branch up to, and excluding, the
+     * next branch.
+     */
+    public static RepositoryView lts( File directory, String branch ) {
+        final DebianVersion first = DebianVersion.parse(branch);
+        final DebianVersion next = DebianVersion.parse(nextBranch(branch));
+        return new RepositoryView("lts", directory, indexed -> {
+            final DebianVersion version = indexed.getVersion();
+            return version.isRelease() && version.compareTo(first) >= 0 && version.compareTo(next) < 0;
+        });
+    }
+
+    /**
+     * Increments the last number of the branch, 7.4 is followed by 7.5.
+     */
+    static String nextBranch( String branch ) {
+        if (!branch.matches("([0-9]+:)?[0-9]+(\\.[0-9]+)*")) {
+            throw new IllegalArgumentException("The branch must be made of numbers separated by dots: " + branch);
+        }
+        final int dot = branch.lastIndexOf('.');
+        final int start = Math.max(dot, branch.indexOf(':')) + 1;
+        return branch.substring(0, start) + new BigInteger(branch.substring(start)).add(BigInteger.ONE);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public boolean accepts( IndexedPackage indexed ) {
+        return filter.test(indexed);
+    }
+}
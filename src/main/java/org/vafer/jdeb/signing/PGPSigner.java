@@ -145,6 +145,15 @@ public class PGPSigner {
         armoredOutput.close();
     }
 
+    /**
+     * Creates a signature generator for binary documents, initialized with the private key.
+     */
+    public PGPSignatureGenerator createBinarySignatureGenerator() throws PGPException {
+        PGPSignatureGenerator signatureGenerator = new PGPSignatureGenerator(new BcPGPContentSignerBuilder(secretKey.getPublicKey().getAlgorithm(), digest));
+        signatureGenerator.init(PGPSignature.BINARY_DOCUMENT, privateKey);
+        return signatureGenerator;
+    }
+
     /**
      * Returns the secret key.
      */
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.signing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bouncycastle.openpgp.PGPException;
+
+/**
+ * Keeps the signers around so the keyring is read and the private key
+ * decrypted once rather than for every package signed with it. A keyring
+ * modified since is read again.
+ */
+public final class SignerCache {
+
+    private final ConcurrentMap<List<Object>, PGPSigner> signers = new ConcurrentHashMap<>();
+
+    public PGPSigner get(File keyring, String key, String passphrase, int digest) throws IOException, PGPException {
+        final List<Object> id = Arrays.asList(keyring.getCanonicalPath(), keyring.lastModified(), keyring.length(), key, passphrase, digest);
+
+        PGPSigner signer = signers.get(id);
+        if (signer == null) {
+            try (InputStream input = new FileInputStream(keyring)) {
+                signer = new PGPSigner(input, key, passphrase, digest);
+            }
+            final PGPSigner existing = signers.putIfAbsent(id, signer);
+            if (existing != null) {
+                signer = existing;
+            }
+        }
+
+        return signer;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip stream whose compression level can be lowered for the parts of the
+ * data that are compressed already, like jars or images. Deflating them
+ * again costs a lot of time for next to no gain. As long as the level isn't
+ * changed the output is the same as the one of the gzip compressor of
+ * commons-compress with its default parameters.
+ *
+ * In the rsyncable mode the deflater is reset at boundaries found from the
+ * content, like gzip --rsyncable does. The compressed data after a boundary
+ * doesn't depend on the data before it, a change in the input only changes
+ * the output up to the next boundary.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class AdaptiveGzipOutputStream extends FilterOutputStream {
+
+    /** The header written by commons-compress: no flags, no time, unknown OS */
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    /** The average distance between the resets in the rsyncable mode, every reset loses the window of 32KiB */
+    static final int RSYNC_CHUNK_SIZE = 64 * 1024;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[512];
+    private final ContentDefinedChunker chunker;
+    private boolean fast;
+    private boolean closed;
+
+    public AdaptiveGzipOutputStream( OutputStream out ) throws IOException {
+        this(out, false);
+    }
+
+    public AdaptiveGzipOutputStream( OutputStream out, boolean rsyncable ) throws IOException {
+        super(out);
+        this.chunker = rsyncable ? new ContentDefinedChunker(RSYNC_CHUNK_SIZE) : null;
+        out.write(HEADER);
+    }
+
+    /**
+     * Switches between the fastest level, for data that doesn't compress,
+     * and the default level.
+     */
+    public void setFast( boolean fast ) {
+        if (this.fast != fast) {
+            this.fast = fast;
+            deflater.setLevel(fast ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION);
+        }
+    }
+
+    public void write( int b ) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write( byte[] b, int off, int len ) throws IOException {
+        if (deflater.finished()) {
+            throw new IOException("Cannot write more data, the end of the compressed data stream has been reached");
+        }
+        if (chunker == null) {
+            deflate(b, off, len);
+            return;
+        }
+
+        while (len > 0) {
+            final int end = chunker.next(b, off, len);
+            final int length = end < 0 ? len : end;
+            deflate(b, off, length);
+            if (end >= 0) {
+                reset();
+            }
+            off += length;
+            len -= length;
+        }
+    }
+
+    private void deflate( byte[] b, int off, int len ) throws IOException {
+        if (len > 0) {
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+            crc.update(b, off, len);
+        }
+    }
+
+    private void deflate() throws IOException {
+        final int length = deflater.deflate(buffer, 0, buffer.length);
+        if (length > 0) {
+            out.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Flushes the pending data to a byte boundary and clears the window, the
+     * following data is compressed as if it was the start of the stream.
+     */
+    private void reset() throws IOException {
+        int length;
+        do {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.FULL_FLUSH);
+            out.write(buffer, 0, length);
+        } while (length == buffer.length);
+    }
+
+    /**
+     * Completes the compressed data without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (!deflater.finished()) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            writeInt((int) crc.getValue());
+            writeInt((int) deflater.getBytesRead());
+        }
+    }
+
+    private void writeInt( int value ) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+
+    public void close() throws IOException {
+        if (!closed) {
+            try {
+                finish();
+            } finally {
+                deflater.end();
+                out.close();
+                closed = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * The members of an ar archive and where they are, so their headers and
+ * content can be read or copied byte for byte without going through the
+ * archive.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class ArLayout {
+
+    static final int GLOBAL_HEADER_LENGTH = 8;
+    static final int HEADER_LENGTH = 60;
+
+    public static final class Member {
+        public final String name;
+        /** The offset of the header of the member */
+        public final long offset;
+        /** The offset of the content, right after the header */
+        public final long contentOffset;
+        public final long size;
+
+        Member( String name, long offset, long size ) {
+            this.name = name;
+            this.offset = offset;
+            this.contentOffset = offset + HEADER_LENGTH;
+            this.size = size;
+        }
+
+        /** The offset right after the content and its padding to an even offset */
+        public long end() {
+            return contentOffset + size + (size & 1);
+        }
+    }
+
+    private ArLayout() {
+    }
+
+    public static List<Member> scan( File file ) throws IOException {
+        final List<Member> members = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(channel, header, 0, GLOBAL_HEADER_LENGTH);
+            checkGlobalHeader(header.array(), file);
+
+            long offset = GLOBAL_HEADER_LENGTH;
+            final long length = channel.size();
+            while (offset < length) {
+                readFully(channel, header, offset, HEADER_LENGTH);
+                final Member member = parseHeader(header.array(), offset, file);
+                members.add(member);
+                offset = member.end();
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Scans an archive mapped in memory, the members are not read.
+     */
+    public static List<Member> scan( ByteBuffer archive, Object source ) throws IOException {
+        final List<Member> members = new ArrayList<>();
+        final ByteBuffer view = archive.duplicate();
+        final byte[] header = new byte[HEADER_LENGTH];
+        if (view.remaining() < GLOBAL_HEADER_LENGTH) {
+            throw new IOException(source + " is not an ar archive");
+        }
+        view.get(header, 0, GLOBAL_HEADER_LENGTH);
+        checkGlobalHeader(header, source);
+
+        long offset = GLOBAL_HEADER_LENGTH;
+        final long length = archive.limit();
+        while (offset < length) {
+            if (length - offset < HEADER_LENGTH) {
+                throw new IOException("Unexpected end of the ar archive");
+            }
+            view.position((int) offset);
+            view.get(header);
+            final Member member = parseHeader(header, offset, source);
+            members.add(member);
+            offset = member.end();
+        }
+        return members;
+    }
+
+    private static void checkGlobalHeader( byte[] header, Object source ) throws IOException {
+        if (!"!<arch>\n".equals(new String(header, 0, GLOBAL_HEADER_LENGTH, US_ASCII))) {
+            throw new IOException(source + " is not an ar archive");
+        }
+    }
+
+    private static Member parseHeader( byte[] header, long offset, Object source ) throws IOException {
+        final String text = new String(header, 0, HEADER_LENGTH, US_ASCII);
+        if (!text.endsWith("`\n")) {
+            throw new IOException("Invalid ar header at offset " + offset + " of " + source);
+        }
+
+        // GNU ar ends the names with a slash
+        String name = text.substring(0, 16).trim();
+        if (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        final long size;
+        try {
+            size = Long.parseLong(text.substring(48, 58).trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid size of the ar member " + name + " of " + source, e);
+        }
+        return new Member(name, offset, size);
+    }
+
+    public static Member find( List<Member> members, String prefix ) {
+        for (Member member : members) {
+            if (member.name.startsWith(prefix)) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    private static void readFully( FileChannel channel, ByteBuffer buffer, long position, int length ) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the ar archive");
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes to the underlying stream on a thread of its own. The bytes are
+ * collected in chunks handed over through a bounded queue, so a slow stream
+ * (typically a compressor) only holds the writer back once the queue is
+ * full. A failure of the underlying stream is thrown by the next write or
+ * by close, the stream keeps draining the queue until then so the writer
+ * never blocks on a dead thread.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class AsyncOutputStream extends OutputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int QUEUE_SIZE = 16;
+
+    /** Marks the end of the stream in the queue */
+    private static final byte[] END = new byte[0];
+
+    private static final DaemonThreadFactory THREADS = new DaemonThreadFactory("jdeb-sink");
+
+    private final OutputStream out;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread thread;
+    private volatile Throwable failure;
+    private byte[] chunk = new byte[CHUNK_SIZE];
+    private int count;
+    private boolean closed;
+
+    public AsyncOutputStream( final OutputStream out ) {
+        this.out = out;
+        this.thread = THREADS.newThread(this::drain);
+        this.thread.start();
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                final byte[] next = queue.take();
+                if (next == END) {
+                    break;
+                }
+                if (failure == null) {
+                    try {
+                        out.write(next);
+                    } catch (Throwable e) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure == null) {
+                out.close();
+            }
+        } catch (Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+        } finally {
+            if (failure != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // the first failure is the one reported
+                }
+            }
+        }
+    }
+
+    public void write( final int b ) throws IOException {
+        if (count == chunk.length) {
+            hand();
+        }
+        chunk[count++] = (byte) b;
+    }
+
+    public void write( final byte[] b, int off, int len ) throws IOException {
+        while (len > 0) {
+            if (count == chunk.length) {
+                hand();
+            }
+            final int n = Math.min(len, chunk.length - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void hand() throws IOException {
+        check();
+        final byte[] full = count == chunk.length ? chunk : Arrays.copyOf(chunk, count);
+        put(full);
+        chunk = new byte[CHUNK_SIZE];
+        count = 0;
+    }
+
+    private void put( final byte[] b ) throws IOException {
+        try {
+            queue.put(b);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing to " + thread.getName());
+        }
+    }
+
+    private void check() throws IOException {
+        final Throwable e = failure;
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e != null) {
+            throw new IOException("Failed to write on " + thread.getName(), e);
+        }
+    }
+
+    /**
+     * Waits for the chunks written so far to reach the underlying stream
+     * and closes it.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (count > 0) {
+            put(Arrays.copyOf(chunk, count));
+        }
+        put(END);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing " + thread.getName());
+        }
+        check();
+    }
+}
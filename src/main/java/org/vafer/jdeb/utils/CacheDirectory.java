@@ -0,0 +1,115 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+
+/**
+ * Locates the directories of the caches kept across the builds. What the
+ * caches hold ends up in the packages, so they are kept in a directory only
+ * the current user can write to: <code>$XDG_CACHE_HOME/jdeb</code>, or
+ * <code>~/.cache/jdeb</code>, unless the <code>jdeb.cacheDirectory</code>
+ * system property points elsewhere. A directory owned by another user, or
+ * that can't be made private, is not used and the caching is skipped.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class CacheDirectory {
+
+    /** The system property overriding the root of the caches */
+    public static final String PROPERTY = "jdeb.cacheDirectory";
+
+    private static final Set<PosixFilePermission> PRIVATE = PosixFilePermissions.fromString("rwx------");
+
+    private CacheDirectory() {
+    }
+
+    /**
+     * Returns the private directory of the cache with the specified name,
+     * created if needed, or null if there is no safe place for it.
+     */
+    public static File get( final String name ) {
+        try {
+            return ensurePrivate(new File(getRoot(), name));
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            return null;
+        }
+    }
+
+    static File getRoot() {
+        final String property = System.getProperty(PROPERTY);
+        if (property != null && !property.trim().isEmpty()) {
+            return new File(property.trim());
+        }
+        final String xdg = System.getenv("XDG_CACHE_HOME");
+        if (xdg != null && new File(xdg).isAbsolute()) {
+            return new File(xdg, "jdeb");
+        }
+        return new File(new File(System.getProperty("user.home"), ".cache"), "jdeb");
+    }
+
+    /**
+     * Creates the directory readable and writable by its owner only, or
+     * checks an existing one is owned by the current user and restricts it.
+     */
+    static File ensurePrivate( final File directory ) throws IOException {
+        final Path path = directory.toPath();
+        final boolean posix = path.getFileSystem().supportedFileAttributeViews().contains("posix");
+
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                if (posix) {
+                    Files.createDirectories(path, PosixFilePermissions.asFileAttribute(PRIVATE));
+                } else {
+                    Files.createDirectories(path);
+                }
+            } catch (IOException e) {
+                // created concurrently, checked below like any existing directory
+                if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    throw e;
+                }
+            }
+        }
+
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException(directory + " is not a directory");
+        }
+        if (!Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).equals(currentUser(path))) {
+            throw new IOException(directory + " is owned by another user");
+        }
+        if (posix && !Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS).equals(PRIVATE)) {
+            Files.setPosixFilePermissions(path, PRIVATE);
+        }
+        return directory;
+    }
+
+    private static UserPrincipal currentUser( final Path path ) throws IOException {
+        try {
+            return path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+        } catch (IOException e) {
+            // a user unknown to the lookup, the home directory tells
+            return Files.getOwner(new File(System.getProperty("user.home")).toPath());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+/**
+ * Resolve variables with the first resolver of a chain knowing them. The
+ * resolvers are only asked when a variable is actually looked up.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class ChainVariableResolver implements VariableResolver {
+
+    private final VariableResolver[] resolvers;
+
+    public ChainVariableResolver( VariableResolver... resolvers ) {
+        this.resolvers = resolvers.clone();
+    }
+
+    public String get( String key ) {
+        for (VariableResolver resolver : resolvers) {
+            final String value = resolver.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+}
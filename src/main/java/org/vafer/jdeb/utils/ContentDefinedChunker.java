@@ -0,0 +1,84 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+/**
+ * Finds the boundaries of chunks in a stream of bytes from the content
+ * itself, with a gear hash over the last 64 bytes. An insertion or a removal
+ * only moves the boundaries next to it, the ones before and after stay on
+ * the same content. The compressors reset their state at these boundaries,
+ * which keeps most of their output unchanged when only a part of the input
+ * changed.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class ContentDefinedChunker {
+
+    /** The random values of the bytes, fixed so the boundaries are the same on every run */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // splitmix64
+        long seed = 0x6a64656263646321L;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final int minSize;
+    private final int maxSize;
+    private final int shift;
+    private long hash;
+    private int size;
+
+    /**
+     * @param averageSize the average size of the chunks, a power of two. The
+     *                    chunks are at least a quarter and at most four times
+     *                    as large.
+     */
+    public ContentDefinedChunker( int averageSize ) {
+        if (averageSize < 64 || Integer.bitCount(averageSize) != 1) {
+            throw new IllegalArgumentException("The average size must be a power of two of at least 64, got " + averageSize);
+        }
+        this.minSize = averageSize / 4;
+        this.maxSize = averageSize * 4;
+        // the high bits of the hash depend on the most bytes
+        this.shift = 64 - Integer.numberOfTrailingZeros(averageSize);
+    }
+
+    /**
+     * Scans the bytes for the end of the current chunk.
+     *
+     * @return the number of bytes up to and including the last byte of the
+     *         current chunk, or -1 if the chunk goes on beyond the bytes
+     */
+    public int next( byte[] b, int off, int len ) {
+        for (int i = 0; i < len; i++) {
+            hash = (hash << 1) + GEAR[b[off + i] & 0xff];
+            size++;
+            if (size >= minSize && (hash >>> shift == 0 || size >= maxSize)) {
+                hash = 0;
+                size = 0;
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
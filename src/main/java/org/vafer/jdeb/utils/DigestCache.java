@@ -0,0 +1,179 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the MD5 digests of files that don't change once written, like
+ * the artifacts of a local Maven repository. The entries are keyed by the
+ * absolute path of the file and only trusted as long as its size and
+ * modification time are the same, so a rebuilt snapshot is hashed again.
+ * The cache is kept in a file and shared by the builds of the JVM, the
+ * default one in the private cache directory of the user. Without a file
+ * the digests are only kept in memory.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class DigestCache {
+
+    private static DigestCache defaultCache;
+
+    private static final class Entry {
+        final long size;
+        final long modified;
+        final String md5;
+
+        Entry( final long size, final long modified, final String md5 ) {
+            this.size = size;
+            this.modified = modified;
+            this.md5 = md5;
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded;
+
+    /**
+     * @param file the file the cache is kept in, or null to keep it in memory only
+     */
+    public DigestCache( final File file ) {
+        this.file = file;
+    }
+
+    /**
+     * The cache in the "digests" folder of the private cache directory of the
+     * user, or in memory if there is none.
+     */
+    public static synchronized DigestCache getDefault() {
+        if (defaultCache == null) {
+            final File directory = CacheDirectory.get("digests");
+            defaultCache = new DigestCache(directory != null ? new File(directory, "md5.cache") : null);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Returns the MD5 digests of the files, in the order of the files. Only
+     * the files missing in the cache, or changed since, are read; they are
+     * hashed concurrently and the cache file is updated.
+     */
+    public List<String> md5( final List<File> files ) throws IOException {
+        final List<String> result = new ArrayList<>(files.size());
+        final List<File> missing = new ArrayList<>();
+        final List<Integer> positions = new ArrayList<>();
+
+        synchronized (this) {
+            load();
+            for (File f : files) {
+                final Entry entry = entries.get(f.getAbsolutePath());
+                if (entry != null && entry.size == f.length() && entry.modified == f.lastModified()) {
+                    result.add(entry.md5);
+                } else {
+                    positions.add(result.size());
+                    missing.add(f);
+                    result.add(null);
+                }
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        final List<Map<String, String>> digests;
+        try {
+            digests = MultiDigest.digest(missing, "MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < missing.size(); i++) {
+                final File f = missing.get(i);
+                final String md5 = digests.get(i).get("MD5");
+                entries.put(f.getAbsolutePath(), new Entry(f.length(), f.lastModified(), md5));
+                result.set(positions.get(i), md5);
+            }
+            try {
+                save();
+            } catch (IOException e) {
+                // the cache is only an optimization, the digests are right anyway
+            }
+        }
+
+        return result;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        if (file == null || !file.isFile()) {
+            return;
+        }
+
+        // a damaged cache only costs the hashing again
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split("\t", 4);
+                if (fields.length == 4) {
+                    try {
+                        entries.put(fields[3], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[0]));
+                    } catch (NumberFormatException e) {
+                        // skip the line
+                    }
+                }
+            }
+        } catch (IOException e) {
+            entries.clear();
+        }
+    }
+
+    private void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create the directory of the digest cache " + dir);
+        }
+
+        // written aside and moved, concurrent builds never see a partial file
+        final File temp = File.createTempFile("md5", ".cache", dir);
+        try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                writer.write(e.getValue().md5 + "\t" + e.getValue().size + "\t" + e.getValue().modified + "\t" + e.getKey() + "\n");
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
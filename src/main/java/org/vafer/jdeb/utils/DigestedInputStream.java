@@ -0,0 +1,49 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * A stream whose MD5 digest is already known, a producer passing it spares
+ * the data builder hashing the content for the md5sums file.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class DigestedInputStream extends FilterInputStream {
+
+    private final String md5;
+
+    public DigestedInputStream( InputStream in, String md5 ) {
+        super(in);
+        this.md5 = md5;
+    }
+
+    /**
+     * The MD5 digest of the content in lowercase hexadecimal.
+     */
+    public String getMd5() {
+        return md5;
+    }
+
+    /**
+     * The underlying stream.
+     */
+    public InputStream getInputStream() {
+        return in;
+    }
+}
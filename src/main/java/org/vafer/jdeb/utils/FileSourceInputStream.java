@@ -0,0 +1,40 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+
+/**
+ * A stream over a file that remembers the file, so the content can be read
+ * again later instead of being buffered.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class FileSourceInputStream extends FileInputStream {
+
+    private final File file;
+
+    public FileSourceInputStream( File file ) throws FileNotFoundException {
+        super(file);
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
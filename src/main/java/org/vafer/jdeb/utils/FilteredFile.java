@@ -16,49 +16,54 @@
 
 package org.vafer.jdeb.utils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.Charset;
 
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A text file with its variables replaced line by line.
+ *
+ * @see Template
+ */
 public class FilteredFile {
 
     private String openToken = "[[";
     private String closeToken = "]]";
-    private List<String> lines = new ArrayList<>();
+    private final String content;
 
     public FilteredFile(InputStream in, VariableResolver resolver) throws IOException {
-        parse(in, resolver);
+        this(in, resolver, "[[", "]]");
+    }
+
+    public FilteredFile(InputStream in, VariableResolver resolver, String openToken, String closeToken) throws IOException {
+        this.openToken = openToken;
+        this.closeToken = closeToken;
+        try {
+            content = Template.compileLines(IOUtils.toString(in, Charset.defaultCharset()), openToken, closeToken).render(resolver);
+        } finally {
+            in.close();
+        }
     }
 
+    /**
+     * @deprecated the file is filtered when created, use the constructor with the tokens
+     */
+    @Deprecated
     public void setOpenToken(String token) {
         openToken = token;
     }
 
+    /**
+     * @deprecated the file is filtered when created, use the constructor with the tokens
+     */
+    @Deprecated
     public void setCloseToken(String token) {
         closeToken = token;
     }
 
-    private void parse(InputStream in, VariableResolver resolver) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (resolver != null) {
-                    lines.add(Utils.replaceVariables(resolver, line, openToken, closeToken));
-                } else {
-                    lines.add(line);
-                }
-            }
-        }
-    }
-
     public String toString() {
-        StringBuilder builder = new StringBuilder();
-        for (String line : lines) {
-            builder.append(line).append('\n');
-        }
-        return builder.toString();
+        return content;
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream ending the block of the compressor it writes to every time the
+ * same amount of uncompressed bytes went through. Every block can be
+ * decompressed on its own, so a reader knowing the block sizes can start
+ * reading at any of them.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class FixedBlockOutputStream extends FilterOutputStream {
+
+    private final long blockSize;
+    private final RsyncableOutputStream.BlockEnd blockEnd;
+    private long remaining;
+
+    public FixedBlockOutputStream( OutputStream out, long blockSize, RsyncableOutputStream.BlockEnd blockEnd ) {
+        super(out);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("The block size must be positive");
+        }
+        this.blockSize = blockSize;
+        this.blockEnd = blockEnd;
+        this.remaining = blockSize;
+    }
+
+    public void write( int b ) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write( byte[] b, int off, int len ) throws IOException {
+        while (len > 0) {
+            final int length = (int) Math.min(len, remaining);
+            out.write(b, off, length);
+            off += length;
+            len -= length;
+            remaining -= length;
+            if (remaining == 0) {
+                blockEnd.endBlock();
+                remaining = blockSize;
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes gzip members with pooled deflaters. Setting up a deflater costs
+ * more than compressing a small file, and concatenated members form a
+ * valid gzip stream, so the static parts of an archive can be compressed
+ * once and reused.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class Gzip {
+
+    /** The same header as the one written by java.util.zip.GZIPOutputStream */
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private static final int MAX_POOLED = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final Queue<Deflater> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private Gzip() {
+    }
+
+    /**
+     * Compresses the bytes into a complete gzip member.
+     */
+    public static byte[] compress( final byte[] b, final int off, final int len ) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(len / 3 + 64);
+        try {
+            compress(b, off, len, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the bytes as a complete gzip member to the specified stream.
+     */
+    public static void compress( final byte[] b, final int off, final int len, final OutputStream out ) throws IOException {
+        out.write(HEADER);
+
+        final Deflater deflater = acquire();
+        try {
+            final byte[] buffer = new byte[Math.min(64 * 1024, Math.max(512, len))];
+            deflater.setInput(b, off, len);
+            deflater.finish();
+            while (!deflater.finished()) {
+                final int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            release(deflater);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(b, off, len);
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, len);
+    }
+
+    private static Deflater acquire() {
+        final Deflater deflater = POOL.poll();
+        if (deflater == null) {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        POOLED.decrementAndGet();
+        return deflater;
+    }
+
+    private static void release( final Deflater deflater ) {
+        deflater.reset();
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(deflater);
+        } else {
+            POOLED.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    private static void writeInt( final OutputStream out, final int value ) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+}
@@ -19,20 +19,46 @@ package org.vafer.jdeb.utils;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Map;
 
+/**
+ * Collects information about the content going through: byte order mark,
+ * shebang, line endings. The first bytes are kept to look for the byte
+ * order mark and the shebang, the others are only counted by class.
+ */
 public final class InformationInputStream extends FilterInputStream {
 
+    /** The number of leading bytes examined for the byte order mark and the shebang */
+    private static final int HEAD_SIZE = 10;
+
+    private static final int ASCII = 0;
+    private static final int NONASCII = 1;
+    private static final int CR = 2;
+    private static final int LF = 3;
+    private static final int ZERO = 4;
+
+    /** The class of every byte value */
+    private static final byte[] CLASSES = new byte[256];
+
+    static {
+        for (int c = 0; c < 256; c++) {
+            if (c == '\n') {
+                CLASSES[c] = LF;
+            } else if (c == '\r') {
+                CLASSES[c] = CR;
+            } else if (c >= ' ' && c <= '~') {
+                CLASSES[c] = ASCII;
+            } else if (c == 0) {
+                CLASSES[c] = ZERO;
+            } else {
+                CLASSES[c] = NONASCII;
+            }
+        }
+    }
+
+    private final long[] counts = new long[5];
     private long i;
-    private long ascii;
-    private long nonascii;
-    private long cr;
-    private long lf;
-    private long zero;
 
-    private final Map<BOM, Integer> bomPositions = new HashMap<>();
-    private final Map<Shell, Integer> shellPositions = new HashMap<>();
+    private final byte[] head = new byte[HEAD_SIZE];
 
     /**
      * Byte Order Marks
@@ -68,30 +94,28 @@ public final class InformationInputStream extends FilterInputStream {
         }
     }
 
-    private BOM bom = BOM.NONE;
-    private Shell shell = Shell.NONE;
-
     public InformationInputStream( InputStream in ) {
         super(in);
     }
 
     public boolean hasBom() {
-        return bom != BOM.NONE;
+        return getBom() != BOM.NONE;
     }
 
     public boolean isShell() {
-        return shell != Shell.NONE;
+        return getShell() != Shell.NONE;
     }
 
     public boolean hasUnixLineEndings() {
-        return cr == 0;
+        return counts[CR] == 0;
     }
 
     public String getEncoding() {
-        String encoding = bom.encoding;
+        String encoding = getBom().encoding;
 
         if (encoding == null) {
             // guess the encoding from the shebang
+            final Shell shell = getShell();
             if (shell == Shell.UTF16BE) {
                 encoding = BOM.UTF16BE.encoding;
             } else if (shell == Shell.UTF16LE) {
@@ -102,72 +126,70 @@ public final class InformationInputStream extends FilterInputStream {
         return encoding;
     }
 
-    private void add( int c ) {
-        if (i < 10) {
-            if (shell == Shell.NONE) {
-                for (Shell shell : Shell.values()) {
-                    int position = shellPositions.containsKey(shell) ? shellPositions.get(shell) : 0;
-                    if (position < shell.header.length) {
-                        if (c == shell.header[position]) {
-                            shellPositions.put(shell, position + 1);
-                        } else {
-                            shellPositions.put(shell, 0);
-                        }
-                    } else {
-                        this.shell = shell;
-                    }
-                }
+    private BOM getBom() {
+        for (BOM bom : BOM.values()) {
+            if (bom != BOM.NONE && startsWith(0, bom.sequence)) {
+                return bom;
             }
+        }
+        return BOM.NONE;
+    }
 
-            if (bom == BOM.NONE) {
-                for (BOM bom : BOM.values()) {
-                    int position = bomPositions.containsKey(bom) ? bomPositions.get(bom) : 0;
-                    if (position < bom.sequence.length) {
-                        if (c == bom.sequence[position] && position == i) {
-                            bomPositions.put(bom, position + 1);
-                        } else {
-                            bomPositions.put(bom, 0);
-                        }
-                    } else {
-                        this.bom = bom;
-                    }
-                }
+    /**
+     * The shebang is expected at the start, or right after the byte order mark.
+     */
+    private Shell getShell() {
+        final int offset = getBom() == BOM.NONE ? 0 : getBom().sequence.length;
+        for (Shell shell : Shell.values()) {
+            // like a shell, expect something after the shebang
+            if (shell != Shell.NONE && startsWith(offset, shell.header) && i > offset + shell.header.length) {
+                return shell;
             }
         }
+        return Shell.NONE;
+    }
 
-        i++;
-
-        if (c == '\n') {
-            lf++;
-            return;
+    private boolean startsWith( int offset, int[] sequence ) {
+        if (offset + sequence.length > Math.min(i, HEAD_SIZE)) {
+            return false;
         }
-        if (c == '\r') {
-            cr++;
-            return;
+        for (int j = 0; j < sequence.length; j++) {
+            if ((head[offset + j] & 0xFF) != sequence[j]) {
+                return false;
+            }
         }
-        if (c >= ' ' && c <= '~') {
-            ascii++;
-            return;
+        return true;
+    }
+
+    private void add( byte[] b, int off, int len ) {
+        if (i < HEAD_SIZE) {
+            System.arraycopy(b, off, head, (int) i, (int) Math.min(len, HEAD_SIZE - i));
         }
-        if (c == 0) {
-            zero++;
-            return;
+        i += len;
+
+        final long[] counts = this.counts;
+        final int end = off + len;
+        for (int j = off; j < end; j++) {
+            counts[CLASSES[b[j] & 0xFF]]++;
         }
-        nonascii++;
     }
 
     public int read() throws IOException {
         int b = super.read();
         if (b != -1) {
-            add(b & 0xFF);
+            if (i < HEAD_SIZE) {
+                head[(int) i] = (byte) b;
+            }
+            i++;
+            counts[CLASSES[b & 0xFF]]++;
         }
         return b;
     }
 
     public int read( byte[] b, int off, int len ) throws IOException {
         int length = super.read(b, off, len);
-        for (int i = 0; i < length; i++) {
-            add(b[off + i] & 0xFF);
+        if (length > 0) {
+            add(b, off, length);
         }
         return length;
     }
@@ -176,11 +198,11 @@ public final class InformationInputStream extends FilterInputStream {
         StringBuilder sb = new StringBuilder();
         sb.append("{");
         sb.append("total=").append(i);
-        sb.append(",noascii=").append(nonascii);
-        sb.append(",ascii=").append(ascii);
-        sb.append(",cr=").append(cr);
-        sb.append(",lf=").append(lf);
-        sb.append(",zero=").append(zero);
+        sb.append(",noascii=").append(counts[NONASCII]);
+        sb.append(",ascii=").append(counts[ASCII]);
+        sb.append(",cr=").append(counts[CR]);
+        sb.append(",lf=").append(counts[LF]);
+        sb.append(",zero=").append(counts[ZERO]);
         sb.append("}");
         return sb.toString();
     }
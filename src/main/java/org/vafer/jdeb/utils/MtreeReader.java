@@ -0,0 +1,378 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Reads a BSD mtree specification one entry at a time.
+ *
+ * Both layouts are supported: the full paths written by libarchive
+ * (<code>./usr/bin/app type=file mode=0755</code>) and the relative names
+ * of the classic mtree(8) output, where a directory entry descends into the
+ * directory until the matching <code>..</code> line. The <code>/set</code>
+ * and <code>/unset</code> defaults, the line continuations and the vis(3)
+ * escapes of the names are handled.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class MtreeReader implements Closeable {
+
+    /**
+     * An entry of the specification. The values that aren't specified are
+     * -1 or null.
+     */
+    public static final class Entry {
+
+        private final String path;
+        private final Map<String, String> keywords;
+
+        Entry( String path, Map<String, String> keywords ) {
+            this.path = path;
+            this.keywords = keywords;
+        }
+
+        /**
+         * The path relative to the root of the specification, without the leading "./", empty for the root.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * The type of the entry: file, dir, link, block, char, fifo or socket.
+         */
+        public String getType() {
+            final String type = keywords.get("type");
+            return type != null ? type : "file";
+        }
+
+        public int getMode() throws IOException {
+            final String mode = keywords.get("mode");
+            if (mode == null) {
+                return -1;
+            }
+            try {
+                return Integer.parseInt(mode, 8) & 07777;
+            } catch (NumberFormatException e) {
+                throw new IOException("Unsupported mode '" + mode + "' for " + path + " (only octal modes are supported)");
+            }
+        }
+
+        public long getUserId() throws IOException {
+            return getNumber("uid");
+        }
+
+        public long getGroupId() throws IOException {
+            return getNumber("gid");
+        }
+
+        public String getUserName() {
+            return keywords.get("uname");
+        }
+
+        public String getGroupName() {
+            return keywords.get("gname");
+        }
+
+        public long getSize() throws IOException {
+            return getNumber("size");
+        }
+
+        /**
+         * The modification time in milliseconds. The fraction of the
+         * keyword is a number of nanoseconds.
+         */
+        public long getTime() throws IOException {
+            final String time = keywords.get("time");
+            if (time == null) {
+                return -1;
+            }
+            try {
+                final int dot = time.indexOf('.');
+                final long seconds = Long.parseLong(dot < 0 ? time : time.substring(0, dot));
+                final long nanos = dot < 0 || dot == time.length() - 1 ? 0 : Long.parseLong(time.substring(dot + 1));
+                return seconds * 1000 + nanos / 1000000;
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid time '" + time + "' for " + path);
+            }
+        }
+
+        /**
+         * The target of a link.
+         */
+        public String getLink() {
+            final String link = keywords.get("link");
+            return link != null ? unvis(link) : null;
+        }
+
+        /**
+         * The MD5 digest of the content, in hexadecimal.
+         */
+        public String getMd5() {
+            final String md5 = keywords.get("md5digest");
+            return md5 != null ? md5 : keywords.get("md5");
+        }
+
+        /**
+         * The path of the file holding the content, if not the path of the entry.
+         */
+        public String getContents() {
+            final String contents = keywords.get("contents");
+            return contents != null ? unvis(stripDot(contents)) : null;
+        }
+
+        public boolean isOptional() {
+            return keywords.containsKey("optional");
+        }
+
+        private long getNumber( String keyword ) throws IOException {
+            final String value = keywords.get(keyword);
+            if (value == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid " + keyword + " '" + value + "' for " + path);
+            }
+        }
+    }
+
+    private final BufferedReader reader;
+    private final Map<String, String> defaults = new HashMap<>();
+
+    /** The directories entered by the relative entries */
+    private final List<String> directories = new ArrayList<>();
+
+    private int lineNumber;
+
+    public MtreeReader( Reader reader ) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    /**
+     * Returns the next entry, or null at the end of the specification.
+     */
+    public Entry next() throws IOException {
+        String line;
+        while ((line = readLine()) != null) {
+            final List<String> words = split(line);
+            if (words.isEmpty()) {
+                continue;
+            }
+
+            final String first = words.get(0);
+            if ("/set".equals(first)) {
+                for (int i = 1; i < words.size(); i++) {
+                    put(defaults, words.get(i));
+                }
+                continue;
+            }
+            if ("/unset".equals(first)) {
+                for (int i = 1; i < words.size(); i++) {
+                    if ("all".equals(words.get(i))) {
+                        defaults.clear();
+                    } else {
+                        defaults.remove(words.get(i));
+                    }
+                }
+                continue;
+            }
+            if (first.startsWith("/")) {
+                throw new IOException("Unknown special command '" + first + "' at line " + lineNumber);
+            }
+
+            if ("..".equals(first)) {
+                if (!directories.isEmpty()) {
+                    directories.remove(directories.size() - 1);
+                }
+                continue;
+            }
+
+            final Map<String, String> keywords = new HashMap<>(defaults);
+            for (int i = 1; i < words.size(); i++) {
+                put(keywords, words.get(i));
+            }
+
+            final String name = unvis(first);
+            final Entry entry;
+            if (name.indexOf('/') >= 0) {
+                // a full path, it doesn't change the current directory
+                entry = new Entry(Utils.normalizePath(name), keywords);
+            } else {
+                final String path = ".".equals(name) ? currentDirectory() : join(currentDirectory(), name);
+                entry = new Entry(path, keywords);
+                if ("dir".equals(entry.getType()) && !".".equals(name)) {
+                    directories.add(name);
+                }
+            }
+            return entry;
+        }
+        return null;
+    }
+
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads a logical line, joining the continued lines and dropping the comments.
+     */
+    private String readLine() throws IOException {
+        StringBuilder continued = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (continued == null && line.trim().startsWith("#")) {
+                continue;
+            }
+            if (line.endsWith("\\") && !line.endsWith("\\\\")) {
+                if (continued == null) {
+                    continued = new StringBuilder();
+                }
+                continued.append(line, 0, line.length() - 1).append(' ');
+                continue;
+            }
+            if (continued != null) {
+                return continued.append(line).toString();
+            }
+            return line;
+        }
+        return continued != null ? continued.toString() : null;
+    }
+
+    private static List<String> split( String line ) {
+        final List<String> words = new ArrayList<>();
+        int i = 0;
+        while (i < line.length()) {
+            while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            final int start = i;
+            while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i > start) {
+                words.add(line.substring(start, i));
+            }
+        }
+        return words;
+    }
+
+    private static void put( Map<String, String> keywords, String word ) {
+        final int equals = word.indexOf('=');
+        if (equals < 0) {
+            keywords.put(word, "");
+        } else {
+            keywords.put(word.substring(0, equals), word.substring(equals + 1));
+        }
+    }
+
+    private String currentDirectory() {
+        return String.join("/", directories);
+    }
+
+    private static String join( String directory, String name ) {
+        return directory.isEmpty() ? name : directory + "/" + name;
+    }
+
+    private static String stripDot( String path ) {
+        if (".".equals(path)) {
+            return "";
+        }
+        if (path.startsWith("./")) {
+            return path.substring(2);
+        }
+        return path;
+    }
+
+    /**
+     * Decodes the vis(3) escapes of a name: the octal escapes and the usual C escapes.
+     */
+    static String unvis( String value ) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length());
+        int i = 0;
+        while (i < value.length()) {
+            final int escape = value.indexOf('\\', i);
+            if (escape < 0 || escape == value.length() - 1) {
+                final byte[] rest = value.substring(i).getBytes(UTF_8);
+                bytes.write(rest, 0, rest.length);
+                break;
+            }
+            final byte[] run = value.substring(i, escape).getBytes(UTF_8);
+            bytes.write(run, 0, run.length);
+
+            if (isOctal(value, escape + 1, 3)) {
+                // the bytes of the name, possibly parts of a multibyte character
+                bytes.write(Integer.parseInt(value.substring(escape + 1, escape + 4), 8));
+                i = escape + 4;
+                continue;
+            }
+
+            final int decoded;
+            switch (value.charAt(escape + 1)) {
+                case '\\': decoded = '\\'; break;
+                case 's': decoded = ' '; break;
+                case 't': decoded = '\t'; break;
+                case 'n': decoded = '\n'; break;
+                case 'r': decoded = '\r'; break;
+                case 'a': decoded = 7; break;
+                case 'b': decoded = '\b'; break;
+                case 'f': decoded = '\f'; break;
+                case 'v': decoded = 11; break;
+                case '#': decoded = '#'; break;
+                default: decoded = -1;
+            }
+            if (decoded < 0) {
+                // not an escape, kept as it is
+                bytes.write('\\');
+                i = escape + 1;
+            } else {
+                bytes.write(decoded);
+                i = escape + 2;
+            }
+        }
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+
+    private static boolean isOctal( String value, int start, int length ) {
+        if (start + length > value.length()) {
+            return false;
+        }
+        for (int i = start; i < start + length; i++) {
+            final char c = value.charAt(i);
+            if (c < '0' || c > '7') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
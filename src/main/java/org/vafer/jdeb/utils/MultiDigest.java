@@ -0,0 +1,296 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.vafer.jdeb.signing.BouncyCastle;
+
+/**
+ * Computes several message digests over the same data in one pass.
+ *
+ * Every algorithm is a lane. When more than one lane is requested and the
+ * chunks are large enough the lanes are updated concurrently on a shared
+ * pool, all of them reading the same buffer. Reading from a stream is double
+ * buffered so the next chunk is read while the lanes hash the previous one.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class MultiDigest {
+
+    /** The size of the buffers used when reading streams */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Chunks smaller than this are hashed inline, the hand-off would cost more than it saves */
+    private static final int PARALLEL_THRESHOLD = 16 * 1024;
+
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService LANES = Executors.newFixedThreadPool(POOL_SIZE, new DaemonThreadFactory("jdeb-digest"));
+
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+    private final boolean parallel;
+    private byte[][] buffers;
+    private long size;
+
+    public MultiDigest( final String... algorithms ) throws NoSuchAlgorithmException {
+        this(true, algorithms);
+    }
+
+    private MultiDigest( final boolean parallel, final String... algorithms ) throws NoSuchAlgorithmException {
+        if (algorithms == null || algorithms.length == 0) {
+            throw new IllegalArgumentException("At least one digest algorithm is required");
+        }
+        this.algorithms = algorithms.clone();
+        this.digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            digests[i] = getInstance(algorithms[i]);
+        }
+        this.parallel = parallel && algorithms.length > 1;
+    }
+
+    /**
+     * Looks up the algorithm in the providers of the JDK first, the
+     * BouncyCastle provider is only registered for the ones they lack.
+     */
+    static MessageDigest getInstance( final String algorithm ) throws NoSuchAlgorithmException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            BouncyCastle.register();
+            return MessageDigest.getInstance(algorithm);
+        }
+    }
+
+    /**
+     * Updates all the digests with the specified bytes. The buffer is only
+     * read, and it is not referenced anymore when this method returns.
+     */
+    public void update( final byte[] b, final int off, final int len ) {
+        awaitAll(dispatch(b, off, len));
+    }
+
+    /**
+     * Updates all the digests with the remaining content of the stream. The
+     * stream is not closed.
+     *
+     * @return the number of bytes read
+     */
+    public long update( final InputStream input ) throws IOException {
+        if (buffers == null) {
+            buffers = new byte[][] { new byte[BUFFER_SIZE], new byte[BUFFER_SIZE] };
+        }
+        List<Future<?>> pending = Collections.emptyList();
+        int current = 0;
+        long count = 0;
+        int n;
+        while ((n = IOUtils.read(input, buffers[current])) > 0) {
+            // the lanes must be done with the other buffer before it gets reused
+            awaitAll(pending);
+            pending = dispatch(buffers[current], 0, n);
+            count += n;
+            current ^= 1;
+        }
+        awaitAll(pending);
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes hashed since the creation or the last reset.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Completes the digests and returns their hex encoded values keyed by
+     * algorithm, in the order the algorithms were requested. The digests are
+     * reset afterwards and the instance can be reused.
+     */
+    public Map<String, String> getHexDigests() {
+        final Map<String, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < digests.length; i++) {
+            result.put(algorithms[i], Utils.toHex(digests[i].digest()));
+        }
+        size = 0;
+        return result;
+    }
+
+    /**
+     * Completes the digests and returns the hex encoded value of the first algorithm.
+     * The digests are reset afterwards.
+     */
+    public String getHexDigest() {
+        return getHexDigests().get(algorithms[0]);
+    }
+
+    public void reset() {
+        for (MessageDigest digest : digests) {
+            digest.reset();
+        }
+        size = 0;
+    }
+
+    /**
+     * Returns a stream writing through to the specified stream and updating
+     * the digests on the way.
+     */
+    public OutputStream wrap( final OutputStream output ) {
+        return new FilterOutputStream(output) {
+            public void write( int b ) throws IOException {
+                out.write(b);
+                update(new byte[] { (byte) b }, 0, 1);
+            }
+
+            public void write( byte[] b, int off, int len ) throws IOException {
+                out.write(b, off, len);
+                update(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Hashes a single file with the specified algorithms.
+     */
+    public static Map<String, String> digest( final File file, final String... algorithms ) throws IOException, NoSuchAlgorithmException {
+        final MultiDigest digest = new MultiDigest(algorithms);
+        try (InputStream input = new FileInputStream(file)) {
+            digest.update(input);
+        }
+        return digest.getHexDigests();
+    }
+
+    /**
+     * Hashes a single byte array with the specified algorithms.
+     */
+    public static Map<String, String> digest( final byte[] content, final String... algorithms ) throws NoSuchAlgorithmException {
+        final MultiDigest digest = new MultiDigest(algorithms);
+        digest.update(content, 0, content.length);
+        return digest.getHexDigests();
+    }
+
+    /**
+     * Hashes a batch of files. The files are spread over the pool, and every
+     * worker reuses the same digests and buffers for all the files it gets, so
+     * there is no per file setup cost beyond opening the file.
+     *
+     * @return the digests of every file, in the order of the files
+     */
+    public static List<Map<String, String>> digest( final List<File> files, final String... algorithms ) throws IOException, NoSuchAlgorithmException {
+        // every worker only sets its own indexes, the futures publish them
+        final List<Map<String, String>> results = new ArrayList<>(Collections.<Map<String, String>>nCopies(files.size(), null));
+        final int workers = Math.min(POOL_SIZE, files.size());
+
+        // fail early on unknown algorithms, before anything gets submitted
+        new MultiDigest(false, algorithms);
+
+        final List<Future<?>> futures = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            final int worker = w;
+            futures.add(LANES.submit(() -> {
+                // the batch workers run on the pool already, they must not dispatch lanes themselves
+                final MultiDigest digest = new MultiDigest(false, algorithms);
+                for (int i = worker; i < results.size(); i += workers) {
+                    try (InputStream input = new FileInputStream(files.get(i))) {
+                        digest.update(input);
+                    }
+                    results.set(i, digest.getHexDigests());
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                getUninterruptibly(future);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to compute the digests", e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    private List<Future<?>> dispatch( final byte[] b, final int off, final int len ) {
+        size += len;
+
+        if (!parallel || len < PARALLEL_THRESHOLD) {
+            for (MessageDigest digest : digests) {
+                digest.update(b, off, len);
+            }
+            return Collections.emptyList();
+        }
+
+        final List<Future<?>> futures = new ArrayList<>(digests.length);
+        for (final MessageDigest digest : digests) {
+            futures.add(LANES.submit(() -> digest.update(b, off, len)));
+        }
+        return futures;
+    }
+
+    private static void awaitAll( final List<Future<?>> futures ) {
+        for (Future<?> future : futures) {
+            try {
+                getUninterruptibly(future);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Digest lane failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * The lanes are short and never block, waiting for them regardless of
+     * interrupts keeps the buffers from being reused while still being read.
+     */
+    private static void getUninterruptibly( final Future<?> future ) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package org.vafer.jdeb.utils;
 
 import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
-import org.apache.maven.archiver.MavenArchiver;
 import org.vafer.jdeb.Console;
 
 public class OutputTimestampResolver {
+
+    /** The range of dates a zip or tar archive can represent, the same as the maven-archiver */
+    private static final Instant DATE_MIN = Instant.parse("1980-01-01T00:00:02Z");
+    private static final Instant DATE_MAX = Instant.parse("2099-12-31T23:59:59Z");
+
     private final Console console;
     private final EnvironmentVariablesReader envReader;
 
@@ -22,7 +30,7 @@ public class OutputTimestampResolver {
 
     public Long resolveOutputTimestamp(String paramValue) {
         if (paramValue != null) {
-            Optional<Instant> outputDate = MavenArchiver.parseBuildOutputTimestamp(paramValue);
+            Optional<Instant> outputDate = parseBuildOutputTimestamp(paramValue);
             if (outputDate.isPresent()) {
                 console.info("Accepted outputTimestamp parameter: " + paramValue);
                 return outputDate.get().toEpochMilli();
@@ -43,6 +51,38 @@ public class OutputTimestampResolver {
         return null;
     }
 
+    /**
+     * Parses the project.build.outputTimestamp value like the maven-archiver does:
+     * either seconds since the epoch or an ISO-8601 date, a single character
+     * (typically used to override an inherited value) meaning no timestamp.
+     */
+    static Optional<Instant> parseBuildOutputTimestamp(String outputTimestamp) {
+        if (outputTimestamp == null) {
+            return Optional.empty();
+        }
+
+        if (!outputTimestamp.isEmpty() && outputTimestamp.chars().allMatch(Character::isDigit)) {
+            return Optional.of(Instant.ofEpochSecond(Long.parseLong(outputTimestamp)));
+        }
+
+        if (outputTimestamp.length() < 2) {
+            return Optional.empty();
+        }
+
+        try {
+            final Instant date = OffsetDateTime.parse(outputTimestamp)
+                .withOffsetSameInstant(ZoneOffset.UTC)
+                .truncatedTo(ChronoUnit.SECONDS)
+                .toInstant();
+            if (date.isBefore(DATE_MIN) || date.isAfter(DATE_MAX)) {
+                throw new IllegalArgumentException("'" + date + "' is not within the valid range " + DATE_MIN + " to " + DATE_MAX);
+            }
+            return Optional.of(date);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid project.build.outputTimestamp value '" + outputTimestamp + "'", e);
+        }
+    }
+
     static class EnvironmentVariablesReader {
         String getSourceDateEpoch() {
             return System.getenv("SOURCE_DATE_EPOCH");
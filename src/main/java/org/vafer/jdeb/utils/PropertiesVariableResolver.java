@@ -0,0 +1,38 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.util.Properties;
+
+/**
+ * Resolve variables based on Properties, read when looked up and not
+ * copied beforehand. Only the string values are resolved.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class PropertiesVariableResolver implements VariableResolver {
+
+    private final Properties properties;
+
+    public PropertiesVariableResolver( Properties properties ) {
+        this.properties = properties;
+    }
+
+    public String get( String key ) {
+        return properties.getProperty(key);
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Stream ending the block of the compressor it writes to at boundaries
+ * found from the uncompressed content. The compressed blocks after a
+ * boundary don't depend on the data before it, so a change in the input
+ * only changes the output up to the next boundary.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class RsyncableOutputStream extends FilterOutputStream {
+
+    /**
+     * Ends the current block of the compressor.
+     */
+    public interface BlockEnd {
+        void endBlock() throws IOException;
+    }
+
+    private final ContentDefinedChunker chunker;
+    private final BlockEnd blockEnd;
+
+    public RsyncableOutputStream( OutputStream out, int averageBlockSize, BlockEnd blockEnd ) {
+        super(out);
+        this.chunker = new ContentDefinedChunker(averageBlockSize);
+        this.blockEnd = blockEnd;
+    }
+
+    public void write( int b ) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write( byte[] b, int off, int len ) throws IOException {
+        while (len > 0) {
+            final int end = chunker.next(b, off, len);
+            final int length = end < 0 ? len : end;
+            out.write(b, off, length);
+            if (end >= 0) {
+                blockEnd.endBlock();
+            }
+            off += length;
+            len -= length;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * A text with variables, tokenized once and rendered any number of times.
+ * The variables are recognized exactly like {@link Utils#replaceVariables}
+ * does, only the lookups are left for the rendering. A variable the resolver
+ * doesn't know is rendered as it was written.
+ *
+ * The templates loaded from files are cached, as long as the file is
+ * unchanged it is only read and tokenized once, even across builds.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class Template {
+
+    /** Beyond this number of cached templates the cache is reset */
+    private static final int CACHE_SIZE = 256;
+
+    private static final Map<List<Object>, Template> CACHE = new ConcurrentHashMap<>();
+
+    private final String source;
+    private final String open;
+    private final String close;
+
+    /** The text before every variable, and the text after the last one */
+    private final String[] literals;
+    private final String[] variables;
+
+    private Template( String source, String open, String close, List<String> literals, List<String> variables ) {
+        this.source = source;
+        this.open = open;
+        this.close = close;
+        this.literals = literals.toArray(new String[0]);
+        this.variables = variables.toArray(new String[0]);
+    }
+
+    /**
+     * Tokenizes a single expression.
+     */
+    public static Template compile( final String text, final String open, final String close ) {
+        final Tokenizer tokenizer = new Tokenizer(open, close);
+        tokenizer.tokenize(text);
+        return tokenizer.toTemplate(text);
+    }
+
+    /**
+     * Tokenizes a text line by line, the way {@link FilteredFile} filters
+     * it: the lines are joined with a line feed and the last one is
+     * terminated as well.
+     */
+    public static Template compileLines( final String text, final String open, final String close ) {
+        final Tokenizer tokenizer = new Tokenizer(open, close);
+        final StringBuilder source = new StringBuilder(text.length() + 1);
+        int start = 0;
+        int i = 0;
+        while (i < text.length()) {
+            final char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                final String line = text.substring(start, i);
+                tokenizer.tokenize(line);
+                tokenizer.literal("\n");
+                source.append(line).append('\n');
+                if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                    i++;
+                }
+                start = i + 1;
+            }
+            i++;
+        }
+        if (start < text.length()) {
+            final String line = text.substring(start);
+            tokenizer.tokenize(line);
+            tokenizer.literal("\n");
+            source.append(line).append('\n');
+        }
+        return tokenizer.toTemplate(source.toString());
+    }
+
+    /**
+     * Loads a file as a template, line by line like {@link #compileLines}.
+     * The template is cached until the file is modified: like the other
+     * caches of jdeb, a file with the same path, length and modification
+     * time is taken as unchanged.
+     */
+    public static Template load( final File file, final Charset charset, final String open, final String close ) throws IOException {
+        final List<Object> key = Arrays.asList(file.getCanonicalPath(), file.lastModified(), file.length(), charset.name(), open, close);
+
+        Template template = CACHE.get(key);
+        if (template == null) {
+            template = compileLines(FileUtils.readFileToString(file, charset), open, close);
+            if (CACHE.size() >= CACHE_SIZE) {
+                CACHE.clear();
+            }
+            CACHE.put(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * Copies a text and replaces the variables on the way, line by line. The
+     * line endings are kept as they are, and only one line at a time is held
+     * in memory. The streams are not closed.
+     */
+    public static void filter( final Reader input, final Writer output, final VariableResolver resolver, final String open, final String close ) throws IOException {
+        final char[] buffer = new char[8192];
+        final StringBuilder line = new StringBuilder(256);
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            int start = 0;
+            for (int i = 0; i < n; i++) {
+                final char c = buffer[i];
+                if (c == '\n' || c == '\r') {
+                    line.append(buffer, start, i - start);
+                    filterLine(line, output, resolver, open, close);
+                    output.write(c);
+                    line.setLength(0);
+                    start = i + 1;
+                }
+            }
+            line.append(buffer, start, n - start);
+        }
+        filterLine(line, output, resolver, open, close);
+    }
+
+    private static void filterLine( final StringBuilder line, final Writer output, final VariableResolver resolver, final String open, final String close ) throws IOException {
+        if (line.indexOf(open) < 0) {
+            // no variable in this line, nothing to tokenize
+            output.append(line);
+        } else {
+            compile(line.toString(), open, close).render(resolver, output);
+        }
+    }
+
+    /**
+     * Tells if the text has no variables, it then renders to the same text whatever the resolver.
+     */
+    public boolean isStatic() {
+        return variables.length == 0;
+    }
+
+    /**
+     * Renders the text with the values of the resolver. Without a resolver
+     * the text is returned unchanged.
+     */
+    public String render( final VariableResolver resolver ) {
+        if (resolver == null) {
+            return source;
+        }
+        if (variables.length == 0) {
+            return literals[0];
+        }
+
+        final StringBuilder out = new StringBuilder(source.length() + 16 * variables.length);
+        try {
+            render(resolver, out);
+        } catch (IOException e) {
+            // a StringBuilder doesn't throw
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Renders the text with the values of the resolver straight into the output.
+     */
+    public void render( final VariableResolver resolver, final Appendable out ) throws IOException {
+        if (resolver == null) {
+            out.append(source);
+            return;
+        }
+
+        for (int i = 0; i < variables.length; i++) {
+            out.append(literals[i]);
+            final String value = resolver.get(variables[i]);
+            if (value != null) {
+                out.append(value);
+            } else {
+                out.append(open).append(variables[i]).append(close);
+            }
+        }
+        out.append(literals[variables.length]);
+    }
+
+    /**
+     * The state machine of {@link Utils#replaceVariables}, recording the
+     * variables instead of resolving them.
+     */
+    private static final class Tokenizer {
+
+        private final String openToken;
+        private final String closeToken;
+        private final List<String> literals = new ArrayList<>();
+        private final List<String> variables = new ArrayList<>();
+        private final StringBuilder out = new StringBuilder();
+
+        Tokenizer( String open, String close ) {
+            this.openToken = open;
+            this.closeToken = close;
+        }
+
+        void literal( String text ) {
+            out.append(text);
+        }
+
+        void tokenize( String expression ) {
+            final char[] open = openToken.toCharArray();
+            final char[] close = closeToken.toCharArray();
+
+            StringBuilder sb = new StringBuilder();
+            char[] last = null;
+            int wo = 0;
+            int wc = 0;
+            int level = 0;
+            for (char c : expression.toCharArray()) {
+                if (c == open[wo]) {
+                    if (wc > 0) {
+                        sb.append(close, 0, wc);
+                    }
+                    wc = 0;
+                    wo++;
+                    if (open.length == wo) {
+                        // found open
+                        if (last == open) {
+                            out.append(open);
+                        }
+                        level++;
+                        out.append(sb);
+                        sb = new StringBuilder();
+                        wo = 0;
+                        last = open;
+                    }
+                } else if (c == close[wc]) {
+                    if (wo > 0) {
+                        sb.append(open, 0, wo);
+                    }
+                    wo = 0;
+                    wc++;
+                    if (close.length == wc) {
+                        // found close
+                        if (last == open) {
+                            literals.add(out.toString());
+                            out.setLength(0);
+                            variables.add(sb.toString());
+                        } else {
+                            out.append(sb);
+                            out.append(close);
+                        }
+                        sb = new StringBuilder();
+                        level--;
+                        wc = 0;
+                        last = close;
+                    }
+                } else {
+
+                    if (wo > 0) {
+                        sb.append(open, 0, wo);
+                    }
+
+                    if (wc > 0) {
+                        sb.append(close, 0, wc);
+                    }
+
+                    sb.append(c);
+
+                    wo = wc = 0;
+                }
+            }
+
+            if (wo > 0) {
+                sb.append(open, 0, wo);
+            }
+
+            if (wc > 0) {
+                sb.append(close, 0, wc);
+            }
+
+            if (level > 0) {
+                out.append(open);
+            }
+            out.append(sb);
+        }
+
+        Template toTemplate( String source ) {
+            final List<String> allLiterals = new ArrayList<>(literals);
+            allLiterals.add(out.toString());
+            return new Template(source, openToken, closeToken, allLiterals, variables);
+        }
+    }
+}
@@ -20,21 +20,19 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.tools.ant.filters.FixCrLfFilter;
-import org.apache.tools.ant.util.ReaderInputStream;
-
 /**
  * Simple utils functions.
  *
@@ -45,6 +43,8 @@ public final class Utils {
 
     private static final Pattern SNAPSHOT_PATTERN = Pattern.compile("(.*)[\\-+]SNAPSHOT");
 
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     public static int copy( final InputStream pInput, final OutputStream pOutput ) throws IOException {
         final byte[] buffer = new byte[2048];
         int count = 0;
@@ -57,14 +57,14 @@ public final class Utils {
     }
 
     public static String toHex( final byte[] bytes ) {
-        final StringBuilder sb = new StringBuilder();
+        final char[] chars = new char[bytes.length * 2];
 
-        for (byte b : bytes) {
-            sb.append(Integer.toHexString((b >> 4) & 0x0f));
-            sb.append(Integer.toHexString(b & 0x0f));
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[2 * i + 1] = HEX[bytes[i] & 0x0f];
         }
 
-        return sb.toString();
+        return new String(chars);
     }
 
     public static String stripPath( final int p, final String s ) {
@@ -118,96 +118,187 @@ public final class Utils {
     }
 
     /**
-     * Substitute the variables in the given expression with the
-     * values from the resolver
+     * Returns the path of an archive entry without its leading "./" and
+     * slashes and without a trailing slash. The root "." becomes "".
+     */
+    public static String normalizePath( final String name ) {
+        String path = name;
+        if (".".equals(path)) {
+            return "";
+        }
+        if (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    /**
+     * Tests whether a path matches an Ant style pattern. '*' and '?' match
+     * within a path element and '**' matches zero or more path elements.
+     * The matching is case sensitive and an absolute path only matches a
+     * pattern that is absolute or starts with '**'.
      *
-     * @param pResolver
-     * @param pExpression
+     * @param pattern the pattern to match against
+     * @param path    the path to match, with '/' or the local separator
      */
-    public static String replaceVariables( final VariableResolver pResolver, final String pExpression, final String pOpen, final String pClose ) {
-        final char[] open = pOpen.toCharArray();
-        final char[] close = pClose.toCharArray();
-
-        final StringBuilder out = new StringBuilder();
-        StringBuilder sb = new StringBuilder();
-        char[] last = null;
-        int wo = 0;
-        int wc = 0;
-        int level = 0;
-        for (char c : pExpression.toCharArray()) {
-            if (c == open[wo]) {
-                if (wc > 0) {
-                    sb.append(close, 0, wc);
-                }
-                wc = 0;
-                wo++;
-                if (open.length == wo) {
-                    // found open
-                    if (last == open) {
-                        out.append(open);
-                    }
-                    level++;
-                    out.append(sb);
-                    sb = new StringBuilder();
-                    wo = 0;
-                    last = open;
-                }
-            } else if (c == close[wc]) {
-                if (wo > 0) {
-                    sb.append(open, 0, wo);
-                }
-                wo = 0;
-                wc++;
-                if (close.length == wc) {
-                    // found close
-                    if (last == open) {
-                        final String variable = pResolver.get(sb.toString());
-                        if (variable != null) {
-                            out.append(variable);
-                        } else {
-                            out.append(open);
-                            out.append(sb);
-                            out.append(close);
-                        }
-                    } else {
-                        out.append(sb);
-                        out.append(close);
-                    }
-                    sb = new StringBuilder();
-                    level--;
-                    wc = 0;
-                    last = close;
-                }
-            } else {
+    public static boolean matchPath( final String pattern, final String path ) {
+        final String[] patterns = tokenizePath(pattern);
+        final String[] elements = tokenizePath(path);
+
+        int patternStart = 0;
+        int patternEnd = patterns.length - 1;
+        int elementStart = 0;
+        int elementEnd = elements.length - 1;
+
+        // up to the first **
+        while (patternStart <= patternEnd && elementStart <= elementEnd) {
+            if ("**".equals(patterns[patternStart])) {
+                break;
+            }
+            if (!matchElement(patterns[patternStart], elements[elementStart])) {
+                return false;
+            }
+            patternStart++;
+            elementStart++;
+        }
+        if (elementStart > elementEnd) {
+            return onlyDoubleStars(patterns, patternStart, patternEnd);
+        }
+        if (patternStart > patternEnd) {
+            return false;
+        }
 
-                if (wo > 0) {
-                    sb.append(open, 0, wo);
+        // back to the last **
+        while (patternStart <= patternEnd && elementStart <= elementEnd) {
+            if ("**".equals(patterns[patternEnd])) {
+                break;
+            }
+            if (!matchElement(patterns[patternEnd], elements[elementEnd])) {
+                return false;
+            }
+            patternEnd--;
+            elementEnd--;
+        }
+        if (elementStart > elementEnd) {
+            return onlyDoubleStars(patterns, patternStart, patternEnd);
+        }
+
+        // find the parts between the ** in the remaining elements
+        while (patternStart != patternEnd && elementStart <= elementEnd) {
+            int next = -1;
+            for (int i = patternStart + 1; i <= patternEnd; i++) {
+                if ("**".equals(patterns[i])) {
+                    next = i;
+                    break;
                 }
+            }
+            if (next == patternStart + 1) {
+                // **/** is the same as **
+                patternStart++;
+                continue;
+            }
 
-                if (wc > 0) {
-                    sb.append(close, 0, wc);
+            final int length = next - patternStart - 1;
+            int found = -1;
+            candidates:
+            for (int i = 0; i <= elementEnd - elementStart + 1 - length; i++) {
+                for (int j = 0; j < length; j++) {
+                    if (!matchElement(patterns[patternStart + j + 1], elements[elementStart + i + j])) {
+                        continue candidates;
+                    }
                 }
+                found = elementStart + i;
+                break;
+            }
+            if (found == -1) {
+                return false;
+            }
 
-                sb.append(c);
+            patternStart = next;
+            elementStart = found + length;
+        }
+
+        return onlyDoubleStars(patterns, patternStart, patternEnd);
+    }
 
-                wo = wc = 0;
+    private static boolean onlyDoubleStars( final String[] patterns, final int start, final int end ) {
+        for (int i = start; i <= end; i++) {
+            if (!"**".equals(patterns[i])) {
+                return false;
             }
         }
+        return true;
+    }
 
-        if (wo > 0) {
-            sb.append(open, 0, wo);
+    /**
+     * Splits a path into its elements. The root of an absolute path is kept
+     * as a first element so it only matches another root or a '**'.
+     */
+    private static String[] tokenizePath( final String path ) {
+        final List<String> elements = new ArrayList<>();
+        int start = 0;
+        if (path.length() > 0 && isSeparator(path.charAt(0))) {
+            elements.add("/");
+            start = 1;
         }
-
-        if (wc > 0) {
-            sb.append(close, 0, wc);
+        for (int i = start; i <= path.length(); i++) {
+            if (i == path.length() || isSeparator(path.charAt(i))) {
+                if (i > start) {
+                    elements.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
         }
+        return elements.toArray(new String[0]);
+    }
+
+    private static boolean isSeparator( final char c ) {
+        return c == '/' || c == File.separatorChar;
+    }
 
-        if (level > 0) {
-            out.append(open);
+    /**
+     * Matches a single path element against a pattern with '*' and '?' wildcards.
+     */
+    private static boolean matchElement( final String pattern, final String element ) {
+        int p = 0;
+        int e = 0;
+        int star = -1;
+        int backtrack = 0;
+        while (e < element.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == element.charAt(e))) {
+                p++;
+                e++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                backtrack = e;
+            } else if (star != -1) {
+                p = star + 1;
+                e = ++backtrack;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
         }
-        out.append(sb);
+        return p == pattern.length();
+    }
 
-        return out.toString();
+    /**
+     * Substitute the variables in the given expression with the
+     * values from the resolver
+     *
+     * @param pResolver
+     * @param pExpression
+     */
+    public static String replaceVariables( final VariableResolver pResolver, final String pExpression, final String pOpen, final String pClose ) {
+        return Template.compile(pExpression, pOpen, pClose).render(pResolver);
     }
 
     /**
@@ -216,12 +307,40 @@ public final class Utils {
      * @param input
      */
     public static byte[] toUnixLineEndings( InputStream input ) throws IOException {
-        String encoding = "ISO-8859-1";
-        FixCrLfFilter filter = new FixCrLfFilter(new InputStreamReader(input, encoding));
-        filter.setEol(FixCrLfFilter.CrLf.newInstance("unix"));
+        final byte[] content = input.readAllBytes();
+
+        // a trailing EOF character is dropped like Ant's FixCrLfFilter did
+        int length = content.length;
+        if (length > 0 && content[length - 1] == 0x1a) {
+            length--;
+        }
+
+        final ByteArrayOutputStream filteredFile = new ByteArrayOutputStream(length + 1);
+        int last = -1;
+        for (int i = 0; i < length; i++) {
+            int b = content[i];
+            if (b == '\r') {
+                // CRLF, CRCRLF and a lone CR all count as a single line ending,
+                // a pair of CR not followed by a LF as two
+                if (i + 1 < length && content[i + 1] == '\n') {
+                    i += 1;
+                } else if (i + 1 < length && content[i + 1] == '\r') {
+                    if (i + 2 < length && content[i + 2] == '\n') {
+                        i += 2;
+                    } else {
+                        filteredFile.write('\n');
+                        i += 1;
+                    }
+                }
+                b = '\n';
+            }
+            filteredFile.write(b);
+            last = b;
+        }
 
-        ByteArrayOutputStream filteredFile = new ByteArrayOutputStream();
-        Utils.copy(new ReaderInputStream(filter, encoding), filteredFile);
+        if (last != '\n') {
+            filteredFile.write('\n');
+        }
 
         return filteredFile.toByteArray();
     }
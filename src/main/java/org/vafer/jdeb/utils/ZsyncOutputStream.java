@@ -0,0 +1,147 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Stream computing the block checksums of the data written through it and
+ * writing them as a zsync control file. With it a client holding an older
+ * version of the file only downloads the blocks that changed.
+ *
+ * Every block gets the rolling checksum of rsync and a MD4 digest, the last
+ * block is padded with zeros. As zsyncmake does, the checksums are truncated
+ * to the lengths needed for the size of the file.
+ *
+ * ATTENTION: don't use outside of jdeb
+ */
+public final class ZsyncOutputStream extends FilterOutputStream {
+
+    /** Files beyond this size get the larger block size, like zsyncmake does */
+    private static final long LARGE_FILE = 100000000L;
+
+    private final int blockSize;
+    private final byte[] block;
+    private int position;
+    private long length;
+    private final MessageDigest md4;
+    private final MessageDigest sha1;
+
+    /** The rolling checksum and the MD4 digest of every block, 4 and 16 bytes */
+    private final ByteArrayOutputStream checksums = new ByteArrayOutputStream();
+
+    /**
+     * @param expectedLength the expected length of the file, only used to choose the block size
+     */
+    public ZsyncOutputStream( OutputStream out, long expectedLength ) throws NoSuchAlgorithmException {
+        super(out);
+        this.blockSize = expectedLength < LARGE_FILE ? 2048 : 4096;
+        this.block = new byte[blockSize];
+        this.md4 = MultiDigest.getInstance("MD4");
+        this.sha1 = MultiDigest.getInstance("SHA-1");
+    }
+
+    public void write( int b ) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    public void write( byte[] b, int off, int len ) throws IOException {
+        out.write(b, off, len);
+        sha1.update(b, off, len);
+        length += len;
+
+        while (len > 0) {
+            final int n = Math.min(len, blockSize - position);
+            System.arraycopy(b, off, block, position, n);
+            position += n;
+            off += n;
+            len -= n;
+            if (position == blockSize) {
+                addBlock();
+            }
+        }
+    }
+
+    private void addBlock() {
+        // the rolling checksum of rsync, a as the sum of the bytes and b as the sum of the sums
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < blockSize; i++) {
+            a += block[i] & 0xff;
+            b += a;
+        }
+        checksums.write(a >>> 8);
+        checksums.write(a);
+        checksums.write(b >>> 8);
+        checksums.write(b);
+
+        md4.update(block, 0, blockSize);
+        checksums.writeBytes(md4.digest());
+        position = 0;
+    }
+
+    /**
+     * Writes the control file of the data written so far. Call it once all
+     * the data has been written.
+     *
+     * @param output the stream receiving the control file, not closed
+     * @param filename the name of the file the control file describes, also its URL relative to the control file
+     */
+    public void writeControl( OutputStream output, String filename ) throws IOException {
+        if (position > 0) {
+            Arrays.fill(block, position, blockSize, (byte) 0);
+            addBlock();
+        }
+
+        // the hash lengths zsyncmake chooses for the size of the file
+        final int sequenceMatches = length > blockSize ? 2 : 1;
+        final double lengthBits = Math.log(Math.max(length, 1)) / Math.log(2);
+        final double blocksBits = Math.log(1 + length / blockSize) / Math.log(2);
+        final int rsumLength = clamp((int) Math.ceil((lengthBits + Math.log(blockSize) / Math.log(2) - 8.6) / sequenceMatches / 8), 2, 4);
+        final int checksumLength = clamp(Math.max(
+            (int) Math.ceil((20 + lengthBits + blocksBits) / sequenceMatches / 8),
+            (int) ((7.9 + 20 + blocksBits) / 8)), 3, 16);
+
+        final String header =
+            "zsync: 0.6.2\n" +
+            "Filename: " + filename + "\n" +
+            "Blocksize: " + blockSize + "\n" +
+            "Length: " + length + "\n" +
+            "Hash-Lengths: " + sequenceMatches + "," + rsumLength + "," + checksumLength + "\n" +
+            "URL: " + filename + "\n" +
+            "SHA-1: " + Utils.toHex(sha1.digest()) + "\n" +
+            "\n";
+        output.write(header.getBytes(UTF_8));
+
+        final byte[] sums = checksums.toByteArray();
+        for (int i = 0; i < sums.length; i += 20) {
+            output.write(sums, i + 4 - rsumLength, rsumLength);
+            output.write(sums, i + 4, checksumLength);
+        }
+    }
+
+    private static int clamp( int value, int min, int max ) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
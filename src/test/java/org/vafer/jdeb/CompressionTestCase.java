@@ -0,0 +1,101 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public final class CompressionTestCase extends Assert {
+
+    private static byte[] content( int lines, long seed ) {
+        final Random random = new Random(seed);
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            content.append("line ").append(i).append(' ').append(Long.toHexString(random.nextLong() & 0xffffff)).append('\n');
+        }
+        return content.toString().getBytes(UTF_8);
+    }
+
+    private static byte[] compress( Compression compression, byte[] content, boolean rsyncable ) throws Exception {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = compression.toCompressedOutputStream(compressed, rsyncable)) {
+            // written in uneven pieces, the boundaries must not depend on them
+            for (int off = 0; off < content.length; off += 1000) {
+                output.write(content, off, Math.min(1000, content.length - off));
+            }
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] decompress( byte[] compressed ) throws Exception {
+        return IOUtils.toByteArray(new CompressorStreamFactory().createCompressorInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    private static boolean contains( byte[] array, byte[] part ) {
+        outer:
+        for (int i = 0; i <= array.length - part.length; i++) {
+            for (int j = 0; j < part.length; j++) {
+                if (array[i + j] != part[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void assertRsyncable( Compression compression, int lines ) throws Exception {
+        final byte[] original = content(lines, 1);
+        final byte[] changed = new byte[original.length + 5];
+        System.arraycopy(original, 0, changed, 0, 100);
+        System.arraycopy("12345".getBytes(UTF_8), 0, changed, 100, 5);
+        System.arraycopy(original, 100, changed, 105, original.length - 100);
+
+        final byte[] compressedOriginal = compress(compression, original, true);
+        final byte[] compressedChanged = compress(compression, changed, true);
+        assertArrayEquals(original, decompress(compressedOriginal));
+        assertArrayEquals(changed, decompress(compressedChanged));
+
+        // past the first boundary the compressed data is the same, only shifted
+        final byte[] tail = Arrays.copyOfRange(compressedOriginal, compressedOriginal.length / 2, compressedOriginal.length * 9 / 10);
+        assertTrue(contains(compressedChanged, tail));
+
+        // without the rsyncable mode the change spreads to the end
+        final byte[] plainTail = compress(compression, original, false);
+        assertFalse(contains(compress(compression, changed, false), Arrays.copyOfRange(plainTail, plainTail.length / 2, plainTail.length / 2 + 64)));
+    }
+
+    @Test
+    public void testRsyncableGzip() throws Exception {
+        assertRsyncable(Compression.GZIP, 100000);
+    }
+
+    @Test
+    public void testRsyncableXz() throws Exception {
+        assertRsyncable(Compression.XZ, 400000);
+    }
+}
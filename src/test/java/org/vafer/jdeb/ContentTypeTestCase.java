@@ -0,0 +1,79 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public final class ContentTypeTestCase extends Assert {
+
+    private static ContentType detect( byte[] content ) {
+        return ContentType.detect(content, 0, content.length);
+    }
+
+    @Test
+    public void testText() {
+        assertEquals(ContentType.TEXT, detect(new byte[0]));
+        assertEquals(ContentType.TEXT, detect("key=value\n".getBytes(UTF_8)));
+        assertEquals(ContentType.TEXT, detect("été\r\n".getBytes(UTF_8)));
+        assertEquals(ContentType.TEXT, detect("text".getBytes(UTF_16)));
+    }
+
+    @Test
+    public void testScript() {
+        assertEquals(ContentType.SCRIPT, detect("#!/bin/sh\necho\n".getBytes(UTF_8)));
+        assertEquals(ContentType.SCRIPT, detect("\uFEFF#!/bin/sh\n".getBytes(UTF_8)));
+        assertEquals(ContentType.SCRIPT, detect("#!/bin/sh\n".getBytes(UTF_16BE)));
+        assertEquals(ContentType.SCRIPT, detect("#!/bin/sh\n".getBytes(UTF_16LE)));
+        assertEquals(ContentType.TEXT, detect(" #!/bin/sh\n".getBytes(UTF_8)));
+        assertTrue(ContentType.SCRIPT.isExecutable());
+    }
+
+    @Test
+    public void testBinary() {
+        assertEquals(ContentType.ELF, detect(new byte[] { 0x7f, 'E', 'L', 'F', 2, 1, 1, 0 }));
+        assertTrue(ContentType.ELF.isExecutable());
+        assertEquals(ContentType.BINARY, detect(new byte[] { 'a', 0, 'b' }));
+        assertFalse(ContentType.BINARY.isExecutable());
+    }
+
+    @Test
+    public void testCompressed() throws Exception {
+        final ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        try (ZipOutputStream output = new ZipOutputStream(zip)) {
+            output.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+        }
+        assertEquals(ContentType.COMPRESSED, detect(zip.toByteArray()));
+
+        final ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(gzip)) {
+            output.write(1);
+        }
+        assertEquals(ContentType.COMPRESSED, detect(gzip.toByteArray()));
+
+        assertEquals(ContentType.COMPRESSED, detect(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0 }));
+        assertEquals(ContentType.COMPRESSED, detect(new byte[] { (byte) 0xfd, '7', 'z', 'X', 'Z', 0, 0 }));
+        assertTrue(ContentType.COMPRESSED.isCompressed());
+    }
+}
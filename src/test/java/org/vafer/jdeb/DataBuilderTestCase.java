@@ -16,17 +16,32 @@
 
 package org.vafer.jdeb;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.IOUtils;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.types.FileSet;
 import org.junit.Assert;
 import org.junit.Test;
+import org.vafer.jdeb.mapping.ExecutableMapper;
 import org.vafer.jdeb.producers.DataProducerDirectory;
 import org.vafer.jdeb.producers.DataProducerFile;
 import org.vafer.jdeb.producers.DataProducerFileSet;
@@ -95,6 +110,147 @@ public final class DataBuilderTestCase extends Assert {
         assertExpectedModTimeInArchive(archive);
     }
 
+    @Test
+    public void testEntryOrder() throws Exception {
+        // emits the entries out of order, with the content as plain streams
+        DataProducer producer = consumer -> {
+            for (String name : new String[] { "usr/share/app/b.txt", "usr/share/app/lib/z.jar", "usr/bin/app", "usr/share/app/a.jar", "usr/share/app/c.txt" }) {
+                TarArchiveEntry entry = new TarArchiveEntry(name);
+                byte[] content = name.getBytes(StandardCharsets.UTF_8);
+                entry.setSize(content.length);
+                consumer.onEachFile(new ByteArrayInputStream(content), entry);
+            }
+            consumer.onEachDir(new TarArchiveEntry("usr/share/app/lib/", true));
+        };
+        File archive = prepareArchive();
+
+        StringBuilder md5s = new StringBuilder();
+        DataBuilder builder = new DataBuilder(new NullConsole(), null);
+        builder.buildData(Arrays.asList(producer), archive, md5s, new TarOptions().compression(Compression.NONE).entryOrder(EntryOrder.TYPE));
+
+        List<String> names = new ArrayList<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(new FileInputStream(archive))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                names.add(entry.getName());
+                if (!entry.isDirectory()) {
+                    assertEquals("./" + IOUtils.toString(in, StandardCharsets.UTF_8), entry.getName());
+                }
+            }
+        }
+
+        assertEquals(Arrays.asList(
+            "./usr/", "./usr/share/", "./usr/share/app/", "./usr/share/app/lib/", "./usr/bin/", "./usr/bin/app",
+            "./usr/share/app/a.jar", "./usr/share/app/lib/z.jar", "./usr/share/app/b.txt", "./usr/share/app/c.txt"), names);
+        assertTrue(md5s.toString().startsWith(DigestUtils.md5Hex("usr/bin/app") + "  usr/bin/app\n"));
+    }
+
+    @Test
+    public void testDetectExecutables() throws Exception {
+        final byte[] jar = new byte[256 * 1024];
+        new Random(0).nextBytes(jar);
+        jar[0] = 'P';
+        jar[1] = 'K';
+        jar[2] = 3;
+        jar[3] = 4;
+
+        DataProducer producer = consumer -> {
+            for (Object[] file : new Object[][] {
+                { "usr/bin/run", "#!/bin/sh\necho\n".getBytes(StandardCharsets.UTF_8) },
+                { "usr/lib/app/app.jar", jar },
+                { "etc/app.conf", "key=value\n".getBytes(StandardCharsets.UTF_8) } }) {
+                TarArchiveEntry entry = new TarArchiveEntry((String) file[0]);
+                entry.setMode(0640);
+                entry.setSize(((byte[]) file[1]).length);
+                consumer.onEachFile(new ByteArrayInputStream((byte[]) file[1]), entry);
+            }
+        };
+        File archive = prepareArchive();
+
+        DataBuilder builder = new DataBuilder(new NullConsole(), null);
+        builder.buildData(Arrays.asList(producer), archive, new StringBuilder(), new TarOptions().compression(Compression.GZIP).contentMapper(ExecutableMapper.INSTANCE));
+
+        Map<String, Integer> modes = new HashMap<>();
+        try (TarArchiveInputStream in = new TarArchiveInputStream(new GZIPInputStream(new FileInputStream(archive)))) {
+            TarArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                modes.put(entry.getName(), entry.getMode() & 07777);
+                if (entry.getName().endsWith(".jar")) {
+                    assertArrayEquals(jar, IOUtils.toByteArray(in));
+                }
+            }
+        }
+        assertEquals(0750, (int) modes.get("./usr/bin/run"));
+        assertEquals(0640, (int) modes.get("./usr/lib/app/app.jar"));
+        assertEquals(0640, (int) modes.get("./etc/app.conf"));
+    }
+
+    @Test
+    public void testSinks() throws Exception {
+        final byte[] content = new byte[512 * 1024];
+        new Random(1).nextBytes(content);
+        DataProducer producer = consumer -> {
+            TarArchiveEntry entry = new TarArchiveEntry("usr/share/app/data.bin");
+            entry.setSize(content.length);
+            consumer.onEachFile(new ByteArrayInputStream(content), entry);
+        };
+        File archive = prepareArchive();
+        File tarball = new File("target/sink-data.tar.gz");
+        File zstd = new File("target/sink-data.tar.zst");
+        File layer = new File("target/sink-layer.tar.gz");
+
+        DataBuilder builder = new DataBuilder(new NullConsole(), EXPECTED_MODIFIED_TIME);
+        builder.buildData(Arrays.asList(producer), archive, new StringBuilder(), new TarOptions()
+            .compression(Compression.NONE)
+            .sinks(Arrays.asList(
+                new DataSink(DataSink.Format.TAR_GZ, tarball),
+                new DataSink(DataSink.Format.TAR_ZST, zstd),
+                new DataSink(DataSink.Format.OCI_LAYER, layer))));
+
+        // every sink holds the very same tar as the data archive
+        final byte[] tar = Files.readAllBytes(archive.toPath());
+        try (InputStream in = new GZIPInputStream(new FileInputStream(tarball))) {
+            assertArrayEquals(tar, IOUtils.toByteArray(in));
+        }
+        try (InputStream in = new CompressorStreamFactory().createCompressorInputStream(CompressorStreamFactory.ZSTANDARD, new FileInputStream(zstd))) {
+            assertArrayEquals(tar, IOUtils.toByteArray(in));
+        }
+
+        final String descriptor = new String(Files.readAllBytes(new File("target/sink-layer.tar.gz.json").toPath()), StandardCharsets.UTF_8);
+        assertTrue(descriptor, descriptor.contains("\"mediaType\": \"application/vnd.oci.image.layer.v1.tar+gzip\""));
+        assertTrue(descriptor, descriptor.contains("\"digest\": \"sha256:" + DigestUtils.sha256Hex(Files.readAllBytes(layer.toPath())) + "\""));
+        assertTrue(descriptor, descriptor.contains("\"size\": " + layer.length() + ","));
+        assertTrue(descriptor, descriptor.contains("\"diffID\": \"sha256:" + DigestUtils.sha256Hex(tar) + "\""));
+    }
+
+    @Test
+    public void testSinksDeletedOnFailure() throws Exception {
+        DataProducer producer = consumer -> {
+            TarArchiveEntry entry = new TarArchiveEntry("usr/share/app/data.bin");
+            entry.setSize(4);
+            consumer.onEachFile(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), entry);
+            throw new IOException("failed");
+        };
+        File tarball = new File("target/failed-data.tar.gz");
+        File layer = new File("target/failed-layer.tar.gz");
+
+        DataBuilder builder = new DataBuilder(new NullConsole(), EXPECTED_MODIFIED_TIME);
+        try {
+            builder.buildData(Arrays.asList(producer), prepareArchive(), new StringBuilder(), new TarOptions()
+                .compression(Compression.NONE)
+                .sinks(Arrays.asList(
+                    new DataSink(DataSink.Format.TAR_GZ, tarball),
+                    new DataSink(DataSink.Format.OCI_LAYER, layer))));
+            fail("the build should fail");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+
+        assertFalse(tarball.exists());
+        assertFalse(layer.exists());
+        assertFalse(new File("target/failed-layer.tar.gz.json").exists());
+    }
+
     private File prepareArchive() {
         File archive = new File("target/data.tar");
         if (archive.exists()) {
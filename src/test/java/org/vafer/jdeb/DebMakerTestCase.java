@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -288,6 +289,36 @@ public final class DebMakerTestCase extends Assert {
         assertTrue("Cannot delete the file " + deb, deb.delete());
     }
 
+    @Test
+    public void testRsyncableWithZsync() throws Exception {
+        File deb = File.createTempFile("jdeb", ".deb");
+        File zsync = new File(deb.getPath() + ".zsync");
+
+        DebMaker maker = new DebMaker(new NullConsole(), Arrays.asList(prepareData()), null);
+        maker.setControl(new File(getClass().getResource("deb/control").toURI()));
+        maker.setDeb(deb);
+        maker.setRsyncable(true);
+        maker.setZsync(true);
+
+        maker.createDeb(Compression.XZ);
+
+        final Set<String> filesInDeb = new HashSet<>();
+        ArchiveWalker.walkData(deb, new ArchiveVisitor<TarArchiveEntry>() {
+            public void visit(TarArchiveEntry entry, byte[] content) {
+                filesInDeb.add(entry.getName());
+            }
+        }, Compression.XZ);
+        assertTrue(filesInDeb.contains("./test/testfile"));
+
+        try {
+            String header = new String(Files.readAllBytes(zsync.toPath()), ISO_8859_1);
+            assertTrue(header, header.startsWith("zsync: 0.6.2\nFilename: " + deb.getName() + "\nBlocksize: 2048\nLength: " + deb.length() + "\n"));
+        } finally {
+            assertTrue("Cannot delete the file " + deb, deb.delete());
+            assertTrue("Cannot delete the file " + zsync, zsync.delete());
+        }
+    }
+
     @Test
     public void testErrorPropagation() throws Exception {
         File deb = File.createTempFile("jdeb", ".deb");
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vafer.jdeb.producers.DataProducerArchive;
+import org.vafer.jdeb.producers.DataProducerDirectory;
+
+public final class PackageEngineTestCase extends Assert {
+
+    private PackageConfig config() throws Exception {
+        return PackageConfig.builder()
+            .control(new File(getClass().getResource("deb/control").toURI()))
+            .data(new DataProducerArchive(new File(getClass().getResource("deb/data.tgz").toURI()), null, null, null))
+            .data(new DataProducerDirectory(new File(getClass().getResource("deb/data").toURI()), null, new String[] { "**/.svn/**" }, null))
+            .build();
+    }
+
+    @Test
+    public void testConcurrentBuilds() throws Exception {
+        final PackageConfig config = config();
+
+        final List<File> debs = new ArrayList<>();
+        final List<CompletableFuture<PackageResult>> futures = new ArrayList<>();
+        try (PackageEngine engine = new PackageEngine(new NullConsole())) {
+            for (int i = 0; i < 8; i++) {
+                File deb = File.createTempFile("jdeb", ".deb");
+                debs.add(deb);
+                futures.add(engine.build(config.toBuilder().deb(deb).compression(i % 2 == 0 ? "gzip" : "xz").build()));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                PackageResult result = futures.get(i).get();
+                assertEquals(debs.get(i), result.getDeb());
+                assertTrue(result.getControlFile().isValid());
+                assertTrue(result.getChanges().isFile());
+
+                final List<String> names = new ArrayList<>();
+                ArchiveWalker.walkData(result.getDeb(), new ArchiveVisitor<TarArchiveEntry>() {
+                    public void visit(TarArchiveEntry entry, byte[] content) {
+                        names.add(entry.getName());
+                    }
+                }, i % 2 == 0 ? Compression.GZIP : Compression.XZ);
+                assertTrue(names.contains("./test/testfile"));
+                assertTrue(names.contains("./test/testfile2"));
+
+                assertTrue(result.getChanges().delete());
+                assertTrue(result.getDeb().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testSignedBuildsShareTheKey() throws Exception {
+        final File keyring = File.createTempFile("jdeb", ".gpg");
+        Files.copy(getClass().getClassLoader().getResourceAsStream("org/vafer/gpg/secring.gpg"), keyring.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        final PackageConfig config = config().toBuilder()
+            .keyring(keyring)
+            .key("2E074D8F")
+            .passphrase("test")
+            .signChanges(true)
+            .build();
+
+        try (PackageEngine engine = new PackageEngine(new NullConsole())) {
+            for (int i = 0; i < 2; i++) {
+                File deb = File.createTempFile("jdeb", ".deb");
+                PackageResult result = engine.build(config.toBuilder().deb(deb).build()).get();
+
+                String changes = new String(Files.readAllBytes(result.getChanges().toPath()), StandardCharsets.UTF_8);
+                assertTrue(changes.startsWith("-----BEGIN PGP SIGNED MESSAGE-----"));
+                assertTrue(changes.contains("-----BEGIN PGP SIGNATURE-----"));
+
+                assertTrue(result.getChanges().delete());
+                assertTrue(deb.delete());
+            }
+        } finally {
+            assertTrue(keyring.delete());
+        }
+    }
+
+    @Test
+    public void testFailedBuild() throws Exception {
+        final PackageConfig config = PackageConfig.builder()
+            .deb(new File("target/never.deb"))
+            .control(new File("target/missing-control"))
+            .build();
+
+        try (PackageEngine engine = new PackageEngine(new NullConsole())) {
+            engine.build(config).get();
+            fail("the build should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof PackagingException);
+        }
+    }
+}
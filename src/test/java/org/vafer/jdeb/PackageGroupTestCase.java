@@ -0,0 +1,151 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.producers.DataProducerDirectory;
+
+public final class PackageGroupTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File control(String name) throws Exception {
+        final File control = folder.newFolder("control-" + name);
+        Files.write(new File(control, "control").toPath(), (
+            "Package: " + name + "\n" +
+            "Version: 1.0\n" +
+            "Section: misc\n" +
+            "Priority: optional\n" +
+            "Architecture: all\n" +
+            "Maintainer: John Doe <john@doe.org>\n" +
+            "Description: the " + name + " package\n").getBytes(StandardCharsets.UTF_8));
+        return control;
+    }
+
+    private File file(File root, String path, String content) throws Exception {
+        final File file = new File(root, path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static TreeMap<String, String> data(File deb) throws Exception {
+        final TreeMap<String, String> files = new TreeMap<>();
+        ArchiveWalker.walkData(deb, new ArchiveVisitor<TarArchiveEntry>() {
+            public void visit(TarArchiveEntry entry, byte[] content) {
+                if (entry.isFile()) {
+                    files.put(entry.getName(), new String(content, StandardCharsets.UTF_8));
+                }
+            }
+        }, Compression.GZIP);
+        return files;
+    }
+
+    private static String controlFile(File deb, final String name) throws Exception {
+        final StringBuilder result = new StringBuilder();
+        ArchiveWalker.walkControl(deb, new ArchiveVisitor<TarArchiveEntry>() {
+            public void visit(TarArchiveEntry entry, byte[] content) {
+                if (entry.getName().equals("./" + name)) {
+                    result.append(new String(content, StandardCharsets.UTF_8));
+                }
+            }
+        });
+        return result.toString();
+    }
+
+    @Test
+    public void testOneScanSeveralPackages() throws Exception {
+        final File root = folder.newFolder("data");
+        file(root, "opt/app/lib/app.jar", "jar");
+        file(root, "opt/app/bin/app", "#!/bin/sh");
+        file(root, "etc/app/app.conf", "debug=false");
+        file(root, "usr/share/doc/app/README", "readme");
+
+        final AtomicInteger scans = new AtomicInteger();
+        final DataProducerDirectory directory = new DataProducerDirectory(root, null, null, null);
+        final DataProducer tree = receiver -> {
+            scans.incrementAndGet();
+            directory.produce(receiver);
+        };
+        final DataProducer conffiles = new DataProducerDirectory(root, new String[] { "etc/**" }, null, null);
+        final DataProducer generated = receiver -> {
+            // content that is not a file, it gets spooled
+            final byte[] content = "generated".getBytes(StandardCharsets.UTF_8);
+            final TarArchiveEntry entry = new TarArchiveEntry("./usr/share/doc/app/VERSION", true);
+            entry.setSize(content.length);
+            receiver.onEachFile(new ByteArrayInputStream(content), entry);
+        };
+
+        final PackageGroup group = new PackageGroup(new NullConsole());
+        final List<File> debs = new ArrayList<>();
+        for (String name : Arrays.asList("app", "app-config", "app-docs")) {
+            debs.add(new File(folder.getRoot(), name + ".deb"));
+        }
+        group.add(PackageConfig.builder().deb(debs.get(0)).control(control("app")).build(), new String[] { "opt/**" }, new String[] { "**/*.jar" });
+        group.add(PackageConfig.builder().deb(debs.get(1)).control(control("app-config")).build(), new String[] { "etc/**" }, null);
+        group.add(PackageConfig.builder().deb(debs.get(2)).control(control("app-docs")).compression("gzip").build(), new String[] { "usr/share/doc/**" }, null);
+
+        final List<PackageResult> results = group.build(Arrays.asList(tree, generated), Arrays.asList(conffiles));
+        assertEquals(1, scans.get());
+        assertEquals(3, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(debs.get(i), results.get(i).getDeb());
+            assertTrue(results.get(i).getChanges().isFile());
+        }
+
+        assertEquals("{./opt/app/bin/app=#!/bin/sh}", data(debs.get(0)).toString());
+        assertEquals("{./etc/app/app.conf=debug=false}", data(debs.get(1)).toString());
+        assertEquals("{./usr/share/doc/app/README=readme, ./usr/share/doc/app/VERSION=generated}", data(debs.get(2)).toString());
+
+        assertEquals("", controlFile(debs.get(0), "conffiles"));
+        assertEquals("/etc/app/app.conf\n", controlFile(debs.get(1), "conffiles"));
+        assertEquals("app-docs", results.get(2).getControlFile().get("Package"));
+    }
+
+    @Test
+    public void testFailedPackage() throws Exception {
+        final File root = folder.newFolder("data");
+        file(root, "opt/app/bin/app", "#!/bin/sh");
+
+        final PackageGroup group = new PackageGroup(new NullConsole());
+        group.add(PackageConfig.builder().deb(new File(folder.getRoot(), "app.deb")).control(control("app")).build(), null, null);
+        group.add(PackageConfig.builder().deb(new File(folder.getRoot(), "broken.deb")).control(new File(folder.getRoot(), "missing")).build(), null, null);
+
+        try {
+            group.build(Arrays.asList(new DataProducerDirectory(root, null, null, null)), null);
+            fail("the build should have failed");
+        } catch (PackagingException e) {
+            // all the members are validated before anything gets built
+            assertFalse(new File(folder.getRoot(), "app.deb").exists());
+        }
+    }
+}
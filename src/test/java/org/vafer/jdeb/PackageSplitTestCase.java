@@ -0,0 +1,129 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.debian.BinaryPackageControlFile;
+import org.vafer.jdeb.producers.DataProducerDirectory;
+import org.vafer.jdeb.reader.DebReader;
+
+public final class PackageSplitTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File control(String version) throws Exception {
+        final File control = folder.newFolder("control-" + version);
+        Files.write(new File(control, "control").toPath(), (
+            "Package: app\n" +
+            "Version: " + version + "\n" +
+            "Section: misc\n" +
+            "Priority: optional\n" +
+            "Architecture: all\n" +
+            "Depends: default-jre-headless\n" +
+            "Maintainer: John Doe <john@doe.org>\n" +
+            "Description: the app package\n").getBytes(StandardCharsets.UTF_8));
+        return control;
+    }
+
+    private File directory(String name, String file, String content) throws Exception {
+        final File root = folder.newFolder(name);
+        final File parent = new File(root, file).getParentFile();
+        assertTrue(parent.isDirectory() || parent.mkdirs());
+        Files.write(new File(root, file).toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return root;
+    }
+
+    private static BinaryPackageControlFile readControl(File deb) throws Exception {
+        try (DebReader reader = DebReader.open(deb); TarArchiveInputStream control = reader.openControl()) {
+            TarArchiveEntry entry;
+            while ((entry = control.getNextEntry()) != null) {
+                if (entry.getName().endsWith("control")) {
+                    return new BinaryPackageControlFile(control);
+                }
+            }
+        }
+        throw new AssertionError("No control file in " + deb);
+    }
+
+    private PackageConfig app(File output, String version) throws Exception {
+        return PackageConfig.builder()
+            .deb(new File(output, "app_" + version + "_all.deb"))
+            .control(control(version))
+            .data(new DataProducerDirectory(directory("app-" + version, "opt/app/app.jar", "app " + version), null, null, null))
+            .build();
+    }
+
+    @Test
+    public void testLibsReused() throws Exception {
+        final File output = folder.newFolder("output");
+        final File libs = directory("libs", "opt/app/lib/commons.jar", "commons");
+        final List<DataProducer> libsData = Collections.singletonList(new DataProducerDirectory(libs, null, null, null));
+
+        final PackageSplit first = new PackageSplit(new NullConsole());
+        final List<PackageResult> firstResults = first.build(app(output, "1.0"), libsData);
+
+        assertEquals(2, firstResults.size());
+        assertTrue(first.isLibsBuilt());
+        assertEquals("app-libs", first.getLibsName());
+        assertTrue(first.getLibsVersion().startsWith("1.0+"));
+        assertEquals(new File(output, "app-libs_" + first.getLibsVersion() + "_all.deb"), first.getLibsDeb());
+
+        final BinaryPackageControlFile libsControl = readControl(first.getLibsDeb());
+        assertEquals("app-libs", libsControl.get("Package"));
+        assertEquals("all", libsControl.get("Architecture"));
+        assertEquals("default-jre-headless, app-libs (= " + first.getLibsVersion() + ")", readControl(firstResults.get(0).getDeb()).get("Depends"));
+
+        // a new release of the application with the same libraries
+        final PackageSplit second = new PackageSplit(new NullConsole());
+        final List<PackageResult> secondResults = second.build(app(output, "1.1"), libsData);
+
+        assertEquals(1, secondResults.size());
+        assertFalse(second.isLibsBuilt());
+        assertEquals(first.getLibsDeb(), second.getLibsDeb());
+        assertEquals(first.getLibsVersion(), second.getLibsVersion());
+        assertEquals("default-jre-headless, app-libs (= " + first.getLibsVersion() + ")", readControl(secondResults.get(0).getDeb()).get("Depends"));
+    }
+
+    @Test
+    public void testLibsRebuiltWhenChanged() throws Exception {
+        final File output = folder.newFolder("output");
+
+        final PackageSplit first = new PackageSplit(new NullConsole());
+        first.build(app(output, "1.0"), Collections.singletonList(new DataProducerDirectory(directory("libs-1", "opt/app/lib/commons.jar", "commons 1"), null, null, null)));
+
+        final PackageSplit second = new PackageSplit(new NullConsole());
+        second.setLibsName("app-deps");
+        second.build(app(output, "1.1"), Collections.singletonList(new DataProducerDirectory(directory("libs-2", "opt/app/lib/commons.jar", "commons 2"), null, null, null)));
+
+        assertTrue(second.isLibsBuilt());
+        assertTrue(second.getLibsVersion().startsWith("1.1+"));
+        assertEquals("app-deps", readControl(second.getLibsDeb()).get("Package"));
+        assertNotEquals(first.getLibsVersion().substring(4), second.getLibsVersion().substring(4));
+    }
+}
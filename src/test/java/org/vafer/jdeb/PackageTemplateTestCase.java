@@ -0,0 +1,131 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.debian.BinaryPackageControlFile;
+import org.vafer.jdeb.producers.DataProducerDirectory;
+import org.vafer.jdeb.utils.MapVariableResolver;
+import org.vafer.jdeb.utils.Utils;
+
+public final class PackageTemplateTestCase extends Assert {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PackageConfig config(String compression) throws Exception {
+        File control = folder.newFolder("control");
+        Files.write(new File(control, "control").toPath(), ("Package: [[name]]\n"
+            + "Version: 1.0\n"
+            + "Priority: optional\n"
+            + "Architecture: all\n"
+            + "Maintainer: John Doe <john@doe.org>\n"
+            + "Description: [[name]] package\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(control, "postinst").toPath(), "#!/bin/sh\necho [[name]]\n".getBytes(StandardCharsets.UTF_8));
+
+        File data = folder.newFolder("data");
+        new File(data, "etc/app").mkdirs();
+        new File(data, "usr/share/app").mkdirs();
+        Files.write(new File(data, "etc/app/app.conf").toPath(), "name=[[name]]\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(data, "usr/share/app/static.txt").toPath(), "left as [[is]]\n".getBytes(StandardCharsets.UTF_8));
+
+        return PackageConfig.builder()
+            .control(control)
+            .compression(compression)
+            .data(new DataProducerDirectory(data, null, null, null))
+            .build();
+    }
+
+    private File write(ByteBuffer buffer) throws Exception {
+        File deb = folder.newFile();
+        try (FileChannel channel = new FileOutputStream(deb).getChannel()) {
+            channel.write(buffer);
+        }
+        return deb;
+    }
+
+    private Map<String, String> contents(File deb, Compression compression, boolean control) throws Exception {
+        final Map<String, String> contents = new HashMap<>();
+        ArchiveVisitor<TarArchiveEntry> visitor = new ArchiveVisitor<TarArchiveEntry>() {
+            public void visit(TarArchiveEntry entry, byte[] content) {
+                contents.put(entry.getName(), new String(content, StandardCharsets.UTF_8));
+            }
+        };
+        if (control) {
+            assertTrue(ArchiveWalker.walkControl(deb, visitor));
+        } else {
+            assertTrue(ArchiveWalker.walkData(deb, visitor, compression));
+        }
+        return contents;
+    }
+
+    private void assertPackage(PackageTemplate template, String name, Compression compression) throws Exception {
+        Map<String, String> values = new HashMap<>();
+        values.put("name", name);
+        File deb = write(template.render(new MapVariableResolver(values)));
+
+        Map<String, String> data = contents(deb, compression, false);
+        assertEquals("name=" + name + "\n", data.get("./etc/app/app.conf"));
+        assertEquals("left as [[is]]\n", data.get("./usr/share/app/static.txt"));
+
+        Map<String, String> control = contents(deb, compression, true);
+        assertEquals("#!/bin/sh\necho " + name + "\n", control.get("./postinst"));
+
+        BinaryPackageControlFile packageControlFile = new BinaryPackageControlFile(control.get("./control"));
+        assertTrue(packageControlFile.isValid());
+        assertEquals(name, packageControlFile.get("Package"));
+        assertEquals(name + " package", packageControlFile.get("Description"));
+
+        String md5 = Utils.toHex(MessageDigest.getInstance("MD5").digest(("name=" + name + "\n").getBytes(StandardCharsets.UTF_8)));
+        assertTrue(control.get("./md5sums"), control.get("./md5sums").contains(md5 + "  etc/app/app.conf"));
+    }
+
+    @Test
+    public void testRenderGzip() throws Exception {
+        PackageTemplate template = PackageTemplate.compile(new NullConsole(), config("gzip"), "etc/app/**");
+
+        assertPackage(template, "first", Compression.GZIP);
+        assertPackage(template, "a-much-longer-second-name", Compression.GZIP);
+    }
+
+    @Test
+    public void testRenderXz() throws Exception {
+        PackageTemplate template = PackageTemplate.compile(new NullConsole(), config("xz"), "etc/app/**");
+
+        assertPackage(template, "first", Compression.XZ);
+        assertPackage(template, "second", Compression.XZ);
+    }
+
+    @Test(expected = PackagingException.class)
+    public void testSigningIsRejected() throws Exception {
+        PackageTemplate.compile(new NullConsole(), config("gzip").toBuilder().signPackage(true).build());
+    }
+}
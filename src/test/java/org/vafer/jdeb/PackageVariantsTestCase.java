@@ -0,0 +1,130 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.producers.DataProducerDirectory;
+
+public final class PackageVariantsTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File control(String name, String distribution, String depends) throws Exception {
+        final File control = folder.newFolder("control-" + distribution);
+        Files.write(new File(control, "control").toPath(), (
+            "Package: " + name + "\n" +
+            "Version: 1.0\n" +
+            "Section: misc\n" +
+            "Priority: optional\n" +
+            "Architecture: all\n" +
+            "Distribution: " + distribution + "\n" +
+            "Depends: " + depends + "\n" +
+            "Maintainer: John Doe <john@doe.org>\n" +
+            "Description: the " + name + " package\n").getBytes(StandardCharsets.UTF_8));
+        return control;
+    }
+
+    private static Map<String, byte[]> members(File deb) throws Exception {
+        final Map<String, byte[]> members = new HashMap<>();
+        try (ArArchiveInputStream ar = new ArArchiveInputStream(new FileInputStream(deb))) {
+            ArArchiveEntry entry;
+            while ((entry = ar.getNextEntry()) != null) {
+                members.put(entry.getName(), IOUtils.toByteArray(ar));
+            }
+        }
+        return members;
+    }
+
+    @Test
+    public void testSharedDataArchive() throws Exception {
+        final File root = folder.newFolder("data");
+        assertTrue(new File(root, "opt/app").mkdirs());
+        Files.write(new File(root, "opt/app/app.jar").toPath(), "jar".getBytes(StandardCharsets.UTF_8));
+
+        final AtomicInteger scans = new AtomicInteger();
+        final DataProducerDirectory directory = new DataProducerDirectory(root, null, null, null);
+        final DataProducer producer = receiver -> {
+            scans.incrementAndGet();
+            directory.produce(receiver);
+        };
+
+        final PackageConfig base = PackageConfig.builder()
+            .data(Arrays.asList(producer))
+            .compression("xz")
+            .outputTimestampMs(0L)
+            .build();
+        final File bookworm = new File(folder.getRoot(), "app_1.0~bookworm_all.deb");
+        final File jammy = new File(folder.getRoot(), "app_1.0~jammy_all.deb");
+        final File legacy = new File(folder.getRoot(), "app-legacy_1.0_all.deb");
+
+        final PackageVariants variants = new PackageVariants(new NullConsole());
+        variants.add(base.toBuilder().deb(bookworm).control(control("app", "bookworm", "openjdk-17-jre")).build());
+        variants.add(base.toBuilder().deb(jammy).control(control("app", "jammy", "openjdk-11-jre")).build());
+        variants.add(base.toBuilder().deb(legacy).control(control("app-legacy", "buster", "default-jre")).build());
+        final List<PackageResult> results = variants.build();
+
+        assertEquals(1, scans.get());
+        assertEquals(3, results.size());
+        assertEquals("bookworm", results.get(0).getControlFile().get("Distribution"));
+        assertEquals("openjdk-11-jre", results.get(1).getControlFile().get("Depends"));
+        assertEquals("app-legacy", results.get(2).getControlFile().get("Package"));
+
+        final Map<String, byte[]> first = members(bookworm);
+        assertTrue(first.containsKey("data.tar.xz"));
+        for (File deb : Arrays.asList(jammy, legacy)) {
+            final Map<String, byte[]> other = members(deb);
+            assertArrayEquals(first.get("data.tar.xz"), other.get("data.tar.xz"));
+            assertFalse(Arrays.equals(first.get("control.tar.gz"), other.get("control.tar.gz")));
+        }
+    }
+
+    @Test
+    public void testDifferentData() throws Exception {
+        final PackageConfig base = PackageConfig.builder()
+            .deb(new File(folder.getRoot(), "app.deb"))
+            .control(control("app", "bookworm", "default-jre"))
+            .build();
+
+        final PackageVariants variants = new PackageVariants(new NullConsole());
+        variants.add(base);
+        variants.add(base.toBuilder().deb(new File(folder.getRoot(), "app-xz.deb")).compression("xz").build());
+
+        try {
+            variants.build();
+            fail("variants with different data settings can't share the data archive");
+        } catch (PackagingException e) {
+            assertFalse(new File(folder.getRoot(), "app.deb").exists());
+        }
+    }
+}
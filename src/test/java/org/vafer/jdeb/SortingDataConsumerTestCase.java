@@ -0,0 +1,193 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.utils.DigestedInputStream;
+import org.vafer.jdeb.utils.FileSourceInputStream;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public final class SortingDataConsumerTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class Recorder implements DataConsumer {
+        final List<String> entries = new ArrayList<>();
+
+        public void onEachDir( TarArchiveEntry dirEntry ) {
+            entries.add(dirEntry.getName());
+        }
+
+        public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException {
+            String md5 = input instanceof DigestedInputStream ? ((DigestedInputStream) input).getMd5() : "";
+            entries.add(fileEntry.getName() + "=" + IOUtils.toString(input, UTF_8) + md5 + ":" + fileEntry.getMode());
+        }
+
+        public void onEachLink( TarArchiveEntry linkEntry ) {
+            entries.add(linkEntry.getName() + "->" + linkEntry.getLinkName());
+        }
+    }
+
+    private List<String> produce( EntryOrder order, int maxEntries ) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), "from disk".getBytes(UTF_8));
+
+        final Recorder recorder = new Recorder();
+        try (SortingDataConsumer sorter = new SortingDataConsumer(recorder, order, maxEntries)) {
+            final Random random = new Random(42);
+            for (int i = 0; i < 200; i++) {
+                final int n = random.nextInt(50);
+                final TarArchiveEntry entry = new TarArchiveEntry("dir" + (n % 5) + "/file" + n + (n % 2 == 0 ? ".txt" : ".bin"));
+                entry.setMode(0600 + i % 8);
+                sorter.onEachFile(new ByteArrayInputStream(("content" + i).getBytes(UTF_8)), entry);
+            }
+            sorter.onEachDir(new TarArchiveEntry("dir3/", true));
+            final TarArchiveEntry link = new TarArchiveEntry("dir1/link", TarArchiveEntry.LF_SYMLINK);
+            link.setLinkName("file1.bin");
+            sorter.onEachLink(link);
+            sorter.onEachFile(new DigestedInputStream(new FileSourceInputStream(file), "abc"), new TarArchiveEntry("dir0/disk.txt"));
+            sorter.finish();
+        }
+        return recorder.entries;
+    }
+
+    @Test
+    public void testPathOrder() throws Exception {
+        final List<String> entries = produce(EntryOrder.PATH, 1000);
+        assertEquals(203, entries.size());
+        assertEquals("dir0/disk.txt=from diskabc:33188", entries.get(0));
+        assertTrue(entries.indexOf("dir3/") < entries.indexOf(entries.stream().filter(e -> e.startsWith("dir3/file")).findFirst().get()));
+        assertTrue(entries.contains("dir1/link->file1.bin"));
+
+        // stable for duplicates
+        String previous = "";
+        int previousIndex = -1;
+        for (String entry : entries) {
+            final String name = entry.split("=")[0];
+            if (name.equals(previous)) {
+                final int index = Integer.parseInt(entry.substring(entry.indexOf("content") + 7, entry.indexOf(':')));
+                assertTrue(index > previousIndex);
+                previousIndex = index;
+            } else {
+                assertTrue(name.compareTo(previous) > 0);
+                previous = name;
+                previousIndex = entry.contains("content") ? Integer.parseInt(entry.substring(entry.indexOf("content") + 7, entry.indexOf(':'))) : -1;
+            }
+        }
+    }
+
+    @Test
+    public void testTypeOrder() throws Exception {
+        final List<String> entries = produce(EntryOrder.TYPE, 1000);
+        assertEquals("dir3/", entries.get(0));
+        assertEquals("dir1/link->file1.bin", entries.get(1));
+        boolean text = false;
+        for (String entry : entries.subList(2, entries.size())) {
+            final boolean isText = entry.split("=")[0].endsWith(".txt");
+            assertTrue("the text files follow the binary ones", !text || isText);
+            text = isText;
+        }
+    }
+
+    @Test
+    public void testExternalSort() throws Exception {
+        assertEquals(produce(EntryOrder.PATH, 1000), produce(EntryOrder.PATH, 7));
+        assertEquals(produce(EntryOrder.TYPE, 1000), produce(EntryOrder.TYPE, 7));
+    }
+
+    @Test
+    public void testExternalSortKeepsEntryFields() throws Exception {
+        final List<TarArchiveEntry> entries = new ArrayList<>();
+        try (SortingDataConsumer sorter = new SortingDataConsumer(new DataConsumer() {
+            public void onEachDir( TarArchiveEntry dirEntry ) {
+                entries.add(dirEntry);
+            }
+
+            public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) {
+                entries.add(fileEntry);
+            }
+
+            public void onEachLink( TarArchiveEntry linkEntry ) {
+                entries.add(linkEntry);
+            }
+        }, EntryOrder.PATH, 1)) {
+            final TarArchiveEntry file = new TarArchiveEntry("./b/file");
+            file.setMode(0100640);
+            file.setUserId(1000);
+            file.setGroupId(2000);
+            file.setUserName("user");
+            file.setGroupName("group");
+            file.setSize(4);
+            file.setModTime(1234567000L);
+            sorter.onEachFile(new ByteArrayInputStream("data".getBytes(UTF_8)), file);
+            final TarArchiveEntry link = new TarArchiveEntry("./a/link", TarArchiveEntry.LF_LINK);
+            link.setLinkName("./b/file");
+            sorter.onEachLink(link);
+            sorter.finish();
+        }
+
+        // the hard link sorts first but follows its target
+        assertEquals(2, entries.size());
+        assertTrue(entries.get(1).isLink());
+        assertEquals("./b/file", entries.get(1).getLinkName());
+
+        final TarArchiveEntry file = entries.get(0);
+        assertEquals("./b/file", file.getName());
+        assertEquals(0100640, file.getMode());
+        assertEquals(1000, file.getLongUserId());
+        assertEquals(2000, file.getLongGroupId());
+        assertEquals("user", file.getUserName());
+        assertEquals("group", file.getGroupName());
+        assertEquals(4, file.getSize());
+        assertEquals(1234567000L, file.getModTime().getTime());
+    }
+
+    @Test
+    public void testHardLinkAfterTarget() throws Exception {
+        for (EntryOrder order : Arrays.asList(EntryOrder.PATH, EntryOrder.TYPE)) {
+            for (int maxEntries : new int[] { 1000, 1 }) {
+                final Recorder recorder = new Recorder();
+                try (SortingDataConsumer sorter = new SortingDataConsumer(recorder, order, maxEntries)) {
+                    sorter.onEachFile(new ByteArrayInputStream("tool".getBytes(UTF_8)), new TarArchiveEntry("./usr/bin/tool"));
+                    final TarArchiveEntry link = new TarArchiveEntry("./usr/bin/alias", TarArchiveEntry.LF_LINK);
+                    link.setLinkName("./usr/bin/tool");
+                    sorter.onEachLink(link);
+                    sorter.onEachFile(new ByteArrayInputStream("after".getBytes(UTF_8)), new TarArchiveEntry("./usr/bin/zz"));
+                    sorter.finish();
+                }
+                assertEquals(order + " " + maxEntries, Arrays.asList("./usr/bin/tool=tool:33188", "./usr/bin/alias->./usr/bin/tool", "./usr/bin/zz=after:33188"), recorder.entries);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.vafer.jdeb.ArchiveVisitor;
+import org.vafer.jdeb.ArchiveWalker;
+import org.vafer.jdeb.Compression;
+
+public final class MainTestCase extends Assert {
+
+    private File resources() throws Exception {
+        return new File(getClass().getResource("../deb").toURI());
+    }
+
+    private Map<String, TarArchiveEntry> dataEntries(File deb, Compression compression) throws IOException {
+        final Map<String, TarArchiveEntry> entries = new HashMap<>();
+        ArchiveWalker.walkData(deb, new ArchiveVisitor<TarArchiveEntry>() {
+            public void visit(TarArchiveEntry entry, byte[] content) {
+                entries.put(entry.getName(), entry);
+            }
+        }, compression);
+        return entries;
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        File deb = File.createTempFile("jdeb", ".deb");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        int code = Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(out),
+            "--control", "control",
+            "--data", "directory:data,prefix=/opt/app,user=app,filemode=640",
+            "--data", "link:/usr/bin/app,target=/opt/app/bin/app",
+            "--compression", "xz",
+            deb.getAbsolutePath());
+
+        assertEquals(out.toString(), 0, code);
+
+        Map<String, TarArchiveEntry> entries = dataEntries(deb, Compression.XZ);
+        TarArchiveEntry file = entries.get("./opt/app/test/testfile");
+        assertNotNull("mapped file missing " + entries.keySet(), file);
+        assertEquals("app", file.getUserName());
+        assertEquals(0640, file.getMode() & 0777);
+        assertEquals("/opt/app/bin/app", entries.get("./usr/bin/app").getLinkName());
+
+        assertTrue(deb.delete());
+        new File(deb.getParentFile(), deb.getName().replace(".deb", ".changes")).delete();
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        File deb = File.createTempFile("jdeb", ".deb");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(out.toString(), 0, Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(out),
+            "--control", "control", "--data", "directory:data", deb.getAbsolutePath()));
+
+        out.reset();
+        assertEquals(out.toString(), 0, Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(out), "--verify", deb.getAbsolutePath()));
+        assertTrue(out.toString(), out.toString().contains(deb + ": OK"));
+
+        File broken = File.createTempFile("jdeb", ".deb");
+        out.reset();
+        assertEquals(out.toString(), 1, Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(out), "--verify", deb.getAbsolutePath(), broken.getAbsolutePath()));
+        assertTrue(out.toString(), out.toString().contains("[ERROR] " + broken));
+
+        assertTrue(deb.delete());
+        assertTrue(broken.delete());
+        new File(deb.getParentFile(), deb.getName().replace(".deb", ".changes")).delete();
+    }
+
+    @Test
+    public void testInvalidArguments() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(out), "--control"));
+        assertEquals(2, Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(out), "--data", "nocolon", "x.deb"));
+        assertEquals(2, Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(out), "--control", "control"));
+    }
+
+    @Test
+    public void testDaemon() throws Exception {
+        final File portFile = File.createTempFile("jdeb", ".port");
+        assertTrue(portFile.delete());
+
+        final AtomicInteger served = new AtomicInteger(-1);
+        Thread daemon = new Thread(() -> served.set(Main.run(portFile.getParentFile(), Collections.<String, String>emptyMap(), new PrintStream(new ByteArrayOutputStream()), "--daemon", portFile.getAbsolutePath())));
+        daemon.start();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (portFile.length() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        File deb = File.createTempFile("jdeb", ".deb");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int code = Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(out),
+            "--connect", portFile.getAbsolutePath(),
+            "--control", "control",
+            "--data", "directory:data",
+            deb.getAbsolutePath());
+
+        assertEquals(out.toString(), 0, code);
+        assertTrue(out.toString().contains("Creating debian package"));
+        assertTrue(dataEntries(deb, Compression.GZIP).containsKey("./test/testfile"));
+
+        // a line break would break the protocol, the argument is rejected before anything is sent
+        final ByteArrayOutputStream rejected = new ByteArrayOutputStream();
+        assertEquals(1, Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(rejected),
+            "--connect", portFile.getAbsolutePath(),
+            "--control", "control",
+            "--data", "directory:data\n--sign",
+            deb.getAbsolutePath()));
+        assertTrue(rejected.toString(), rejected.toString().contains("contains a line break"));
+
+        if (portFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(portFile.toPath())));
+        }
+
+        assertEquals(0, Main.run(resources(), Collections.<String, String>emptyMap(), new PrintStream(out), "--connect", portFile.getAbsolutePath(), "--stop"));
+        daemon.join(10000);
+        assertEquals(0, served.get());
+        assertFalse(portFile.exists());
+
+        assertTrue(deb.delete());
+        new File(deb.getParentFile(), deb.getName().replace(".deb", ".changes")).delete();
+    }
+}
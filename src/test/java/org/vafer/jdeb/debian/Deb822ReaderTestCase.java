@@ -0,0 +1,149 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.debian;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public final class Deb822ReaderTestCase extends Assert {
+
+    private static final String PACKAGES =
+        "Package: foo\n" +
+        "Version: 1.0\n" +
+        "Architecture: all\n" +
+        "Description: the foo package\n" +
+        " with a long description.\n" +
+        " .\n" +
+        "  indented\n" +
+        "\n" +
+        "# a comment\n" +
+        "Package: bar\r\n" +
+        "Version:   2.0  \r\n" +
+        "XB-Origin: vafer\r\n" +
+        "\n" +
+        "\n" +
+        "Package: baz\n" +
+        "Depends: foo,\n" +
+        "         bar";
+
+    private static Deb822Reader reader( String content ) {
+        return new Deb822Reader(new ByteArrayInputStream(content.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testParagraphs() throws Exception {
+        try (Deb822Reader reader = reader(PACKAGES)) {
+            Deb822Paragraph paragraph = reader.next();
+            assertEquals(4, paragraph.size());
+            assertEquals(1, paragraph.getLineNumber());
+            assertEquals("foo", paragraph.get("Package"));
+            assertEquals("the foo package\nwith a long description.\n\n indented", paragraph.get("description"));
+            assertEquals("Architecture", paragraph.getName(2));
+            assertNull(paragraph.get("Depends"));
+
+            paragraph = reader.next();
+            assertEquals(10, paragraph.getLineNumber());
+            final Map<String, String> expected = new LinkedHashMap<>();
+            expected.put("Package", "bar");
+            expected.put("Version", "2.0");
+            expected.put("XB-Origin", "vafer");
+            assertEquals(expected, paragraph.toMap());
+            assertEquals("Package: bar\nVersion:   2.0  \nXB-Origin: vafer\n", paragraph.toString());
+
+            paragraph = reader.next();
+            assertEquals("foo,\n        bar", paragraph.get("Depends"));
+
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testLargeInput() throws Exception {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final StringBuilder description = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            description.append(" line ").append(i).append('\n');
+        }
+        for (int i = 0; i < 200; i++) {
+            content.write(("Package: package" + i + "\nDescription: package " + i + "\n" + description + "\n").getBytes(UTF_8));
+        }
+
+        int count = 0;
+        try (Deb822Reader reader = new Deb822Reader(new ByteArrayInputStream(content.toByteArray()))) {
+            Deb822Paragraph paragraph;
+            while ((paragraph = reader.next()) != null) {
+                assertEquals("package" + count, paragraph.get("Package"));
+                final String value = paragraph.get("Description");
+                assertTrue(value.startsWith("package " + count + "\nline 0\nline 1\n"));
+                assertTrue(value.endsWith("\nline 4999"));
+                count++;
+            }
+        }
+        assertEquals(200, count);
+    }
+
+    @Test
+    public void testUnicode() throws Exception {
+        try (Deb822Reader reader = reader("Maintainer: J\u00fcrgen M\u00fcller <jm@example.org>\nDescription: \u2603\n \ud834\udd1e\n")) {
+            final Deb822Paragraph paragraph = reader.next();
+            assertEquals("J\u00fcrgen M\u00fcller <jm@example.org>", paragraph.get("Maintainer"));
+            assertEquals("\u2603\n\ud834\udd1e", paragraph.get("Description"));
+        }
+    }
+
+    @Test
+    public void testMissingDelimiter() throws Exception {
+        try (Deb822Reader reader = reader("Package: foo\n\nPackage: bar\nVersion 1.0\n")) {
+            assertNotNull(reader.next());
+            reader.next();
+            fail("Should throw a ParseException");
+        } catch (ParseException e) {
+            assertEquals(4, e.getErrorOffset());
+        }
+    }
+
+    @Test
+    public void testContinuationWithoutField() throws Exception {
+        try (Deb822Reader reader = reader(" foo\n")) {
+            reader.next();
+            fail("Should throw a ParseException");
+        } catch (ParseException e) {
+            assertEquals(1, e.getErrorOffset());
+        }
+    }
+
+    @Test
+    public void testControlFileViews() throws Exception {
+        try (Deb822Reader reader = reader(PACKAGES)) {
+            final BinaryPackageControlFile foo = new BinaryPackageControlFile(reader.next());
+            final BinaryPackageControlFile bar = new BinaryPackageControlFile(reader.next());
+            assertEquals("foo", foo.get("Package"));
+            assertEquals("the foo package", foo.getShortDescription());
+            assertEquals("2.0", bar.get("Version"));
+            assertEquals("vafer", bar.get("Origin"));
+        }
+    }
+}
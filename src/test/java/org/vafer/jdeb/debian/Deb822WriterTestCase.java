@@ -0,0 +1,105 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.debian;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public final class Deb822WriterTestCase extends Assert {
+
+    private static final ControlField DESCRIPTION = new ControlField("Description", false, ControlField.Type.MULTILINE);
+    private static final ControlField FILES = new ControlField("Files", false, ControlField.Type.MULTILINE, true);
+
+    @Test
+    public void testFields() throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (Deb822Writer writer = new Deb822Writer(output)) {
+            writer.field("Package", "foo");
+            writer.field("Installed-Size", 1024);
+            writer.field("Depends", "");
+            writer.field(DESCRIPTION, "the foo package\nwith a long description.\n\nJ\u00fcrgen \u2603 \ud834\udd1e");
+            writer.endParagraph();
+            writer.endParagraph();
+            writer.field(FILES, "d41d8cd98f00b204e9800998ecf8427e 0 foo.deb\r\n");
+            writer.endParagraph();
+        }
+
+        assertEquals(
+            "Package: foo\n" +
+            "Installed-Size: 1024\n" +
+            "Description: the foo package\n" +
+            " with a long description.\n" +
+            " .\n" +
+            " J\u00fcrgen \u2603 \ud834\udd1e\n" +
+            "\n" +
+            "Files:\n" +
+            " d41d8cd98f00b204e9800998ecf8427e 0 foo.deb\n" +
+            "\n", new String(output.toByteArray(), UTF_8));
+    }
+
+    @Test
+    public void testFormatLikeControlField() throws Exception {
+        final String value = "line1\r\nline2\r\rline4\n \n";
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (Deb822Writer writer = new Deb822Writer(output)) {
+            writer.field(FILES, value);
+        }
+        assertEquals(FILES.format(value), new String(output.toByteArray(), UTF_8));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final ChangesFile changes = new ChangesFile();
+        changes.set("Source", "foo");
+        changes.set("Version", "1.0");
+        changes.set("Description", "foo - the foo package");
+        changes.set("Changes", "foo (1.0) stable; urgency=low\n\n  * first release");
+
+        final BinaryPackageControlFile control = new BinaryPackageControlFile();
+        control.set("Package", "foo");
+        control.set("Description", "the foo package\nwith a long description.\n\nOn several lines.");
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (Deb822Writer writer = new Deb822Writer(output)) {
+            writer.paragraph(changes);
+            writer.paragraph(control);
+        }
+        assertEquals(changes + "\n" + control + "\n", new String(output.toByteArray(), UTF_8));
+
+        // the paragraphs are copied unchanged
+        final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        try (Deb822Reader reader = new Deb822Reader(new ByteArrayInputStream(output.toByteArray()));
+             Deb822Writer writer = new Deb822Writer(copy)) {
+            final Deb822Paragraph paragraph = reader.next();
+            final ChangesFile changes2 = new ChangesFile(paragraph);
+            assertEquals(changes.toString(), changes2.toString());
+            writer.paragraph(paragraph);
+
+            final BinaryPackageControlFile control2 = new BinaryPackageControlFile(reader.next());
+            assertEquals(control.get("Description"), control2.get("Description"));
+            writer.paragraph(control2);
+
+            assertNull(reader.next());
+        }
+        assertArrayEquals(output.toByteArray(), copy.toByteArray());
+    }
+}
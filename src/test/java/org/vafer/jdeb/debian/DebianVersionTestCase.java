@@ -0,0 +1,200 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.debian;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class DebianVersionTestCase extends Assert {
+
+    private static void assertOrder( String lower, String higher ) {
+        assertTrue(lower + " < " + higher, DebianVersion.compare(lower, higher) < 0);
+        assertTrue(higher + " > " + lower, DebianVersion.compare(higher, lower) > 0);
+    }
+
+    private static void assertSame( String version1, String version2 ) {
+        assertEquals(version1 + " = " + version2, 0, DebianVersion.compare(version1, version2));
+        assertEquals(DebianVersion.parse(version1), DebianVersion.parse(version2));
+        assertEquals(DebianVersion.parse(version1).hashCode(), DebianVersion.parse(version2).hashCode());
+    }
+
+    @Test
+    public void testParse() {
+        final DebianVersion version = DebianVersion.parse("2:1.0-rc1-3ubuntu1");
+        assertEquals(2, version.getEpoch());
+        assertEquals("1.0-rc1", version.getUpstreamVersion());
+        assertEquals("3ubuntu1", version.getRevision());
+        assertEquals("2:1.0-rc1-3ubuntu1", version.toString());
+
+        assertEquals("", DebianVersion.parse("1.0").getRevision());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidEpoch() {
+        DebianVersion.parse("a:1.0");
+    }
+
+    @Test
+    public void testOrder() {
+        assertOrder("1.0", "1.1");
+        assertOrder("1.2", "1.10");
+        assertOrder("1.0~rc1", "1.0");
+        assertOrder("1.0~~", "1.0~");
+        assertOrder("1.0~", "1.0");
+        assertOrder("1.0", "1.0a");
+        assertOrder("1.0", "1.0+1");
+        assertOrder("1.0a", "1.0+");
+        assertOrder("1.0-1", "1.0-2");
+        assertOrder("1.0-9", "1.0-10");
+        assertOrder("1.0", "1.0-1");
+        assertOrder("9.9", "1:0.1");
+        assertOrder("7.4.9", "7.5");
+        assertOrder("7.5", "7.49");
+        assertOrder("1.0~20240101", "1.0");
+    }
+
+    @Test
+    public void testEquality() {
+        assertSame("1.0", "1.00");
+        assertSame("1.0", "0:1.0");
+        assertSame("1.0", "1.0-0");
+        assertSame("1.", "1.0");
+        assertSame("1.0a", "1.0a0");
+        assertSame("01.002", "1.2");
+    }
+
+    @Test
+    public void testSort() {
+        final List<DebianVersion> versions = new ArrayList<>();
+        for (String version : Arrays.asList("1.0", "1:0.5", "1.0~beta1", "0.9", "1.0-1", "1.0+dfsg")) {
+            versions.add(DebianVersion.parse(version));
+        }
+        Collections.sort(versions);
+        assertEquals("[0.9, 1.0~beta1, 1.0, 1.0-1, 1.0+dfsg, 1:0.5]", versions.toString());
+    }
+
+    @Test
+    public void testSortKey() {
+        assertTrue(Arrays.compareUnsigned(DebianVersion.parse("1.0~rc1").getSortKey(), DebianVersion.parse("1.0").getSortKey()) < 0);
+        assertArrayEquals(DebianVersion.parse("1:01.0-0").getSortKey(), DebianVersion.parse("1:1.0").getSortKey());
+
+        // the keys order like the character by character algorithm of dpkg
+        final Random random = new Random(42);
+        final String alphabet = "0123456789.+~-aZ";
+        for (int n = 0; n < 20000; n++) {
+            final String version1 = randomVersion(random, alphabet);
+            final String version2 = random.nextInt(4) == 0 ? version1 + alphabet.charAt(random.nextInt(alphabet.length())) : randomVersion(random, alphabet);
+            final DebianVersion parsed1 = DebianVersion.parse(version1);
+            final DebianVersion parsed2 = DebianVersion.parse(version2);
+
+            int expected = Integer.compare(parsed1.getEpoch(), parsed2.getEpoch());
+            if (expected == 0) {
+                expected = verrevcmp(parsed1.getUpstreamVersion(), parsed2.getUpstreamVersion());
+            }
+            if (expected == 0) {
+                expected = verrevcmp(parsed1.getRevision(), parsed2.getRevision());
+            }
+            assertEquals(version1 + " <> " + version2, Integer.signum(expected), Integer.signum(parsed1.compareTo(parsed2)));
+            assertEquals(expected == 0, parsed1.equals(parsed2));
+        }
+    }
+
+    private static String randomVersion( Random random, String alphabet ) {
+        final StringBuilder version = new StringBuilder();
+        if (random.nextInt(8) == 0) {
+            version.append(random.nextInt(3)).append(':');
+        }
+        version.append(random.nextInt(10));
+        final int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            version.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return version.toString();
+    }
+
+    /**
+     * The comparison of dpkg, translated from lib/dpkg/version.c
+     */
+    private static int verrevcmp( String a, String b ) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() || j < b.length()) {
+            int firstDiff = 0;
+            while ((i < a.length() && !Character.isDigit(a.charAt(i))) || (j < b.length() && !Character.isDigit(b.charAt(j)))) {
+                final int ac = order(i < a.length() ? a.charAt(i) : 0);
+                final int bc = order(j < b.length() ? b.charAt(j) : 0);
+                if (ac != bc) {
+                    return ac - bc;
+                }
+                i++;
+                j++;
+            }
+            while (i < a.length() && a.charAt(i) == '0') {
+                i++;
+            }
+            while (j < b.length() && b.charAt(j) == '0') {
+                j++;
+            }
+            while (i < a.length() && Character.isDigit(a.charAt(i)) && j < b.length() && Character.isDigit(b.charAt(j))) {
+                if (firstDiff == 0) {
+                    firstDiff = a.charAt(i) - b.charAt(j);
+                }
+                i++;
+                j++;
+            }
+            if (i < a.length() && Character.isDigit(a.charAt(i))) {
+                return 1;
+            }
+            if (j < b.length() && Character.isDigit(b.charAt(j))) {
+                return -1;
+            }
+            if (firstDiff != 0) {
+                return firstDiff;
+            }
+        }
+        return 0;
+    }
+
+    private static int order( int c ) {
+        if (Character.isDigit(c)) {
+            return 0;
+        } else if (Character.isLetter(c)) {
+            return c;
+        } else if (c == '~') {
+            return -1;
+        } else if (c != 0) {
+            return c + 256;
+        } else {
+            return 0;
+        }
+    }
+
+    @Test
+    public void testRelease() {
+        assertTrue(DebianVersion.parse("7.4.2").isRelease());
+        assertTrue(DebianVersion.parse("7.4-1").isRelease());
+        assertFalse(DebianVersion.parse("7.4-SNAPSHOT").isRelease());
+        assertFalse(DebianVersion.parse("7.4~rc1").isRelease());
+        assertFalse(DebianVersion.parse("7.4-M1").isRelease());
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.delta;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
+import org.apache.commons.compress.archivers.ar.ArArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.Compression;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.DebMaker;
+import org.vafer.jdeb.NullConsole;
+import org.vafer.jdeb.PackagingException;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public final class DeltaTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] random( int size, long seed ) {
+        final byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] text( int lines ) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append("line ").append(i).append(" of the text\n");
+        }
+        return text.toString().getBytes(UTF_8);
+    }
+
+    private static byte[] jar( long seed ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < 20; i++) {
+                final ZipEntry entry = new ZipEntry("org/vafer/C" + i + ".class");
+                entry.setTime(1609455600000L);
+                zip.putNextEntry(entry);
+                zip.write(random(5000, seed + i));
+                zip.write(text(50));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, byte[]> oldFiles() throws IOException {
+        final Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("usr/share/app/lib/app-1.0.jar", jar(1));
+        files.put("usr/share/app/lib/data.bin", random(300 * 1024, 2));
+        files.put("usr/share/app/README", text(5000));
+        files.put("usr/share/app/empty", new byte[0]);
+        return files;
+    }
+
+    private static Map<String, byte[]> newFiles() throws IOException {
+        final Map<String, byte[]> files = new LinkedHashMap<>();
+        // renamed, same content
+        files.put("usr/share/app/lib/app-1.1.jar", jar(1));
+        final byte[] data = random(300 * 1024, 2);
+        System.arraycopy(random(100, 3), 0, data, 150 * 1024, 100);
+        files.put("usr/share/app/lib/data.bin", data);
+        final byte[] readme = text(5001);
+        files.put("usr/share/app/README", readme);
+        files.put("usr/share/app/empty", new byte[0]);
+        files.put("usr/share/app/NEWS", "what's new\n".getBytes(UTF_8));
+        return files;
+    }
+
+    private File deb( String name, Compression compression, boolean rsyncable, Map<String, byte[]> files ) throws Exception {
+        final DataProducer producer = receiver -> {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                final TarArchiveEntry entry = new TarArchiveEntry(file.getKey(), true);
+                entry.setSize(file.getValue().length);
+                receiver.onEachFile(new ByteArrayInputStream(file.getValue()), entry);
+            }
+        };
+
+        final File deb = new File(folder.getRoot(), name);
+        final DebMaker maker = new DebMaker(new NullConsole(), List.of(producer), null);
+        maker.setControl(new File(getClass().getResource("/org/vafer/jdeb/deb/control").toURI()));
+        maker.setDeb(deb);
+        maker.setOutputTimestampMs(1609455600000L);
+        maker.setRsyncable(rsyncable);
+        maker.createDeb(compression);
+        return deb;
+    }
+
+    private File roundTrip( File oldDeb, File newDeb ) throws Exception {
+        final File delta = new File(folder.getRoot(), "delta");
+        new DeltaBuilder(new NullConsole()).build(oldDeb, newDeb, delta);
+
+        final File rebuilt = new File(folder.getRoot(), "rebuilt.deb");
+        new DeltaApplier(new NullConsole()).apply(oldDeb, delta, rebuilt);
+        assertArrayEquals(Files.readAllBytes(newDeb.toPath()), Files.readAllBytes(rebuilt.toPath()));
+        return delta;
+    }
+
+    @Test
+    public void testXz() throws Exception {
+        final File oldDeb = deb("old.deb", Compression.XZ, false, oldFiles());
+        final File newDeb = deb("new.deb", Compression.XZ, false, newFiles());
+
+        // the data archive is compressed again, only the changes are stored
+        final File delta = roundTrip(oldDeb, newDeb);
+        assertTrue(delta.length() + " of " + newDeb.length(), delta.length() < newDeb.length() / 10);
+    }
+
+    @Test
+    public void testGzipRsyncable() throws Exception {
+        final File oldDeb = deb("old.deb", Compression.GZIP, true, oldFiles());
+        final File newDeb = deb("new.deb", Compression.GZIP, true, newFiles());
+
+        // the output of zlib depends on the host, the compressed data is diffed as it is
+        final File delta = roundTrip(oldDeb, newDeb);
+        assertTrue(delta.length() + " of " + newDeb.length(), delta.length() < newDeb.length() / 2);
+    }
+
+    @Test
+    public void testXzRsyncable() throws Exception {
+        final File oldDeb = deb("old.deb", Compression.XZ, true, oldFiles());
+        final File newDeb = deb("new.deb", Compression.XZ, true, newFiles());
+
+        final File delta = roundTrip(oldDeb, newDeb);
+        assertTrue(delta.length() + " of " + newDeb.length(), delta.length() < newDeb.length() / 10);
+    }
+
+    @Test
+    public void testBzip2() throws Exception {
+        roundTrip(deb("old.deb", Compression.BZIP2, false, oldFiles()), deb("new.deb", Compression.BZIP2, false, newFiles()));
+    }
+
+    /**
+     * Recompresses the data of the package with a level jdeb doesn't use.
+     */
+    private File foreign( File deb ) throws IOException {
+        final File result = new File(deb.getPath() + ".foreign.deb");
+        try (ArArchiveInputStream in = new ArArchiveInputStream(new FileInputStream(deb));
+             ArArchiveOutputStream out = new ArArchiveOutputStream(new FileOutputStream(result))) {
+            ArArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                byte[] content = IOUtils.toByteArray(in);
+                String name = entry.getName();
+                if (name.equals("data.tar")) {
+                    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    final GzipParameters parameters = new GzipParameters();
+                    parameters.setCompressionLevel(Deflater.BEST_COMPRESSION);
+                    try (OutputStream gzip = new GzipCompressorOutputStream(compressed, parameters)) {
+                        gzip.write(content);
+                    }
+                    content = compressed.toByteArray();
+                    name = "data.tar.gz";
+                }
+                out.putArchiveEntry(new ArArchiveEntry(name, content.length, 0, 0, 33188, 0));
+                out.write(content);
+                out.closeArchiveEntry();
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testForeignCompression() throws Exception {
+        final File oldDeb = foreign(deb("old.deb", Compression.NONE, false, oldFiles()));
+        final File newDeb = foreign(deb("new.deb", Compression.NONE, false, newFiles()));
+
+        // the compressed data is diffed as it is
+        roundTrip(oldDeb, newDeb);
+    }
+
+    @Test
+    public void testWrongPackage() throws Exception {
+        final File oldDeb = deb("old.deb", Compression.GZIP, false, oldFiles());
+        final File newDeb = deb("new.deb", Compression.GZIP, false, newFiles());
+        final File delta = new File(folder.getRoot(), "delta");
+        new DeltaBuilder(new NullConsole()).build(oldDeb, newDeb, delta);
+
+        final File rebuilt = new File(folder.getRoot(), "rebuilt.deb");
+        try {
+            new DeltaApplier(new NullConsole()).apply(newDeb, delta, rebuilt);
+            fail("The delta was applied to the wrong package");
+        } catch (PackagingException expected) {
+            assertFalse(rebuilt.exists());
+        }
+    }
+}
@@ -16,9 +16,13 @@
 package org.vafer.jdeb.mapping;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
 
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.Assert;
+import org.junit.rules.TemporaryFolder;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.vafer.jdeb.mapping.LsMapper.ParseError;
@@ -49,6 +53,25 @@ public final class LsMapperTestCase extends Assert {
             "drwxr-xr-x    4 tcurdt  tcurdt   136 Jun 25 03:48 classes\n" +
             "\n";
 
+    private final static String gnuOutput =
+        ".:\n" +
+            "total 12\n" +
+            "drwxr-xr-x. 3 root root 4096 Oct 19 00:58 .\n" +
+            "drwxrwxrwt  9 root root 4096 Oct 19 00:58 ..\n" +
+            "drwxrwsr-x  2 app  app  4096 Oct 19 00:58 shared\n" +
+            "-rwsr-x---+ 1 root app     0 Oct 19 00:58 helper\n" +
+            "-rwxr-Sr-T  1 root app     0 Oct 19 00:58 odd\n" +
+            "lrwxrwxrwx  1 root root    6 Oct 19 00:58 link -> helper\n" +
+            "\n" +
+            "./shared:\n" +
+            "total 0\n" +
+            "drwxrwsr-x  2 app  app  4096 Oct 19 00:58 .\n" +
+            "drwxr-xr-x. 3 root root 4096 Oct 19 00:58 ..\n" +
+            "-rw-rw-r--  1 app  app     0 Oct 19 00:58 data\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void testModes() throws Exception {
         final ByteArrayInputStream is = new ByteArrayInputStream(output.getBytes(UTF_8));
@@ -105,4 +128,69 @@ public final class LsMapperTestCase extends Assert {
         } catch (ParseError e) {
         }
     }
+
+    @Test
+    public void testSpecialBits() throws Exception {
+        final Mapper mapper = new LsMapper(new ByteArrayInputStream(gnuOutput.getBytes(UTF_8)));
+
+        assertEquals(04750, mapper.map(new TarArchiveEntry("/helper", true)).getMode());
+        assertEquals(03744, mapper.map(new TarArchiveEntry("/odd", true)).getMode());
+        assertEquals(02775, mapper.map(new TarArchiveEntry("shared/", true)).getMode());
+
+        final TarArchiveEntry data = new TarArchiveEntry("shared/data", true);
+        data.setSize(42);
+        final TarArchiveEntry mapped = mapper.map(data);
+        assertEquals(0664, mapped.getMode());
+        assertEquals("app", mapped.getUserName());
+        assertEquals("app", mapped.getGroupName());
+        assertEquals(42, mapped.getSize());
+    }
+
+    @Test
+    public void testCachedIndex() throws Exception {
+        final File listing = folder.newFile("listing.txt");
+        Files.write(listing.toPath(), output.getBytes(UTF_8));
+        final File cache = folder.newFolder("cache");
+
+        final PathIndex parsed = PathIndex.load(listing, "ls", new LsParser(), cache);
+        final File[] files = cache.listFiles();
+        assertEquals(1, files.length);
+
+        final PathIndex mapped = PathIndex.read(files[0], listing.length(), listing.lastModified());
+        assertNotNull(mapped);
+        assertEquals(parsed.size(), mapped.size());
+        for (String path : new String[] { "", "trunk/src/test-classes/org/vafer/dependency", "trunk/target/test-classes/org/vafer/dependency/JarCombiningTestCase$1.class" }) {
+            final int position = mapped.find(path);
+            assertTrue(path, position >= 0);
+            assertEquals(parsed.getMode(parsed.find(path)), mapped.getMode(position));
+            assertEquals("tcurdt", mapped.getUserName(position));
+            assertEquals("tcurdt", mapped.getGroupName(position));
+        }
+        assertEquals(-1, mapped.find("trunk"));
+
+        // a modified listing invalidates the cache
+        assertNull(PathIndex.read(files[0], listing.length() + 1, listing.lastModified()));
+    }
+
+    @Test
+    public void testLargeListing() throws Exception {
+        final StringBuilder listing = new StringBuilder("total 0\n"
+            + "drwxr-xr-x  3 root root 4096 Oct 19 00:58 .\n"
+            + "drwxr-xr-x  3 root root 4096 Oct 19 00:58 ..\n");
+        // listed in reverse order, and the last duplicate wins
+        for (int i = 4999; i >= 0; i--) {
+            listing.append("-rw-r----- 1 user").append(i % 7).append(" root 1 Oct 19 00:58 file").append(i).append('\n');
+        }
+        listing.append("-rwx------ 1 other root 1 Oct 19 00:58 file42\n");
+
+        final PathIndex index = PathIndex.parse(new ByteArrayInputStream(listing.toString().getBytes(UTF_8)), new LsParser());
+
+        assertEquals(5001, index.size());
+        for (int i = 0; i < 5000; i++) {
+            final int position = index.find("/file" + i);
+            assertTrue(position >= 0);
+            assertEquals(i == 42 ? "other" : "user" + (i % 7), index.getUserName(position));
+        }
+        assertEquals(0700, index.getMode(index.find("/file42")));
+    }
 }
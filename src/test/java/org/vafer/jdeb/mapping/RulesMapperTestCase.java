@@ -0,0 +1,135 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.mapping;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class RulesMapperTestCase extends Assert {
+
+    private final RulesMapper mapper = new RulesMapper(
+        new RulesMapper.Rule("**", null, 0, 0, "root", "root", "644", "755"),
+        new RulesMapper.Rule("opt/app/bin/", "usr/bin", -1, -1, null, null, "755", null),
+        new RulesMapper.Rule("opt/app/**/*.conf", "etc/app", -1, -1, null, "app", "640", null),
+        new RulesMapper.Rule("opt/app/lib/*.jar", null, 1000, -1, "app", null, -1, -1),
+        new RulesMapper.Rule("opt/app/README", "usr/share/doc/app/README", -1, -1, null, null, -1, -1),
+        new RulesMapper.Rule("/var/lib/app/", null, -1, -1, "app", "app", null, "750")
+    );
+
+    private TarArchiveEntry map( TarArchiveEntry entry ) {
+        return mapper.map(entry);
+    }
+
+    @Test
+    public void testDefaults() {
+        final TarArchiveEntry entry = map(new TarArchiveEntry("opt/other/file"));
+        assertEquals("opt/other/file", entry.getName());
+        assertEquals(0644, entry.getMode());
+        assertEquals("root", entry.getUserName());
+
+        final TarArchiveEntry dir = map(new TarArchiveEntry("opt/other/", true));
+        assertEquals(0755, dir.getMode());
+    }
+
+    @Test
+    public void testPrefixTarget() {
+        final TarArchiveEntry run = map(new TarArchiveEntry("opt/app/bin/run"));
+        assertEquals("usr/bin/run", run.getName());
+        assertEquals(0755, run.getMode());
+        assertEquals("root", run.getUserName());
+
+        final TarArchiveEntry dir = map(new TarArchiveEntry("opt/app/bin/", true));
+        assertEquals("usr/bin/", dir.getName());
+        assertEquals(0755, dir.getMode());
+
+        final TarArchiveEntry nested = map(new TarArchiveEntry("./opt/app/bin/tools/x"));
+        assertEquals("usr/bin/tools/x", nested.getName());
+    }
+
+    @Test
+    public void testLaterRulesWin() {
+        final TarArchiveEntry conf = map(new TarArchiveEntry("opt/app/conf/main.conf"));
+        assertEquals("etc/app/conf/main.conf", conf.getName());
+        assertEquals(0640, conf.getMode());
+        assertEquals("root", conf.getUserName());
+        assertEquals("app", conf.getGroupName());
+
+        final TarArchiveEntry jar = map(new TarArchiveEntry("opt/app/lib/app.jar"));
+        assertEquals("opt/app/lib/app.jar", jar.getName());
+        assertEquals(1000, jar.getLongUserId());
+        assertEquals(0, jar.getLongGroupId());
+        assertEquals("app", jar.getUserName());
+
+        assertEquals("root", map(new TarArchiveEntry("opt/app/lib/sub/app.jar")).getUserName());
+    }
+
+    @Test
+    public void testExactTarget() {
+        assertEquals("usr/share/doc/app/README", map(new TarArchiveEntry("/opt/app/README")).getName());
+        assertEquals("opt/app/README.md", map(new TarArchiveEntry("opt/app/README.md")).getName());
+    }
+
+    @Test
+    public void testDirectoryRule() {
+        final TarArchiveEntry dir = map(new TarArchiveEntry("var/lib/app/", true));
+        assertEquals(0750, dir.getMode());
+        assertEquals("app", dir.getUserName());
+
+        final TarArchiveEntry file = map(new TarArchiveEntry("var/lib/app/state/db"));
+        assertEquals(0644, file.getMode());
+        assertEquals("app", file.getGroupName());
+
+        assertEquals("root", map(new TarArchiveEntry("var/lib/application")).getUserName());
+    }
+
+    @Test
+    public void testChain() {
+        final Mapper chain = MapperChain.compile(
+            new PermMapper(-1, -1, null, null, null, null, 1, "/opt/app"),
+            mapper,
+            new PermMapper(-1, -1, null, null, null, null, 0, "/root")
+        );
+
+        final TarArchiveEntry run = chain.map(new TarArchiveEntry("app-1.0/bin/run"));
+        assertEquals("root/usr/bin/run", run.getName());
+        assertEquals(0755, run.getMode());
+
+        final TarArchiveEntry dir = chain.map(new TarArchiveEntry("app-1.0/lib/", true));
+        assertEquals("root/opt/app/lib/", dir.getName());
+        assertEquals(0755, dir.getMode());
+    }
+
+    @Test
+    public void testChainMatchesSequence() {
+        final Mapper[] mappers = {
+            new PermMapper(1, 2, "u", "g", "600", "700", 2, "x/"),
+            new PermMapper(-1, -1, null, null, null, null, 0, "/"),
+            new PermMapper(-1, -1, null, null, null, null, 1, null)
+        };
+        final Mapper chain = MapperChain.compile(mappers);
+        for (String name : new String[] { "a/b/c", "/a/b/c/d", "a", "a/b/", "./a/b/c" }) {
+            TarArchiveEntry expected = new TarArchiveEntry(name);
+            for (Mapper m : mappers) {
+                expected = m.map(expected);
+            }
+            final TarArchiveEntry actual = chain.map(new TarArchiveEntry(name));
+            assertEquals(name, expected.getName(), actual.getName());
+            assertEquals(name, expected.getMode(), actual.getMode());
+        }
+    }
+}
@@ -18,11 +18,32 @@ package org.vafer.jdeb.maven;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.Assert;
+import org.vafer.jdeb.Compression;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.DebMaker;
+import org.vafer.jdeb.NullConsole;
+import org.vafer.jdeb.utils.DigestedInputStream;
+import org.vafer.jdeb.utils.MapVariableResolver;
 
 /*
  * Admittedly not the nicest way to assert that failOnMissingSrc functions. However, the best that can be done without
@@ -132,4 +153,90 @@ public final class DataTestCase extends Assert {
         assertTrue(unknownTypeException.getMessage().startsWith("Unknown type"));
     }
 
+    @Test
+    public void testFilter() throws IOException {
+        Files.write(file.toPath(), "name=[[name]]\r\nother=[[other]]".getBytes(StandardCharsets.UTF_8));
+        data.setSrc(file);
+        data.setType("file");
+        data.setDst("/etc/app.conf");
+        data.setFilter(true);
+        data.setResolver(new MapVariableResolver(Collections.singletonMap("name", "jdeb")), "[[", "]]");
+
+        final StringBuilder content = new StringBuilder();
+        data.produce(new DataConsumer() {
+            public void onEachDir(TarArchiveEntry entry) {
+            }
+
+            public void onEachFile(InputStream input, TarArchiveEntry entry) throws IOException {
+                content.append(IOUtils.toString(input, StandardCharsets.UTF_8));
+                assertEquals(content.length(), entry.getSize());
+            }
+
+            public void onEachLink(TarArchiveEntry entry) {
+            }
+        });
+
+        assertEquals("name=jdeb\r\nother=[[other]]", content.toString());
+    }
+
+    @Test
+    public void testDependencies() throws IOException {
+        Files.write(file.toPath(), "jar".getBytes(StandardCharsets.UTF_8));
+        data.setType("dependencies");
+        data.setDst("/usr/share/app/lib");
+        data.setLayout("[[groupPath]]/[[artifactId]]-[[baseVersion]].[[extension]]");
+        data.setExcludes("org.example:*-tests");
+        data.setArtifacts(Arrays.<Artifact>asList(
+            artifact("org.example", "core", "1.0", "compile"),
+            artifact("org.example", "core-tests", "1.0", "runtime"),
+            artifact("org.example", "extra", "1.1-20240101.120000-1", "runtime"),
+            artifact("org.example", "api", "1.0", "provided"),
+            artifact("junit", "junit", "4.13", "test")));
+
+        final Map<String, String> entries = new TreeMap<>();
+        data.produce(new DataConsumer() {
+            public void onEachDir(TarArchiveEntry entry) {
+            }
+
+            public void onEachFile(InputStream input, TarArchiveEntry entry) throws IOException {
+                assertTrue(input instanceof DigestedInputStream);
+                entries.put(entry.getName(), ((DigestedInputStream) input).getMd5());
+                assertEquals(3, entry.getSize());
+            }
+
+            public void onEachLink(TarArchiveEntry entry) {
+            }
+        });
+
+        final String md5 = DigestUtils.md5Hex("jar");
+        final Map<String, String> expected = new TreeMap<>();
+        expected.put("/usr/share/app/lib/org/example/core-1.0.jar", md5);
+        expected.put("/usr/share/app/lib/org/example/extra-1.1-SNAPSHOT.jar", md5);
+        assertEquals(expected, entries);
+    }
+
+    private Artifact artifact(String groupId, String artifactId, String version, String scope) {
+        final Artifact artifact = new DefaultArtifact(groupId, artifactId, version, scope, "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(file);
+        return artifact;
+    }
+
+
+    @Test
+    public void testDebControlVariables() throws Exception {
+        final DebMaker maker = new DebMaker(new NullConsole(), Collections.<DataProducer>singletonList(receiver -> { }), null);
+        maker.setControl(new File(getClass().getResource("/org/vafer/jdeb/deb/control").toURI()));
+        maker.setDeb(file);
+        maker.createDeb(Compression.GZIP);
+
+        data.setSrc(file);
+        data.setType("deb");
+        data.setControlPrefix("vendor.");
+
+        final Map<String, String> variables = new TreeMap<>();
+        data.addControlVariables(variables);
+
+        assertEquals("test", variables.get("vendor.Package"));
+        assertEquals("1.0.1", variables.get("vendor.Version"));
+    }
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.Compression;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.DebMaker;
+import org.vafer.jdeb.NullConsole;
+import org.vafer.jdeb.reader.DebReader;
+import org.vafer.jdeb.utils.DigestedInputStream;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Tests for {@link org.vafer.jdeb.producers.DataProducerDeb}.
+ */
+public final class DataProducerDebTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class Collector implements DataConsumer {
+        final Map<String, TarArchiveEntry> entries = new LinkedHashMap<>();
+        final Map<String, String> md5s = new LinkedHashMap<>();
+        final Map<String, String> contents = new LinkedHashMap<>();
+
+        public void onEachDir( TarArchiveEntry dirEntry ) {
+            entries.put(dirEntry.getName(), dirEntry);
+        }
+
+        public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException {
+            entries.put(fileEntry.getName(), fileEntry);
+            if (input instanceof DigestedInputStream) {
+                md5s.put(fileEntry.getName(), ((DigestedInputStream) input).getMd5());
+            }
+            contents.put(fileEntry.getName(), IOUtils.toString(input, UTF_8));
+        }
+
+        public void onEachLink( TarArchiveEntry linkEntry ) {
+            entries.put(linkEntry.getName(), linkEntry);
+        }
+    }
+
+    private File createDeb( String name, Compression compression, DataProducer producer ) throws Exception {
+        final DebMaker maker = new DebMaker(new NullConsole(), List.of(producer), null);
+        maker.setControl(new File(getClass().getResource("/org/vafer/jdeb/deb/control").toURI()));
+        maker.setDeb(new File(folder.getRoot(), name));
+        maker.createDeb(compression);
+        return new File(folder.getRoot(), name);
+    }
+
+    private File source( Compression compression ) throws Exception {
+        final File root = folder.newFolder("root-" + compression);
+        assertTrue(new File(root, "usr/share/app").mkdirs());
+        Files.write(new File(root, "usr/share/app/a.txt").toPath(), "a".getBytes(UTF_8));
+        Files.write(new File(root, "usr/share/app/b.txt").toPath(), "bb".getBytes(UTF_8));
+        return createDeb("source-" + compression + ".deb", compression, new DataProducerDirectory(root, null, null, null));
+    }
+
+    @Test
+    public void testEntriesAndMd5sums() throws Exception {
+        for (Compression compression : new Compression[] { Compression.NONE, Compression.GZIP, Compression.XZ }) {
+            final File deb = source(compression);
+
+            final Map<String, String> md5sums;
+            try (DebReader reader = DebReader.open(deb)) {
+                md5sums = reader.getMd5sums();
+            }
+
+            final Collector collector = new Collector();
+            new DataProducerDeb(deb, null, null, null).produce(collector);
+
+            assertEquals("a", collector.contents.get("./usr/share/app/a.txt"));
+            assertEquals("bb", collector.contents.get("./usr/share/app/b.txt"));
+            assertTrue(collector.entries.get("./usr/share/app/").isDirectory());
+            assertEquals(md5sums.get("usr/share/app/a.txt"), collector.md5s.get("./usr/share/app/a.txt"));
+            assertEquals(md5sums.get("usr/share/app/b.txt"), collector.md5s.get("./usr/share/app/b.txt"));
+        }
+    }
+
+    @Test
+    public void testWithoutMd5sums() throws Exception {
+        final Collector collector = new Collector();
+        new DataProducerDeb(source(Compression.GZIP), new String[] { "**/a.txt" }, null, null, false).produce(collector);
+
+        assertEquals(List.of("./usr/share/app/a.txt"), List.copyOf(collector.contents.keySet()));
+        assertTrue(collector.md5s.isEmpty());
+    }
+
+    @Test
+    public void testTranscode() throws Exception {
+        final File source = source(Compression.GZIP);
+        final File target = createDeb("target.deb", Compression.XZ, new DataProducerDeb(source, null, null, null));
+
+        try (DebReader sourceReader = DebReader.open(source); DebReader targetReader = DebReader.open(target)) {
+            assertEquals("data.tar.xz", targetReader.getDataMember());
+            assertEquals(sourceReader.getMd5sums(), targetReader.getMd5sums());
+            assertEquals("test", targetReader.getControlFields().get("Package"));
+            assertEquals("1.0.1", sourceReader.getControlFields().get("Version"));
+        }
+    }
+
+    @Test
+    public void testHardLink() throws Exception {
+        final File root = folder.newFolder("root");
+        assertTrue(new File(root, "usr/bin").mkdirs());
+        Files.write(new File(root, "usr/bin/tool").toPath(), "tool".getBytes(UTF_8));
+        final DataProducer directory = new DataProducerDirectory(root, null, null, null);
+        final File deb = createDeb("links.deb", Compression.GZIP, receiver -> {
+            directory.produce(receiver);
+            final TarArchiveEntry link = new TarArchiveEntry("./usr/bin/alias", TarArchiveEntry.LF_LINK);
+            link.setLinkName("./usr/bin/tool");
+            receiver.onEachLink(link);
+        });
+
+        final Collector collector = new Collector();
+        new DataProducerDeb(deb, null, null, null).produce(collector);
+
+        final TarArchiveEntry link = collector.entries.get("./usr/bin/alias");
+        assertTrue(link.isLink());
+        assertEquals("./usr/bin/tool", link.getLinkName());
+        assertFalse(collector.contents.containsKey("./usr/bin/alias"));
+
+        final File target = createDeb("target.deb", Compression.XZ, new DataProducerDeb(deb, null, null, null));
+        try (DebReader reader = DebReader.open(target)) {
+            assertEquals(List.of("usr/bin/tool"), List.copyOf(reader.getMd5sums().keySet()));
+        }
+    }
+
+    @Test
+    public void testHardLinkToExcludedFile() throws Exception {
+        final File root = folder.newFolder("excluded");
+        assertTrue(new File(root, "usr/bin").mkdirs());
+        Files.write(new File(root, "usr/bin/tool").toPath(), "tool".getBytes(UTF_8));
+        final DataProducer directory = new DataProducerDirectory(root, null, null, null);
+        final File deb = createDeb("excluded.deb", Compression.GZIP, receiver -> {
+            directory.produce(receiver);
+            final TarArchiveEntry link = new TarArchiveEntry("./usr/bin/alias", TarArchiveEntry.LF_LINK);
+            link.setLinkName("./usr/bin/tool");
+            receiver.onEachLink(link);
+        });
+
+        try {
+            new DataProducerDeb(deb, null, new String[] { "**/tool" }, null).produce(new Collector());
+            fail("a hard link to an excluded file should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("which is excluded"));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.producers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.mapping.Mapper;
+import org.vafer.jdeb.mapping.MtreeMapper;
+import org.vafer.jdeb.utils.DigestedInputStream;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Tests for {@link org.vafer.jdeb.producers.DataProducerMtree}.
+ */
+public final class DataProducerMtreeTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final class Collector implements DataConsumer {
+        final Map<String, TarArchiveEntry> entries = new LinkedHashMap<>();
+        final Map<String, String> md5s = new LinkedHashMap<>();
+        final Map<String, String> contents = new LinkedHashMap<>();
+
+        public void onEachDir( TarArchiveEntry dirEntry ) {
+            entries.put(dirEntry.getName(), dirEntry);
+        }
+
+        public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException {
+            entries.put(fileEntry.getName(), fileEntry);
+            contents.put(fileEntry.getName(), IOUtils.toString(input, UTF_8));
+            if (input instanceof DigestedInputStream) {
+                md5s.put(fileEntry.getName(), ((DigestedInputStream) input).getMd5());
+            }
+        }
+
+        public void onEachLink( TarArchiveEntry linkEntry ) {
+            entries.put(linkEntry.getName(), linkEntry);
+        }
+    }
+
+    private File write( String name, String content ) throws IOException {
+        final File file = new File(folder.getRoot(), name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(UTF_8));
+        return file;
+    }
+
+    @Test
+    public void testClassicLayout() throws Exception {
+        write("base/bin/run", "#!/bin/sh\n");
+        write("base/etc/app name.conf", "key=value\n");
+        final File spec = write("app.mtree",
+            "#mtree\n"
+            + "/set type=file uid=0 gid=0 uname=root gname=root mode=0644\n"
+            + ". type=dir mode=0755\n"
+            + "bin type=dir mode=0755\n"
+            + "    run mode=0755 size=10 md5digest=0123456789abcdef0123456789abcdef\n"
+            + "..\n"
+            + "etc type=dir mode=0755 \\\n"
+            + "    uname=app\n"
+            + "    app\\040name.conf mode=0640 gname=app\n"
+            + "    missing optional\n"
+            + "..\n"
+            + "sbin type=link link=bin\n"
+            + "dev type=dir mode=0755\n"
+            + "    null type=char mode=0666\n"
+            + "..\n");
+
+        final Collector collector = new Collector();
+        new DataProducerMtree(spec, new File(folder.getRoot(), "base"), null, null, null).produce(collector);
+
+        assertEquals("[bin/, bin/run, etc/, etc/app name.conf, sbin, dev/]", collector.entries.keySet().toString());
+
+        final TarArchiveEntry run = collector.entries.get("bin/run");
+        assertEquals(0755, run.getMode());
+        assertEquals(10, run.getSize());
+        assertEquals("#!/bin/sh\n", collector.contents.get("bin/run"));
+        // the digest of the specification is taken as is, the file isn't hashed
+        assertEquals("0123456789abcdef0123456789abcdef", collector.md5s.get("bin/run"));
+
+        final TarArchiveEntry etc = collector.entries.get("etc/");
+        assertTrue(etc.isDirectory());
+        assertEquals("app", etc.getUserName());
+
+        final TarArchiveEntry conf = collector.entries.get("etc/app name.conf");
+        assertEquals(0640, conf.getMode());
+        assertEquals("root", conf.getUserName());
+        assertEquals("app", conf.getGroupName());
+        assertFalse(collector.md5s.containsKey("etc/app name.conf"));
+
+        final TarArchiveEntry link = collector.entries.get("sbin");
+        assertTrue(link.isSymbolicLink());
+        assertEquals("bin", link.getLinkName());
+    }
+
+    @Test
+    public void testFullPathLayout() throws Exception {
+        write("usr/share/doc/app/README", "hello");
+        final File spec = write("app.mtree",
+            "#mtree v2.0\n"
+            + "usr/share/doc/app type=dir uname=root gname=root mode=755 time=1700000000.000000000\n"
+            + "usr/share/doc/app/README type=file uname=root gname=root mode=644 size=5 time=1700000000.500000000\n");
+
+        final Collector collector = new Collector();
+        new DataProducerMtree(spec, null, null, new String[] { "**/*.md" }, null).produce(collector);
+
+        final TarArchiveEntry readme = collector.entries.get("usr/share/doc/app/README");
+        assertNotNull(readme);
+        assertEquals(0644, readme.getMode());
+        assertEquals(1700000000500L, readme.getModTime().getTime());
+        assertEquals("hello", collector.contents.get("usr/share/doc/app/README"));
+    }
+
+    @Test
+    public void testSizeMismatch() throws Exception {
+        write("file", "content");
+        final File spec = write("app.mtree", "./file type=file size=3\n");
+        try {
+            new DataProducerMtree(spec, null, null, null, null).produce(new Collector());
+            fail("Should have failed on the size");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("size"));
+        }
+    }
+
+    @Test
+    public void testMapper() throws Exception {
+        final File spec = write("perms.mtree",
+            "/set type=file uname=root gname=root\n"
+            + "./usr/bin/tool mode=4755 uid=0 gid=50 gname=staff\n");
+        final Mapper mapper = new MtreeMapper(spec);
+
+        final TarArchiveEntry tool = mapper.map(new TarArchiveEntry("./usr/bin/tool"));
+        assertEquals(04755, tool.getMode());
+        assertEquals(50, tool.getLongGroupId());
+        assertEquals("staff", tool.getGroupName());
+        assertEquals("root", tool.getUserName());
+
+        final TarArchiveEntry other = new TarArchiveEntry("usr/bin/other");
+        assertSame(other, mapper.map(other));
+    }
+}
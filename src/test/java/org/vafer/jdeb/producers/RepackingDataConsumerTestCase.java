@@ -0,0 +1,219 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.producers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.DataConsumer;
+import org.vafer.jdeb.utils.FileSourceInputStream;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Tests for {@link org.vafer.jdeb.producers.RepackingDataConsumer}.
+ */
+public final class RepackingDataConsumerTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static class Collector implements DataConsumer {
+        final Map<String, TarArchiveEntry> entries = new LinkedHashMap<>();
+        final Map<String, byte[]> contents = new LinkedHashMap<>();
+
+        public void onEachDir( TarArchiveEntry dirEntry ) {
+            entries.put(dirEntry.getName(), dirEntry);
+        }
+
+        public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException {
+            entries.put(fileEntry.getName(), fileEntry);
+            final byte[] content = IOUtils.toByteArray(input);
+            assertEquals(fileEntry.getName(), fileEntry.getSize(), content.length);
+            contents.put(fileEntry.getName(), content);
+        }
+
+        public void onEachLink( TarArchiveEntry linkEntry ) {
+            entries.put(linkEntry.getName(), linkEntry);
+        }
+    }
+
+    private static byte[] jar( long time, String... names ) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (String name : names) {
+                final ZipEntry entry = new ZipEntry(name);
+                entry.setTime(time);
+                zip.putNextEntry(entry);
+                zip.write(content(name).getBytes(UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String content( String name ) {
+        if (name.endsWith("/")) {
+            return "";
+        }
+        if (name.equals("META-INF/MANIFEST.MF")) {
+            return "Manifest-Version: 1.0\n";
+        }
+        return ("content of " + name + "\n").repeat(100);
+    }
+
+    private static TarArchiveEntry entry( String name, long size ) {
+        final TarArchiveEntry entry = new TarArchiveEntry(name, true);
+        entry.setSize(size);
+        return entry;
+    }
+
+    private byte[] repack( File cache, byte[] content, String name ) throws IOException {
+        final Collector collector = new Collector();
+        new RepackingDataConsumer(collector, cache).onEachFile(new ByteArrayInputStream(content), entry(name, content.length));
+        return collector.contents.get(name);
+    }
+
+    @Test
+    public void testEntriesStoredAndSorted() throws Exception {
+        final File cache = folder.newFolder("cache");
+        final byte[] original = jar(1500000000000L, "org/vafer/B.class", "META-INF/", "META-INF/MANIFEST.MF", "org/", "org/vafer/A.class");
+        final byte[] repacked = repack(cache, original, "lib/app.jar");
+
+        final List<String> names = new ArrayList<>();
+        try (ZipFile zip = ZipFile.builder().setSeekableByteChannel(new SeekableInMemoryByteChannel(repacked)).get()) {
+            for (ZipArchiveEntry entry : Collections.list(zip.getEntriesInPhysicalOrder())) {
+                names.add(entry.getName());
+                assertEquals(entry.getName(), ZipEntry.STORED, entry.getMethod());
+                try (InputStream content = zip.getInputStream(entry)) {
+                    assertEquals(content(entry.getName()), IOUtils.toString(content, UTF_8));
+                }
+            }
+        }
+        assertEquals(List.of("META-INF/", "META-INF/MANIFEST.MF", "org/", "org/vafer/A.class", "org/vafer/B.class"), names);
+
+        // the manifest is where java.util.jar expects it
+        try (JarInputStream jar = new JarInputStream(new ByteArrayInputStream(repacked))) {
+            assertNotNull(jar.getManifest());
+            assertEquals("org/", jar.getNextJarEntry().getName());
+        }
+    }
+
+    @Test
+    public void testDeterministic() throws Exception {
+        final byte[] first = repack(folder.newFolder("first"), jar(1500000000000L, "b", "a"), "app.jar");
+        final byte[] second = repack(folder.newFolder("second"), jar(1600000000000L, "a", "b"), "app.jar");
+
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        final File cache = folder.newFolder("cache");
+        final File original = folder.newFile("app.jar");
+        Files.write(original.toPath(), jar(0, "a"));
+
+        final Collector collector = new Collector();
+        final RepackingDataConsumer repacking = new RepackingDataConsumer(collector, cache);
+        try (InputStream input = new FileSourceInputStream(original)) {
+            repacking.onEachFile(input, entry("app.jar", original.length()));
+        }
+        final File[] cached = cache.listFiles((dir, name) -> name.endsWith(".zip"));
+        assertEquals(1, cached.length);
+        assertEquals(2, cache.listFiles().length);
+
+        final long modified = cached[0].lastModified() - 10000;
+        assertTrue(cached[0].setLastModified(modified));
+        try (InputStream input = new FileSourceInputStream(original)) {
+            repacking.onEachFile(input, entry("app.jar", original.length()));
+        }
+        assertEquals(2, cache.listFiles().length);
+        assertEquals("the cached archive is reused", modified, cached[0].lastModified());
+    }
+
+    @Test
+    public void testTamperedCache() throws Exception {
+        final File cache = folder.newFolder("cache");
+        final byte[] original = jar(0, "a");
+        final byte[] repacked = repack(cache, original, "app.jar");
+
+        // an archive planted in the cache doesn't match the digest next to it
+        final File[] cached = cache.listFiles((dir, name) -> name.endsWith(".zip"));
+        Files.write(cached[0].toPath(), jar(0, "evil"));
+
+        assertArrayEquals(repacked, repack(cache, original, "app.jar"));
+    }
+
+    @Test
+    public void testWithoutCache() throws Exception {
+        final byte[] original = jar(0, "a");
+        assertArrayEquals(repack(folder.newFolder("cache"), original, "app.jar"), repack(null, original, "app.jar"));
+    }
+
+    @Test
+    public void testTemporaryFilesNotPassedAsFiles() throws Exception {
+        final List<InputStream> inputs = new ArrayList<>();
+        final DataConsumer consumer = new Collector() {
+            public void onEachFile( InputStream input, TarArchiveEntry fileEntry ) throws IOException {
+                inputs.add(input);
+                super.onEachFile(input, fileEntry);
+            }
+        };
+
+        final byte[] text = "not a zip".getBytes(UTF_8);
+        new RepackingDataConsumer(consumer, folder.newFolder("cache")).onEachFile(new ByteArrayInputStream(text), entry("broken.jar", text.length));
+        final byte[] jar = jar(0, "a");
+        new RepackingDataConsumer(consumer, null).onEachFile(new ByteArrayInputStream(jar), entry("app.jar", jar.length));
+
+        // the spooled and the uncached files are deleted, the consumers can't keep a reference to them
+        assertEquals(2, inputs.size());
+        for (InputStream input : inputs) {
+            assertFalse(input instanceof FileSourceInputStream);
+        }
+    }
+
+    @Test
+    public void testPassThrough() throws Exception {
+        final File cache = folder.newFolder("cache");
+        final byte[] text = "not a zip".getBytes(UTF_8);
+
+        assertArrayEquals(text, repack(cache, text, "broken.jar"));
+        assertArrayEquals(text, repack(cache, text, "notes.txt"));
+        assertEquals(0, cache.listFiles().length);
+    }
+}
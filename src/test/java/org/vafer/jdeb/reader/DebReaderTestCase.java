@@ -0,0 +1,213 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.SeekableXZInputStream;
+import org.vafer.jdeb.Compression;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.DebMaker;
+import org.vafer.jdeb.NullConsole;
+import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.utils.ArLayout;
+
+public final class DebReaderTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, byte[]> files() {
+        final Map<String, byte[]> files = new LinkedHashMap<>();
+        for (int i = 0; i < 30; i++) {
+            final byte[] content = new byte[100 * 1024 + i];
+            new Random(i).nextBytes(content);
+            files.put("usr/share/app/file" + i, content);
+        }
+        return files;
+    }
+
+    private DebMaker maker( String name, Map<String, byte[]> files ) throws Exception {
+        final DataProducer producer = receiver -> {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                final TarArchiveEntry entry = new TarArchiveEntry(file.getKey(), true);
+                entry.setSize(file.getValue().length);
+                receiver.onEachFile(new ByteArrayInputStream(file.getValue()), entry);
+            }
+        };
+
+        final DebMaker maker = new DebMaker(new NullConsole(), List.of(producer), null);
+        maker.setControl(new File(getClass().getResource("/org/vafer/jdeb/deb/control").toURI()));
+        maker.setDeb(new File(folder.getRoot(), name));
+        return maker;
+    }
+
+    private static void assertContent( DebReader reader, String path, byte[] expected ) throws Exception {
+        try (InputStream input = reader.openFile(path)) {
+            assertArrayEquals(path, expected, IOUtils.toByteArray(input));
+        }
+    }
+
+    @Test
+    public void testSeekableWithIndex() throws Exception {
+        final Map<String, byte[]> files = files();
+        final File deb = new File(folder.getRoot(), "seekable.deb");
+        final DebMaker maker = maker(deb.getName(), files);
+        maker.setCompression("xz");
+        maker.setSeekable(true);
+        maker.setDataIndex(true);
+        maker.validate();
+        maker.createDeb(Compression.XZ);
+
+        assertTrue(new File(deb.getPath() + ".index").isFile());
+
+        final ArLayout.Member data = ArLayout.find(ArLayout.scan(deb), "data.tar");
+        try (FileChannel channel = FileChannel.open(deb.toPath(), StandardOpenOption.READ);
+             SeekableXZInputStream xz = new SeekableXZInputStream(new MemberInputStream(channel, data.contentOffset, data.size))) {
+            assertTrue("blocks: " + xz.getBlockCount(), xz.getBlockCount() > 2);
+        }
+
+        try (DebReader reader = DebReader.open(deb)) {
+            assertEquals("data.tar.xz", reader.getDataMember());
+            assertNotNull(reader.getIndex());
+            assertEquals(files.size(), reader.getIndex().getEntries().size());
+
+            assertContent(reader, "usr/share/app/file25", files.get("usr/share/app/file25"));
+            assertContent(reader, "./usr/share/app/file3", files.get("usr/share/app/file3"));
+            assertContent(reader, "/usr/share/app/file0", files.get("usr/share/app/file0"));
+
+            try {
+                reader.openFile("usr/share/app/missing");
+                fail("Expected FileNotFoundException");
+            } catch (FileNotFoundException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testUncompressedWithIndex() throws Exception {
+        final Map<String, byte[]> files = files();
+        final DebMaker maker = maker("none.deb", files);
+        maker.setDataIndex(true);
+        maker.createDeb(Compression.NONE);
+
+        try (DebReader reader = DebReader.open(new File(folder.getRoot(), "none.deb"))) {
+            assertEquals("data.tar", reader.getDataMember());
+            assertNotNull(reader.getIndex());
+            assertContent(reader, "usr/share/app/file17", files.get("usr/share/app/file17"));
+        }
+    }
+
+    @Test
+    public void testGzipWithoutIndex() throws Exception {
+        final Map<String, byte[]> files = files();
+        final DebMaker maker = maker("gzip.deb", files);
+        maker.createDeb(Compression.GZIP);
+
+        try (DebReader reader = DebReader.open(new File(folder.getRoot(), "gzip.deb"))) {
+            assertNull(reader.getIndex());
+            assertContent(reader, "usr/share/app/file12", files.get("usr/share/app/file12"));
+        }
+    }
+
+    @Test
+    public void testIndexOfAnotherPackageIsIgnored() throws Exception {
+        final Map<String, byte[]> files = files();
+        final DebMaker indexed = maker("indexed.deb", files);
+        indexed.setDataIndex(true);
+        indexed.createDeb(Compression.XZ);
+        maker("plain.deb", files).createDeb(Compression.GZIP);
+
+        final File plain = new File(folder.getRoot(), "plain.deb");
+        final DataIndex index = DataIndex.read(new File(folder.getRoot(), "indexed.deb.index"));
+        try (DebReader reader = DebReader.open(plain, index)) {
+            assertNull(reader.getIndex());
+            assertContent(reader, "usr/share/app/file8", files.get("usr/share/app/file8"));
+        }
+    }
+
+    @Test
+    public void testMembers() throws Exception {
+        final Map<String, byte[]> files = files();
+        maker("bzip2.deb", files).createDeb(Compression.BZIP2);
+
+        try (DebReader reader = DebReader.open(new File(folder.getRoot(), "bzip2.deb"))) {
+            assertEquals(List.of("debian-binary", "control.tar.gz", "data.tar.bz2"), List.copyOf(reader.getMembers().keySet()));
+            assertEquals(Long.valueOf(4), reader.getMembers().get("debian-binary"));
+            try (InputStream input = reader.openMember("debian-binary")) {
+                assertEquals("2.0\n", IOUtils.toString(input, "US-ASCII"));
+            }
+
+            final Map<String, String> md5sums = reader.getMd5sums();
+            assertEquals(files.keySet(), md5sums.keySet());
+
+            int count = 0;
+            try (TarArchiveInputStream data = reader.openData()) {
+                TarArchiveEntry entry;
+                while ((entry = data.getNextEntry()) != null) {
+                    if (entry.isFile()) {
+                        count++;
+                    }
+                }
+            }
+            assertEquals(files.size(), count);
+        }
+    }
+
+    @Test
+    public void testIndexRoundTrip() throws Exception {
+        final DataIndex index = new DataIndex();
+        index.setMember("data.tar.xz", 1234);
+        index.add(0, 10, "./usr/bin/foo");
+        index.add(1024, 20, "./usr/share/doc/a \\ b\nc");
+
+        final File file = folder.newFile("index");
+        index.write(file);
+
+        final DataIndex read = DataIndex.read(file);
+        assertEquals("data.tar.xz", read.getMember());
+        assertEquals(1234, read.getMemberSize());
+        assertEquals(2, read.getEntries().size());
+        assertEquals(10, read.find("usr/bin/foo").getSize());
+        assertEquals(1024, read.find("/usr/share/doc/a \\ b\nc").getOffset());
+    }
+
+    @Test(expected = PackagingException.class)
+    public void testSeekableRequiresXz() throws Exception {
+        final DebMaker maker = maker("gzip.deb", files());
+        maker.setCompression("gzip");
+        maker.setSeekable(true);
+        maker.validate();
+    }
+}
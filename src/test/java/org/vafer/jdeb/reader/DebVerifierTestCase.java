@@ -0,0 +1,260 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureGenerator;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vafer.jdeb.Compression;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.DebMaker;
+import org.vafer.jdeb.NullConsole;
+import org.vafer.jdeb.signing.PGPSigner;
+import org.vafer.jdeb.utils.ArLayout;
+
+public final class DebVerifierTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File deb( String name, Compression compression, String signMethod ) throws Exception {
+        final DataProducer producer = receiver -> {
+            for (int i = 0; i < 5; i++) {
+                final byte[] content = ("content of file " + i + "\n").getBytes(StandardCharsets.UTF_8);
+                final TarArchiveEntry entry = new TarArchiveEntry("usr/share/app/file" + i, true);
+                entry.setSize(content.length);
+                receiver.onEachFile(new ByteArrayInputStream(content), entry);
+            }
+        };
+
+        final File deb = new File(folder.getRoot(), name);
+        final DebMaker maker = new DebMaker(new NullConsole(), List.of(producer), null);
+        maker.setControl(new File(getClass().getResource("/org/vafer/jdeb/deb/control").toURI()));
+        maker.setDeb(deb);
+        maker.setDataIndex(true);
+
+        if (signMethod == null) {
+            maker.createDeb(compression);
+        } else {
+            final PGPSigner signer;
+            try (InputStream ring = getClass().getResourceAsStream("/org/vafer/gpg/secring.gpg")) {
+                signer = new PGPSigner(ring, "2E074D8F", "test", PGPUtil.SHA256);
+            }
+            final PGPSignatureGenerator generator = new PGPSignatureGenerator(new BcPGPContentSignerBuilder(signer.getSecretKey().getPublicKey().getAlgorithm(), PGPUtil.SHA256));
+            generator.init(PGPSignature.BINARY_DOCUMENT, signer.getPrivateKey());
+            maker.setSignMethod(signMethod);
+            maker.createSignedDeb(compression, generator, signer);
+        }
+        return deb;
+    }
+
+    private DebVerifier verifier() throws Exception {
+        final DebVerifier verifier = new DebVerifier(new NullConsole());
+        try (InputStream ring = getClass().getResourceAsStream("/org/vafer/gpg/pubring.gpg")) {
+            verifier.addKeyring(ring);
+        }
+        return verifier;
+    }
+
+    /**
+     * Flips a byte of the content of a file in the uncompressed data archive.
+     */
+    private static void tamper( File deb, String path ) throws Exception {
+        final ArLayout.Member data = ArLayout.find(ArLayout.scan(deb), "data.tar");
+        final DataIndex index = DataIndex.read(new File(deb.getPath() + ".index"));
+        final long offset = data.contentOffset + index.find(path).getOffset() + 512;
+        try (RandomAccessFile file = new RandomAccessFile(deb, "rw")) {
+            file.seek(offset);
+            final int b = file.read();
+            file.seek(offset);
+            file.write(b ^ 1);
+        }
+    }
+
+    @Test
+    public void testUnsigned() throws Exception {
+        for (Compression compression : Compression.values()) {
+            final VerificationResult result = verifier().verify(deb("unsigned" + compression + ".deb", compression, null));
+            assertTrue(result.toString(), result.isValid());
+            assertEquals(5, result.getFiles());
+            assertTrue(result.getSignatures().isEmpty());
+        }
+    }
+
+    /**
+     * Writes a package by hand, with the md5sums listing a hard link like dh_md5sums does.
+     */
+    private File debWithHardLink( String md5sums ) throws Exception {
+        final byte[] content = "#!/bin/sh\necho tool\n".getBytes(StandardCharsets.UTF_8);
+
+        final ByteArrayOutputStream control = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(control))) {
+            addFile(tar, "./control", "Package: tool\nVersion: 1.0\nArchitecture: all\nMaintainer: jdeb\nDescription: tool\n".getBytes(StandardCharsets.UTF_8));
+            addFile(tar, "./md5sums", md5sums.getBytes(StandardCharsets.UTF_8));
+        }
+
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(data)) {
+            addFile(tar, "./usr/bin/tool", content);
+            final TarArchiveEntry link = new TarArchiveEntry("./usr/bin/alias", TarArchiveEntry.LF_LINK);
+            link.setLinkName("./usr/bin/tool");
+            tar.putArchiveEntry(link);
+            tar.closeArchiveEntry();
+        }
+
+        final File deb = folder.newFile();
+        try (ArArchiveOutputStream ar = new ArArchiveOutputStream(new FileOutputStream(deb))) {
+            addMember(ar, "debian-binary", "2.0\n".getBytes(StandardCharsets.US_ASCII));
+            addMember(ar, "control.tar.gz", control.toByteArray());
+            addMember(ar, "data.tar", data.toByteArray());
+        }
+        return deb;
+    }
+
+    private static void addFile( TarArchiveOutputStream tar, String name, byte[] content ) throws Exception {
+        final TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        tar.putArchiveEntry(entry);
+        tar.write(content);
+        tar.closeArchiveEntry();
+    }
+
+    private static void addMember( ArArchiveOutputStream ar, String name, byte[] content ) throws Exception {
+        ar.putArchiveEntry(new ArArchiveEntry(name, content.length));
+        ar.write(content);
+        ar.closeArchiveEntry();
+    }
+
+    @Test
+    public void testHardLinkInMd5sums() throws Exception {
+        final String md5 = DigestUtils.md5Hex("#!/bin/sh\necho tool\n");
+        final VerificationResult result = verifier().verify(debWithHardLink(md5 + "  usr/bin/tool\n" + md5 + "  usr/bin/alias\n"));
+        assertTrue(result.toString(), result.isValid());
+        assertEquals(2, result.getFiles());
+
+        final String other = DigestUtils.md5Hex("other");
+        final VerificationResult tampered = verifier().verify(debWithHardLink(md5 + "  usr/bin/tool\n" + other + "  usr/bin/alias\n"));
+        assertEquals(Arrays.asList("usr/bin/alias doesn't match its md5sum"), tampered.getProblems());
+    }
+
+    @Test
+    public void testTamperedContent() throws Exception {
+        final File deb = deb("tampered.deb", Compression.NONE, null);
+        tamper(deb, "usr/share/app/file3");
+
+        final VerificationResult result = verifier().verify(deb);
+        assertFalse(result.isValid());
+        assertEquals(Arrays.asList("usr/share/app/file3 doesn't match its md5sum"), result.getProblems());
+    }
+
+    @Test
+    public void testDebsigSignature() throws Exception {
+        final File deb = deb("debsig.deb", Compression.NONE, "debsig-verify");
+
+        final VerificationResult result = verifier().verify(deb);
+        assertTrue(result.toString(), result.isValid());
+        assertEquals(Arrays.asList("origin"), result.getSignatures());
+
+        tamper(deb, "usr/share/app/file1");
+        final VerificationResult tampered = verifier().verify(deb);
+        assertTrue(tampered.getProblems().toString(), tampered.getProblems().contains("The signature in _gpgorigin doesn't match the package"));
+    }
+
+    @Test
+    public void testDpkgSigSignature() throws Exception {
+        final File deb = deb("dpkg-sig.deb", Compression.NONE, "dpkg-sig");
+
+        final VerificationResult result = verifier().verify(deb);
+        assertTrue(result.toString(), result.isValid());
+        assertEquals(Arrays.asList("origin"), result.getSignatures());
+
+        tamper(deb, "usr/share/app/file1");
+        final VerificationResult tampered = verifier().verify(deb);
+        assertTrue(tampered.getProblems().toString(), tampered.getProblems().contains("data.tar doesn't match the MD5 in _gpgorigin"));
+    }
+
+    @Test
+    public void testUnknownKey() throws Exception {
+        final File deb = deb("unknown.deb", Compression.GZIP, "debsig-verify");
+
+        final VerificationResult result = new DebVerifier(new NullConsole()).verify(deb);
+        assertTrue(result.toString(), result.isValid());
+        assertTrue(result.getSignatures().isEmpty());
+        assertEquals(1, result.getWarnings().size());
+    }
+
+    @Test
+    public void testRequireSignature() throws Exception {
+        final DebVerifier verifier = verifier();
+        verifier.setRequireSignature(true);
+
+        final VerificationResult result = verifier.verify(deb("unsigned.deb", Compression.GZIP, null));
+        assertEquals(Arrays.asList("The package is not signed"), result.getProblems());
+    }
+
+    @Test
+    public void testRequireSignatureOfKnownKey() throws Exception {
+        final DebVerifier verifier = new DebVerifier(new NullConsole());
+        verifier.setRequireSignature(true);
+
+        // a signature of a key the verifier doesn't know doesn't count
+        final VerificationResult result = verifier.verify(deb("unknown.deb", Compression.GZIP, "debsig-verify"));
+        assertFalse(result.isValid());
+        assertTrue(result.getProblems().toString(), result.getProblems().contains("The package has no valid signature of a known key"));
+        assertTrue(result.getSignatures().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentVerification() throws Exception {
+        final File valid = deb("valid.deb", Compression.XZ, null);
+        final File tampered = deb("tampered.deb", Compression.NONE, null);
+        tamper(tampered, "usr/share/app/file0");
+        final File broken = folder.newFile("broken.deb");
+
+        final DebVerifier verifier = verifier();
+        verifier.setThreads(3);
+        final List<VerificationResult> results = verifier.verify(Arrays.asList(valid, tampered, broken, valid));
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).isValid());
+        assertFalse(results.get(1).isValid());
+        assertFalse(results.get(2).isValid());
+        assertTrue(results.get(3).isValid());
+        assertEquals(broken, results.get(2).getFile());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.vafer.jdeb.repository;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public final class PackageCacheTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final String control =
+            "Package: foo\n" +
+            "Version: 1.0\n" +
+            "Description: the foo package\n" +
+            " first paragraph\n" +
+            " .\n" +
+            "  indented line\n";
+        final List<String> contents = Arrays.asList("usr/bin/foo", "usr/share/doc/foo/README");
+
+        final File file = new File(folder.getRoot(), "cache");
+        PackageCache.write(file, Arrays.asList(
+            new IndexedPackage("pool/foo_1.0_all.deb", 1234, 1700000000000L, "md5", "sha1", "sha256", control, contents),
+            new IndexedPackage("pool/bar_1.0_all.deb", 10, 20, "md5", "sha1", "sha256", "Package: bar\nVersion: 1.0\n", Collections.<String>emptyList())));
+
+        final Map<String, IndexedPackage> packages = PackageCache.read(file);
+        assertEquals(Arrays.asList("pool/foo_1.0_all.deb", "pool/bar_1.0_all.deb"), Arrays.asList(packages.keySet().toArray()));
+
+        final IndexedPackage foo = packages.get("pool/foo_1.0_all.deb");
+        assertEquals(1234, foo.getSize());
+        assertEquals(1700000000000L, foo.getLastModified());
+        assertEquals("sha256", foo.getSha256());
+        assertEquals(control, foo.getControlText());
+        assertEquals(contents, foo.getContents());
+
+        assertEquals(Collections.emptyList(), packages.get("pool/bar_1.0_all.deb").getContents());
+    }
+
+    @Test
+    public void testUnknownFormatIsEmpty() throws Exception {
+        final File file = new File(folder.getRoot(), "cache");
+        Files.write(file.toPath(), "jdeb repository cache 1\n\nPath: foo.deb\n".getBytes(UTF_8));
+        assertTrue(PackageCache.read(file).isEmpty());
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tukaani.xz.XZInputStream;
+import org.vafer.jdeb.Console;
+import org.vafer.jdeb.DataProducer;
+import org.vafer.jdeb.DebMaker;
+import org.vafer.jdeb.NullConsole;
+import org.vafer.jdeb.PackagingException;
+import org.vafer.jdeb.signing.PGPSigner;
+import org.vafer.jdeb.utils.MultiDigest;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public final class RepositoryIndexerTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> messages = new ArrayList<>();
+
+    private final Console console = new Console() {
+        public void debug( String message ) {
+        }
+
+        public void info( String message ) {
+            messages.add(message);
+        }
+
+        public void warn( String message ) {
+            messages.add("[WARN] " + message);
+        }
+    };
+
+    private File deb( File directory, String name, String version, String architecture ) throws Exception {
+        final File control = new File(folder.getRoot(), "control-" + name + "-" + version);
+        assertTrue(control.mkdirs());
+        Files.write(new File(control, "control").toPath(), (
+            "Package: " + name + "\n" +
+            "Version: " + version + "\n" +
+            "Section: java\n" +
+            "Priority: optional\n" +
+            "Architecture: " + architecture + "\n" +
+            "Maintainer: John Doe <john@doe.org>\n" +
+            "Description: the " + name + " package\n" +
+            " with a long description.\n" +
+            " .\n" +
+            " On several lines.\n").getBytes(UTF_8));
+
+        final DataProducer producer = receiver -> {
+            final byte[] content = (name + " " + version + "\n").getBytes(UTF_8);
+            final TarArchiveEntry entry = new TarArchiveEntry("usr/share/" + name + "/VERSION", true);
+            entry.setSize(content.length);
+            receiver.onEachFile(new ByteArrayInputStream(content), entry);
+        };
+
+        final File deb = new File(directory, name + "_" + version + "_" + architecture + ".deb");
+        final DebMaker maker = new DebMaker(new NullConsole(), List.of(producer), null);
+        maker.setControl(control);
+        maker.setDeb(deb);
+        maker.makeDeb();
+        return deb;
+    }
+
+    private static String read( File file ) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), UTF_8);
+    }
+
+    private static String stanzas( String index ) {
+        final StringBuilder result = new StringBuilder();
+        for (String line : index.split("\n")) {
+            if (line.startsWith("Package: ") || line.startsWith("Version: ")) {
+                result.append(line.substring(line.indexOf(' ') + 1)).append(line.startsWith("Version") ? ";" : " ");
+            }
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testViews() throws Exception {
+        final File root = folder.getRoot();
+        final File releases = new File(root, "releases");
+        assertTrue(new File(releases, "org/vafer").mkdirs());
+        deb(new File(releases, "org/vafer"), "foo", "7.4.1", "all");
+        deb(releases, "foo", "7.5", "all");
+        deb(releases, "foo", "7.4~rc1", "all");
+        deb(releases, "bar", "7.4-2", "amd64");
+
+        final RepositoryIndexer indexer = new RepositoryIndexer(console, root);
+        indexer.setReleaseField("Origin", "jdeb");
+        indexer.setDate(ZonedDateTime.of(2024, 8, 17, 12, 0, 0, 0, ZoneOffset.UTC));
+        indexer.index(releases, Arrays.asList(
+            RepositoryView.all("releases", releases),
+            RepositoryView.stable(new File(root, "stable")),
+            RepositoryView.lts(new File(root, "lts"), "7.4")));
+
+        final String packages = read(new File(releases, "Packages"));
+        assertEquals("bar 7.4-2;foo 7.4~rc1;foo 7.4.1;foo 7.5;", stanzas(packages));
+        assertTrue(packages, packages.contains("Filename: releases/org/vafer/foo_7.4.1_all.deb\n"));
+        assertTrue(packages, packages.contains("Description: the foo package\n with a long description.\n .\n On several lines.\n"));
+        assertTrue(packages, packages.contains("Size: " + new File(releases, "org/vafer/foo_7.4.1_all.deb").length() + "\n"));
+        assertTrue(packages, packages.contains("SHA256: " + MultiDigest.digest(new File(releases, "foo_7.5_all.deb"), "SHA-256").get("SHA-256") + "\n"));
+
+        try (InputStream input = new GzipCompressorInputStream(new FileInputStream(new File(releases, "Packages.gz")))) {
+            assertEquals(packages, IOUtils.toString(input, UTF_8));
+        }
+        try (InputStream input = new XZInputStream(new FileInputStream(new File(releases, "Packages.xz")))) {
+            assertEquals(packages, IOUtils.toString(input, UTF_8));
+        }
+
+        assertEquals("bar 7.4-2;foo 7.4.1;foo 7.5;", stanzas(read(new File(root, "stable/Packages"))));
+        assertEquals("bar 7.4-2;foo 7.4.1;", stanzas(read(new File(root, "lts/Packages"))));
+
+        assertEquals("usr/share/bar/VERSION java/bar\nusr/share/foo/VERSION java/foo\n", read(new File(releases, "Contents-amd64")));
+        assertEquals("usr/share/foo/VERSION java/foo\n", read(new File(releases, "Contents-all")));
+
+        final String release = read(new File(releases, "Release"));
+        assertTrue(release, release.startsWith("Origin: jdeb\nDate: Sat, 17 Aug 2024 12:00:00 UTC\nArchitectures: all amd64\nAcquire-By-Hash: yes\nMD5Sum:\n"));
+        final String sha256 = MultiDigest.digest(new File(releases, "Packages.xz"), "SHA-256").get("SHA-256");
+        assertTrue(release, release.contains(" " + sha256 + " " + String.format("%16d", new File(releases, "Packages.xz").length()) + " Packages.xz\n"));
+        assertTrue(new File(releases, "by-hash/SHA256/" + sha256).isFile());
+        assertFalse(new File(releases, "InRelease").exists());
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        final File root = folder.getRoot();
+        final File pool = new File(root, "pool");
+        assertTrue(pool.mkdirs());
+        deb(pool, "foo", "1.0", "all");
+        deb(pool, "bar", "1.0", "all");
+
+        new RepositoryIndexer(console, root).index(pool, List.of(RepositoryView.all("pool", pool)));
+        assertTrue(messages.toString(), messages.contains("Indexing 2 new or changed packages out of 2"));
+        assertTrue(new File(root, ".jdeb-index").isFile());
+        final String packages = read(new File(pool, "Packages"));
+
+        messages.clear();
+        deb(pool, "baz", "1.0", "all");
+        new RepositoryIndexer(console, root).index(pool, List.of(RepositoryView.all("pool", pool)));
+        assertTrue(messages.toString(), messages.contains("Indexing 1 new or changed packages out of 3"));
+        assertEquals("bar 1.0;baz 1.0;foo 1.0;", stanzas(read(new File(pool, "Packages"))));
+
+        messages.clear();
+        assertTrue(new File(pool, "baz_1.0_all.deb").delete());
+        new RepositoryIndexer(console, root).index(pool, List.of(RepositoryView.all("pool", pool)));
+        assertTrue(messages.toString(), messages.contains("Indexing 0 new or changed packages out of 2"));
+        assertEquals(packages, read(new File(pool, "Packages")));
+    }
+
+    @Test
+    public void testBrokenPackageIsSkipped() throws Exception {
+        final File root = folder.getRoot();
+        deb(root, "foo", "1.0", "all");
+        Files.write(new File(root, "broken.deb").toPath(), "not a package".getBytes(UTF_8));
+
+        new RepositoryIndexer(console, root).index(root, List.of(RepositoryView.all("root", root)));
+        assertEquals("foo 1.0;", stanzas(read(new File(root, "Packages"))));
+        assertTrue(messages.toString(), messages.stream().anyMatch(message -> message.startsWith("[WARN] Skipping") && message.contains("broken.deb")));
+    }
+
+    @Test
+    public void testSignedRelease() throws Exception {
+        final File root = folder.getRoot();
+        deb(root, "foo", "1.0", "all");
+
+        final RepositoryIndexer indexer = new RepositoryIndexer(console, root);
+        try (InputStream ring = getClass().getResourceAsStream("/org/vafer/gpg/secring.gpg")) {
+            indexer.setSigner(new PGPSigner(ring, "2E074D8F", "test", PGPUtil.SHA256));
+        }
+        indexer.index(root, List.of(RepositoryView.all("root", root)));
+
+        final String release = read(new File(root, "Release"));
+        final String inRelease = read(new File(root, "InRelease"));
+        assertTrue(inRelease, inRelease.startsWith("-----BEGIN PGP SIGNED MESSAGE-----\nHash: SHA256\n\n" + release.substring(0, release.indexOf('\n'))));
+        assertTrue(read(new File(root, "Release.gpg")).startsWith("-----BEGIN PGP SIGNATURE-----"));
+
+        // without a key the signed repository is left alone
+        try {
+            new RepositoryIndexer(console, root).index(root, List.of(RepositoryView.all("root", root)));
+            fail("a signed repository should not be indexed without a key");
+        } catch (PackagingException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is signed"));
+        }
+        assertEquals(inRelease, read(new File(root, "InRelease")));
+        assertEquals(release, read(new File(root, "Release")));
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        final File root = folder.getRoot();
+        final File pool = new File(root, "pool");
+        assertTrue(pool.mkdirs());
+        for (String version : Arrays.asList("1.9", "1.10", "1.10~rc1", "1.8", "1.11~SNAPSHOT", "1:0.1")) {
+            deb(pool, "foo", version, "all");
+        }
+        deb(pool, "foo", "0.1", "amd64");
+        deb(pool, "bar", "1.0", "all");
+        Files.write(new File(pool, "foo_1.8_all.deb.index").toPath(), new byte[0]);
+
+        final RepositoryIndexer indexer = new RepositoryIndexer(console, root);
+        final RepositoryPruner pruner = new RepositoryPruner(console, indexer);
+        pruner.setKeep(2);
+
+        pruner.setDryRun(true);
+        assertEquals(2, pruner.prune(pool).size());
+        assertTrue(new File(pool, "foo_1.8_all.deb").exists());
+
+        pruner.setDryRun(false);
+        final List<String> removed = new ArrayList<>();
+        for (IndexedPackage indexed : pruner.prune(pool)) {
+            removed.add(indexed.getPath());
+        }
+        assertEquals(Arrays.asList("pool/foo_1.9_all.deb", "pool/foo_1.8_all.deb"), removed);
+        assertFalse(new File(pool, "foo_1.8_all.deb").exists());
+        assertFalse(new File(pool, "foo_1.8_all.deb.index").exists());
+
+        indexer.index(pool, List.of(RepositoryView.all("pool", pool)));
+        assertEquals("bar 1.0;foo 0.1;foo 1.10~rc1;foo 1.10;foo 1.11~SNAPSHOT;foo 1:0.1;", stanzas(read(new File(pool, "Packages"))));
+    }
+
+    @Test
+    public void testNextBranch() {
+        assertEquals("7.5", RepositoryView.nextBranch("7.4"));
+        assertEquals("8", RepositoryView.nextBranch("7"));
+        assertEquals("1:2.10", RepositoryView.nextBranch("1:2.9"));
+    }
+}
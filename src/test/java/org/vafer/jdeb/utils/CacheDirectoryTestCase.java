@@ -0,0 +1,72 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class CacheDirectoryTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPrivateDirectory() throws Exception {
+        Assume.assumeTrue(folder.getRoot().toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+
+        final File created = CacheDirectory.ensurePrivate(new File(folder.getRoot(), "a/b"));
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(created.toPath())));
+
+        // an existing directory of the user is restricted
+        final File existing = folder.newFolder("existing");
+        Files.setPosixFilePermissions(existing.toPath(), PosixFilePermissions.fromString("rwxrwxrwx"));
+        CacheDirectory.ensurePrivate(existing);
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(existing.toPath())));
+    }
+
+    @Test
+    public void testProperty() throws Exception {
+        final String previous = System.getProperty(CacheDirectory.PROPERTY);
+        System.setProperty(CacheDirectory.PROPERTY, folder.getRoot().getPath());
+        try {
+            assertEquals(new File(folder.getRoot(), "digests"), CacheDirectory.get("digests"));
+            assertTrue(new File(folder.getRoot(), "digests").isDirectory());
+        } finally {
+            if (previous != null) {
+                System.setProperty(CacheDirectory.PROPERTY, previous);
+            } else {
+                System.clearProperty(CacheDirectory.PROPERTY);
+            }
+        }
+    }
+
+    @Test
+    public void testNotADirectory() throws Exception {
+        try {
+            CacheDirectory.ensurePrivate(folder.newFile("file"));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vafer.jdeb.utils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class DigestCacheTestCase extends Assert {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCachedDigests() throws Exception {
+        final File cacheFile = new File(folder.getRoot(), "cache/md5.cache");
+        final File a = folder.newFile("a.jar");
+        final File b = folder.newFile("b.jar");
+        Files.write(a.toPath(), "a".getBytes(StandardCharsets.UTF_8));
+        Files.write(b.toPath(), "b".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Arrays.asList(DigestUtils.md5Hex("a"), DigestUtils.md5Hex("b")), new DigestCache(cacheFile).md5(Arrays.asList(a, b)));
+        assertTrue(cacheFile.isFile());
+
+        // another cache reads the digests from the file, the content isn't read again
+        final String cached = new String(Files.readAllBytes(cacheFile.toPath()), StandardCharsets.UTF_8);
+        Files.write(cacheFile.toPath(), cached.replace(DigestUtils.md5Hex("a"), "0123456789abcdef0123456789abcdef").getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("0123456789abcdef0123456789abcdef", DigestUtils.md5Hex("b")), new DigestCache(cacheFile).md5(Arrays.asList(a, b)));
+
+        // a changed file is hashed again
+        Files.write(a.toPath(), "aa".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList(DigestUtils.md5Hex("aa")), new DigestCache(cacheFile).md5(Arrays.asList(a)));
+    }
+
+    @Test
+    public void testDamagedCache() throws Exception {
+        final File cacheFile = folder.newFile("md5.cache");
+        Files.write(cacheFile.toPath(), "garbage\nmore\tgarbage\tin\tit\n".getBytes(StandardCharsets.UTF_8));
+        final File a = folder.newFile("a.jar");
+
+        assertEquals(Arrays.asList(DigestUtils.md5Hex("")), new DigestCache(cacheFile).md5(Arrays.asList(a)));
+    }
+
+    @Test
+    public void testUnwritableCache() throws Exception {
+        // the parent of the cache file is a file, the cache can't be saved
+        final File cacheFile = new File(folder.newFile("not-a-directory"), "md5.cache");
+        final File a = folder.newFile("a.jar");
+
+        final DigestCache cache = new DigestCache(cacheFile);
+        assertEquals(Arrays.asList(DigestUtils.md5Hex("")), cache.md5(Arrays.asList(a)));
+        assertEquals(Arrays.asList(DigestUtils.md5Hex("")), new DigestCache(null).md5(Arrays.asList(a)));
+    }
+}
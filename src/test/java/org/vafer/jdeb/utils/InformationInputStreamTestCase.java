@@ -16,8 +16,10 @@
 
 package org.vafer.jdeb.utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.Test;
 import org.junit.Assert;
@@ -91,4 +93,11 @@ public class InformationInputStreamTestCase extends Assert {
         assertTrue("BOM not detected", informationStream.hasBom());
         assertEquals("Encoding", "UTF-16LE", informationStream.getEncoding());
     }
+
+    @Test
+    public void testShebangNotAtStart() throws Exception {
+        InformationInputStream informationStream = new InformationInputStream(new ByteArrayInputStream("\r\n#!/bin/sh\r\n".getBytes(StandardCharsets.US_ASCII)));
+        Utils.copy(informationStream, new ByteArrayOutputStream());
+        assertFalse("Shebang detected", informationStream.isShell());
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MultiDigestTestCase extends Assert {
+
+    private static String hex( String algorithm, byte[] content ) throws Exception {
+        return Utils.toHex(MessageDigest.getInstance(algorithm).digest(content));
+    }
+
+    private static byte[] random( int size, long seed ) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+
+    @Test
+    public void testStreamMatchesMessageDigest() throws Exception {
+        // large enough to go through several double buffered chunks on the parallel lanes
+        byte[] content = random(1024 * 1024 + 123, 1);
+
+        MultiDigest digest = new MultiDigest("MD5", "SHA1", "SHA-256");
+        assertEquals(content.length, digest.update(new ByteArrayInputStream(content)));
+        assertEquals(content.length, digest.getSize());
+
+        Map<String, String> digests = digest.getHexDigests();
+        assertEquals(hex("MD5", content), digests.get("MD5"));
+        assertEquals(hex("SHA1", content), digests.get("SHA1"));
+        assertEquals(hex("SHA-256", content), digests.get("SHA-256"));
+
+        // the digests are reset and can be reused
+        assertEquals(hex("MD5", new byte[0]), digest.getHexDigest());
+    }
+
+    @Test
+    public void testWrap() throws Exception {
+        byte[] content = random(100000, 2);
+
+        MultiDigest digest = new MultiDigest("MD5");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utils.copy(new ByteArrayInputStream(content), digest.wrap(out));
+
+        assertArrayEquals(content, out.toByteArray());
+        assertEquals(hex("MD5", content), digest.getHexDigest());
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        List<File> files = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] content = random(i * 997, i);
+            File file = File.createTempFile("jdeb", ".bin");
+            file.deleteOnExit();
+            Files.write(file.toPath(), content);
+            files.add(file);
+            contents.add(content);
+        }
+
+        List<Map<String, String>> digests = MultiDigest.digest(files, "MD5", "SHA-256");
+
+        assertEquals(files.size(), digests.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(hex("MD5", contents.get(i)), digests.get(i).get("MD5"));
+            assertEquals(hex("SHA-256", contents.get(i)), digests.get(i).get("SHA-256"));
+        }
+    }
+
+    @Test
+    public void testToHex() {
+        assertEquals("00ff7f80", Utils.toHex(new byte[] { 0, (byte) 0xff, 0x7f, (byte) 0x80 }));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public final class TemplateTestCase extends Assert {
+
+    private final VariableResolver resolver = new MapVariableResolver(new HashMap<String, String>() {{
+        put("name", "jdeb");
+        put("version", "1.0");
+    }});
+
+    @Test
+    public void testRender() {
+        Template template = Template.compile("[[name]] [[version]] [[unknown]]", "[[", "]]");
+
+        assertFalse(template.isStatic());
+        assertEquals("jdeb 1.0 [[unknown]]", template.render(resolver));
+        assertEquals("[[name]] [[version]] [[unknown]]", template.render(null));
+        assertTrue(Template.compile("no variables", "[[", "]]").isStatic());
+    }
+
+    @Test
+    public void testFilterKeepsTheLineEndings() throws Exception {
+        String input = "#!/bin/sh\r\nif [[ -z \"[[name]]\" ]] ; then\n\necho [[version]]\rlast [[name]]";
+
+        StringWriter output = new StringWriter();
+        Template.filter(new StringReader(input), output, resolver, "[[", "]]");
+
+        assertEquals("#!/bin/sh\r\nif [[ -z \"jdeb\" ]] ; then\n\necho 1.0\rlast jdeb", output.toString());
+    }
+
+    @Test
+    public void testFilterMatchesReplaceVariables() throws Exception {
+        String[] lines = { "[[name]]", "[[[[name]]]]", "[[ [[name]] ]]", "]][[name", "@name@ [[version]]" };
+        for (String line : lines) {
+            StringWriter output = new StringWriter();
+            Template.filter(new StringReader(line), output, resolver, "[[", "]]");
+            assertEquals(line, Utils.replaceVariables(resolver, line, "[[", "]]"), output.toString());
+        }
+    }
+
+    @Test
+    public void testLoadIsCachedUntilModified() throws Exception {
+        File file = File.createTempFile("jdeb", ".template");
+        try {
+            Files.write(file.toPath(), "Package: [[name]]".getBytes(StandardCharsets.UTF_8));
+
+            Template template = Template.load(file, StandardCharsets.UTF_8, "[[", "]]");
+            assertSame(template, Template.load(file, StandardCharsets.UTF_8, "[[", "]]"));
+            assertEquals("Package: jdeb\n", template.render(resolver));
+
+            Files.write(file.toPath(), "Package: [[name]]-[[version]]".getBytes(StandardCharsets.UTF_8));
+            assertTrue(file.setLastModified(file.lastModified() + 2000));
+            assertEquals("Package: jdeb-1.0\n", Template.load(file, StandardCharsets.UTF_8, "[[", "]]").render(resolver));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testChainIsLookedUpInOrder() {
+        Properties properties = new Properties();
+        properties.setProperty("name", "ignored");
+        properties.setProperty("user", "root");
+
+        VariableResolver chain = new ChainVariableResolver(resolver, new PropertiesVariableResolver(properties));
+
+        assertEquals("jdeb", chain.get("name"));
+        assertEquals("root", chain.get("user"));
+        assertNull(chain.get("unknown"));
+    }
+}
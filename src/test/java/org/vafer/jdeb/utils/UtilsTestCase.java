@@ -76,6 +76,29 @@ public final class UtilsTestCase extends Assert {
         assertEquals(expected, actual);
     }
 
+    @Test
+    public void testNewlineConversionMixed() throws Exception {
+        assertEquals("\n", convert(""));
+        assertEquals("a\n\n\nb\n", convert("a\r\r\r\nb\u001a"));
+    }
+
+    @Test
+    public void testMatchPath() {
+        assertTrue(Utils.matchPath("**", "usr/share/doc"));
+        assertTrue(Utils.matchPath("usr/*/doc", "usr/share/doc"));
+        assertTrue(Utils.matchPath("**/*.txt", "a.txt"));
+        assertTrue(Utils.matchPath("**/*.txt", "usr/share/a.txt"));
+        assertTrue(Utils.matchPath("usr/**/doc/**", "usr/share/doc/jdeb/README"));
+        assertTrue(Utils.matchPath("usr/?hare/**", "usr/share"));
+        assertTrue(Utils.matchPath("**/.svn", "/home/user/control/.svn"));
+
+        assertFalse(Utils.matchPath("*.txt", "usr/a.txt"));
+        assertFalse(Utils.matchPath("usr/*/doc", "usr/share/jdeb/doc"));
+        assertFalse(Utils.matchPath("usr/**", "/usr/share"));
+        assertFalse(Utils.matchPath("/usr/**", "usr/share"));
+        assertFalse(Utils.matchPath("USR/**", "usr/share"));
+    }
+
     @Test
     public void testReplaceVariables() {
         Map<String, String> variables = new HashMap<>();
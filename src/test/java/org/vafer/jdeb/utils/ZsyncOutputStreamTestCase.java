@@ -0,0 +1,89 @@
+/*
+ * Copyright 2007-2024 The jdeb developers.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vafer.jdeb.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.*;
+
+public class ZsyncOutputStreamTestCase extends Assert {
+
+    @Test
+    public void testControlFile() throws Exception {
+        final byte[] content = new byte[5000];
+        Arrays.fill(content, 0, 2048, (byte) 1);
+        Arrays.fill(content, 2048, content.length, (byte) 2);
+
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        final ZsyncOutputStream zsync = new ZsyncOutputStream(file, content.length);
+        zsync.write(content, 0, 100);
+        zsync.write(content, 100, content.length - 100);
+        zsync.close();
+        assertArrayEquals(content, file.toByteArray());
+
+        final ByteArrayOutputStream control = new ByteArrayOutputStream();
+        zsync.writeControl(control, "jdeb_1.0_all.deb");
+        final byte[] bytes = control.toByteArray();
+
+        final String expectedHeader =
+            "zsync: 0.6.2\n" +
+            "Filename: jdeb_1.0_all.deb\n" +
+            "Blocksize: 2048\n" +
+            "Length: 5000\n" +
+            "Hash-Lengths: 2,2,3\n" +
+            "URL: jdeb_1.0_all.deb\n" +
+            "SHA-1: " + Utils.toHex(MultiDigest.getInstance("SHA-1").digest(content)) + "\n" +
+            "\n";
+        final int headerLength = expectedHeader.length();
+        assertEquals(expectedHeader, new String(bytes, 0, headerLength, UTF_8));
+
+        // 3 blocks with 2 bytes of rolling checksum and 3 bytes of MD4 each
+        assertEquals(headerLength + 3 * 5, bytes.length);
+
+        // a = 2048 * 1, b = 1 + 2 + ... + 2048 = 2098176, the low bytes of b are kept
+        assertEquals(0x04, bytes[headerLength]);
+        assertEquals(0x00, bytes[headerLength + 1]);
+        final byte[] md4 = MultiDigest.getInstance("MD4").digest(Arrays.copyOfRange(content, 0, 2048));
+        assertArrayEquals(Arrays.copyOf(md4, 3), Arrays.copyOfRange(bytes, headerLength + 2, headerLength + 5));
+
+        // the last block is padded with zeros
+        final byte[] last = new byte[2048];
+        Arrays.fill(last, 0, 5000 - 4096, (byte) 2);
+        final byte[] lastMd4 = MultiDigest.getInstance("MD4").digest(last);
+        assertArrayEquals(Arrays.copyOf(lastMd4, 3), Arrays.copyOfRange(bytes, headerLength + 12, headerLength + 15));
+    }
+
+    @Test
+    public void testBlockSize() throws Exception {
+        assertEquals(2048, blockSize(100000000L - 1));
+        assertEquals(4096, blockSize(100000000L));
+    }
+
+    private static int blockSize( long expectedLength ) throws Exception {
+        final ZsyncOutputStream zsync = new ZsyncOutputStream(new ByteArrayOutputStream(), expectedLength);
+        zsync.close();
+        final ByteArrayOutputStream control = new ByteArrayOutputStream();
+        zsync.writeControl(control, "jdeb_1.0_all.deb");
+        final String header = new String(control.toByteArray(), UTF_8);
+        final int start = header.indexOf("Blocksize: ") + "Blocksize: ".length();
+        return Integer.parseInt(header.substring(start, header.indexOf('\n', start)));
+    }
+}